@@ -2,25 +2,56 @@ package com.ble.example.ble_component;
 
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.IBinder;
-
-
-import java.lang.reflect.Method;
+import android.os.Looper;
+
+import com.ble.example.ble_component.bond.BondManager;
+import com.ble.example.ble_component.connection.CharacteristicHandle;
+import com.ble.example.ble_component.connection.ConnectionProfile;
+import com.ble.example.ble_component.connection.ConnectionState;
+import com.ble.example.ble_component.connection.LinkParameters;
+import com.ble.example.ble_component.connection.StartupReport;
+import com.ble.example.ble_component.event.BatchListener;
+import com.ble.example.ble_component.event.CharacteristicListener;
+import com.ble.example.ble_component.event.NotificationRingBuffer;
+import com.ble.example.ble_component.frame.Checksum;
+import com.ble.example.ble_component.frame.FrameListener;
+import com.ble.example.ble_component.frame.FramePipeline;
+import com.ble.example.ble_component.frame.Reassembler;
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.gatt.ReadSnapshot;
+import com.ble.example.ble_component.metrics.GattMetrics;
+import com.ble.example.ble_component.scan.BleScanner;
+import com.ble.example.ble_component.scan.ScanConfig;
+import com.ble.example.ble_component.scan.ScanListener;
+import com.ble.example.ble_component.scan.ScanScheduler;
+import com.ble.example.ble_component.scan.SeenDevice;
+import com.ble.example.ble_component.session.DeviceSession;
+import com.ble.example.ble_component.spool.TelemetrySpool;
+import com.ble.example.ble_component.transfer.BulkWriter;
+import com.ble.example.ble_component.transfer.ReliableWriteChannel;
+import com.ble.example.ble_component.transfer.ReliableWriter;
+import com.ble.example.ble_component.transfer.TransferStats;
+import com.ble.example.ble_component.util.HandlerScheduler;
+import com.ble.example.ble_component.util.Uuids;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
-import java.util.UUID;
 
 
 public class BLEManager {
 
     private final static String TAG = BluetoothLeService.class.getSimpleName();
 
-    private static BLEManager mBleManager;
+    private static volatile BLEManager mBleManager;
 
     /**
      * the default BLUETOOTH Adapter.
@@ -29,17 +60,27 @@ public class BLEManager {
 
     private BluetoothLeService mBluetoothLeService;
 
+    private BleScanner mScanner;
+
     private Context mContext;
 
     /**
-     * single instance
+     * single instance, safe to call from any thread. To spread devices over several adapters or
+     * processes use a {@link com.ble.example.ble_component.fleet.FleetCoordinator} instead.
      * @return
      */
     public static BLEManager getInstance() {
-        if (mBleManager == null) {
-            mBleManager = new BLEManager();
+        BLEManager manager = mBleManager;
+        if (manager == null) {
+            synchronized (BLEManager.class) {
+                manager = mBleManager;
+                if (manager == null) {
+                    manager = new BLEManager();
+                    mBleManager = manager;
+                }
+            }
         }
-        return mBleManager;
+        return manager;
     }
 
     private BLEManager() {}
@@ -60,10 +101,8 @@ public class BLEManager {
      * @return
      */
     public boolean isBLEEnalble() {
-        BluetoothManager bluetoothManager = (BluetoothManager) mContext.getSystemService(Context.BLUETOOTH_SERVICE);
-        mBluetoothAdapter = bluetoothManager.getAdapter();
-
-        return mBluetoothAdapter != null && mBluetoothAdapter.isEnabled();
+        BluetoothAdapter adapter = getBluetoothAdapter();
+        return adapter != null && adapter.isEnabled();
     }
 
 
@@ -76,27 +115,113 @@ public class BLEManager {
     public BluetoothAdapter getBluetoothAdapter() {
         if (mBluetoothAdapter == null) {
             final BluetoothManager bluetoothManager = (BluetoothManager) mContext.getSystemService(Context.BLUETOOTH_SERVICE);
-            mBluetoothAdapter = bluetoothManager.getAdapter();
+            mBluetoothAdapter = bluetoothManager == null ? null : bluetoothManager.getAdapter();
         }
         return mBluetoothAdapter;
     }
 
     /**
      * Stops an ongoing Bluetooth LE device scan.
+     *
+     * @deprecated use {@link #stopScan()}
      */
+    @Deprecated
     public void stopBLEScan(BluetoothAdapter.LeScanCallback mLeScanCallback) {
         getBluetoothAdapter().stopLeScan(mLeScanCallback);
     }
 
     /**
-     * Starts a scan for Bluetooth LE devices.
+     * Starts a scan for Bluetooth LE devices. Every advertisement is delivered unfiltered.
      *
      * @param mLeScanCallback
+     * @deprecated use {@link #startScan(ScanConfig, ScanListener)}
      */
+    @Deprecated
     public void startBLEScan(BluetoothAdapter.LeScanCallback mLeScanCallback) {
         getBluetoothAdapter().startLeScan(mLeScanCallback);
     }
 
+    /**
+     * Scan with filters, batching and per device deduplication, the listener is called on the
+     * main thread. Must be called on the main thread; a running scan is restarted.
+     *
+     * @param config
+     * @param listener
+     * @return false if the scan could not be started
+     */
+    public boolean startScan(ScanConfig config, ScanListener listener) {
+        if (mScanner == null) {
+            mScanner = new BleScanner(getBluetoothAdapter(), Looper.getMainLooper());
+        }
+        return mScanner.start(config, listener);
+    }
+
+    /**
+     * stop the scan of {@link #startScan(ScanConfig, ScanListener)}, must be called on the main
+     * thread
+     */
+    public void stopScan() {
+        if (mScanner != null) {
+            mScanner.stop();
+        }
+    }
+
+    /**
+     * Scan in duty cycled windows which adapt to how many new devices show up, see
+     * {@link ScanScheduler}. Must be called on the main thread, the listener is called there.
+     *
+     * @param config
+     * @param listener
+     * @return the running scheduler, configure or {@code stop()} it on the main thread and
+     * read its metrics
+     */
+    public ScanScheduler startDutyCycledScan(final ScanConfig config, final ScanListener listener) {
+        if (mScanner == null) {
+            mScanner = new BleScanner(getBluetoothAdapter(), Looper.getMainLooper());
+        }
+        final ScanScheduler[] scheduler = new ScanScheduler[1];
+        final ScanListener counting = new ScanListener() {
+            @Override
+            public void onDevicesUpdated(List<SeenDevice> devices) {
+                int found = 0;
+                for (int i = 0; i < devices.size(); i++) {
+                    if (devices.get(i).getSeenCount() == 1) {
+                        found++;
+                    }
+                }
+                scheduler[0].onDevicesFound(found);
+                listener.onDevicesUpdated(devices);
+            }
+
+            @Override
+            public void onScanFailed(int errorCode) {
+                listener.onScanFailed(errorCode);
+            }
+        };
+        scheduler[0] = new ScanScheduler(new ScanScheduler.Radio() {
+            @Override
+            public boolean startScan() {
+                return mScanner.start(config, counting);
+            }
+
+            @Override
+            public void stopScan() {
+                mScanner.stop();
+            }
+        }, new HandlerScheduler(Looper.getMainLooper()));
+        scheduler[0].start();
+        return scheduler[0];
+    }
+
+    /**
+     * get the scanner behind {@link #startScan(ScanConfig, ScanListener)}
+     *
+     * @return null if no scan was started yet
+     */
+    public BleScanner getScanner() {
+        return mScanner;
+    }
+
     public boolean isEnableBluetoothAdapter() {
         return getBluetoothAdapter().isEnabled();
     }
@@ -126,6 +251,47 @@ public class BLEManager {
     }
 
 
+    /**
+     * connect BLE and keep it connected, failed attempts and lost links are retried with backoff
+     *
+     * @param address
+     * @param autoReconnect
+     */
+    public void connectBle(String address, boolean autoReconnect) {
+        if (mBluetoothLeService != null) {
+            mBluetoothLeService.connect(address, autoReconnect);
+        }
+    }
+
+    /**
+     * Connect BLE and get the session of the device, with a stream per characteristic
+     * instead of broadcasts filtered by address and uuid. {@code close()} the session to
+     * disconnect.
+     *
+     * @param address
+     * @param autoReconnect keep the device connected until the session is closed
+     * @return null if the service is not bound or Bluetooth is not initialized
+     */
+    public DeviceSession connectSession(String address, boolean autoReconnect) {
+        if (mBluetoothLeService == null) {
+            return null;
+        }
+        return mBluetoothLeService.openSession(address, autoReconnect);
+    }
+
+    /**
+     * get the connection state of a device
+     *
+     * @param address
+     * @return
+     */
+    public ConnectionState getConnectionState(String address) {
+        if (mBluetoothLeService == null) {
+            return ConnectionState.IDLE;
+        }
+        return mBluetoothLeService.getConnectionScheduler().getState(address);
+    }
+
     public void bondBle(BluetoothDevice device) {
         if (mBluetoothLeService != null) {
             mBluetoothLeService.bondDevice(device);
@@ -139,31 +305,45 @@ public class BLEManager {
     }
 
 
-    private void removeBond(BluetoothDevice device) {
-        if (device == null) {
-            return;
-        }
-        try {
-            Class<?> btDeviceInstance = Class.forName(BluetoothDevice.class.getCanonicalName());
-            Method removeBondMethod = btDeviceInstance.getMethod("removeBond");
-            removeBondMethod.invoke(device);
-        } catch (Throwable th) {
-            th.printStackTrace();
-            return;
+    /**
+     * Pair with a device. Pairings run one at a time, later requests wait for their turn.
+     *
+     * @param address
+     * @return completes once the device is bonded
+     */
+    public GattFuture<Void> bond(String address) {
+        if (mBluetoothLeService == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
         }
+        return mBluetoothLeService.bond(address);
     }
 
-    public BluetoothDevice getBondDevice(String address) {
-        Set<BluetoothDevice> devices = getBluetoothAdapter().getBondedDevices();
-        if (devices != null && devices.size() > 0) {
-            for (BluetoothDevice bluetoothDevice : devices) {
-                if (bluetoothDevice.getAddress().equals(address)) {
-                    return bluetoothDevice;
-                }
-            }
+    /**
+     * Remove the bond of a device, or cancel its pending pairing.
+     *
+     * @param address
+     * @return completes once the keys are gone
+     */
+    public GattFuture<Void> removeBond(String address) {
+        if (mBluetoothLeService == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
         }
+        return mBluetoothLeService.removeBond(address);
+    }
 
-        return null;
+    /**
+     * whether the device is bonded, from the bond cache
+     *
+     * @param address
+     * @return
+     */
+    public boolean isBonded(String address) {
+        BondManager bonds = mBluetoothLeService == null ? null : mBluetoothLeService.getBondManager();
+        return bonds != null && bonds.isBonded(address);
+    }
+
+    public BluetoothDevice getBondDevice(String address) {
+        return isBonded(address) ? getBluetoothAdapter().getRemoteDevice(address) : null;
     }
 
     /**
@@ -186,6 +366,21 @@ public class BLEManager {
         return false;
     }
 
+    /**
+     * Init the ble service in the background and connect the hot devices right away, for a
+     * cold start which does not wait for Bluetooth.
+     *
+     * @param hotAddresses  devices the app will talk to first, kept connected
+     * @param warmTimeoutMs report after this time even if not every hot device is ready
+     * @return completes on the main thread with the startup timing
+     */
+    public GattFuture<StartupReport> initBluetoothLeServiceAsync(Collection<String> hotAddresses, long warmTimeoutMs) {
+        if (mBluetoothLeService == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+        }
+        return mBluetoothLeService.initializeAsync(hotAddresses, warmTimeoutMs);
+    }
+
     public List<BluetoothDevice> getConnectedDevices() {
         return mBluetoothLeService.getConnectedDevices();
     }
@@ -199,25 +394,361 @@ public class BLEManager {
     }
 
 
-    public void writeCharacteristic(String address, byte[] value, String serviceUuid, String characterUuid) {
-        BluetoothGattService bluetoothGattService
-                = mBluetoothLeService.getService(address, UUID.fromString(serviceUuid));
-        if (bluetoothGattService != null) {
-            BluetoothGattCharacteristic characteristic
-                    = bluetoothGattService.getCharacteristic(UUID.fromString(characterUuid));
-            mBluetoothLeService.writeCharacteristic(characteristic, address, value);
+    /**
+     * Listen to the notifications of a characteristic without going through broadcasts.
+     *
+     * @param address       the device address, or null for all devices
+     * @param characterUuid the characteristic uuid, or null for all characteristics
+     * @param listener      called on a binder thread, the event is only valid during the call
+     * @return false if the service is not bound
+     */
+    public boolean registerCharacteristicListener(String address, String characterUuid,
+                                                  CharacteristicListener listener) {
+        if (mBluetoothLeService == null) {
+            return false;
+        }
+        mBluetoothLeService.getEventBus().subscribe(address,
+                characterUuid == null ? null : Uuids.fromString(characterUuid), listener);
+        return true;
+    }
+
+    /**
+     * Make the device send the notifications or indications of a characteristic. The
+     * subscription is restored after every reconnect until {@link #unsubscribe}.
+     *
+     * @param address
+     * @param serviceUuid
+     * @param characterUuid
+     * @param mode          a {@code SubscriptionManager.MODE_}, {@code MODE_AUTO} picks notify or indicate
+     * @return the future of the descriptor write
+     */
+    public GattFuture<Void> subscribe(String address, String serviceUuid, String characterUuid, int mode) {
+        if (mBluetoothLeService == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+        }
+        return mBluetoothLeService.subscribe(address, Uuids.fromString(serviceUuid), Uuids.fromString(characterUuid),
+                mode);
+    }
+
+    public GattFuture<Void> unsubscribe(String address, String serviceUuid, String characterUuid) {
+        if (mBluetoothLeService == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+        }
+        return mBluetoothLeService.unsubscribe(address, Uuids.fromString(serviceUuid),
+                Uuids.fromString(characterUuid));
+    }
+
+    /**
+     * remove all subscriptions of the listener
+     *
+     * @param listener
+     */
+    public void unregisterCharacteristicListener(CharacteristicListener listener) {
+        if (mBluetoothLeService != null) {
+            mBluetoothLeService.getEventBus().unsubscribe(listener);
+        }
+    }
+
+    /**
+     * Receive the notifications of a characteristic in batches on the main thread.
+     *
+     * @param address
+     * @param characterUuid
+     * @param batchSize     deliver once this many notifications are waiting
+     * @param maxDelayMs    or at the latest after this many milliseconds
+     * @param policy        what to drop when the consumer falls behind
+     * @param listener
+     * @return the buffer, {@code close()} it to unsubscribe; null if the service is not bound
+     */
+    public NotificationRingBuffer registerBatchListener(String address, String characterUuid, int batchSize,
+                                                        long maxDelayMs, NotificationRingBuffer.Policy policy,
+                                                        BatchListener listener) {
+        if (mBluetoothLeService == null) {
+            return null;
+        }
+        NotificationRingBuffer.Builder builder
+                = new NotificationRingBuffer.Builder(address, Uuids.fromString(characterUuid), listener)
+                .setCadence(batchSize, maxDelayMs)
+                .setPolicy(policy, 100);
+        return mBluetoothLeService.openNotificationBuffer(builder);
+    }
+
+    /**
+     * Receive the frames a characteristic streams across several notifications, on the main
+     * thread.
+     *
+     * @param address
+     * @param characterUuid
+     * @param reassembler   how the frames are delimited, a new instance for every registration
+     * @param checksum      the check value at the end of every frame
+     * @param maxFrameLength longest payload, longer frames are dropped
+     * @param listener
+     * @return the pipeline with its loss counters, {@code close()} it to unsubscribe; null if the
+     * service is not bound
+     */
+    public FramePipeline registerFrameListener(String address, String characterUuid, Reassembler reassembler,
+                                               Checksum checksum, int maxFrameLength, FrameListener listener) {
+        if (mBluetoothLeService == null) {
+            return null;
+        }
+        FramePipeline.Builder builder
+                = new FramePipeline.Builder(address, Uuids.fromString(characterUuid), reassembler, listener)
+                .setChecksum(checksum)
+                .setMaxFrameLength(maxFrameLength);
+        return mBluetoothLeService.openFramePipeline(builder);
+    }
+
+    /**
+     * Keep every notification in a persistent spool, read it back with
+     * {@code openCursor("name")} and {@code commit()} what was consumed.
+     *
+     * @param maxBytes total size of the spool files
+     * @param maxAgeMs drop records older than this
+     * @return the spool, null if the service is not bound
+     * @throws IOException if the spool files cannot be opened
+     */
+    public TelemetrySpool enableTelemetrySpool(long maxBytes, long maxAgeMs) throws IOException {
+        if (mBluetoothLeService == null) {
+            return null;
+        }
+        return mBluetoothLeService.openTelemetrySpool(maxBytes, maxAgeMs);
+    }
+
+    /**
+     * stop spooling, the stored records stay for the next run
+     */
+    public void disableTelemetrySpool() {
+        if (mBluetoothLeService != null) {
+            mBluetoothLeService.closeTelemetrySpool();
+        }
+    }
+
+    /**
+     * record the GATT traffic of every device into a trace file, to replay it on the JVM
+     *
+     * @param file
+     * @return false if the service is not bound
+     * @throws IOException if the file cannot be created
+     */
+    public boolean startGattTrace(File file) throws IOException {
+        if (mBluetoothLeService == null) {
+            return false;
+        }
+        mBluetoothLeService.startGattTrace(file);
+        return true;
+    }
+
+    public void stopGattTrace() {
+        if (mBluetoothLeService != null) {
+            mBluetoothLeService.stopGattTrace();
+        }
+    }
+
+    /**
+     * keep sending {@code ACTION_DATA_AVAILABLE} broadcasts for old receivers
+     *
+     * @param enabled
+     */
+    public void setDataBroadcastEnabled(boolean enabled) {
+        if (mBluetoothLeService != null) {
+            mBluetoothLeService.setDataBroadcastEnabled(enabled);
+        }
+    }
+
+    /**
+     * collect connect, discover, read, write and notify metrics, they cost next to nothing while
+     * disabled
+     *
+     * @param enabled
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        if (mBluetoothLeService != null) {
+            mBluetoothLeService.getMetrics().setEnabled(enabled);
+        }
+    }
+
+    /**
+     * @return null if the service is not bound
+     */
+    public GattMetrics getMetrics() {
+        return mBluetoothLeService == null ? null : mBluetoothLeService.getMetrics();
+    }
+
+    /**
+     * queue a write of the characteristic
+     *
+     * @param address
+     * @param value
+     * @param serviceUuid
+     * @param characterUuid
+     * @return the future of the write
+     */
+    public GattFuture<Void> writeCharacteristic(String address, byte[] value, String serviceUuid, String characterUuid) {
+        CharacteristicHandle handle = getCharacteristicHandle(address, serviceUuid, characterUuid);
+        if (handle != null) {
+            return mBluetoothLeService.writeCharacteristic(handle, value, -1);
+        }
+        return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+    }
+
+    /**
+     * queue a write through a handle from {@link #getCharacteristicHandle(String, String, String)}
+     *
+     * @param handle
+     * @param value
+     * @return the future of the write
+     */
+    public GattFuture<Void> writeCharacteristic(CharacteristicHandle handle, byte[] value) {
+        if (mBluetoothLeService == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+        }
+        return mBluetoothLeService.writeCharacteristic(handle, value, -1);
+    }
+
+    /**
+     * choose between latency, throughput and power for the device, kept across reconnects
+     *
+     * @param address
+     * @param profile
+     * @return the future of the priority, MTU and PHY requests
+     */
+    public GattFuture<Void> setConnectionProfile(String address, ConnectionProfile profile) {
+        if (mBluetoothLeService == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+        }
+        return mBluetoothLeService.setConnectionProfile(address, profile);
+    }
+
+    /**
+     * @param address
+     * @return the applied profile and the negotiated MTU and PHYs, null if not connected
+     */
+    public LinkParameters getLinkParameters(String address) {
+        return mBluetoothLeService == null ? null : mBluetoothLeService.getLinkParameters(address);
+    }
+
+    /**
+     * write a value of up to 512 bytes, the stack splits it into prepared writes
+     *
+     * @param handle
+     * @param value
+     * @return the future of the write
+     */
+    public GattFuture<Void> writeLongCharacteristic(CharacteristicHandle handle, byte[] value) {
+        if (mBluetoothLeService == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+        }
+        return mBluetoothLeService.writeLongCharacteristic(handle, value);
+    }
+
+    /**
+     * start a transaction writing several characteristics of the device all at once or not at all,
+     * add the values and {@link ReliableWriter#start()} it
+     *
+     * @param address
+     * @return null if the device is not connected
+     */
+    public ReliableWriter<CharacteristicHandle> newReliableWrite(String address) {
+        if (mBluetoothLeService == null) {
+            return null;
+        }
+        ReliableWriteChannel<CharacteristicHandle> channel = mBluetoothLeService.openReliableWriteChannel(address);
+        return channel == null ? null : new ReliableWriter<CharacteristicHandle>(channel);
+    }
+
+    /**
+     * Resolve a characteristic once, for devices which are read or written at a high rate. The
+     * handle stays usable until the device disconnects or its services change.
+     *
+     * @param address
+     * @param serviceUuid
+     * @param characterUuid
+     * @return null if the service is not bound, the device is not connected or does not have
+     * the characteristic
+     */
+    public CharacteristicHandle getCharacteristicHandle(String address, String serviceUuid, String characterUuid) {
+        if (mBluetoothLeService == null) {
+            return null;
+        }
+        return mBluetoothLeService.getCharacteristicHandle(address, Uuids.fromString(serviceUuid),
+                Uuids.fromString(characterUuid));
+    }
+
+    /**
+     * Stream a large payload into the characteristic, e.g. a firmware image. The MTU is
+     * negotiated first and the payload is sent in MTU - 3 byte writes without response.
+     *
+     * @param address
+     * @param input         the payload, closed when the transfer ends
+     * @param totalBytes    the payload size, or -1 if unknown
+     * @param serviceUuid
+     * @param characterUuid
+     * @param listener      progress reports on a background thread, may be null
+     * @return the future of the transfer statistics
+     */
+    public GattFuture<TransferStats> writeCharacteristicStream(String address, InputStream input, long totalBytes,
+                                                               String serviceUuid, String characterUuid,
+                                                               BulkWriter.ProgressListener listener) {
+        CharacteristicHandle handle = getCharacteristicHandle(address, serviceUuid, characterUuid);
+        if (handle != null) {
+            return mBluetoothLeService.writeCharacteristicStream(handle, input, totalBytes, listener);
+        }
+        return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+    }
+
+    /**
+     * stream a payload held in memory, see
+     * {@link #writeCharacteristicStream(String, InputStream, long, String, String, BulkWriter.ProgressListener)}
+     */
+    public GattFuture<TransferStats> writeCharacteristicStream(String address, byte[] payload, String serviceUuid,
+                                                               String characterUuid,
+                                                               BulkWriter.ProgressListener listener) {
+        return writeCharacteristicStream(address, new ByteArrayInputStream(payload), payload.length,
+                serviceUuid, characterUuid, listener);
+    }
+
+    /**
+     * queue a read of the characteristic
+     *
+     * @param address
+     * @param serviceUuid
+     * @param characterUuid
+     * @return the future of the read value
+     */
+    public GattFuture<byte[]> readCharacteristic(String address, String serviceUuid, String characterUuid) {
+        CharacteristicHandle handle = getCharacteristicHandle(address, serviceUuid, characterUuid);
+        if (handle != null) {
+            return mBluetoothLeService.readCharacteristic(handle);
         }
+        return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
     }
 
-    public void readCharacteristic(String address, String serviceUuid, String characterUuid) {
-        BluetoothGattService bluetoothGattService
-                = mBluetoothLeService.getService(address, UUID.fromString(serviceUuid));
+    /**
+     * read several characteristics of the device back to back into one snapshot, e.g. to poll a
+     * dashboard; batches of different devices run concurrently
+     *
+     * @param address
+     * @param handles from {@link #getCharacteristicHandle(String, String, String)}
+     * @return the future of the snapshot with a status per characteristic
+     */
+    public GattFuture<ReadSnapshot> readCharacteristics(String address, List<CharacteristicHandle> handles) {
+        if (mBluetoothLeService == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+        }
+        return mBluetoothLeService.readCharacteristics(address, handles);
+    }
 
-        if (bluetoothGattService != null) {
-            BluetoothGattCharacteristic characteristic
-                    = bluetoothGattService.getCharacteristic(UUID.fromString(characterUuid));
-            mBluetoothLeService.readCharacteristic(characteristic, address);
+    /**
+     * queue a read through a handle from {@link #getCharacteristicHandle(String, String, String)}
+     *
+     * @param handle
+     * @return the future of the read value
+     */
+    public GattFuture<byte[]> readCharacteristic(CharacteristicHandle handle) {
+        if (mBluetoothLeService == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
         }
+        return mBluetoothLeService.readCharacteristic(handle);
     }
 
 
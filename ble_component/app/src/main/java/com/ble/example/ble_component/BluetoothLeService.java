@@ -20,9 +20,7 @@ import android.app.Service;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
 import android.bluetooth.BluetoothProfile;
@@ -31,25 +29,95 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
-import android.widget.Toast;
-
-import java.util.Arrays;
-import java.util.HashMap;
+import android.os.Looper;
+import android.util.Log;
+
+import com.ble.example.ble_component.bond.AndroidBonder;
+import com.ble.example.ble_component.bond.BondManager;
+import com.ble.example.ble_component.connection.BleConnection;
+import com.ble.example.ble_component.connection.CharacteristicHandle;
+import com.ble.example.ble_component.connection.ConnectionProfile;
+import com.ble.example.ble_component.connection.ConnectionScheduler;
+import com.ble.example.ble_component.connection.LinkParameters;
+import com.ble.example.ble_component.connection.StartupReport;
+import com.ble.example.ble_component.connection.SubscriptionManager;
+import com.ble.example.ble_component.connection.WarmPool;
+import com.ble.example.ble_component.discovery.DiscoveryCache;
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.event.CharacteristicEventBus;
+import com.ble.example.ble_component.event.NotificationRingBuffer;
+import com.ble.example.ble_component.frame.FramePipeline;
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.gatt.ReadSnapshot;
+import com.ble.example.ble_component.metrics.GattMetrics;
+import com.ble.example.ble_component.session.DeviceSession;
+import com.ble.example.ble_component.sim.LinkProfile;
+import com.ble.example.ble_component.sim.SimulatedTransport;
+import com.ble.example.ble_component.spool.TelemetrySpool;
+import com.ble.example.ble_component.trace.TraceReader;
+import com.ble.example.ble_component.trace.TraceReplayer;
+import com.ble.example.ble_component.trace.TraceWriter;
+import com.ble.example.ble_component.transfer.BulkWriter;
+import com.ble.example.ble_component.transfer.ReliableWriteChannel;
+import com.ble.example.ble_component.transfer.ReliableWriter;
+import com.ble.example.ble_component.transfer.TransferStats;
+import com.ble.example.ble_component.transport.AndroidTransport;
+import com.ble.example.ble_component.transport.BleTransport;
+import com.ble.example.ble_component.transport.GattClient;
+import com.ble.example.ble_component.util.ExecutorScheduler;
+import com.ble.example.ble_component.util.Uuids;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 
 /**
 * Service for managing connection and data communication with a GATT server hosted on a
-* given Bluetooth LE device.
+* given Bluetooth LE device. The connections run on a {@link GattClient} over the
+* {@link AndroidTransport}, the service adds the broadcasts and the Android lifecycle.
 */
 public class BluetoothLeService extends Service {
    private final static String TAG = BluetoothLeService.class.getSimpleName();
 
    private BluetoothManager mBluetoothManager;
    private BluetoothAdapter mBluetoothAdapter;
-   private HashMap<String, BluetoothGatt> mBluetoothGattHashMap = new HashMap<>();
+   private final ScheduledExecutorService mTimeoutExecutor = Executors.newSingleThreadScheduledExecutor();
+   private volatile BondManager mBonds;
+   private boolean mReceiverRegistered;
+   private final ExecutorService mTransferExecutor = Executors.newSingleThreadExecutor();
+   private final ExecutorScheduler mClock = new ExecutorScheduler(mTimeoutExecutor);
+   private final GattClient mClient = new GattClient(mClock, mTimeoutExecutor, mTransferExecutor);
+   private volatile boolean mDataBroadcastEnabled = false;
+   private TelemetrySpool mSpool;
+   // records the gatt callbacks while set
+   private TraceWriter mTrace;
+   // simulates the devices of a trace instead of Bluetooth while set
+   private TraceReplayer mReplayer;
+   private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+   private final Executor mMainExecutor = new Executor() {
+       @Override
+       public void execute(Runnable command) {
+           mMainHandler.post(command);
+       }
+   };
+   // connects the hot devices of initializeAsync
+   private final WarmPool mWarmPool = new WarmPool(mClient.getConnectionScheduler(), mClock);
 
    public final static String ACTION_DEVICE_PAIRED = "";
    public final static String ACTION_DEVICE_UNPAIR = "";
@@ -66,66 +134,50 @@ public class BluetoothLeService extends Service {
    public final static String DEVICE_NAME = "";
    public final static String DATA_UUID = "";
 
-   private boolean mIsCreateBond = false;
-
-   // Implements callback methods for GATT events that the app cares about.  For example,
+   // Turns the GATT events that the app cares about into broadcasts.  For example,
    // connection change and services discovered.
-   private BluetoothGattCallback mBluetoothGattCallback = new BluetoothGattCallback() {
+   private final GattClient.Listener mClientListener = new GattClient.Listener() {
        @Override
-       public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-           String intentAction;
-           if (newState == BluetoothProfile.STATE_CONNECTED) {
-               if (status == 0) {
-                   intentAction = ACTION_GATT_CONNECTED;
-                   broadcastUpdate(intentAction, gatt.getDevice().getAddress(), gatt.getDevice().getName());
-                   // Attempts to discover services after successful connection.
-                   mBluetoothGattHashMap.put(gatt.getDevice().getAddress(), gatt);
-               } else {
-                   if (gatt != null) {
-                       gatt.disconnect();
-                       gatt.close();
-                   }
-               }
-           } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-               intentAction = ACTION_GATT_DISCONNECTED;
-               broadcastUpdate(intentAction, gatt.getDevice().getAddress(), gatt.getDevice().getName());
-               gatt.close();
+       public void onConnectionStateChanged(String address, boolean connected, int status) {
+           if (status != 0) {
+               Log.w(TAG, address + (connected ? " connected" : " disconnected") + ", status " + status);
            }
+           broadcastUpdate(connected ? ACTION_GATT_CONNECTED : ACTION_GATT_DISCONNECTED, address, nameOf(address));
        }
 
        @Override
-       public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-           if (status == BluetoothGatt.GATT_SUCCESS) {
-               broadcastUpdate(ACTION_GATT_SERVICES_DISCOVERED, gatt.getDevice().getAddress(), gatt.getDevice().getName());
-           }
+       public void onServicesDiscovered(String address) {
+           broadcastUpdate(ACTION_GATT_SERVICES_DISCOVERED, address, nameOf(address));
        }
 
        @Override
-       public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-           if (status == BluetoothGatt.GATT_SUCCESS) {
-               broadcastUpdate(ACTION_DATA_READ, characteristic, gatt.getDevice().getAddress(), gatt.getDevice().getName());
-           }
+       public void onCharacteristicRead(String address, UUID characteristicUuid, byte[] value) {
+           broadcastUpdate(ACTION_DATA_READ, characteristicUuid, value, address, nameOf(address));
        }
 
        @Override
-       public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-           broadcastUpdate(ACTION_DATA_WRITE, characteristic, gatt.getDevice().getAddress(), gatt.getDevice().getName());
-
+       public void onCharacteristicWrite(String address, UUID characteristicUuid, byte[] value, int status) {
+           broadcastUpdate(ACTION_DATA_WRITE, characteristicUuid, value, address, nameOf(address));
        }
 
        @Override
-       public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
-           if (status == BluetoothGatt.GATT_SUCCESS) {
-               broadcastUpdate(ACTION_DESCRIPTOR_WRITE, gatt.getDevice().getAddress(), gatt.getDevice().getName());
-           }
+       public void onDescriptorWrite(String address, UUID descriptorUuid) {
+           broadcastUpdate(ACTION_DESCRIPTOR_WRITE, address, nameOf(address));
        }
 
        @Override
-       public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-           broadcastUpdate(ACTION_DATA_AVAILABLE, characteristic, gatt.getDevice().getAddress(), gatt.getDevice().getName());
+       public void onCharacteristicChanged(String address, UUID characteristicUuid, byte[] value) {
+           if (mDataBroadcastEnabled) {
+               broadcastUpdate(ACTION_DATA_AVAILABLE, characteristicUuid, value, address, nameOf(address));
+           }
        }
    };
 
+   private String nameOf(String address) {
+       BluetoothAdapter adapter = mBluetoothAdapter;
+       return adapter == null ? null : adapter.getRemoteDevice(address).getName();
+   }
+
    private void broadcastUpdate(final String action, String address, String deviceName) {
        final Intent intent = new Intent(action);
        intent.putExtra(DEVICE_ADDRESS, address);
@@ -133,17 +185,16 @@ public class BluetoothLeService extends Service {
        sendBroadcast(intent);
    }
 
-   private void broadcastUpdate(final String action, final BluetoothGattCharacteristic characteristic, String
-           address, String deviceName) {
+   private void broadcastUpdate(final String action, UUID characteristicUuid, byte[] data, String address,
+                                String deviceName) {
        final Intent intent = new Intent(action);
        intent.putExtra(DEVICE_ADDRESS, address);
        intent.putExtra(DEVICE_NAME, deviceName);
 
-       final byte[] data = characteristic.getValue();
        if (data != null && data.length > 0) {
            intent.putExtra(EXTRA_DATA, data);
        }
-       intent.putExtra(DATA_UUID, characteristic.getUuid().toString());
+       intent.putExtra(DATA_UUID, characteristicUuid.toString());
        sendBroadcast(intent);
    }
 
@@ -167,14 +218,26 @@ public class BluetoothLeService extends Service {
        return super.onUnbind(intent);
    }
 
+   @Override
+   public void onDestroy() {
+       stopGattTrace();
+       stopGattReplay();
+       mClient.close();
+       mTimeoutExecutor.shutdownNow();
+       mTransferExecutor.shutdownNow();
+       closeTelemetrySpool();
+       super.onDestroy();
+   }
+
    private final IBinder mBinder = new LocalBinder();
 
    /**
-    * Initializes a reference to the local Bluetooth adapter.
+    * Initializes a reference to the local Bluetooth adapter. Safe to call again and from any
+    * thread, see {@link #initializeAsync(Collection, long)} to keep it off the main thread.
     *
     * @return Return true if the initialization is successful.
     */
-   public boolean initialize() {
+   public synchronized boolean initialize() {
        // For API level 18 and above, get a reference to onClientRegistered through BluetoothManager.
        if (mBluetoothManager == null) {
            mBluetoothManager = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
@@ -188,22 +251,93 @@ public class BluetoothLeService extends Service {
            return false;
        }
 
-       IntentFilter intent = new IntentFilter();
-       intent.addAction(BluetoothDevice.ACTION_FOUND);
-       intent.addAction(BluetoothDevice.ACTION_BOND_STATE_CHANGED);
-       intent.addAction(BluetoothAdapter.ACTION_SCAN_MODE_CHANGED);
-       intent.addAction(BluetoothAdapter.ACTION_STATE_CHANGED);
-       registerReceiver(mBleBroadcastReceiver, intent);
+       if (mClient.getDiscoveryCache() == null) {
+           mClient.setDiscoveryCache(new DiscoveryCache(new File(getCacheDir(), "gatt"), mTransferExecutor));
+       }
+       if (mBonds == null) {
+           mBonds = new BondManager(new AndroidBonder(mBluetoothAdapter), new ExecutorScheduler(mTimeoutExecutor));
+           mBonds.refresh();
+       }
+       if (mClient.getTransport() == null) {
+           mClient.addListener(mClientListener);
+           mClient.setTransport(new AndroidTransport(this, mBluetoothAdapter));
+       }
+
+       if (!mReceiverRegistered) {
+           IntentFilter intent = new IntentFilter();
+           intent.addAction(BluetoothDevice.ACTION_FOUND);
+           intent.addAction(BluetoothDevice.ACTION_BOND_STATE_CHANGED);
+           intent.addAction(BluetoothAdapter.ACTION_SCAN_MODE_CHANGED);
+           intent.addAction(BluetoothAdapter.ACTION_STATE_CHANGED);
+           registerReceiver(mBleBroadcastReceiver, intent);
+           mReceiverRegistered = true;
+       }
 
        return true;
    }
 
+   /**
+    * Initialize on a background thread and connect the hot devices in parallel, so neither the
+    * bind nor the first command to a hot device waits for the setup. Their cached layouts are
+    * loaded before the connects start, a device with one is ready as soon as its link is up.
+    *
+    * @param hotAddresses devices to connect now and keep connected
+    * @param warmTimeoutMs report after this time even if not every hot device is ready
+    * @return the future of the startup timing, completed on the main thread; fails with
+    * {@link GattException#STATUS_REJECTED} if Bluetooth is not available
+    */
+   public GattFuture<StartupReport> initializeAsync(final Collection<String> hotAddresses, final long warmTimeoutMs) {
+       final GattFuture<StartupReport> ready = new GattFuture<>();
+       final long startedAt = mClock.now();
+       mTransferExecutor.execute(new Runnable() {
+           @Override
+           public void run() {
+               if (!initialize()) {
+                   fail(new GattException(GattException.STATUS_REJECTED, "Bluetooth not available"));
+                   return;
+               }
+               DiscoveryCache cache = mClient.getDiscoveryCache();
+               for (String address : hotAddresses) {
+                   // read from disk here, not on the binder thread of the connect
+                   cache.get(address);
+               }
+               mWarmPool.warm(hotAddresses, startedAt, warmTimeoutMs).addListener(new GattFuture.Listener<StartupReport>() {
+                   @Override
+                   public void onSuccess(final StartupReport result) {
+                       mMainHandler.post(new Runnable() {
+                           @Override
+                           public void run() {
+                               ready.complete(result);
+                           }
+                       });
+                   }
+
+                   @Override
+                   public void onFailure(GattException e) {
+                       fail(e);
+                   }
+               });
+           }
+
+           private void fail(final GattException e) {
+               mMainHandler.post(new Runnable() {
+                   @Override
+                   public void run() {
+                       ready.fail(e);
+                   }
+               });
+           }
+       });
+       return ready;
+   }
+
     /**
      * unregister broadcast
      */
-    public void unRegisterBleBroadcastReceiver(){
-        if (mBleBroadcastReceiver != null){
+    public synchronized void unRegisterBleBroadcastReceiver(){
+        if (mReceiverRegistered){
             unregisterReceiver(mBleBroadcastReceiver);
+            mReceiverRegistered = false;
         }
     }
 
@@ -214,54 +348,83 @@ public class BluetoothLeService extends Service {
            String action = intent.getAction();
            if (BluetoothDevice.ACTION_BOND_STATE_CHANGED.equals(action)) {
                BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-               switch (device.getBondState()) {
-                   case BluetoothDevice.BOND_BONDING:
-                       break;
+               int state = intent.getIntExtra(BluetoothDevice.EXTRA_BOND_STATE, BluetoothDevice.BOND_NONE);
+               BondManager bonds = mBonds;
+               if (bonds != null) {
+                   bonds.onBondStateChanged(device.getAddress(), state);
+               }
+               switch (state) {
                    case BluetoothDevice.BOND_BONDED:
-
-                           broadcastUpdate(ACTION_DEVICE_PAIRED, device.getAddress(), device.getName());
-                       mIsCreateBond = false;
+                       broadcastUpdate(ACTION_DEVICE_PAIRED, device.getAddress(), device.getName());
                        break;
                    case BluetoothDevice.BOND_NONE:
                        broadcastUpdate(ACTION_DEVICE_UNPAIR, device.getAddress(), device.getName());
-                       if (mIsCreateBond) {
-                           Toast.makeText(BluetoothLeService.this, "busy", Toast.LENGTH_SHORT).show(); // string later
-                       }
-                       mIsCreateBond = false;
                        break;
                    default:
                        break;
                }
+           } else if (BluetoothAdapter.ACTION_STATE_CHANGED.equals(action)) {
+               BondManager bonds = mBonds;
+               if (bonds != null && intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR)
+                       == BluetoothAdapter.STATE_ON) {
+                   bonds.refresh();
+               }
            }
        }
    };
 
    /**
-    * Connects to the GATT server hosted on the Bluetooth LE device.
+    * Connects to the GATT server hosted on the Bluetooth LE device. The attempt is made as soon
+    * as the connection scheduler has a free connect slot; services are discovered right after
+    * the link comes up.
     *
     * @param address The device address of the destination device.
-    * @return Return true if the connection is initiated successfully. The connection result
-    * is reported asynchronously through the
-    * {@code BluetoothGattCallback#onConnectionStateChange(android.bluetooth.BluetoothGatt, int, int)}
-    * callback.
+    * @return Return true if the connection is scheduled. The connection result
+    * is reported asynchronously through the {@link #ACTION_GATT_CONNECTED} broadcast and
+    * {@link #getConnectionScheduler()}.
     */
    public boolean connect(final String address) {
+       return connect(address, false);
+   }
+
+   /**
+    * Connects to the GATT server hosted on the Bluetooth LE device.
+    *
+    * @param address       The device address of the destination device.
+    * @param autoReconnect If true, failed attempts are retried with backoff and the device is
+    *                      reconnected whenever the link is lost, until {@link #disconnect(String)}.
+    * @return Return true if the connection is scheduled.
+    */
+   public boolean connect(final String address, boolean autoReconnect) {
        if (mBluetoothAdapter == null || address == null) {
            return false;
        }
+       return mClient.connect(address, autoReconnect);
+   }
 
-       BluetoothGatt gatt = mBluetoothGattHashMap.get(address);
-
-       final BluetoothDevice device = mBluetoothAdapter.getRemoteDevice(address);
-       if (device == null) {
-           return false;
+   /**
+    * Connect to a device and get its session. While the session is open, repeated calls
+    * return it; closing it disconnects the device. Without auto reconnect the session ends with
+    * the device's first disconnect.
+    *
+    * @param address
+    * @param autoReconnect keep the device connected until the session is closed
+    * @return null if Bluetooth is not initialized
+    */
+   public DeviceSession openSession(final String address, boolean autoReconnect) {
+       if (mBluetoothAdapter == null) {
+           return null;
        }
+       return mClient.openSession(address, autoReconnect);
+   }
 
-       // We want to directly connect to the device, so we are setting the autoConnect
-       // parameter to false.
-       gatt = device.connectGatt(this, false, mBluetoothGattCallback);
-       return true;
-
+   /**
+    * get the scheduler which manages the connection attempts
+    *
+    * @return
+    */
+   public ConnectionScheduler getConnectionScheduler() {
+       return mClient.getConnectionScheduler();
    }
 
     /**
@@ -272,23 +435,50 @@ public class BluetoothLeService extends Service {
        if (device == null) {
            return;
        }
-       device.createBond();
-       mIsCreateBond = true;
+       bond(device.getAddress());
    }
 
    /**
-    * Disconnects an existing connection or cancel a pending connection. The disconnection result
-    * is reported asynchronously through the
-    * {@code BluetoothGattCallback#onConnectionStateChange(android.bluetooth.BluetoothGatt, int, int)}
-    * callback.
+    * Pair with a device. Pairings run one at a time, later requests wait for their turn.
+    *
+    * @param address
+    * @return completes once the device is bonded
     */
-   public void disconnect(String address) {
-       if (mBluetoothAdapter == null || mBluetoothGattHashMap.get(address) == null) {
-           return;
+   public GattFuture<Void> bond(String address) {
+       BondManager bonds = mBonds;
+       if (bonds == null) {
+           return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
        }
+       return bonds.bond(address);
+   }
+
+   /**
+    * Remove the bond of a device, or cancel its pending pairing.
+    *
+    * @param address
+    * @return completes once the keys are gone
+    */
+   public GattFuture<Void> removeBond(String address) {
+       BondManager bonds = mBonds;
+       if (bonds == null) {
+           return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+       }
+       return bonds.removeBond(address);
+   }
+
+   /**
+    * @return null until {@link #initialize()} ran
+    */
+   public BondManager getBondManager() {
+       return mBonds;
+   }
 
-       mBluetoothGattHashMap.get(address).disconnect();
-       close(mBluetoothGattHashMap.get(address));
+   /**
+    * Disconnects an existing connection or cancel a pending connection. The disconnection result
+    * is reported asynchronously through the {@link #ACTION_GATT_DISCONNECTED} broadcast.
+    */
+   public void disconnect(String address) {
+       mClient.disconnect(address);
    }
 
    /**
@@ -299,12 +489,12 @@ public class BluetoothLeService extends Service {
        if (gatt == null) {
            return;
        }
-       BluetoothGatt cGatt = mBluetoothGattHashMap.get(gatt.getDevice().getAddress());
-       if (cGatt == null) {
-           gatt.close();
+       String address = gatt.getDevice().getAddress();
+       BleConnection connection = mClient.getConnection(address);
+       if (connection != null && AndroidTransport.getGatt(connection.getLink()) == gatt) {
+           mClient.close(address);
        } else {
-           cGatt.close();
-           mBluetoothGattHashMap.remove(cGatt.getDevice().getAddress());
+           gatt.close();
        }
    }
 
@@ -312,53 +502,246 @@ public class BluetoothLeService extends Service {
 
 
    /**
-    * Request a read on a given {@code BluetoothGattCharacteristic}. The read result is reported
-    * asynchronously through the {@code BluetoothGattCallback#onCharacteristicRead(android.bluetooth.BluetoothGatt, android.bluetooth.BluetoothGattCharacteristic, int)}
-    * callback.
+    * Request a read on a given {@code BluetoothGattCharacteristic}. The read is queued behind the
+    * other operations of the connection, the result is reported through the returned future and
+    * the {@link #ACTION_DATA_READ} broadcast.
     *
     * @param characteristic The characteristic to read from.
+    * @return the future of the read value.
     */
-   public void readCharacteristic(BluetoothGattCharacteristic characteristic, String address) {
-       if (mBluetoothAdapter == null || mBluetoothGattHashMap.get(address) == null) {
-           return;
+   public GattFuture<byte[]> readCharacteristic(final BluetoothGattCharacteristic characteristic, String address) {
+       if (mBluetoothAdapter == null || characteristic == null) {
+           return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
        }
-       mBluetoothGattHashMap.get(address).readCharacteristic(characteristic);
+       return mClient.readCharacteristic(address, characteristic.getService().getUuid(), characteristic.getUuid());
+   }
+
+   /**
+    * Request a read through a handle from {@link #getCharacteristicHandle(String, UUID, UUID)}.
+    *
+    * @param handle
+    * @return the future of the read value, it fails with {@link GattException#STATUS_STALE_HANDLE}
+    * if the services changed since the handle was looked up.
+    */
+   public GattFuture<byte[]> readCharacteristic(CharacteristicHandle handle) {
+       return mClient.readCharacteristic(handle);
+   }
+
+   /**
+    * Read several characteristics of a device back to back, no other operation runs between
+    * them. The snapshot has an item per handle in the same order; reads which could not be
+    * queued, e.g. through a stale handle, fail in their item.
+    *
+    * @param address
+    * @param handles from {@link #getCharacteristicHandle(String, UUID, UUID)} of the device
+    * @return the future of the snapshot, it never fails
+    */
+   public GattFuture<ReadSnapshot> readCharacteristics(String address, List<CharacteristicHandle> handles) {
+       return mClient.readCharacteristics(address, handles);
    }
 
    /**
-    * Request a write on a given {@code BluetoothGattCharacteristic}. The write result is reported
-    * asynchronously through the {@code BluetoothGattCallback#onCharacteristicRead(android.bluetooth.BluetoothGatt, android.bluetooth.BluetoothGattCharacteristic, int)}
-    * callback.
+    * Request a write on a given {@code BluetoothGattCharacteristic}. The write is queued behind the
+    * other operations of the connection, the result is reported through the returned future and
+    * the {@link #ACTION_DATA_WRITE} broadcast.
     *
     * @param characteristic The characteristic to write on.
+    * @return the future of the write.
     */
-   public void writeCharacteristic(BluetoothGattCharacteristic characteristic, String address, byte[] value) {
-       if (mBluetoothAdapter == null || mBluetoothGattHashMap.get(address) == null) {
-           return;
+   public GattFuture<Void> writeCharacteristic(final BluetoothGattCharacteristic characteristic, String address,
+                                               final byte[] value) {
+       return writeCharacteristic(characteristic, address, value, -1);
+   }
+
+   /**
+    * Request a write with an explicit write type, e.g.
+    * {@code BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE}. The write type of the
+    * characteristic is restored once the write has been handed to the stack.
+    *
+    * @param characteristic The characteristic to write on.
+    * @param writeType      the write type, or -1 to keep the characteristic's own
+    * @return the future of the write.
+    */
+   public GattFuture<Void> writeCharacteristic(final BluetoothGattCharacteristic characteristic, String address,
+                                               final byte[] value, final int writeType) {
+       if (mBluetoothAdapter == null || characteristic == null) {
+           return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
        }
-       characteristic.setValue(value);
-       mBluetoothGattHashMap.get(address).writeCharacteristic(characteristic);
+       return mClient.writeCharacteristic(address, characteristic.getService().getUuid(), characteristic.getUuid(),
+               value, writeType < 0 ? characteristic.getWriteType() : writeType);
+   }
+
+   /**
+    * Request a write through a handle from {@link #getCharacteristicHandle(String, UUID, UUID)}.
+    *
+    * @param handle
+    * @param value
+    * @param writeType the write type, or -1 for the one the characteristic's properties suggest
+    * @return the future of the write, it fails with {@link GattException#STATUS_STALE_HANDLE}
+    * if the services changed since the handle was looked up.
+    */
+   public GattFuture<Void> writeCharacteristic(CharacteristicHandle handle, byte[] value, int writeType) {
+       return mClient.writeCharacteristic(handle, value, writeType);
    }
 
    /**
-    * Enables or disables notification on a give characteristic.
+    * Write a value longer than MTU - 3 bytes. The stack splits it into prepared writes, checks
+    * every echo and executes them, so the peer gets the whole value or nothing.
+    *
+    * @param handle
+    * @param value  at most 512 bytes
+    * @return the future of the write, it fails with
+    * {@link GattException#STATUS_INVALID_ATTRIBUTE_LENGTH} if the value is too long.
+    */
+   public GattFuture<Void> writeLongCharacteristic(CharacteristicHandle handle, byte[] value) {
+       return mClient.writeLongCharacteristic(handle, value);
+   }
+
+   /**
+    * Open a channel for a {@link ReliableWriter} to write several characteristics of the device
+    * as one transaction. {@code BluetoothGatt} writes every value of a reliable write as a whole,
+    * so each one must fit in a single prepared write of MTU - 5 bytes, and it does not report the
+    * echoes, so they are not verified.
+    *
+    * @param address
+    * @return null if the device is not connected
+    */
+   public ReliableWriteChannel<CharacteristicHandle> openReliableWriteChannel(final String address) {
+       return mClient.openReliableWriteChannel(address);
+   }
+
+   /**
+    * Negotiate the ATT MTU. Before Lollipop the MTU cannot be changed, the future then
+    * completes with the default of 23.
+    *
+    * @param address
+    * @param mtu the requested MTU
+    * @return the future of the MTU the link settled on.
+    */
+   public GattFuture<Integer> requestMtu(String address, final int mtu) {
+       BleConnection connection = mClient.getConnection(address);
+       if (connection == null || !connection.isConnected()) {
+           return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+       }
+       if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+           return GattFuture.succeeded(BulkWriter.DEFAULT_MTU);
+       }
+       return mClient.requestMtu(address, mtu);
+   }
+
+   /**
+    * get the MTU negotiated on the connection
+    *
+    * @param address
+    * @return
+    */
+   public int getMtu(String address) {
+       return mClient.getMtu(address);
+   }
+
+   /**
+    * Choose the profile of the device. It is applied now if the device is connected and on every
+    * later connect; during bulk transfers the connection runs with
+    * {@link ConnectionProfile#HIGH_THROUGHPUT} and returns to the profile afterwards.
+    *
+    * @param address
+    * @param profile
+    * @return the future of the requests, it completes once they ran; the values the link
+    * settled on are in {@link #getLinkParameters(String)}
+    */
+   public GattFuture<Void> setConnectionProfile(String address, ConnectionProfile profile) {
+       return mClient.setConnectionProfile(address, profile);
+   }
+
+   /**
+    * @param address
+    * @return the applied profile, MTU and PHYs, null if the device is not connected
+    */
+   public LinkParameters getLinkParameters(String address) {
+       return mClient.getLinkParameters(address);
+   }
+
+   /**
+    * Stream a large payload into the characteristic with MTU sized writes without response. The
+    * connection switches to {@link ConnectionProfile#HIGH_THROUGHPUT} for the transfer.
+    *
+    * @param characteristic The characteristic to write on.
+    * @param address
+    * @param input          the payload, closed when the transfer ends
+    * @param totalBytes     the payload size, or -1 if unknown
+    * @param listener       progress reports on a background thread, may be null
+    * @return the future of the transfer statistics.
+    */
+   public GattFuture<TransferStats> writeCharacteristicStream(final BluetoothGattCharacteristic characteristic,
+                                                              final String address, InputStream input,
+                                                              long totalBytes, BulkWriter.ProgressListener listener) {
+       CharacteristicHandle handle = characteristic == null ? null : mClient.getCharacteristicHandle(address,
+               characteristic.getService().getUuid(), characteristic.getUuid());
+       if (handle == null) {
+           return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+       }
+       return mClient.writeCharacteristicStream(handle, input, totalBytes, listener);
+   }
+
+   /**
+    * Stream a large payload through a handle from
+    * {@link #getCharacteristicHandle(String, UUID, UUID)}, see
+    * {@link #writeCharacteristicStream(BluetoothGattCharacteristic, String, InputStream, long, BulkWriter.ProgressListener)}.
+    */
+   public GattFuture<TransferStats> writeCharacteristicStream(CharacteristicHandle handle, InputStream input,
+                                                              long totalBytes, BulkWriter.ProgressListener listener) {
+       return mClient.writeCharacteristicStream(handle, input, totalBytes, listener);
+   }
+
+   /**
+    * Enables or disables notification on a give characteristic. With the client characteristic
+    * configuration descriptor this is a subscription through {@link #subscribe}, any other
+    * descriptor only routes the notifications locally.
     *
     * @param characteristic Characteristic to act on.
     * @param enabled        If true, enable notification.  False otherwise.
+    * @return the future of the descriptor write.
     */
-   public void setCharacteristicNotification(BluetoothGattCharacteristic characteristic,
-                                             String descriptorUuid, String address, boolean enabled) {
-       if (mBluetoothAdapter == null || mBluetoothGattHashMap.get(address) == null) {
-           return;
+   public GattFuture<Void> setCharacteristicNotification(final BluetoothGattCharacteristic characteristic,
+                                                         String descriptorUuid, String address,
+                                                         final boolean enabled) {
+       if (mBluetoothAdapter == null || characteristic == null) {
+           return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
        }
-
-       BluetoothGattDescriptor descriptor = characteristic.getDescriptor(UUID.fromString(descriptorUuid));
-       if (descriptor != null) {
-           descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-           mBluetoothGattHashMap.get(address).writeDescriptor(descriptor);
+       UUID serviceUuid = characteristic.getService().getUuid();
+       if (GattClient.CLIENT_CONFIG_UUID.equals(Uuids.fromString(descriptorUuid))) {
+           BleConnection connection = mClient.getConnection(address);
+           if (connection == null || !connection.isConnected()) {
+               return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+           }
+           return enabled ? subscribe(address, serviceUuid, characteristic.getUuid(), SubscriptionManager.MODE_AUTO)
+                   : unsubscribe(address, serviceUuid, characteristic.getUuid());
        }
+       return mClient.setCharacteristicNotification(address, serviceUuid, characteristic.getUuid(), enabled);
+   }
+
+   /**
+    * Subscribe to notifications or indications of a characteristic. The subscription is kept
+    * across reconnects and written again after every discovery; a descriptor which already has
+    * the mode is not written again.
+    *
+    * @param address
+    * @param serviceUuid
+    * @param characteristicUuid
+    * @param mode               a {@code SubscriptionManager.MODE_}, usually {@code MODE_AUTO}
+    * @return the future of the descriptor write, while the services are unknown it waits for
+    * the discovery
+    */
+   public GattFuture<Void> subscribe(String address, UUID serviceUuid, UUID characteristicUuid, int mode) {
+       return mClient.subscribe(address, serviceUuid, characteristicUuid, mode);
+   }
+
+   public GattFuture<Void> unsubscribe(String address, UUID serviceUuid, UUID characteristicUuid) {
+       return mClient.unsubscribe(address, serviceUuid, characteristicUuid);
+   }
 
-       mBluetoothGattHashMap.get(address).setCharacteristicNotification(characteristic, enabled);
+   public SubscriptionManager subscriptionsOf(String address) {
+       return mClient.subscriptionsOf(address);
    }
 
 
@@ -369,26 +752,251 @@ public class BluetoothLeService extends Service {
     * @return A {@code List} of supported services.
     */
    public List<BluetoothGattService> getSupportedGattServices(String address) {
-       if (mBluetoothGattHashMap.get(address) == null) return null;
+       BluetoothGatt gatt = gattOf(address);
+       if (gatt == null) return null;
 
-       return mBluetoothGattHashMap.get(address).getServices();
+       return gatt.getServices();
    }
 
    public BluetoothGattService getService(String address, UUID uuid) {
-       if (mBluetoothGattHashMap.get(address) == null) return null;
-       return mBluetoothGattHashMap.get(address).getService(uuid);
+       BluetoothGatt gatt = gattOf(address);
+       if (gatt == null) return null;
+       return gatt.getService(uuid);
+   }
+
+   private BluetoothGatt gattOf(String address) {
+       BleConnection connection = mClient.getConnection(address);
+       return connection == null ? null : AndroidTransport.getGatt(connection.getLink());
+   }
+
+   /**
+    * Resolve a characteristic once for repeated reads and writes. The handle turns stale when
+    * the connection closes or the services are discovered again.
+    *
+    * @param address
+    * @param serviceUuid
+    * @param characteristicUuid
+    * @return null if the device is not connected or does not have the characteristic
+    */
+   public CharacteristicHandle getCharacteristicHandle(String address, UUID serviceUuid, UUID characteristicUuid) {
+       return mClient.getCharacteristicHandle(address, serviceUuid, characteristicUuid);
+   }
+
+   /**
+    * Resolve a characteristic by its 16 bit assigned number, e.g. 0x2A37.
+    *
+    * @param address
+    * @param shortId
+    * @return null if the device is not connected or does not have the characteristic
+    */
+   public CharacteristicHandle getCharacteristicHandle(String address, int shortId) {
+       return mClient.getCharacteristicHandle(address, shortId);
    }
 
    public List<BluetoothDevice> getConnectedDevices() {
        return mBluetoothManager.getConnectedDevices(BluetoothProfile.GATT_SERVER);
    }
 
-   public void discoverServices(String address) {
-       if (mBluetoothGattHashMap.get(address) == null) return;
-       mBluetoothGattHashMap.get(address).discoverServices();
+   /**
+    * Queue a service discovery on the connection.
+    *
+    * @param address
+    * @return the future of the discovered attribute table.
+    */
+   public GattFuture<GattLayout> discoverServices(String address) {
+       return mClient.discoverServices(address);
    }
 
 
+    /**
+     * Get the in-process bus which receives every characteristic notification. This is the
+     * cheap path for high rate data, values are handed over without copying.
+     *
+     * @return
+     */
+    public CharacteristicEventBus getEventBus() {
+        return mClient.getEventBus();
+    }
+
+    /**
+     * Get the cache of discovered attribute tables, e.g. to forget an unpaired device. It is
+     * available after {@link #initialize()}.
+     *
+     * @return
+     */
+    public DiscoveryCache getDiscoveryCache() {
+        return mClient.getDiscoveryCache();
+    }
+
+    /**
+     * Get the metrics of the connections. They are disabled until
+     * {@link GattMetrics#setEnabled(boolean)}.
+     *
+     * @return
+     */
+    public GattMetrics getMetrics() {
+        return mClient.getMetrics();
+    }
+
+    /**
+     * Get the adapter as a {@link BleTransport}, for components which run on any transport,
+     * e.g. a fleet {@code ClientGateway}. It is available after {@link #initialize()}.
+     *
+     * @return
+     */
+    public BleTransport getTransport() {
+        return mClient.getTransport();
+    }
+
+    /**
+     * Also send notifications as {@link #ACTION_DATA_AVAILABLE} broadcasts. Every broadcast
+     * allocates an Intent and copies the value, so this is off by default and only meant for
+     * receivers which have not moved to {@link #getEventBus()} yet.
+     *
+     * @param enabled
+     */
+    public void setDataBroadcastEnabled(boolean enabled) {
+        mDataBroadcastEnabled = enabled;
+    }
+
+    public boolean isDataBroadcastEnabled() {
+        return mDataBroadcastEnabled;
+    }
+
+    /**
+     * Buffer the notifications of one characteristic and deliver them in batches. Unless the
+     * builder says otherwise, batches are delivered on the main thread.
+     *
+     * @param builder
+     * @return the attached buffer, {@code close()} it to unsubscribe.
+     */
+    public NotificationRingBuffer openNotificationBuffer(NotificationRingBuffer.Builder builder) {
+        if (!builder.hasExecutors()) {
+            builder.setExecutors(mMainExecutor, mTimeoutExecutor);
+        }
+        return builder.build().attach(mClient.getEventBus());
+    }
+
+    /**
+     * Reassemble the notifications of one characteristic into frames. Unless the builder says
+     * otherwise, frames are delivered on the main thread.
+     *
+     * @param builder
+     * @return the attached pipeline, {@code close()} it to unsubscribe.
+     */
+    public FramePipeline openFramePipeline(FramePipeline.Builder builder) {
+        if (!builder.hasExecutor()) {
+            builder.setExecutor(mMainExecutor);
+        }
+        return builder.build().attach(mClient.getEventBus());
+    }
+
+    /**
+     * Store every notification in the spool under the files directory, which keeps the data
+     * of earlier runs. Unlike {@link #ACTION_DATA_AVAILABLE} nothing is lost when the consumer
+     * stalls, it reads with a cursor when it can.
+     *
+     * @param maxBytes total size of the spool files
+     * @param maxAgeMs drop records older than this
+     * @return the attached spool, the same one on repeated calls
+     * @throws IOException if the spool files cannot be opened
+     */
+    public synchronized TelemetrySpool openTelemetrySpool(long maxBytes, long maxAgeMs) throws IOException {
+        if (mSpool == null) {
+            mSpool = new TelemetrySpool(new File(getFilesDir(), "telemetry"), TelemetrySpool.DEFAULT_SEGMENT_SIZE);
+        }
+        mSpool.setLimits(maxBytes, maxAgeMs);
+        mSpool.trim();
+        return mSpool.attach(mClient.getEventBus());
+    }
+
+    /**
+     * stop spooling, the stored records stay for the next run
+     */
+    public synchronized void closeTelemetrySpool() {
+        if (mSpool != null) {
+            mSpool.flush();
+            mSpool.close();
+            mSpool = null;
+        }
+    }
+
+    /**
+     * Record every GATT callback into a trace file, for replay with
+     * {@link #startGattReplay(File, float)} or a {@link TraceReplayer}. A running trace is
+     * stopped first.
+     *
+     * @param file
+     * @throws IOException if the file cannot be created
+     */
+    public synchronized void startGattTrace(File file) throws IOException {
+        stopGattTrace();
+        mTrace = new TraceWriter(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        mClient.setTrace(mTrace);
+    }
+
+    /**
+     * stop recording and close the trace file
+     */
+    public synchronized void stopGattTrace() {
+        TraceWriter trace = mTrace;
+        mTrace = null;
+        mClient.setTrace(null);
+        if (trace != null) {
+            try {
+                trace.close();
+            } catch (IOException e) {
+                Log.w(TAG, "closing the gatt trace failed", e);
+            }
+        }
+    }
+
+    /**
+     * Replay a trace of {@link #startGattTrace(File)} on this service: the recorded devices are
+     * simulated and reached through the same client, event bus and broadcasts as real ones, so
+     * the app can be load tested with a session from the field. The current connections are
+     * closed. Connect and subscribe as usual, then start the returned replayer;
+     * {@link #stopGattReplay()} returns to Bluetooth.
+     *
+     * @param file
+     * @param speed 1 for the recorded timing, 10 to replay ten times as fast
+     * @return the replayer, not started yet; null if Bluetooth is not initialized
+     * @throws IOException if the trace cannot be read or is corrupt
+     */
+    public synchronized TraceReplayer startGattReplay(File file, float speed) throws IOException {
+        if (mBluetoothAdapter == null) {
+            return null;
+        }
+        stopGattReplay();
+        SimulatedTransport transport = new SimulatedTransport(mClock, new LinkProfile());
+        TraceReader reader = new TraceReader(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        TraceReplayer replayer;
+        try {
+            replayer = new TraceReplayer(reader, transport);
+        } finally {
+            reader.close();
+        }
+        replayer.setSpeed(speed);
+        mClient.close();
+        mClient.setTransport(transport);
+        mReplayer = replayer;
+        return replayer;
+    }
+
+    /**
+     * stop a replay, close the simulated connections and go back to Bluetooth
+     */
+    public synchronized void stopGattReplay() {
+        TraceReplayer replayer = mReplayer;
+        mReplayer = null;
+        if (replayer == null) {
+            return;
+        }
+        replayer.stop();
+        mClient.close();
+        mClient.setTransport(new AndroidTransport(this, mBluetoothAdapter));
+    }
+
     /**
      * get context
      * @return
@@ -0,0 +1,115 @@
+package com.ble.example.ble_component.advert;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A slice of a raw advertisement. The view does not copy: it points into the record it was
+ * taken from and is repointed by the next parse, so read it right away or copy it with
+ * {@link #toByteArray()}.
+ */
+public final class AdData {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private byte[] mData;
+    private int mOffset;
+    private int mLength;
+
+    AdData() {
+    }
+
+    AdData set(byte[] data, int offset, int length) {
+        mData = data;
+        mOffset = offset;
+        mLength = length;
+        return this;
+    }
+
+    /**
+     * @return the array the view points into, not a copy
+     */
+    public byte[] array() {
+        return mData;
+    }
+
+    public int offset() {
+        return mOffset;
+    }
+
+    public int length() {
+        return mLength;
+    }
+
+    public int getUint8(int index) {
+        return mData[position(index, 1)] & 0xFF;
+    }
+
+    public int getInt8(int index) {
+        return mData[position(index, 1)];
+    }
+
+    public int getUint16Le(int index) {
+        int i = position(index, 2);
+        return (mData[i] & 0xFF) | (mData[i + 1] & 0xFF) << 8;
+    }
+
+    public int getUint16Be(int index) {
+        int i = position(index, 2);
+        return (mData[i] & 0xFF) << 8 | (mData[i + 1] & 0xFF);
+    }
+
+    public long getUint32Be(int index) {
+        int i = position(index, 4);
+        return ((long) (mData[i] & 0xFF) << 24) | (mData[i + 1] & 0xFF) << 16
+                | (mData[i + 2] & 0xFF) << 8 | (mData[i + 3] & 0xFF);
+    }
+
+    public long getLongBe(int index) {
+        int i = position(index, 8);
+        long value = 0;
+        for (int k = 0; k < 8; k++) {
+            value = value << 8 | (mData[i + k] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * compare with a string without decoding the bytes, for ASCII content
+     *
+     * @param text
+     * @return
+     */
+    public boolean contentEquals(String text) {
+        if (text.length() != mLength) {
+            return false;
+        }
+        for (int i = 0; i < mLength; i++) {
+            if ((mData[mOffset + i] & 0xFF) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the bytes as UTF-8 text, allocates
+     */
+    public String toUtf8String() {
+        return new String(mData, mOffset, mLength, UTF_8);
+    }
+
+    /**
+     * @return a copy of the bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(mData, mOffset, mOffset + mLength);
+    }
+
+    private int position(int index, int size) {
+        if (index < 0 || index + size > mLength) {
+            throw new IndexOutOfBoundsException("index " + index + " size " + size + " length " + mLength);
+        }
+        return mOffset + index;
+    }
+}
@@ -0,0 +1,15 @@
+package com.ble.example.ble_component.advert;
+
+/**
+ * Recognizes one advertisement format. A decoder is a flyweight as well: {@link #decode}
+ * stores the fields of a matching frame in the decoder, where its getters read them until the
+ * next call. Decoders must not allocate per advertisement.
+ */
+public interface AdvertisementDecoder {
+
+    /**
+     * @param record the advertisement
+     * @return true if the advertisement is in this decoder's format
+     */
+    boolean decode(AdvertisementRecord record);
+}
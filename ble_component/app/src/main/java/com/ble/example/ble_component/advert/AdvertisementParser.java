@@ -0,0 +1,75 @@
+package com.ble.example.ble_component.advert;
+
+import java.util.ArrayList;
+
+/**
+ * Runs the registered {@link AdvertisementDecoder}s over raw advertisements. iBeacon and
+ * Eddystone are registered by default, vendor formats are added with {@link #register}.
+ * <pre>
+ * AdvertisementDecoder decoder = parser.decode(scanRecord);
+ * if (decoder == iBeacon) {
+ *     ... iBeacon.getMajor(), iBeacon.getMinor()
+ * }
+ * </pre>
+ * The parser reuses one {@link AdvertisementRecord} and the decoders keep their results in
+ * place, so parsing an advertisement does not allocate. Like the record it is meant to be
+ * confined to the scan callback thread.
+ */
+public class AdvertisementParser {
+
+    private final AdvertisementRecord mRecord = new AdvertisementRecord();
+    private final ArrayList<AdvertisementDecoder> mDecoders = new ArrayList<>();
+    private final IBeaconDecoder mIBeacon = new IBeaconDecoder();
+    private final EddystoneDecoder mEddystone = new EddystoneDecoder();
+
+    public AdvertisementParser() {
+        mDecoders.add(mIBeacon);
+        mDecoders.add(mEddystone);
+    }
+
+    /**
+     * add a decoder, decoders are tried in registration order
+     *
+     * @param decoder
+     */
+    public void register(AdvertisementDecoder decoder) {
+        if (!mDecoders.contains(decoder)) {
+            mDecoders.add(decoder);
+        }
+    }
+
+    public void unregister(AdvertisementDecoder decoder) {
+        mDecoders.remove(decoder);
+    }
+
+    public IBeaconDecoder getIBeaconDecoder() {
+        return mIBeacon;
+    }
+
+    public EddystoneDecoder getEddystoneDecoder() {
+        return mEddystone;
+    }
+
+    /**
+     * @param scanRecord the raw advertisement
+     * @return the parser's record wrapping it, valid until the next call
+     */
+    public AdvertisementRecord parse(byte[] scanRecord) {
+        return mRecord.wrap(scanRecord);
+    }
+
+    /**
+     * @param scanRecord the raw advertisement
+     * @return the first decoder which recognized the advertisement, null if none did
+     */
+    public AdvertisementDecoder decode(byte[] scanRecord) {
+        mRecord.wrap(scanRecord);
+        for (int i = 0; i < mDecoders.size(); i++) {
+            AdvertisementDecoder decoder = mDecoders.get(i);
+            if (decoder.decode(mRecord)) {
+                return decoder;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,364 @@
+package com.ble.example.ble_component.advert;
+
+import com.ble.example.ble_component.util.Uuids;
+
+import java.util.UUID;
+
+/**
+ * Flyweight view of a raw advertisement as delivered by {@code LeScanCallback} or
+ * {@code ScanRecord.getBytes()}. {@link #wrap(byte[])} walks the length-type-value structures
+ * once and remembers where they are; the accessors then read straight from the array. Nothing
+ * is copied and, once the structure table has grown to the largest record seen, nothing is
+ * allocated per advertisement except by the methods documented to allocate.
+ * <p>
+ * A record is reused for every advertisement and hands out a single {@link AdData} view, so a
+ * view is only valid until the next accessor which returns one, and the record until the next
+ * {@code wrap}. It is not thread safe.
+ */
+public final class AdvertisementRecord {
+
+    public static final int TYPE_FLAGS = 0x01;
+    public static final int TYPE_UUID16_INCOMPLETE = 0x02;
+    public static final int TYPE_UUID16_COMPLETE = 0x03;
+    public static final int TYPE_UUID32_INCOMPLETE = 0x04;
+    public static final int TYPE_UUID32_COMPLETE = 0x05;
+    public static final int TYPE_UUID128_INCOMPLETE = 0x06;
+    public static final int TYPE_UUID128_COMPLETE = 0x07;
+    public static final int TYPE_NAME_SHORT = 0x08;
+    public static final int TYPE_NAME_COMPLETE = 0x09;
+    public static final int TYPE_TX_POWER = 0x0A;
+    public static final int TYPE_SERVICE_DATA16 = 0x16;
+    public static final int TYPE_SERVICE_DATA32 = 0x20;
+    public static final int TYPE_SERVICE_DATA128 = 0x21;
+    public static final int TYPE_MANUFACTURER_DATA = 0xFF;
+
+    /**
+     * returned by {@link #getTxPower()} and {@link #getFlags()} if the record has none
+     */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private static final long BASE_LSB = 0x800000805F9B34FBL;
+    private static final long BASE_MSB_LOW = 0x0000000000001000L;
+
+    private final AdData mView = new AdData();
+
+    private byte[] mData;
+    private int mCount;
+    private boolean mTruncated;
+    // per structure: type, offset of the payload and its length
+    private int[] mTypes = new int[16];
+    private int[] mOffsets = new int[16];
+    private int[] mLengths = new int[16];
+
+    /**
+     * point the record at a raw advertisement, a malformed tail is ignored
+     *
+     * @param data
+     * @return this record
+     */
+    public AdvertisementRecord wrap(byte[] data) {
+        mData = data;
+        mCount = 0;
+        mTruncated = false;
+        if (data == null) {
+            return this;
+        }
+        int offset = 0;
+        while (offset < data.length) {
+            int length = data[offset] & 0xFF;
+            if (length == 0) {
+                // zero padding up to the 31 or 62 bytes of the record
+                break;
+            }
+            if (offset + 1 + length > data.length) {
+                mTruncated = true;
+                break;
+            }
+            if (mCount == mTypes.length) {
+                grow();
+            }
+            mTypes[mCount] = data[offset + 1] & 0xFF;
+            mOffsets[mCount] = offset + 2;
+            mLengths[mCount] = length - 1;
+            mCount++;
+            offset += 1 + length;
+        }
+        return this;
+    }
+
+    /**
+     * @return the wrapped array, not a copy
+     */
+    public byte[] getBytes() {
+        return mData;
+    }
+
+    /**
+     * @return true if the last structure ran past the end of the record
+     */
+    public boolean isTruncated() {
+        return mTruncated;
+    }
+
+    public int getStructureCount() {
+        return mCount;
+    }
+
+    public int getType(int structure) {
+        checkStructure(structure);
+        return mTypes[structure];
+    }
+
+    /**
+     * @param structure
+     * @return the payload of the structure, without length and type
+     */
+    public AdData getData(int structure) {
+        checkStructure(structure);
+        return mView.set(mData, mOffsets[structure], mLengths[structure]);
+    }
+
+    /**
+     * @param type
+     * @return the index of the first structure of that type, -1 if there is none
+     */
+    public int indexOf(int type) {
+        for (int i = 0; i < mCount; i++) {
+            if (mTypes[i] == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getFlags() {
+        int i = indexOf(TYPE_FLAGS);
+        return i < 0 || mLengths[i] < 1 ? NONE : mData[mOffsets[i]] & 0xFF;
+    }
+
+    /**
+     * @return the advertised tx power in dBm
+     */
+    public int getTxPower() {
+        int i = indexOf(TYPE_TX_POWER);
+        return i < 0 || mLengths[i] < 1 ? NONE : mData[mOffsets[i]];
+    }
+
+    /**
+     * @return the complete or else the shortened local name as a view, null if there is none
+     */
+    public AdData getLocalNameData() {
+        int i = indexOf(TYPE_NAME_COMPLETE);
+        if (i < 0) {
+            i = indexOf(TYPE_NAME_SHORT);
+        }
+        return i < 0 ? null : getData(i);
+    }
+
+    /**
+     * @return the local name, allocates
+     */
+    public String getLocalName() {
+        AdData name = getLocalNameData();
+        return name == null ? null : name.toUtf8String();
+    }
+
+    /**
+     * @return the number of service uuids of all sizes in the record
+     */
+    public int getServiceUuidCount() {
+        int count = 0;
+        for (int i = 0; i < mCount; i++) {
+            int size = uuidSize(mTypes[i]);
+            if (size > 0) {
+                count += mLengths[i] / size;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param index
+     * @return the most significant bits of the service uuid, expanded to 128 bit
+     */
+    public long getServiceUuidMsb(int index) {
+        return serviceUuidBits(index, true);
+    }
+
+    /**
+     * @param index
+     * @return the least significant bits of the service uuid, expanded to 128 bit
+     */
+    public long getServiceUuidLsb(int index) {
+        return serviceUuidBits(index, false);
+    }
+
+    /**
+     * @param index
+     * @return the service uuid, allocates
+     */
+    public UUID getServiceUuid(int index) {
+        return new UUID(getServiceUuidMsb(index), getServiceUuidLsb(index));
+    }
+
+    public boolean hasServiceUuid(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        for (int i = 0; i < mCount; i++) {
+            int size = uuidSize(mTypes[i]);
+            if (size == 0) {
+                continue;
+            }
+            for (int k = 0; k + size <= mLengths[i]; k += size) {
+                int at = mOffsets[i] + k;
+                if (uuidMsb(at, size) == msb && uuidLsb(at, size) == lsb) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the company identifier of the first manufacturer data, -1 if there is none
+     */
+    public int getManufacturerId() {
+        for (int i = 0; i < mCount; i++) {
+            if (mTypes[i] == TYPE_MANUFACTURER_DATA && mLengths[i] >= 2) {
+                return readUint16Le(mOffsets[i]);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param companyId
+     * @return the manufacturer data after the company identifier, null if there is none
+     */
+    public AdData getManufacturerData(int companyId) {
+        for (int i = 0; i < mCount; i++) {
+            if (mTypes[i] == TYPE_MANUFACTURER_DATA && mLengths[i] >= 2
+                    && readUint16Le(mOffsets[i]) == companyId) {
+                return mView.set(mData, mOffsets[i] + 2, mLengths[i] - 2);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param shortId 16 bit service uuid, e.g. 0xFEAA for Eddystone
+     * @return the service data after the uuid, null if there is none
+     */
+    public AdData getServiceData(int shortId) {
+        for (int i = 0; i < mCount; i++) {
+            if (mTypes[i] == TYPE_SERVICE_DATA16 && mLengths[i] >= 2
+                    && readUint16Le(mOffsets[i]) == shortId) {
+                return mView.set(mData, mOffsets[i] + 2, mLengths[i] - 2);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param uuid service uuid of any size
+     * @return the service data after the uuid, null if there is none
+     */
+    public AdData getServiceData(UUID uuid) {
+        int shortId = Uuids.toShortId(uuid);
+        if (shortId >= 0) {
+            return getServiceData(shortId);
+        }
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        for (int i = 0; i < mCount; i++) {
+            int size = mTypes[i] == TYPE_SERVICE_DATA32 ? 4 : mTypes[i] == TYPE_SERVICE_DATA128 ? 16 : 0;
+            if (size > 0 && mLengths[i] >= size
+                    && uuidMsb(mOffsets[i], size) == msb && uuidLsb(mOffsets[i], size) == lsb) {
+                return mView.set(mData, mOffsets[i] + size, mLengths[i] - size);
+            }
+        }
+        return null;
+    }
+
+    private long serviceUuidBits(int index, boolean msb) {
+        if (index >= 0) {
+            int remaining = index;
+            for (int i = 0; i < mCount; i++) {
+                int size = uuidSize(mTypes[i]);
+                if (size == 0) {
+                    continue;
+                }
+                int count = mLengths[i] / size;
+                if (remaining < count) {
+                    int at = mOffsets[i] + remaining * size;
+                    return msb ? uuidMsb(at, size) : uuidLsb(at, size);
+                }
+                remaining -= count;
+            }
+        }
+        throw new IndexOutOfBoundsException("service uuid " + index);
+    }
+
+    private long uuidMsb(int at, int size) {
+        switch (size) {
+            case 2:
+                return (long) readUint16Le(at) << 32 | BASE_MSB_LOW;
+            case 4:
+                return (readUint16Le(at) | (long) readUint16Le(at + 2) << 16) << 32 | BASE_MSB_LOW;
+            default:
+                // 128 bit uuids are little endian on air
+                return readLongLe(at + 8);
+        }
+    }
+
+    private long uuidLsb(int at, int size) {
+        return size == 16 ? readLongLe(at) : BASE_LSB;
+    }
+
+    private static int uuidSize(int type) {
+        switch (type) {
+            case TYPE_UUID16_INCOMPLETE:
+            case TYPE_UUID16_COMPLETE:
+                return 2;
+            case TYPE_UUID32_INCOMPLETE:
+            case TYPE_UUID32_COMPLETE:
+                return 4;
+            case TYPE_UUID128_INCOMPLETE:
+            case TYPE_UUID128_COMPLETE:
+                return 16;
+            default:
+                return 0;
+        }
+    }
+
+    private int readUint16Le(int at) {
+        return (mData[at] & 0xFF) | (mData[at + 1] & 0xFF) << 8;
+    }
+
+    private long readLongLe(int at) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = value << 8 | (mData[at + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private void checkStructure(int structure) {
+        if (structure < 0 || structure >= mCount) {
+            throw new IndexOutOfBoundsException("structure " + structure + " of " + mCount);
+        }
+    }
+
+    private void grow() {
+        int size = mTypes.length * 2;
+        int[] types = new int[size];
+        int[] offsets = new int[size];
+        int[] lengths = new int[size];
+        System.arraycopy(mTypes, 0, types, 0, mCount);
+        System.arraycopy(mOffsets, 0, offsets, 0, mCount);
+        System.arraycopy(mLengths, 0, lengths, 0, mCount);
+        mTypes = types;
+        mOffsets = offsets;
+        mLengths = lengths;
+    }
+}
@@ -0,0 +1,177 @@
+package com.ble.example.ble_component.advert;
+
+/**
+ * Google Eddystone, carried in the service data of 0xFEAA. The UID, URL, TLM and EID frames
+ * are decoded; the identifiers are copied into buffers owned by the decoder, which are
+ * overwritten by the next frame.
+ */
+public class EddystoneDecoder implements AdvertisementDecoder {
+
+    public static final int SERVICE_EDDYSTONE = 0xFEAA;
+
+    public static final int FRAME_UID = 0x00;
+    public static final int FRAME_URL = 0x10;
+    public static final int FRAME_TLM = 0x20;
+    public static final int FRAME_EID = 0x30;
+
+    private static final String[] URL_SCHEMES = {"http://www.", "https://www.", "http://", "https://"};
+    private static final String[] URL_EXPANSIONS = {".com/", ".org/", ".edu/", ".net/", ".info/", ".biz/",
+            ".gov/", ".com", ".org", ".edu", ".net", ".info", ".biz", ".gov"};
+
+    private final byte[] mNamespace = new byte[10];
+    private final byte[] mInstance = new byte[6];
+    private final byte[] mEid = new byte[8];
+    private final byte[] mUrl = new byte[18];
+
+    private int mFrameType;
+    private int mTxPower;
+    private int mUrlLength;
+    private int mTlmVersion;
+    private int mBatteryMillivolts;
+    private float mTemperature;
+    private long mAdvertisementCount;
+    private long mUptimeTenths;
+
+    @Override
+    public boolean decode(AdvertisementRecord record) {
+        AdData data = record.getServiceData(SERVICE_EDDYSTONE);
+        if (data == null || data.length() < 2) {
+            return false;
+        }
+        int frameType = data.getUint8(0);
+        switch (frameType) {
+            case FRAME_UID:
+                if (data.length() < 18) {
+                    return false;
+                }
+                mTxPower = data.getInt8(1);
+                copy(data, 2, mNamespace, mNamespace.length);
+                copy(data, 12, mInstance, mInstance.length);
+                break;
+            case FRAME_URL:
+                if (data.length() < 3 || data.getUint8(2) >= URL_SCHEMES.length) {
+                    return false;
+                }
+                mTxPower = data.getInt8(1);
+                mUrlLength = Math.min(data.length() - 2, mUrl.length);
+                copy(data, 2, mUrl, mUrlLength);
+                break;
+            case FRAME_TLM:
+                if (data.length() < 14 || data.getUint8(1) != 0) {
+                    // only the unencrypted version 0 is decoded
+                    return false;
+                }
+                mTlmVersion = data.getUint8(1);
+                mBatteryMillivolts = data.getUint16Be(2);
+                mTemperature = (short) data.getUint16Be(4) / 256f;
+                mAdvertisementCount = data.getUint32Be(6);
+                mUptimeTenths = data.getUint32Be(10);
+                break;
+            case FRAME_EID:
+                if (data.length() < 10) {
+                    return false;
+                }
+                mTxPower = data.getInt8(1);
+                copy(data, 2, mEid, mEid.length);
+                break;
+            default:
+                return false;
+        }
+        mFrameType = frameType;
+        return true;
+    }
+
+    /**
+     * @return one of the FRAME_ constants
+     */
+    public int getFrameType() {
+        return mFrameType;
+    }
+
+    /**
+     * @return the calibrated tx power at 0 m in dBm, of UID, URL and EID frames
+     */
+    public int getTxPower() {
+        return mTxPower;
+    }
+
+    /**
+     * @return the 10 byte namespace of the last UID frame, owned by the decoder
+     */
+    public byte[] getNamespace() {
+        return mNamespace;
+    }
+
+    /**
+     * @return the 6 byte instance of the last UID frame, owned by the decoder
+     */
+    public byte[] getInstance() {
+        return mInstance;
+    }
+
+    /**
+     * @return the 8 byte ephemeral id of the last EID frame, owned by the decoder
+     */
+    public byte[] getEphemeralId() {
+        return mEid;
+    }
+
+    /**
+     * append the expanded url of the last URL frame
+     *
+     * @param out
+     * @return out
+     */
+    public StringBuilder appendUrl(StringBuilder out) {
+        if (mUrlLength == 0) {
+            return out;
+        }
+        out.append(URL_SCHEMES[mUrl[0]]);
+        for (int i = 1; i < mUrlLength; i++) {
+            int c = mUrl[i] & 0xFF;
+            if (c < URL_EXPANSIONS.length) {
+                out.append(URL_EXPANSIONS[c]);
+            } else {
+                out.append((char) c);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return the expanded url of the last URL frame, allocates
+     */
+    public String getUrl() {
+        return appendUrl(new StringBuilder(32)).toString();
+    }
+
+    public int getTlmVersion() {
+        return mTlmVersion;
+    }
+
+    public int getBatteryMillivolts() {
+        return mBatteryMillivolts;
+    }
+
+    /**
+     * @return the beacon temperature in degrees Celsius, -128 if not supported
+     */
+    public float getTemperature() {
+        return mTemperature;
+    }
+
+    public long getAdvertisementCount() {
+        return mAdvertisementCount;
+    }
+
+    /**
+     * @return the time since the beacon powered up, in 0.1 s
+     */
+    public long getUptimeTenths() {
+        return mUptimeTenths;
+    }
+
+    private static void copy(AdData data, int index, byte[] target, int length) {
+        System.arraycopy(data.array(), data.offset() + index, target, 0, length);
+    }
+}
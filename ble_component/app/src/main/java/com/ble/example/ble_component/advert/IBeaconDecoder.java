@@ -0,0 +1,69 @@
+package com.ble.example.ble_component.advert;
+
+import java.util.UUID;
+
+/**
+ * Apple iBeacon: manufacturer data 0x004C with type 0x02 and length 0x15, followed by the
+ * proximity uuid, major and minor in big endian and the calibrated power at one meter.
+ */
+public class IBeaconDecoder extends ManufacturerDataDecoder {
+
+    public static final int COMPANY_APPLE = 0x004C;
+
+    private long mUuidMsb;
+    private long mUuidLsb;
+    private int mMajor;
+    private int mMinor;
+    private int mMeasuredPower;
+
+    public IBeaconDecoder() {
+        super(COMPANY_APPLE);
+    }
+
+    @Override
+    protected boolean decode(AdData data) {
+        if (data.length() < 23 || data.getUint8(0) != 0x02 || data.getUint8(1) != 0x15) {
+            return false;
+        }
+        mUuidMsb = data.getLongBe(2);
+        mUuidLsb = data.getLongBe(10);
+        mMajor = data.getUint16Be(18);
+        mMinor = data.getUint16Be(20);
+        mMeasuredPower = data.getInt8(22);
+        return true;
+    }
+
+    public long getUuidMsb() {
+        return mUuidMsb;
+    }
+
+    public long getUuidLsb() {
+        return mUuidLsb;
+    }
+
+    /**
+     * @return the proximity uuid, allocates
+     */
+    public UUID getUuid() {
+        return new UUID(mUuidMsb, mUuidLsb);
+    }
+
+    public boolean isUuid(UUID uuid) {
+        return uuid.getMostSignificantBits() == mUuidMsb && uuid.getLeastSignificantBits() == mUuidLsb;
+    }
+
+    public int getMajor() {
+        return mMajor;
+    }
+
+    public int getMinor() {
+        return mMinor;
+    }
+
+    /**
+     * @return the rssi at one meter in dBm
+     */
+    public int getMeasuredPower() {
+        return mMeasuredPower;
+    }
+}
@@ -0,0 +1,32 @@
+package com.ble.example.ble_component.advert;
+
+/**
+ * Base of decoders for vendor formats carried in manufacturer specific data.
+ */
+public abstract class ManufacturerDataDecoder implements AdvertisementDecoder {
+
+    private final int mCompanyId;
+
+    /**
+     * @param companyId the Bluetooth SIG company identifier, e.g. 0x004C for Apple
+     */
+    protected ManufacturerDataDecoder(int companyId) {
+        mCompanyId = companyId;
+    }
+
+    public int getCompanyId() {
+        return mCompanyId;
+    }
+
+    @Override
+    public final boolean decode(AdvertisementRecord record) {
+        AdData data = record.getManufacturerData(mCompanyId);
+        return data != null && decode(data);
+    }
+
+    /**
+     * @param data the manufacturer data after the company identifier
+     * @return true if the data is in this decoder's format
+     */
+    protected abstract boolean decode(AdData data);
+}
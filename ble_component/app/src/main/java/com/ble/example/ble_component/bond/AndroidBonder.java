@@ -0,0 +1,83 @@
+package com.ble.example.ble_component.bond;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.os.Build;
+import android.util.Log;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link BondManager.Bonder} on a {@link BluetoothAdapter}. {@code removeBond},
+ * {@code cancelBondProcess} and, before KitKat, {@code createBond} are hidden
+ * {@link BluetoothDevice} methods; they are looked up once and invoked by reflection.
+ */
+public class AndroidBonder implements BondManager.Bonder {
+
+    private final static String TAG = AndroidBonder.class.getSimpleName();
+
+    private static final Method CREATE_BOND = findMethod("createBond");
+    private static final Method CANCEL_BOND_PROCESS = findMethod("cancelBondProcess");
+    private static final Method REMOVE_BOND = findMethod("removeBond");
+
+    private final BluetoothAdapter mAdapter;
+
+    public AndroidBonder(BluetoothAdapter adapter) {
+        mAdapter = adapter;
+    }
+
+    @Override
+    public boolean createBond(String address) {
+        BluetoothDevice device = mAdapter.getRemoteDevice(address);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return device.createBond();
+        }
+        return invoke(CREATE_BOND, device);
+    }
+
+    @Override
+    public void cancelBond(String address) {
+        invoke(CANCEL_BOND_PROCESS, mAdapter.getRemoteDevice(address));
+    }
+
+    @Override
+    public boolean removeBond(String address) {
+        return invoke(REMOVE_BOND, mAdapter.getRemoteDevice(address));
+    }
+
+    @Override
+    public Collection<String> getBondedAddresses() {
+        List<String> addresses = new ArrayList<>();
+        Set<BluetoothDevice> devices = mAdapter.getBondedDevices();
+        if (devices != null) {
+            for (BluetoothDevice device : devices) {
+                addresses.add(device.getAddress());
+            }
+        }
+        return addresses;
+    }
+
+    private static boolean invoke(Method method, BluetoothDevice device) {
+        if (method == null) {
+            return false;
+        }
+        try {
+            return Boolean.TRUE.equals(method.invoke(device));
+        } catch (Exception e) {
+            Log.w(TAG, method.getName() + " failed", e);
+            return false;
+        }
+    }
+
+    private static Method findMethod(String name) {
+        try {
+            return BluetoothDevice.class.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
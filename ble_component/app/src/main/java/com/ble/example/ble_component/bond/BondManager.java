@@ -0,0 +1,321 @@
+package com.ble.example.ble_component.bond;
+
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.util.Scheduler;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pairs devices one after the other. The stack only runs one pairing at a time and fails a
+ * second {@code createBond} outright, so requests wait in FIFO order; a request for a device
+ * which is already queued or bonding shares the pending future. Every pairing and removal is
+ * finished by the {@code ACTION_BOND_STATE_CHANGED} broadcasts fed into
+ * {@link #onBondStateChanged(String, int)}, or by its timeout.
+ * <p>
+ * The bonded addresses are kept in memory, loaded once with {@link #refresh()} and then
+ * updated by the same broadcasts, so {@link #isBonded(String)} does not ask the adapter.
+ * All methods are thread safe. The bonder and the listeners of the futures are called with
+ * the manager's lock held and must not block.
+ */
+public class BondManager {
+
+    /**
+     * {@code BluetoothDevice.BOND_NONE}
+     */
+    public static final int BOND_NONE = 10;
+    /**
+     * {@code BluetoothDevice.BOND_BONDING}
+     */
+    public static final int BOND_BONDING = 11;
+    /**
+     * {@code BluetoothDevice.BOND_BONDED}
+     */
+    public static final int BOND_BONDED = 12;
+
+    /**
+     * the platform side of the manager
+     */
+    public interface Bonder {
+        /**
+         * start pairing, report through {@link #onBondStateChanged(String, int)}
+         *
+         * @return false if the pairing could not be started
+         */
+        boolean createBond(String address);
+
+        /**
+         * abort a running pairing
+         */
+        void cancelBond(String address);
+
+        /**
+         * drop the keys of a bonded device
+         *
+         * @return false if the removal could not be started
+         */
+        boolean removeBond(String address);
+
+        /**
+         * @return the addresses the adapter has keys for
+         */
+        Collection<String> getBondedAddresses();
+    }
+
+    private static class Device {
+        final String mAddress;
+        BondState mState = BondState.NONE;
+        GattFuture<Void> mFuture;
+        Scheduler.Task mTimer;
+
+        Device(String address) {
+            mAddress = address;
+        }
+    }
+
+    private final Bonder mBonder;
+    private final Scheduler mScheduler;
+    private final Set<String> mBonded = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final HashMap<String, Device> mDevices = new HashMap<>();
+    private final ArrayDeque<Device> mWaiting = new ArrayDeque<>();
+    private Device mActive;
+
+    private long mBondTimeoutMs = 30000;
+    private long mRemoveTimeoutMs = 10000;
+
+    public BondManager(Bonder bonder, Scheduler scheduler) {
+        mBonder = bonder;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Give up on a pairing or removal after this time. Pairing may wait for the user to enter
+     * a passkey, 30 s by default; removal 10 s by default.
+     *
+     * @param bondTimeoutMs
+     * @param removeTimeoutMs
+     */
+    public synchronized void setTimeouts(long bondTimeoutMs, long removeTimeoutMs) {
+        mBondTimeoutMs = bondTimeoutMs;
+        mRemoveTimeoutMs = removeTimeoutMs;
+    }
+
+    /**
+     * reload the bonded addresses from the adapter, e.g. after it was turned on
+     */
+    public void refresh() {
+        Collection<String> bonded = mBonder.getBondedAddresses();
+        synchronized (this) {
+            mBonded.clear();
+            mBonded.addAll(bonded);
+        }
+    }
+
+    /**
+     * Pair with the device once the pairings requested before are done.
+     *
+     * @param address
+     * @return completes when the device is bonded, fails with {@link GattException#STATUS_TIMEOUT},
+     * {@link GattException#STATUS_REJECTED} if the stack refused to start or the bond is being
+     * removed, {@link GattException#STATUS_BOND_FAILED} or {@link GattException#STATUS_CANCELLED}
+     */
+    public synchronized GattFuture<Void> bond(String address) {
+        Device device = mDevices.get(address);
+        if (device != null) {
+            if (device.mState == BondState.REMOVING) {
+                return GattFuture.failed(GattException.STATUS_REJECTED);
+            }
+            return device.mFuture;
+        }
+        if (mBonded.contains(address)) {
+            return GattFuture.succeeded(null);
+        }
+        device = new Device(address);
+        device.mState = BondState.QUEUED;
+        device.mFuture = new GattFuture<>();
+        mDevices.put(address, device);
+        mWaiting.add(device);
+        GattFuture<Void> future = device.mFuture;
+        pump();
+        return future;
+    }
+
+    /**
+     * Remove the bond of a device, or cancel its pending pairing.
+     *
+     * @param address
+     * @return completes once the keys are gone; a pending pairing fails with
+     * {@link GattException#STATUS_CANCELLED}
+     */
+    public synchronized GattFuture<Void> removeBond(String address) {
+        Device device = mDevices.get(address);
+        if (device != null) {
+            if (device.mState == BondState.REMOVING) {
+                return device.mFuture;
+            }
+            boolean active = device == mActive;
+            finish(device, new GattException(GattException.STATUS_CANCELLED, "pairing cancelled"));
+            if (active) {
+                mBonder.cancelBond(address);
+            }
+        }
+        if (!mBonded.contains(address)) {
+            pump();
+            return GattFuture.succeeded(null);
+        }
+        if (!mBonder.removeBond(address)) {
+            pump();
+            return GattFuture.failed(GattException.STATUS_REJECTED);
+        }
+        final Device removing = new Device(address);
+        removing.mState = BondState.REMOVING;
+        removing.mFuture = new GattFuture<>();
+        mDevices.put(address, removing);
+        startTimer(removing, mRemoveTimeoutMs);
+        GattFuture<Void> future = removing.mFuture;
+        pump();
+        return future;
+    }
+
+    /**
+     * Feed {@code ACTION_BOND_STATE_CHANGED}, for every device, including pairings started
+     * elsewhere.
+     *
+     * @param address
+     * @param state   {@code EXTRA_BOND_STATE}
+     */
+    public synchronized void onBondStateChanged(String address, int state) {
+        if (state == BOND_BONDED) {
+            mBonded.add(address);
+        } else if (state == BOND_NONE) {
+            mBonded.remove(address);
+        }
+        Device device = mDevices.get(address);
+        if (device == null) {
+            return;
+        }
+        switch (device.mState) {
+            case QUEUED:
+                if (state == BOND_BONDED) {
+                    // paired from the settings while waiting
+                    finish(device, null);
+                }
+                break;
+            case BONDING:
+                if (state == BOND_BONDED) {
+                    finish(device, null);
+                } else if (state == BOND_NONE) {
+                    finish(device, new GattException(GattException.STATUS_BOND_FAILED, "pairing failed"));
+                }
+                break;
+            case REMOVING:
+                if (state == BOND_NONE) {
+                    finish(device, null);
+                }
+                break;
+            default:
+                break;
+        }
+        pump();
+    }
+
+    public boolean isBonded(String address) {
+        return mBonded.contains(address);
+    }
+
+    /**
+     * get a snapshot of the bonded addresses
+     *
+     * @return
+     */
+    public Set<String> getBondedAddresses() {
+        return new HashSet<>(mBonded);
+    }
+
+    public synchronized BondState getState(String address) {
+        Device device = mDevices.get(address);
+        if (device != null) {
+            return device.mState;
+        }
+        return mBonded.contains(address) ? BondState.BONDED : BondState.NONE;
+    }
+
+    /**
+     * number of pairings waiting for their turn
+     *
+     * @return
+     */
+    public synchronized int getQueuedCount() {
+        return mWaiting.size();
+    }
+
+    /**
+     * start the next queued pairing if none is running
+     */
+    private void pump() {
+        while (mActive == null && !mWaiting.isEmpty()) {
+            Device device = mWaiting.poll();
+            if (mBonded.contains(device.mAddress)) {
+                finish(device, null);
+                continue;
+            }
+            device.mState = BondState.BONDING;
+            mActive = device;
+            if (!mBonder.createBond(device.mAddress)) {
+                finish(device, new GattException(GattException.STATUS_REJECTED, "createBond refused"));
+                continue;
+            }
+            startTimer(device, mBondTimeoutMs);
+        }
+    }
+
+    private void startTimer(final Device device, long timeoutMs) {
+        device.mTimer = mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onTimeout(device);
+            }
+        }, timeoutMs);
+    }
+
+    private synchronized void onTimeout(Device device) {
+        if (mDevices.get(device.mAddress) != device) {
+            return;
+        }
+        device.mTimer = null;
+        if (device == mActive) {
+            mBonder.cancelBond(device.mAddress);
+        }
+        finish(device, new GattException(GattException.STATUS_TIMEOUT));
+        pump();
+    }
+
+    /**
+     * end the request of the device and complete its future, the caller pumps the queue
+     *
+     * @param error null on success
+     */
+    private void finish(Device device, GattException error) {
+        if (device.mTimer != null) {
+            device.mTimer.cancel();
+            device.mTimer = null;
+        }
+        mDevices.remove(device.mAddress);
+        mWaiting.remove(device);
+        if (device == mActive) {
+            mActive = null;
+        }
+        device.mState = mBonded.contains(device.mAddress) ? BondState.BONDED : BondState.NONE;
+        if (error == null) {
+            device.mFuture.complete(null);
+        } else {
+            device.mFuture.fail(error);
+        }
+    }
+}
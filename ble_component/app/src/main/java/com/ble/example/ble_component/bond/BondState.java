@@ -0,0 +1,27 @@
+package com.ble.example.ble_component.bond;
+
+/**
+ * Bonding life cycle of a device as seen by the {@link BondManager}.
+ */
+public enum BondState {
+    /**
+     * not bonded and nothing requested
+     */
+    NONE,
+    /**
+     * waiting for the pairing of another device to finish
+     */
+    QUEUED,
+    /**
+     * createBond has been called, waiting for the user or the peer
+     */
+    BONDING,
+    /**
+     * bonded, the keys are stored
+     */
+    BONDED,
+    /**
+     * removeBond has been called, waiting for the stack to drop the keys
+     */
+    REMOVING
+}
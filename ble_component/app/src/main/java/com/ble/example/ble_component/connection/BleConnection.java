@@ -0,0 +1,229 @@
+package com.ble.example.ble_component.connection;
+
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattOperationQueue;
+import com.ble.example.ble_component.transport.GattLink;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Everything the client knows about one GATT connection: the {@link GattLink}, the link
+ * state, the discovered services, the negotiated MTU and PHY, the connection profile and the
+ * operation queue. Instances live in a {@link ConnectionRegistry}; a closed connection is never
+ * reused, a new connect creates a new instance.
+ */
+public class BleConnection {
+
+    public static final int DEFAULT_MTU = 23;
+
+    private final String mAddress;
+    private final GattOperationQueue mQueue;
+    private volatile GattLink mLink;
+    private final AtomicReference<ConnectionState> mState = new AtomicReference<>(ConnectionState.CONNECTING);
+    private volatile CharacteristicIndex mIndex;
+    private volatile int mMtu = DEFAULT_MTU;
+    private volatile int mTxPhy = ConnectionProfile.PHY_LE_1M;
+    private volatile int mRxPhy = ConnectionProfile.PHY_LE_1M;
+    // the profile chosen for the connection and the one applied, which differ during transfers
+    private volatile ConnectionProfile mProfile = ConnectionProfile.BALANCED;
+    private volatile ConnectionProfile mAppliedProfile = ConnectionProfile.BALANCED;
+    private final AtomicInteger mTransfers = new AtomicInteger();
+
+    BleConnection(String address, ScheduledExecutorService timeoutExecutor) {
+        mAddress = address;
+        mQueue = new GattOperationQueue(timeoutExecutor);
+        mIndex = CharacteristicIndex.empty(address);
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * @return the link of the transport, null until the connect started
+     */
+    public GattLink getLink() {
+        return mLink;
+    }
+
+    /**
+     * set the link once the transport started connecting, its events can arrive before
+     *
+     * @param link
+     */
+    public void attach(GattLink link) {
+        mLink = link;
+    }
+
+    public GattOperationQueue getQueue() {
+        return mQueue;
+    }
+
+    public ConnectionState getState() {
+        return mState.get();
+    }
+
+    /**
+     * move to a new state only if the connection is still in the expected one
+     *
+     * @param expect
+     * @param update
+     * @return false if another thread changed the state first
+     */
+    public boolean compareAndSetState(ConnectionState expect, ConnectionState update) {
+        return mState.compareAndSet(expect, update);
+    }
+
+    /**
+     * whether the link is up and operations can be queued
+     *
+     * @return
+     */
+    public boolean isConnected() {
+        ConnectionState state = mState.get();
+        return state == ConnectionState.CONNECTED || state == ConnectionState.DISCOVERING
+                || state == ConnectionState.READY;
+    }
+
+    /**
+     * Index the discovered services. If they match the cached layout the connection started
+     * with, its handles stay valid. Otherwise the index is replaced as a whole, so readers never
+     * see a half built one, and the handles of the previous one turn stale.
+     *
+     * @param layout the discovered services
+     * @return true if the cached layout was confirmed
+     */
+    public boolean setServices(GattLayout layout) {
+        CharacteristicIndex current = mIndex;
+        if (current.isValid() && current.confirm(layout.getHash())) {
+            return true;
+        }
+        CharacteristicIndex index = CharacteristicIndex.build(mAddress, layout);
+        current.invalidate();
+        mIndex = index;
+        return false;
+    }
+
+    /**
+     * Start with the layout the device had last time, so characteristics can be looked up and
+     * operations queued before the discovery finished. The operations run after the discovery,
+     * which confirms or replaces the layout.
+     *
+     * @param layout
+     */
+    public void setCachedLayout(GattLayout layout) {
+        CharacteristicIndex index = CharacteristicIndex.fromLayout(mAddress, layout);
+        mIndex.invalidate();
+        mIndex = index;
+    }
+
+    /**
+     * Called when a service discovery starts: handles of a previous discovery turn stale, a
+     * cached layout waits for the discovery to confirm it.
+     */
+    public void prepareDiscovery() {
+        CharacteristicIndex current = mIndex;
+        if (!current.isValid() || !current.isProvisional()) {
+            invalidateServices();
+        }
+    }
+
+    /**
+     * Drop the service index, e.g. because the peer announced a service change. The handles
+     * turn stale until the services are discovered again.
+     */
+    public void invalidateServices() {
+        mIndex.invalidate();
+        mIndex = CharacteristicIndex.empty(mAddress);
+    }
+
+    /**
+     * get the current service index, it is invalid until the services are discovered
+     *
+     * @return
+     */
+    public CharacteristicIndex getIndex() {
+        return mIndex;
+    }
+
+    public int getMtu() {
+        return mMtu;
+    }
+
+    public void setMtu(int mtu) {
+        mMtu = mtu;
+    }
+
+    public void setPhy(int txPhy, int rxPhy) {
+        mTxPhy = txPhy;
+        mRxPhy = rxPhy;
+    }
+
+    /**
+     * @return the profile chosen for the connection, {@link ConnectionProfile#BALANCED} by default
+     */
+    public ConnectionProfile getProfile() {
+        return mProfile;
+    }
+
+    public void setProfile(ConnectionProfile profile) {
+        mProfile = profile;
+    }
+
+    public void setAppliedProfile(ConnectionProfile profile) {
+        mAppliedProfile = profile;
+    }
+
+    /**
+     * @return the profile and the values the link settled on
+     */
+    public LinkParameters getLinkParameters() {
+        return new LinkParameters(mAppliedProfile, mMtu, mTxPhy, mRxPhy);
+    }
+
+    /**
+     * count a bulk transfer which starts on the connection
+     *
+     * @return true for the first of overlapping transfers
+     */
+    public boolean beginTransfer() {
+        return mTransfers.getAndIncrement() == 0;
+    }
+
+    /**
+     * @return true when the last running transfer ended
+     */
+    public boolean endTransfer() {
+        return mTransfers.decrementAndGet() == 0;
+    }
+
+    public boolean isTransferring() {
+        return mTransfers.get() > 0;
+    }
+
+    /**
+     * Mark the connection closed and fail its pending and future operations. Only the first
+     * call has an effect.
+     *
+     * @return true if this call closed the connection
+     */
+    boolean markClosed() {
+        return markClosed(GattException.STATUS_DISCONNECTED);
+    }
+
+    /**
+     * @param status the {@code GattException.STATUS_} the operations fail with
+     * @return true if this call closed the connection
+     */
+    boolean markClosed(int status) {
+        if (mState.getAndSet(ConnectionState.IDLE) == ConnectionState.IDLE) {
+            return false;
+        }
+        invalidateServices();
+        mQueue.close(status);
+        return true;
+    }
+}
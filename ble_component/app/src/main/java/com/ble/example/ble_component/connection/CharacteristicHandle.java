@@ -0,0 +1,62 @@
+package com.ble.example.ble_component.connection;
+
+import java.util.UUID;
+
+/**
+ * Resolved reference to a characteristic of one connection. Look it up once and keep it for
+ * repeated reads and writes, no uuid is parsed or searched for on those calls. A handle turns
+ * stale when its connection closes or the services are discovered again, after which a new
+ * one has to be looked up.
+ */
+public final class CharacteristicHandle {
+
+    private final CharacteristicIndex mIndex;
+    private final UUID mServiceUuid;
+    private final UUID mUuid;
+    private final int mProperties;
+
+    CharacteristicHandle(CharacteristicIndex index, UUID serviceUuid, UUID uuid, int properties) {
+        mIndex = index;
+        mServiceUuid = serviceUuid;
+        mUuid = uuid;
+        mProperties = properties;
+    }
+
+    public String getAddress() {
+        return mIndex.getAddress();
+    }
+
+    public UUID getServiceUuid() {
+        return mServiceUuid;
+    }
+
+    public UUID getUuid() {
+        return mUuid;
+    }
+
+    /**
+     * @return the {@code PROPERTY_} bits of the characteristic, as discovered or cached
+     */
+    public int getProperties() {
+        return mProperties;
+    }
+
+    /**
+     * whether the handle still belongs to the current services of its connection
+     *
+     * @return
+     */
+    public boolean isValid() {
+        return mIndex.isValid();
+    }
+
+    CharacteristicIndex getIndex() {
+        return mIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "CharacteristicHandle{" + getAddress() + " " + mServiceUuid + "/" + mUuid
+                + (isValid() ? "" : " stale") + "}";
+    }
+}
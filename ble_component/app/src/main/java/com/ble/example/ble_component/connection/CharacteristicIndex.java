@@ -0,0 +1,216 @@
+package com.ble.example.ble_component.connection;
+
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.util.Uuids;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Snapshot of the service table of a connection, built once after service discovery. It
+ * resolves characteristics by service and characteristic uuid, by characteristic uuid alone or
+ * by 16 bit assigned number without walking the service list. The index is immutable once
+ * published; rediscovery and disconnect {@link #invalidate()} it and all of its handles.
+ * <p>
+ * An index built {@link #fromLayout(String, GattLayout) from a cached layout} is provisional:
+ * its handles can be looked up and queued against right away, the discovery then confirms the
+ * layout in {@link #confirm(long)} and the handles stay valid.
+ */
+public final class CharacteristicIndex {
+
+    private final String mAddress;
+    private final HashMap<UUID, HashMap<UUID, CharacteristicHandle>> mByService = new HashMap<>();
+    private final HashMap<UUID, CharacteristicHandle> mByUuid = new HashMap<>();
+    private int[] mShortIds = new int[0];
+    private CharacteristicHandle[] mShortHandles = new CharacteristicHandle[0];
+    private volatile boolean mValid = true;
+    private volatile boolean mProvisional;
+    private long mLayoutHash;
+
+    CharacteristicIndex(String address) {
+        mAddress = address;
+    }
+
+    /**
+     * index the discovered services of a connection
+     *
+     * @param address
+     * @param layout
+     * @return
+     */
+    static CharacteristicIndex build(String address, GattLayout layout) {
+        CharacteristicIndex index = new CharacteristicIndex(address);
+        for (GattLayout.Service service : layout.getServices()) {
+            if (!index.addService(service.getUuid())) {
+                continue;
+            }
+            for (GattLayout.Characteristic characteristic : service.getCharacteristics()) {
+                index.add(service.getUuid(), characteristic.getUuid(), characteristic.getProperties());
+            }
+        }
+        index.mLayoutHash = layout.getHash();
+        return index;
+    }
+
+    /**
+     * index a cached layout until the discovery confirms it
+     *
+     * @param address
+     * @param layout
+     * @return a provisional index
+     */
+    static CharacteristicIndex fromLayout(String address, GattLayout layout) {
+        CharacteristicIndex index = build(address, layout);
+        index.mProvisional = true;
+        return index;
+    }
+
+    /**
+     * Confirm a provisional index with the layout of a discovery.
+     *
+     * @param layoutHash the hash of the discovered layout
+     * @return false if the index is not provisional or the layout differs, a new index has to
+     * be built then
+     */
+    boolean confirm(long layoutHash) {
+        if (!mProvisional || layoutHash != mLayoutHash) {
+            return false;
+        }
+        mProvisional = false;
+        return true;
+    }
+
+    /**
+     * whether the index comes from a cached layout which was not confirmed yet
+     *
+     * @return
+     */
+    public boolean isProvisional() {
+        return mProvisional;
+    }
+
+    /**
+     * an index without services which is already invalid
+     *
+     * @param address
+     * @return
+     */
+    static CharacteristicIndex empty(String address) {
+        CharacteristicIndex index = new CharacteristicIndex(address);
+        index.invalidate();
+        return index;
+    }
+
+    /**
+     * Add a service while the index is built. Like {@code BluetoothGatt.getService()} the first
+     * instance of a service wins.
+     *
+     * @return false if the service is already known
+     */
+    boolean addService(UUID uuid) {
+        if (mByService.containsKey(uuid)) {
+            return false;
+        }
+        mByService.put(uuid, new HashMap<UUID, CharacteristicHandle>());
+        return true;
+    }
+
+    /**
+     * add a characteristic of a service added before, the first instance of a uuid wins
+     */
+    void add(UUID serviceUuid, UUID uuid, int properties) {
+        HashMap<UUID, CharacteristicHandle> characteristics = mByService.get(serviceUuid);
+        if (characteristics.containsKey(uuid)) {
+            return;
+        }
+        CharacteristicHandle handle = new CharacteristicHandle(this, serviceUuid, uuid, properties);
+        characteristics.put(uuid, handle);
+        if (mByUuid.containsKey(uuid)) {
+            return;
+        }
+        mByUuid.put(uuid, handle);
+
+        int shortId = Uuids.toShortId(uuid);
+        if (shortId >= 0) {
+            // kept sorted for a binary search, service tables are small
+            int position = -Arrays.binarySearch(mShortIds, shortId) - 1;
+            int count = mShortIds.length;
+            int[] ids = new int[count + 1];
+            CharacteristicHandle[] handles = new CharacteristicHandle[count + 1];
+            System.arraycopy(mShortIds, 0, ids, 0, position);
+            System.arraycopy(mShortHandles, 0, handles, 0, position);
+            ids[position] = shortId;
+            handles[position] = handle;
+            System.arraycopy(mShortIds, position, ids, position + 1, count - position);
+            System.arraycopy(mShortHandles, position, handles, position + 1, count - position);
+            mShortIds = ids;
+            mShortHandles = handles;
+        }
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * @param uuid
+     * @return whether the device has the service
+     */
+    public boolean hasService(UUID uuid) {
+        return mByService.containsKey(uuid);
+    }
+
+    /**
+     * resolve a characteristic of a service
+     *
+     * @param serviceUuid
+     * @param uuid
+     * @return null if the service or characteristic is unknown
+     */
+    public CharacteristicHandle find(UUID serviceUuid, UUID uuid) {
+        HashMap<UUID, CharacteristicHandle> characteristics = mByService.get(serviceUuid);
+        return characteristics == null ? null : characteristics.get(uuid);
+    }
+
+    /**
+     * resolve a characteristic by its uuid alone, the first service which has it wins
+     *
+     * @param uuid
+     * @return null if the characteristic is unknown
+     */
+    public CharacteristicHandle find(UUID uuid) {
+        return mByUuid.get(uuid);
+    }
+
+    /**
+     * resolve a characteristic by its 16 bit assigned number
+     *
+     * @param shortId e.g. 0x2A37
+     * @return null if the characteristic is unknown
+     */
+    public CharacteristicHandle find(int shortId) {
+        int position = Arrays.binarySearch(mShortIds, shortId);
+        return position < 0 ? null : mShortHandles[position];
+    }
+
+    /**
+     * number of distinct characteristics
+     *
+     * @return
+     */
+    public int size() {
+        return mByUuid.size();
+    }
+
+    public boolean isValid() {
+        return mValid;
+    }
+
+    /**
+     * mark the index and all of its handles stale
+     */
+    void invalidate() {
+        mValid = false;
+    }
+}
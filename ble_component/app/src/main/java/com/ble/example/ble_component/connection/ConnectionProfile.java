@@ -0,0 +1,76 @@
+package com.ble.example.ble_component.connection;
+
+/**
+ * Trade-off between latency, throughput and power of a connection: the connection priority,
+ * the MTU to negotiate and the preferred PHY. Requests the platform does not support are
+ * skipped, priorities need Lollipop and PHYs need Oreo.
+ */
+public enum ConnectionProfile {
+    /**
+     * short connection interval on 2M PHY, for interactive commands
+     */
+    LOW_LATENCY(ConnectionProfile.PRIORITY_HIGH, 0, ConnectionProfile.PHY_LE_2M_MASK),
+    /**
+     * the platform defaults
+     */
+    BALANCED(ConnectionProfile.PRIORITY_BALANCED, 0, ConnectionProfile.PHY_LE_1M_MASK),
+    /**
+     * long connection interval and slave latency, for idle links
+     */
+    LOW_POWER(ConnectionProfile.PRIORITY_LOW_POWER, 0, ConnectionProfile.PHY_LE_1M_MASK),
+    /**
+     * short interval, the largest MTU and 2M PHY, for bulk transfers
+     */
+    HIGH_THROUGHPUT(ConnectionProfile.PRIORITY_HIGH, 517, ConnectionProfile.PHY_LE_2M_MASK);
+
+    /**
+     * same values as {@code BluetoothGatt.CONNECTION_PRIORITY_}
+     */
+    public static final int PRIORITY_BALANCED = 0;
+    public static final int PRIORITY_HIGH = 1;
+    public static final int PRIORITY_LOW_POWER = 2;
+
+    /**
+     * same values as {@code BluetoothDevice.PHY_LE_}, the PHY a link runs on
+     */
+    public static final int PHY_LE_1M = 1;
+    public static final int PHY_LE_2M = 2;
+    public static final int PHY_LE_CODED = 3;
+
+    /**
+     * same values as {@code BluetoothDevice.PHY_LE_*_MASK}, the PHYs a link may use
+     */
+    public static final int PHY_LE_1M_MASK = 1;
+    public static final int PHY_LE_2M_MASK = 2;
+
+    private final int mPriority;
+    private final int mMtu;
+    private final int mPhyMask;
+
+    ConnectionProfile(int priority, int mtu, int phyMask) {
+        mPriority = priority;
+        mMtu = mtu;
+        mPhyMask = phyMask;
+    }
+
+    /**
+     * @return one of the {@code PRIORITY_} constants
+     */
+    public int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * @return the MTU to negotiate, 0 to keep the current one. An MTU cannot be lowered again.
+     */
+    public int getMtu() {
+        return mMtu;
+    }
+
+    /**
+     * @return the preferred PHYs for both directions, {@code PHY_LE_*_MASK} constants
+     */
+    public int getPhyMask() {
+        return mPhyMask;
+    }
+}
@@ -0,0 +1,114 @@
+package com.ble.example.ble_component.connection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Lock free map from device address to its current {@link BleConnection}. It is written from
+ * binder threads and read from any caller thread, so every operation needs exactly one lookup
+ * and replacements are atomic.
+ */
+public class ConnectionRegistry {
+
+    private final ConcurrentHashMap<String, BleConnection> mConnections = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService mTimeoutExecutor;
+
+    /**
+     * @param timeoutExecutor used by the operation queues of the connections
+     */
+    public ConnectionRegistry(ScheduledExecutorService timeoutExecutor) {
+        mTimeoutExecutor = timeoutExecutor;
+    }
+
+    /**
+     * Register a new connection attempt, replacing and closing a previous connection of the
+     * same device. The connection is registered before the transport starts connecting, so
+     * events of the attempt always find it.
+     *
+     * @param address
+     * @return the new connection
+     */
+    public BleConnection open(String address) {
+        BleConnection connection = new BleConnection(address, mTimeoutExecutor);
+        while (true) {
+            BleConnection previous = mConnections.get(address);
+            boolean swapped = previous == null
+                    ? mConnections.putIfAbsent(address, connection) == null
+                    : mConnections.replace(address, previous, connection);
+            if (swapped) {
+                if (previous != null) {
+                    previous.markClosed();
+                }
+                return connection;
+            }
+        }
+    }
+
+    /**
+     * get the current connection of a device
+     *
+     * @param address
+     * @return null if there is none
+     */
+    public BleConnection get(String address) {
+        return mConnections.get(address);
+    }
+
+    /**
+     * remove and close the current connection of a device
+     *
+     * @param address
+     * @return the removed connection, or null
+     */
+    public BleConnection close(String address) {
+        BleConnection connection = mConnections.remove(address);
+        if (connection != null) {
+            connection.markClosed();
+        }
+        return connection;
+    }
+
+    /**
+     * Remove and close the connection, unless it has already been replaced by a newer one
+     * which stays untouched.
+     *
+     * @param connection
+     * @return true if this call closed the connection
+     */
+    public boolean close(BleConnection connection) {
+        mConnections.remove(connection.getAddress(), connection);
+        return connection.markClosed();
+    }
+
+    /**
+     * remove and close every connection
+     *
+     * @param status the {@code GattException.STATUS_} their operations fail with
+     * @return the closed connections
+     */
+    public List<BleConnection> closeAll(int status) {
+        List<BleConnection> closed = new ArrayList<>();
+        for (BleConnection connection : mConnections.values()) {
+            if (mConnections.remove(connection.getAddress(), connection) && connection.markClosed(status)) {
+                closed.add(connection);
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * weakly consistent view of all connections
+     *
+     * @return
+     */
+    public Collection<BleConnection> getAll() {
+        return mConnections.values();
+    }
+
+    public int size() {
+        return mConnections.size();
+    }
+}
@@ -0,0 +1,382 @@
+package com.ble.example.ble_component.connection;
+
+import com.ble.example.ble_component.util.Scheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Decides when the managed devices get connected. At most {@code maxConcurrentConnects}
+ * connection attempts run at the same time, the others wait in FIFO order for a slot. A
+ * failed or timed out attempt puts the device into {@link ConnectionState#BACKOFF} for an
+ * exponentially growing delay, after which it queues up behind everybody else again, so one
+ * flaky device cannot starve the rest.
+ * <p>
+ * The scheduler does not talk to the radio itself; it drives a {@link Connector} and is fed
+ * the results through the {@code on...} methods. All methods are thread safe. The connector
+ * and the listeners are called with the scheduler's lock held and must not block.
+ */
+public class ConnectionScheduler {
+
+    /**
+     * the radio side of the scheduler
+     */
+    public interface Connector {
+        /**
+         * start connecting, report through {@link #onConnected(String)} or
+         * {@link #onConnectFailed(String, int)}
+         *
+         * @return false if the attempt could not be started
+         */
+        boolean connect(String address);
+
+        /**
+         * start service discovery, report through {@link #onServicesDiscovered(String, boolean)}
+         *
+         * @return false if the discovery could not be started
+         */
+        boolean discoverServices(String address);
+
+        /**
+         * tear down the connection or cancel the pending attempt
+         */
+        void disconnect(String address);
+    }
+
+    public interface Listener {
+        void onConnectionStateChanged(String address, ConnectionState state);
+    }
+
+    private static class Device {
+        final String mAddress;
+        ConnectionState mState = ConnectionState.IDLE;
+        boolean mAutoReconnect;
+        int mFailures;
+        Scheduler.Task mTimer;
+
+        Device(String address) {
+            mAddress = address;
+        }
+    }
+
+    private final Connector mConnector;
+    private final Scheduler mScheduler;
+    private final HashMap<String, Device> mDevices = new HashMap<>();
+    private final ArrayDeque<Device> mWaiting = new ArrayDeque<>();
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final Random mRandom = new Random();
+    private int mConnecting;
+
+    private int mMaxConcurrentConnects = 4;
+    private long mConnectTimeoutMs = 10000;
+    private long mInitialBackoffMs = 1000;
+    private long mMaxBackoffMs = 60000;
+    private float mBackoffJitter = 0.2f;
+
+    public ConnectionScheduler(Connector connector, Scheduler scheduler) {
+        mConnector = connector;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * number of connection attempts allowed in parallel, 4 by default
+     *
+     * @param maxConcurrentConnects
+     */
+    public synchronized void setMaxConcurrentConnects(int maxConcurrentConnects) {
+        mMaxConcurrentConnects = Math.max(1, maxConcurrentConnects);
+        pump();
+    }
+
+    /**
+     * give up on an attempt after this time, 10 s by default
+     *
+     * @param connectTimeoutMs
+     */
+    public synchronized void setConnectTimeout(long connectTimeoutMs) {
+        mConnectTimeoutMs = connectTimeoutMs;
+    }
+
+    /**
+     * Configure the reconnect delay: it starts at {@code initialMs}, doubles with every failure
+     * up to {@code maxMs} and is randomized by +-{@code jitter} so that devices which dropped
+     * together do not retry together.
+     */
+    public synchronized void setBackoff(long initialMs, long maxMs, float jitter) {
+        mInitialBackoffMs = initialMs;
+        mMaxBackoffMs = maxMs;
+        mBackoffJitter = jitter;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Manage the device and connect it as soon as a slot is free.
+     *
+     * @param address
+     * @param autoReconnect keep retrying failed attempts and reconnect after link loss, otherwise
+     *                      the device is dropped after the first failure
+     */
+    public synchronized void connect(String address, boolean autoReconnect) {
+        Device device = mDevices.get(address);
+        if (device == null) {
+            device = new Device(address);
+            mDevices.put(address, device);
+        }
+        device.mAutoReconnect = autoReconnect;
+        if (device.mState == ConnectionState.IDLE) {
+            enqueue(device);
+            pump();
+        }
+    }
+
+    /**
+     * stop managing the device and tear its connection down
+     *
+     * @param address
+     */
+    public synchronized void disconnect(String address) {
+        Device device = mDevices.remove(address);
+        if (device == null) {
+            return;
+        }
+        ConnectionState state = device.mState;
+        cancelTimer(device);
+        mWaiting.remove(device);
+        if (state == ConnectionState.CONNECTING) {
+            mConnecting--;
+        }
+        setState(device, ConnectionState.IDLE);
+        if (state != ConnectionState.PENDING && state != ConnectionState.BACKOFF) {
+            mConnector.disconnect(address);
+        }
+        pump();
+    }
+
+    /**
+     * stop managing every device, see {@link #disconnect(String)}
+     */
+    public synchronized void disconnectAll() {
+        for (String address : new ArrayList<>(mDevices.keySet())) {
+            disconnect(address);
+        }
+    }
+
+    /**
+     * the link of a managed device came up
+     *
+     * @param address
+     * @return false if the device is not managed
+     */
+    public synchronized boolean onConnected(String address) {
+        Device device = mDevices.get(address);
+        if (device == null) {
+            return false;
+        }
+        if (device.mState != ConnectionState.CONNECTING) {
+            return true;
+        }
+        cancelTimer(device);
+        mConnecting--;
+        setState(device, ConnectionState.CONNECTED);
+        setState(device, ConnectionState.DISCOVERING);
+        if (!mConnector.discoverServices(address)) {
+            mConnector.disconnect(address);
+            fail(device);
+        }
+        pump();
+        return true;
+    }
+
+    /**
+     * the service discovery of a managed device finished
+     *
+     * @param address
+     * @param success
+     */
+    public synchronized void onServicesDiscovered(String address, boolean success) {
+        Device device = mDevices.get(address);
+        if (device == null || device.mState != ConnectionState.DISCOVERING) {
+            return;
+        }
+        if (success) {
+            device.mFailures = 0;
+            setState(device, ConnectionState.READY);
+        } else {
+            mConnector.disconnect(address);
+            fail(device);
+        }
+    }
+
+    /**
+     * a connection attempt failed
+     *
+     * @param address
+     * @param status the gatt status of the failure
+     */
+    public synchronized void onConnectFailed(String address, int status) {
+        Device device = mDevices.get(address);
+        if (device == null || device.mState != ConnectionState.CONNECTING) {
+            return;
+        }
+        cancelTimer(device);
+        mConnecting--;
+        fail(device);
+        pump();
+    }
+
+    /**
+     * the link of a managed device went down
+     *
+     * @param address
+     * @param status the gatt status of the disconnect
+     */
+    public synchronized void onDisconnected(String address, int status) {
+        Device device = mDevices.get(address);
+        if (device == null) {
+            return;
+        }
+        switch (device.mState) {
+            case CONNECTING:
+                onConnectFailed(address, status);
+                break;
+            case CONNECTED:
+            case DISCOVERING:
+            case READY:
+                fail(device);
+                pump();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * get the state of a device, {@link ConnectionState#IDLE} if it is not managed
+     *
+     * @param address
+     * @return
+     */
+    public synchronized ConnectionState getState(String address) {
+        Device device = mDevices.get(address);
+        return device == null ? ConnectionState.IDLE : device.mState;
+    }
+
+    /**
+     * number of consecutive failed attempts of a device
+     *
+     * @param address
+     * @return
+     */
+    public synchronized int getFailureCount(String address) {
+        Device device = mDevices.get(address);
+        return device == null ? 0 : device.mFailures;
+    }
+
+    public synchronized int getConnectingCount() {
+        return mConnecting;
+    }
+
+    public synchronized int getWaitingCount() {
+        return mWaiting.size();
+    }
+
+    private void enqueue(Device device) {
+        setState(device, ConnectionState.PENDING);
+        mWaiting.add(device);
+    }
+
+    private void pump() {
+        while (mConnecting < mMaxConcurrentConnects && !mWaiting.isEmpty()) {
+            final Device device = mWaiting.poll();
+            setState(device, ConnectionState.CONNECTING);
+            mConnecting++;
+            device.mTimer = mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    onConnectTimeout(device);
+                }
+            }, mConnectTimeoutMs);
+            if (!mConnector.connect(device.mAddress)) {
+                cancelTimer(device);
+                mConnecting--;
+                fail(device);
+            }
+        }
+    }
+
+    private synchronized void onConnectTimeout(Device device) {
+        if (mDevices.get(device.mAddress) != device || device.mState != ConnectionState.CONNECTING) {
+            return;
+        }
+        device.mTimer = null;
+        mConnecting--;
+        mConnector.disconnect(device.mAddress);
+        fail(device);
+        pump();
+    }
+
+    private void fail(final Device device) {
+        cancelTimer(device);
+        if (!device.mAutoReconnect) {
+            mDevices.remove(device.mAddress);
+            setState(device, ConnectionState.IDLE);
+            return;
+        }
+        device.mFailures++;
+        setState(device, ConnectionState.BACKOFF);
+        device.mTimer = mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onBackoffExpired(device);
+            }
+        }, backoffDelay(device.mFailures));
+    }
+
+    private synchronized void onBackoffExpired(Device device) {
+        if (mDevices.get(device.mAddress) != device || device.mState != ConnectionState.BACKOFF) {
+            return;
+        }
+        device.mTimer = null;
+        enqueue(device);
+        pump();
+    }
+
+    long backoffDelay(int failures) {
+        long delay = mInitialBackoffMs;
+        for (int i = 1; i < failures && delay < mMaxBackoffMs; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, mMaxBackoffMs);
+        if (mBackoffJitter > 0) {
+            delay += (long) (delay * mBackoffJitter * (2 * mRandom.nextFloat() - 1));
+        }
+        return delay;
+    }
+
+    private static void cancelTimer(Device device) {
+        if (device.mTimer != null) {
+            device.mTimer.cancel();
+            device.mTimer = null;
+        }
+    }
+
+    private void setState(Device device, ConnectionState state) {
+        if (device.mState == state) {
+            return;
+        }
+        device.mState = state;
+        for (Listener listener : mListeners) {
+            listener.onConnectionStateChanged(device.mAddress, state);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.ble.example.ble_component.connection;
+
+/**
+ * Life cycle of a device managed by the {@link ConnectionScheduler}.
+ */
+public enum ConnectionState {
+    /**
+     * not managed, no connection is wanted
+     */
+    IDLE,
+    /**
+     * waiting for a free connect slot
+     */
+    PENDING,
+    /**
+     * connectGatt has been called, waiting for the link
+     */
+    CONNECTING,
+    /**
+     * the link is up
+     */
+    CONNECTED,
+    /**
+     * the link is up and services are being discovered
+     */
+    DISCOVERING,
+    /**
+     * services are known, the device can be used
+     */
+    READY,
+    /**
+     * the last attempt failed, waiting before the next one
+     */
+    BACKOFF
+}
@@ -0,0 +1,45 @@
+package com.ble.example.ble_component.connection;
+
+/**
+ * What a connection currently runs with: the applied {@link ConnectionProfile} and the values
+ * the link settled on. The PHYs stay {@link ConnectionProfile#PHY_LE_1M} on platforms which
+ * do not report them.
+ */
+public final class LinkParameters {
+
+    private final ConnectionProfile mProfile;
+    private final int mMtu;
+    private final int mTxPhy;
+    private final int mRxPhy;
+
+    public LinkParameters(ConnectionProfile profile, int mtu, int txPhy, int rxPhy) {
+        mProfile = profile;
+        mMtu = mtu;
+        mTxPhy = txPhy;
+        mRxPhy = rxPhy;
+    }
+
+    public ConnectionProfile getProfile() {
+        return mProfile;
+    }
+
+    public int getMtu() {
+        return mMtu;
+    }
+
+    /**
+     * @return one of the {@code ConnectionProfile.PHY_LE_} constants
+     */
+    public int getTxPhy() {
+        return mTxPhy;
+    }
+
+    public int getRxPhy() {
+        return mRxPhy;
+    }
+
+    @Override
+    public String toString() {
+        return mProfile + " mtu " + mMtu + " phy " + mTxPhy + "/" + mRxPhy;
+    }
+}
@@ -0,0 +1,75 @@
+package com.ble.example.ble_component.connection;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timing of a startup: how long the initialization took and when each device of the hot set
+ * became ready, all in milliseconds since the startup began.
+ */
+public class StartupReport {
+
+    private final long mInitMs;
+    private final long mElapsedMs;
+    private final LinkedHashMap<String, Long> mReadyMs;
+    private final boolean mComplete;
+
+    StartupReport(long initMs, long elapsedMs, LinkedHashMap<String, Long> readyMs, boolean complete) {
+        mInitMs = initMs;
+        mElapsedMs = elapsedMs;
+        mReadyMs = readyMs;
+        mComplete = complete;
+    }
+
+    /**
+     * time until Bluetooth was initialized and the connects started
+     *
+     * @return
+     */
+    public long getInitMs() {
+        return mInitMs;
+    }
+
+    /**
+     * time until every hot device was ready, or the warm up timed out
+     *
+     * @return
+     */
+    public long getElapsedMs() {
+        return mElapsedMs;
+    }
+
+    /**
+     * @param address
+     * @return the time the device became ready, -1 if it did not in time
+     */
+    public long getReadyMs(String address) {
+        Long readyMs = mReadyMs.get(address);
+        return readyMs == null ? -1 : readyMs;
+    }
+
+    /**
+     * @return the hot devices which became ready, with their time, in the order they did
+     */
+    public Map<String, Long> getReadyDevices() {
+        return Collections.unmodifiableMap(mReadyMs);
+    }
+
+    public int getReadyCount() {
+        return mReadyMs.size();
+    }
+
+    /**
+     * @return false if the warm up timed out before every hot device was ready
+     */
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    @Override
+    public String toString() {
+        return "init " + mInitMs + " ms, " + mReadyMs.size() + " ready in " + mElapsedMs + " ms"
+                + (mComplete ? "" : " (timed out)");
+    }
+}
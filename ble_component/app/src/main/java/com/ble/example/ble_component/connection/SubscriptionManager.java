@@ -0,0 +1,436 @@
+package com.ble.example.ble_component.connection;
+
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The notification and indication subscriptions of one device. It keeps the wanted mode of
+ * every characteristic across connections and the mode its client characteristic configuration
+ * descriptor (CCCD) has on the current one, so a descriptor is only written when the two differ.
+ * After a reconnect {@link #onConnected(Link)} writes all subscriptions again in one pass, the
+ * streams resume without the app setting them up again.
+ * <p>
+ * Enabling routes the characteristic locally before the CCCD is written, so no early
+ * notification is dropped; disabling writes the CCCD first.
+ */
+public class SubscriptionManager {
+
+    public static final int MODE_NONE = 0;
+    public static final int MODE_NOTIFY = 1;
+    public static final int MODE_INDICATE = 2;
+    /**
+     * notify if the characteristic supports it, indicate otherwise
+     */
+    public static final int MODE_AUTO = 3;
+
+    /**
+     * GATT status of a characteristic which does not support the mode
+     */
+    public static final int STATUS_REQUEST_NOT_SUPPORTED = 0x06;
+
+    /**
+     * same values as {@code BluetoothGattCharacteristic.PROPERTY_}
+     */
+    private static final int PROPERTY_NOTIFY = 0x10;
+    private static final int PROPERTY_INDICATE = 0x20;
+    // the CCCD was written with an unknown outcome, the next apply writes it again
+    private static final int MODE_UNKNOWN = -1;
+    private static final int MODE_UNSUPPORTED = -2;
+
+    private static final byte[] DISABLE_VALUE = {0x00, 0x00};
+    private static final byte[] NOTIFY_VALUE = {0x01, 0x00};
+    private static final byte[] INDICATE_VALUE = {0x02, 0x00};
+
+    /**
+     * the connection the descriptors are written on
+     */
+    public interface Link {
+        /**
+         * @return the {@code PROPERTY_} bits of the characteristic, -1 if the device does not
+         * have it
+         */
+        int getProperties(UUID serviceUuid, UUID characteristicUuid);
+
+        /**
+         * queue routing the characteristic's notifications to the app or stopping it
+         */
+        GattFuture<Void> setNotification(UUID serviceUuid, UUID characteristicUuid, boolean enabled);
+
+        /**
+         * queue a write of the characteristic's client characteristic configuration descriptor
+         */
+        GattFuture<Void> writeClientConfig(UUID serviceUuid, UUID characteristicUuid, byte[] value);
+    }
+
+    private final String mAddress;
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>();
+    private Link mLink;
+    // completions of writes on an earlier connection are ignored
+    private int mGeneration;
+
+    public SubscriptionManager(String address) {
+        mAddress = address;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * Subscribe to the characteristic, now if connected and again on every connect.
+     *
+     * @param serviceUuid
+     * @param characteristicUuid
+     * @param mode               {@link #MODE_NOTIFY}, {@link #MODE_INDICATE} or {@link #MODE_AUTO}
+     * @return the future of the CCCD being written, completes right away if it already has the
+     * mode; while disconnected it waits for the next connect
+     */
+    public GattFuture<Void> subscribe(UUID serviceUuid, UUID characteristicUuid, int mode) {
+        if (mode != MODE_NOTIFY && mode != MODE_INDICATE && mode != MODE_AUTO) {
+            throw new IllegalArgumentException("mode " + mode);
+        }
+        return request(serviceUuid, characteristicUuid, mode);
+    }
+
+    /**
+     * stop the notifications or indications of the characteristic and forget the subscription
+     *
+     * @param serviceUuid
+     * @param characteristicUuid
+     * @return the future of the CCCD being cleared
+     */
+    public GattFuture<Void> unsubscribe(UUID serviceUuid, UUID characteristicUuid) {
+        return request(serviceUuid, characteristicUuid, MODE_NONE);
+    }
+
+    /**
+     * @return the mode asked for, {@link #MODE_NONE} if not subscribed
+     */
+    public synchronized int getMode(UUID serviceUuid, UUID characteristicUuid) {
+        Entry entry = mEntries.get(new Key(serviceUuid, characteristicUuid));
+        return entry == null ? MODE_NONE : entry.mDesired;
+    }
+
+    /**
+     * @return the mode the CCCD has on the current connection, {@link #MODE_NONE} while
+     * disconnected or not yet written
+     */
+    public synchronized int getActualMode(UUID serviceUuid, UUID characteristicUuid) {
+        Entry entry = mEntries.get(new Key(serviceUuid, characteristicUuid));
+        return entry == null || entry.mActual < 0 ? MODE_NONE : entry.mActual;
+    }
+
+    /**
+     * @return number of subscribed characteristics
+     */
+    public synchronized int size() {
+        int count = 0;
+        for (Entry entry : mEntries.values()) {
+            if (entry.mDesired != MODE_NONE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The services of a new connection are known: write the CCCD of every subscription.
+     *
+     * @param link
+     * @return the future of the pass, it fails with the first failed subscription once all of
+     * them are done
+     */
+    public GattFuture<Void> onConnected(Link link) {
+        List<Entry> entries;
+        synchronized (this) {
+            mLink = link;
+            mGeneration++;
+            entries = new ArrayList<>();
+            for (Entry entry : mEntries.values()) {
+                // the peer may have kept the CCCD of a bonded device, write it anyway
+                entry.mActual = MODE_NONE;
+                entry.mInFlight = null;
+                if (entry.mDesired != MODE_NONE) {
+                    entries.add(entry);
+                }
+            }
+        }
+        final GattFuture<Void> pass = new GattFuture<>();
+        if (entries.isEmpty()) {
+            pass.complete(null);
+            return pass;
+        }
+        final AtomicInteger remaining = new AtomicInteger(entries.size());
+        final GattException[] failure = new GattException[1];
+        for (Entry entry : entries) {
+            apply(entry).addListener(new GattFuture.Listener<Void>() {
+                @Override
+                public void onSuccess(Void result) {
+                    done();
+                }
+
+                @Override
+                public void onFailure(GattException e) {
+                    synchronized (failure) {
+                        if (failure[0] == null) {
+                            failure[0] = e;
+                        }
+                    }
+                    done();
+                }
+
+                private void done() {
+                    if (remaining.decrementAndGet() == 0) {
+                        synchronized (failure) {
+                            if (failure[0] == null) {
+                                pass.complete(null);
+                            } else {
+                                pass.fail(failure[0]);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        return pass;
+    }
+
+    /**
+     * the connection went away, the subscriptions wait for the next {@link #onConnected(Link)}
+     */
+    public synchronized void onDisconnected() {
+        mLink = null;
+        mGeneration++;
+        Iterator<Entry> entries = mEntries.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            entry.mActual = MODE_NONE;
+            entry.mInFlight = null;
+            if (entry.mDesired == MODE_NONE) {
+                entries.remove();
+            }
+        }
+    }
+
+    private GattFuture<Void> request(UUID serviceUuid, UUID characteristicUuid, int mode) {
+        Entry entry;
+        synchronized (this) {
+            Key key = new Key(serviceUuid, characteristicUuid);
+            entry = mEntries.get(key);
+            if (entry == null) {
+                if (mode == MODE_NONE) {
+                    return GattFuture.succeeded(null);
+                }
+                entry = new Entry(key);
+                mEntries.put(key, entry);
+            }
+            entry.mDesired = mode;
+            if (mLink == null) {
+                if (mode == MODE_NONE) {
+                    mEntries.remove(key);
+                    if (entry.mWaiting != null) {
+                        entry.mWaiting.fail(new GattException(GattException.STATUS_CANCELLED));
+                    }
+                    return GattFuture.succeeded(null);
+                }
+                if (entry.mWaiting == null) {
+                    entry.mWaiting = new GattFuture<>();
+                }
+                return entry.mWaiting;
+            }
+        }
+        return apply(entry);
+    }
+
+    /**
+     * bring the CCCD of the entry to its wanted mode
+     */
+    private GattFuture<Void> apply(final Entry entry) {
+        final Link link;
+        final int generation;
+        final int target;
+        final GattFuture<Void> waiting;
+        final GattFuture<Void> result;
+        boolean start = false;
+        synchronized (this) {
+            link = mLink;
+            generation = mGeneration;
+            if (link == null) {
+                // raced with a disconnect, the next connect picks it up
+                if (entry.mWaiting == null) {
+                    entry.mWaiting = new GattFuture<>();
+                }
+                return entry.mWaiting;
+            }
+            waiting = entry.mWaiting;
+            entry.mWaiting = null;
+            target = resolve(link, entry);
+            if (target == MODE_UNKNOWN) {
+                result = GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+            } else if (target == MODE_UNSUPPORTED) {
+                result = GattFuture.failed(STATUS_REQUEST_NOT_SUPPORTED);
+            } else if (entry.mInFlight != null && entry.mInFlightMode == target) {
+                result = entry.mInFlight;
+            } else if (entry.mInFlight == null && entry.mActual == target) {
+                if (target == MODE_NONE) {
+                    mEntries.remove(entry.mKey);
+                }
+                result = GattFuture.succeeded(null);
+            } else {
+                result = new GattFuture<>();
+                entry.mInFlight = result;
+                entry.mInFlightMode = target;
+                start = true;
+            }
+        }
+        forward(result, waiting);
+        if (!start) {
+            return result;
+        }
+        UUID serviceUuid = entry.mKey.mServiceUuid;
+        UUID characteristicUuid = entry.mKey.mCharacteristicUuid;
+        GattFuture<Void> last;
+        if (target == MODE_NONE) {
+            link.writeClientConfig(serviceUuid, characteristicUuid, DISABLE_VALUE);
+            last = link.setNotification(serviceUuid, characteristicUuid, false);
+        } else {
+            link.setNotification(serviceUuid, characteristicUuid, true);
+            last = link.writeClientConfig(serviceUuid, characteristicUuid,
+                    target == MODE_NOTIFY ? NOTIFY_VALUE : INDICATE_VALUE);
+        }
+        last.addListener(new GattFuture.Listener<Void>() {
+            @Override
+            public void onSuccess(Void ignored) {
+                finish(entry, generation, result, target, null);
+            }
+
+            @Override
+            public void onFailure(GattException e) {
+                finish(entry, generation, result, MODE_UNKNOWN, e);
+            }
+        });
+        return result;
+    }
+
+    private void finish(Entry entry, int generation, GattFuture<Void> write, int actual, GattException failure) {
+        boolean again = false;
+        synchronized (this) {
+            if (generation == mGeneration && entry.mInFlight == write) {
+                entry.mInFlight = null;
+                entry.mActual = actual;
+                if (failure == null) {
+                    // the mode was changed while the write ran
+                    again = entry.mDesired != resolvedDesired(entry, actual);
+                    if (!again && actual == MODE_NONE) {
+                        mEntries.remove(entry.mKey);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            write.fail(failure);
+        } else {
+            write.complete(null);
+        }
+        if (again) {
+            apply(entry);
+        }
+    }
+
+    /**
+     * @return the desired mode as asked for, mapping a settled auto mode back to {@code MODE_AUTO}
+     */
+    private static int resolvedDesired(Entry entry, int actual) {
+        if (entry.mDesired == MODE_AUTO && (actual == MODE_NOTIFY || actual == MODE_INDICATE)) {
+            return MODE_AUTO;
+        }
+        return actual;
+    }
+
+    /**
+     * @return the CCCD mode for the entry, {@code MODE_UNKNOWN} if the characteristic is missing,
+     * {@code MODE_UNSUPPORTED} if it does not support the mode
+     */
+    private static int resolve(Link link, Entry entry) {
+        if (entry.mDesired == MODE_NONE) {
+            return MODE_NONE;
+        }
+        int properties = link.getProperties(entry.mKey.mServiceUuid, entry.mKey.mCharacteristicUuid);
+        if (properties < 0) {
+            return MODE_UNKNOWN;
+        }
+        boolean notify = (properties & PROPERTY_NOTIFY) != 0;
+        boolean indicate = (properties & PROPERTY_INDICATE) != 0;
+        switch (entry.mDesired) {
+            case MODE_NOTIFY:
+                return notify ? MODE_NOTIFY : MODE_UNSUPPORTED;
+            case MODE_INDICATE:
+                return indicate ? MODE_INDICATE : MODE_UNSUPPORTED;
+            default:
+                return notify ? MODE_NOTIFY : indicate ? MODE_INDICATE : MODE_UNSUPPORTED;
+        }
+    }
+
+    private static void forward(GattFuture<Void> from, final GattFuture<Void> to) {
+        if (to == null) {
+            return;
+        }
+        from.addListener(new GattFuture.Listener<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                to.complete(null);
+            }
+
+            @Override
+            public void onFailure(GattException e) {
+                to.fail(e);
+            }
+        });
+    }
+
+    private static final class Key {
+        final UUID mServiceUuid;
+        final UUID mCharacteristicUuid;
+
+        Key(UUID serviceUuid, UUID characteristicUuid) {
+            mServiceUuid = serviceUuid;
+            mCharacteristicUuid = characteristicUuid;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mServiceUuid.equals(other.mServiceUuid) && mCharacteristicUuid.equals(other.mCharacteristicUuid);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mServiceUuid.hashCode() + mCharacteristicUuid.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        final Key mKey;
+        int mDesired;
+        int mActual = MODE_NONE;
+        // the running write and the mode it sets
+        GattFuture<Void> mInFlight;
+        int mInFlightMode;
+        // handed out while disconnected, completed by the next connect
+        GattFuture<Void> mWaiting;
+
+        Entry(Key key) {
+            mKey = key;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.ble.example.ble_component.connection;
+
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.util.Scheduler;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+/**
+ * Connects a set of hot devices ahead of their first use. All of them are handed to the
+ * {@link ConnectionScheduler} at once with auto reconnect, so they connect in parallel up to
+ * its connect slots and stay connected; with a cached layout a device is ready as soon as its
+ * link is up. The returned future completes with a {@link StartupReport} when every device is
+ * ready, or with the devices ready so far when the timeout expires.
+ * <p>
+ * The future completes on the scheduler's thread, with its lock held; its listeners must not
+ * block.
+ */
+public class WarmPool implements ConnectionScheduler.Listener {
+
+    private final ConnectionScheduler mConnections;
+    private final Scheduler mScheduler;
+
+    private final HashSet<String> mPending = new HashSet<>();
+    private final LinkedHashMap<String, Long> mReadyMs = new LinkedHashMap<>();
+    private GattFuture<StartupReport> mFuture;
+    private Scheduler.Task mTimer;
+    private long mStartedAt;
+    private long mInitMs;
+
+    /**
+     * @param connections
+     * @param scheduler   the clock of the connection scheduler
+     */
+    public WarmPool(ConnectionScheduler connections, Scheduler scheduler) {
+        mConnections = connections;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Connect the devices and keep them connected.
+     *
+     * @param addresses the hot devices
+     * @param startedAt {@link Scheduler#now()} when the startup began, the report counts from it
+     * @param timeoutMs report after this time even if devices are not ready, they keep
+     *                  connecting
+     * @return the future of the report, the pending one if a warm up is running
+     */
+    public GattFuture<StartupReport> warm(Collection<String> addresses, long startedAt, long timeoutMs) {
+        synchronized (this) {
+            if (mFuture != null) {
+                return mFuture;
+            }
+            mFuture = new GattFuture<>();
+            mStartedAt = startedAt;
+            mInitMs = mScheduler.now() - startedAt;
+            mPending.addAll(addresses);
+            mReadyMs.clear();
+        }
+        GattFuture<StartupReport> future = mFuture;
+        mConnections.addListener(this);
+        for (String address : addresses) {
+            if (mConnections.getState(address) == ConnectionState.READY) {
+                onConnectionStateChanged(address, ConnectionState.READY);
+            } else {
+                mConnections.connect(address, true);
+            }
+        }
+        synchronized (this) {
+            if (mFuture == future) {
+                if (mPending.isEmpty()) {
+                    finish(true);
+                } else {
+                    mTimer = mScheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            onTimeout();
+                        }
+                    }, timeoutMs);
+                }
+            }
+        }
+        return future;
+    }
+
+    /**
+     * @return true while a warm up waits for its devices
+     */
+    public synchronized boolean isWarming() {
+        return mFuture != null;
+    }
+
+    @Override
+    public void onConnectionStateChanged(String address, ConnectionState state) {
+        if (state != ConnectionState.READY) {
+            return;
+        }
+        synchronized (this) {
+            if (mFuture == null || !mPending.remove(address)) {
+                return;
+            }
+            mReadyMs.put(address, mScheduler.now() - mStartedAt);
+            // finished by warm() if the devices were ready already
+            if (mPending.isEmpty() && mTimer != null) {
+                finish(true);
+            }
+        }
+    }
+
+    private synchronized void onTimeout() {
+        mTimer = null;
+        if (mFuture != null) {
+            finish(false);
+        }
+    }
+
+    private void finish(boolean complete) {
+        if (mTimer != null) {
+            mTimer.cancel();
+            mTimer = null;
+        }
+        GattFuture<StartupReport> future = mFuture;
+        StartupReport report = new StartupReport(mInitMs, mScheduler.now() - mStartedAt,
+                new LinkedHashMap<>(mReadyMs), complete);
+        mFuture = null;
+        mPending.clear();
+        mConnections.removeListener(this);
+        future.complete(report);
+    }
+}
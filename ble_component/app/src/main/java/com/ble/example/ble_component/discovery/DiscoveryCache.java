@@ -0,0 +1,244 @@
+package com.ble.example.ble_component.discovery;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Remembers the attribute table of every device which completed service discovery, so a
+ * reconnecting device can be used before its discovery finished. Each device has one small
+ * file named after its address in the cache directory, recently used layouts are also kept in
+ * memory.
+ * <p>
+ * A cached layout is only a prediction: the caller still discovers the services and reports
+ * the result through {@link #update(String, GattLayout)}, which replaces the entry if the
+ * device changed its table, e.g. after a firmware update. Files which are corrupt, older than
+ * the maximum age, or beyond the maximum number of entries (least recently used first) are
+ * deleted. Files are written on the given executor, reads happen on the calling thread.
+ */
+public class DiscoveryCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+    public static final long DEFAULT_MAX_AGE_MS = 30L * 24 * 60 * 60 * 1000;
+
+    private static final String SUFFIX = ".gatt";
+    private static final int MAX_FILE_SIZE = 64 * 1024;
+
+    private final File mDirectory;
+    private final Executor mWriter;
+    private final LinkedHashMap<String, GattLayout> mMemory = new LinkedHashMap<>(16, 0.75f, true);
+    private int mMaxEntries = DEFAULT_MAX_ENTRIES;
+    private long mMaxAgeMs = DEFAULT_MAX_AGE_MS;
+
+    /**
+     * @param directory the directory of the cache files, created on the first write
+     * @param writer    runs the file writes
+     */
+    public DiscoveryCache(File directory, Executor writer) {
+        mDirectory = directory;
+        mWriter = writer;
+    }
+
+    /**
+     * Limit the cache. The limits are applied with the next write.
+     *
+     * @param maxEntries number of devices kept
+     * @param maxAgeMs   drop layouts which were not confirmed by a discovery for this long
+     */
+    public synchronized void setLimits(int maxEntries, long maxAgeMs) {
+        mMaxEntries = Math.max(1, maxEntries);
+        mMaxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * get the last known layout of a device
+     *
+     * @param address
+     * @return null if the device is unknown, its entry expired or is corrupt
+     */
+    public GattLayout get(String address) {
+        synchronized (this) {
+            GattLayout layout = mMemory.get(address);
+            if (layout != null) {
+                return layout;
+            }
+        }
+        File file = file(address);
+        if (!file.isFile()) {
+            return null;
+        }
+        GattLayout layout = null;
+        if (System.currentTimeMillis() - file.lastModified() <= maxAgeMs()) {
+            try {
+                layout = GattLayout.decode(read(file));
+            } catch (IOException e) {
+                // corrupt or from another version, discovered again below
+            }
+        }
+        if (layout == null) {
+            file.delete();
+            return null;
+        }
+        synchronized (this) {
+            remember(address, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Report the result of a service discovery.
+     *
+     * @param address
+     * @param layout
+     * @return true if the layout matches the cached one
+     */
+    public boolean update(final String address, final GattLayout layout) {
+        final boolean unchanged;
+        synchronized (this) {
+            GattLayout cached = mMemory.get(address);
+            unchanged = cached != null && cached.equals(layout);
+            remember(address, layout);
+        }
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                File file = file(address);
+                if (unchanged && file.isFile()) {
+                    // confirmed, only refresh its age and rank
+                    file.setLastModified(System.currentTimeMillis());
+                } else {
+                    write(file, layout.encode());
+                }
+                evict();
+            }
+        });
+        return unchanged;
+    }
+
+    /**
+     * forget a device, e.g. after it was unpaired
+     *
+     * @param address
+     */
+    public void remove(final String address) {
+        synchronized (this) {
+            mMemory.remove(address);
+        }
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                file(address).delete();
+            }
+        });
+    }
+
+    private void remember(String address, GattLayout layout) {
+        mMemory.put(address, layout);
+        while (mMemory.size() > mMaxEntries) {
+            mMemory.remove(mMemory.keySet().iterator().next());
+        }
+    }
+
+    private synchronized long maxAgeMs() {
+        return mMaxAgeMs;
+    }
+
+    private synchronized int maxEntries() {
+        return mMaxEntries;
+    }
+
+    /**
+     * delete expired files, then the least recently confirmed ones beyond the limit
+     */
+    void evict() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long maxAge = maxAgeMs();
+        int count = 0;
+        for (int i = 0; i < files.length; i++) {
+            File file = files[i];
+            if (!file.getName().endsWith(SUFFIX)) {
+                continue;
+            }
+            if (now - file.lastModified() > maxAge) {
+                file.delete();
+                continue;
+            }
+            files[count++] = file;
+        }
+        int excess = count - maxEntries();
+        if (excess <= 0) {
+            return;
+        }
+        File[] live = Arrays.copyOf(files, count);
+        Arrays.sort(live, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long left = a.lastModified();
+                long right = b.lastModified();
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < excess; i++) {
+            live[i].delete();
+        }
+    }
+
+    File file(String address) {
+        return new File(mDirectory, address.replace(":", "") + SUFFIX);
+    }
+
+    private static byte[] read(File file) throws IOException {
+        long length = file.length();
+        if (length > MAX_FILE_SIZE) {
+            throw new IOException("layout file too large");
+        }
+        byte[] data = new byte[(int) length];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("layout file truncated");
+                }
+                offset += read;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    /**
+     * write through a temporary file so a crash never leaves a half written entry behind
+     */
+    private void write(File file, byte[] data) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        File temp = new File(mDirectory, file.getName() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(data);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            temp.delete();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.ble.example.ble_component.discovery;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+
+import com.ble.example.ble_component.util.Uuids;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Platform independent copy of a discovered attribute table: the services, their
+ * characteristics with properties and the descriptor uuids, in discovery order. The
+ * {@link #getHash() hash} identifies the table, two discoveries with the same hash found the
+ * same layout.
+ * <p>
+ * The binary form is a magic, a version, the hash and the table, followed by a CRC32 of all of
+ * it. 16 bit uuids on the Bluetooth base take 3 bytes, other uuids 17, so a typical device
+ * fits in a few hundred bytes.
+ */
+public final class GattLayout {
+
+    static final int MAGIC = 0x47415443;
+    static final int VERSION = 1;
+
+    private static final int UUID_SHORT = 0;
+    private static final int UUID_FULL = 1;
+
+    public static final class Service {
+        final UUID mUuid;
+        final int mType;
+        final Characteristic[] mCharacteristics;
+
+        public Service(UUID uuid, int type, Characteristic... characteristics) {
+            mUuid = uuid;
+            mType = type;
+            mCharacteristics = characteristics;
+        }
+
+        public UUID getUuid() {
+            return mUuid;
+        }
+
+        public int getType() {
+            return mType;
+        }
+
+        public Characteristic[] getCharacteristics() {
+            return mCharacteristics;
+        }
+    }
+
+    public static final class Characteristic {
+        final UUID mUuid;
+        final int mProperties;
+        final UUID[] mDescriptors;
+
+        public Characteristic(UUID uuid, int properties, UUID... descriptors) {
+            mUuid = uuid;
+            mProperties = properties;
+            mDescriptors = descriptors;
+        }
+
+        public UUID getUuid() {
+            return mUuid;
+        }
+
+        public int getProperties() {
+            return mProperties;
+        }
+
+        public UUID[] getDescriptors() {
+            return mDescriptors;
+        }
+    }
+
+    private final Service[] mServices;
+    private final long mHash;
+
+    public GattLayout(Service... services) {
+        mServices = services;
+        mHash = hash(services);
+    }
+
+    /**
+     * copy the table of a connection after service discovery
+     *
+     * @param services
+     * @return
+     */
+    public static GattLayout of(List<BluetoothGattService> services) {
+        Service[] layout = new Service[services.size()];
+        for (int i = 0; i < layout.length; i++) {
+            BluetoothGattService service = services.get(i);
+            List<BluetoothGattCharacteristic> characteristics = service.getCharacteristics();
+            Characteristic[] characteristicLayout = new Characteristic[characteristics.size()];
+            for (int j = 0; j < characteristicLayout.length; j++) {
+                BluetoothGattCharacteristic characteristic = characteristics.get(j);
+                List<BluetoothGattDescriptor> descriptors = characteristic.getDescriptors();
+                UUID[] descriptorUuids = new UUID[descriptors.size()];
+                for (int k = 0; k < descriptorUuids.length; k++) {
+                    descriptorUuids[k] = descriptors.get(k).getUuid();
+                }
+                characteristicLayout[j] = new Characteristic(characteristic.getUuid(),
+                        characteristic.getProperties(), descriptorUuids);
+            }
+            layout[i] = new Service(service.getUuid(), service.getType(), characteristicLayout);
+        }
+        return new GattLayout(layout);
+    }
+
+    public Service[] getServices() {
+        return mServices;
+    }
+
+    /**
+     * 64 bit FNV-1a hash over the whole table
+     *
+     * @return
+     */
+    public long getHash() {
+        return mHash;
+    }
+
+    /**
+     * encode into the binary form
+     *
+     * @return
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(mHash);
+            out.writeShort(mServices.length);
+            for (Service service : mServices) {
+                writeUuid(out, service.mUuid);
+                out.writeByte(service.mType);
+                out.writeShort(service.mCharacteristics.length);
+                for (Characteristic characteristic : service.mCharacteristics) {
+                    writeUuid(out, characteristic.mUuid);
+                    out.writeByte(characteristic.mProperties);
+                    out.writeByte(characteristic.mDescriptors.length);
+                    for (UUID descriptor : characteristic.mDescriptors) {
+                        writeUuid(out, descriptor);
+                    }
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            // a byte array stream does not throw
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode the binary form.
+     *
+     * @param data
+     * @return
+     * @throws IOException if the data is truncated, corrupt, of another version, or its hash
+     *                     does not match the table
+     */
+    public static GattLayout decode(byte[] data) throws IOException {
+        if (data.length < 4) {
+            throw new IOException("truncated layout");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        try {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                throw new IOException("unknown layout format");
+            }
+            long hash = in.readLong();
+            Service[] services = new Service[in.readUnsignedShort()];
+            for (int i = 0; i < services.length; i++) {
+                UUID uuid = readUuid(in);
+                int type = in.readUnsignedByte();
+                Characteristic[] characteristics = new Characteristic[in.readUnsignedShort()];
+                for (int j = 0; j < characteristics.length; j++) {
+                    UUID characteristicUuid = readUuid(in);
+                    int properties = in.readUnsignedByte();
+                    UUID[] descriptors = new UUID[in.readUnsignedByte()];
+                    for (int k = 0; k < descriptors.length; k++) {
+                        descriptors[k] = readUuid(in);
+                    }
+                    characteristics[j] = new Characteristic(characteristicUuid, properties, descriptors);
+                }
+                services[i] = new Service(uuid, type, characteristics);
+            }
+            if (in.readInt() != (int) crc.getValue() || in.available() != 0) {
+                throw new IOException("layout checksum mismatch");
+            }
+            GattLayout layout = new GattLayout(services);
+            if (layout.mHash != hash) {
+                throw new IOException("layout hash mismatch");
+            }
+            return layout;
+        } catch (EOFException e) {
+            throw new IOException("truncated layout", e);
+        }
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        int shortId = Uuids.toShortId(uuid);
+        if (shortId >= 0) {
+            out.writeByte(UUID_SHORT);
+            out.writeShort(shortId);
+        } else {
+            out.writeByte(UUID_FULL);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        switch (in.readUnsignedByte()) {
+            case UUID_SHORT:
+                return Uuids.fromShortId(in.readUnsignedShort());
+            case UUID_FULL:
+                return new UUID(in.readLong(), in.readLong());
+            default:
+                throw new IOException("bad uuid tag");
+        }
+    }
+
+    private static long hash(Service[] services) {
+        long hash = 0xcbf29ce484222325L;
+        for (Service service : services) {
+            hash = mix(hash, service.mUuid);
+            hash = mix(hash, service.mType);
+            for (Characteristic characteristic : service.mCharacteristics) {
+                hash = mix(hash, characteristic.mUuid);
+                hash = mix(hash, characteristic.mProperties);
+                for (UUID descriptor : characteristic.mDescriptors) {
+                    hash = mix(hash, descriptor);
+                }
+            }
+            // terminate the service so that moving a characteristic changes the hash
+            hash = mix(hash, -1);
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, UUID uuid) {
+        hash = mix(hash, uuid.getMostSignificantBits());
+        return mix(hash, uuid.getLeastSignificantBits());
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GattLayout)) {
+            return false;
+        }
+        // the hash covers the whole table, comparing the encoded form rules out collisions
+        GattLayout other = (GattLayout) o;
+        return mHash == other.mHash && Arrays.equals(encode(), other.encode());
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (mHash ^ (mHash >>> 32));
+    }
+}
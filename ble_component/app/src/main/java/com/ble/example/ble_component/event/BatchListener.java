@@ -0,0 +1,14 @@
+package com.ble.example.ble_component.event;
+
+/**
+ * Receives the notifications collected by a {@link NotificationRingBuffer}.
+ */
+public interface BatchListener {
+
+    /**
+     * Called on the delivery executor of the buffer, never concurrently for the same buffer.
+     *
+     * @param batch only valid for the duration of the call
+     */
+    void onBatch(NotificationBatch batch);
+}
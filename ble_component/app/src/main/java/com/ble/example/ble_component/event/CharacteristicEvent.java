@@ -0,0 +1,73 @@
+package com.ble.example.ble_component.event;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A characteristic value reported by a device. Instances are pooled by
+ * {@link CharacteristicEventBus} and are only valid while
+ * {@link CharacteristicListener#onCharacteristicChanged(CharacteristicEvent)} runs; listeners that
+ * need the data later must copy it.
+ */
+public final class CharacteristicEvent {
+
+    String mAddress;
+    UUID mUuid;
+    byte[] mValue;
+    long mTimestampNanos;
+
+    CharacteristicEvent() {}
+
+    /**
+     * get the address of the device
+     *
+     * @return
+     */
+    public String getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * get the uuid of the characteristic
+     *
+     * @return
+     */
+    public UUID getUuid() {
+        return mUuid;
+    }
+
+    /**
+     * Get the value without copying it. The array belongs to the stack and may be overwritten
+     * by the next notification, do not keep a reference to it.
+     *
+     * @return
+     */
+    public byte[] getValue() {
+        return mValue;
+    }
+
+    /**
+     * get a private copy of the value
+     *
+     * @return
+     */
+    public byte[] copyValue() {
+        return mValue == null ? null : Arrays.copyOf(mValue, mValue.length);
+    }
+
+    /**
+     * get the {@code System.nanoTime()} at which the event was received
+     *
+     * @return
+     */
+    public long getTimestampNanos() {
+        return mTimestampNanos;
+    }
+
+    void clear() {
+        mAddress = null;
+        mUuid = null;
+        mValue = null;
+        mTimestampNanos = 0;
+    }
+}
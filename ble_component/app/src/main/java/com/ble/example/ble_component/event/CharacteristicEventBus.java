@@ -0,0 +1,201 @@
+package com.ble.example.ble_component.event;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process dispatch of characteristic values. Listeners subscribe per (address, uuid) pair,
+ * per device or for everything. Publishing does not allocate and never waits for a subscribe:
+ * the subscriber arrays are copy-on-write and the events handed to listeners come from a small
+ * pool. Taking an event from the pool and returning it holds the pool's lock for a few
+ * instructions, so publishers on different threads can still contend there.
+ */
+public class CharacteristicEventBus {
+
+    private static final String ANY_ADDRESS = "";
+    private static final UUID ANY_UUID = new UUID(0, 0);
+    private static final int POOL_SIZE = 8;
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<UUID, CharacteristicListener[]>> mSubscriptions
+            = new ConcurrentHashMap<>();
+
+    private final CharacteristicEvent[] mPool = new CharacteristicEvent[POOL_SIZE];
+    private int mPoolSize;
+
+    /**
+     * Subscribe to characteristic values.
+     *
+     * @param address  the device address, or null for all devices
+     * @param uuid     the characteristic uuid, or null for all characteristics
+     * @param listener
+     */
+    public synchronized void subscribe(String address, UUID uuid, CharacteristicListener listener) {
+        String addressKey = address == null ? ANY_ADDRESS : address;
+        UUID uuidKey = uuid == null ? ANY_UUID : uuid;
+
+        ConcurrentHashMap<UUID, CharacteristicListener[]> byUuid = mSubscriptions.get(addressKey);
+        if (byUuid == null) {
+            byUuid = new ConcurrentHashMap<>();
+            mSubscriptions.put(addressKey, byUuid);
+        }
+        CharacteristicListener[] listeners = byUuid.get(uuidKey);
+        if (listeners == null) {
+            byUuid.put(uuidKey, new CharacteristicListener[]{listener});
+            return;
+        }
+        for (CharacteristicListener l : listeners) {
+            if (l == listener) {
+                return;
+            }
+        }
+        CharacteristicListener[] grown = new CharacteristicListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, grown, 0, listeners.length);
+        grown[listeners.length] = listener;
+        byUuid.put(uuidKey, grown);
+    }
+
+    /**
+     * remove a subscription made with the same address and uuid
+     *
+     * @param address
+     * @param uuid
+     * @param listener
+     */
+    public synchronized void unsubscribe(String address, UUID uuid, CharacteristicListener listener) {
+        String addressKey = address == null ? ANY_ADDRESS : address;
+        ConcurrentHashMap<UUID, CharacteristicListener[]> byUuid = mSubscriptions.get(addressKey);
+        if (byUuid == null) {
+            return;
+        }
+        remove(byUuid, uuid == null ? ANY_UUID : uuid, listener);
+        if (byUuid.isEmpty()) {
+            mSubscriptions.remove(addressKey);
+        }
+    }
+
+    /**
+     * remove every subscription of the listener
+     *
+     * @param listener
+     */
+    public synchronized void unsubscribe(CharacteristicListener listener) {
+        Iterator<Map.Entry<String, ConcurrentHashMap<UUID, CharacteristicListener[]>>> it
+                = mSubscriptions.entrySet().iterator();
+        while (it.hasNext()) {
+            ConcurrentHashMap<UUID, CharacteristicListener[]> byUuid = it.next().getValue();
+            for (UUID uuid : byUuid.keySet()) {
+                remove(byUuid, uuid, listener);
+            }
+            if (byUuid.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    private static void remove(ConcurrentHashMap<UUID, CharacteristicListener[]> byUuid, UUID uuid,
+                               CharacteristicListener listener) {
+        CharacteristicListener[] listeners = byUuid.get(uuid);
+        if (listeners == null) {
+            return;
+        }
+        int index = -1;
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return;
+        }
+        if (listeners.length == 1) {
+            byUuid.remove(uuid);
+            return;
+        }
+        CharacteristicListener[] shrunk = new CharacteristicListener[listeners.length - 1];
+        System.arraycopy(listeners, 0, shrunk, 0, index);
+        System.arraycopy(listeners, index + 1, shrunk, index, listeners.length - index - 1);
+        byUuid.put(uuid, shrunk);
+    }
+
+    /**
+     * whether a publish for the pair would reach any listener
+     *
+     * @param address
+     * @param uuid
+     * @return
+     */
+    public boolean hasListeners(String address, UUID uuid) {
+        return lookup(address, uuid) != null || lookup(address, ANY_UUID) != null
+                || lookup(ANY_ADDRESS, uuid) != null || lookup(ANY_ADDRESS, ANY_UUID) != null;
+    }
+
+    /**
+     * Dispatch a value to the matching listeners on the calling thread. The value is handed
+     * over without copying.
+     *
+     * @param address
+     * @param uuid
+     * @param value
+     * @param timestampNanos the {@code System.nanoTime()} of reception
+     * @return the number of listeners called
+     */
+    public int publish(String address, UUID uuid, byte[] value, long timestampNanos) {
+        CharacteristicListener[] exact = lookup(address, uuid);
+        CharacteristicListener[] device = lookup(address, ANY_UUID);
+        CharacteristicListener[] characteristic = lookup(ANY_ADDRESS, uuid);
+        CharacteristicListener[] all = lookup(ANY_ADDRESS, ANY_UUID);
+        if (exact == null && device == null && characteristic == null && all == null) {
+            return 0;
+        }
+
+        CharacteristicEvent event = obtain();
+        event.mAddress = address;
+        event.mUuid = uuid;
+        event.mValue = value;
+        event.mTimestampNanos = timestampNanos;
+        try {
+            return dispatch(exact, event) + dispatch(device, event)
+                    + dispatch(characteristic, event) + dispatch(all, event);
+        } finally {
+            recycle(event);
+        }
+    }
+
+    private CharacteristicListener[] lookup(String address, UUID uuid) {
+        ConcurrentHashMap<UUID, CharacteristicListener[]> byUuid = mSubscriptions.get(address);
+        return byUuid == null ? null : byUuid.get(uuid);
+    }
+
+    private static int dispatch(CharacteristicListener[] listeners, CharacteristicEvent event) {
+        if (listeners == null) {
+            return 0;
+        }
+        for (CharacteristicListener listener : listeners) {
+            listener.onCharacteristicChanged(event);
+        }
+        return listeners.length;
+    }
+
+    private CharacteristicEvent obtain() {
+        synchronized (mPool) {
+            if (mPoolSize > 0) {
+                CharacteristicEvent event = mPool[--mPoolSize];
+                mPool[mPoolSize] = null;
+                return event;
+            }
+        }
+        return new CharacteristicEvent();
+    }
+
+    private void recycle(CharacteristicEvent event) {
+        event.clear();
+        synchronized (mPool) {
+            if (mPoolSize < POOL_SIZE) {
+                mPool[mPoolSize++] = event;
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.ble.example.ble_component.event;
+
+/**
+ * Receives characteristic values from a {@link CharacteristicEventBus}. It is called on the
+ * thread which published the event, usually a binder thread, so it should return quickly.
+ */
+public interface CharacteristicListener {
+
+    /**
+     * @param event only valid for the duration of the call
+     */
+    void onCharacteristicChanged(CharacteristicEvent event);
+}
@@ -0,0 +1,100 @@
+package com.ble.example.ble_component.event;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A group of notifications of one characteristic handed to a {@link BatchListener}. The values
+ * are stored back to back in {@link #getData()}; the batch is reused for the next delivery, so
+ * it is only valid during {@link BatchListener#onBatch(NotificationBatch)}.
+ */
+public final class NotificationBatch {
+
+    private final String mAddress;
+    private final UUID mUuid;
+    private final int mSlotSize;
+    private final byte[] mData;
+    private final int[] mLengths;
+    private final long[] mTimestamps;
+    int mSize;
+    long mOverflowCount;
+
+    NotificationBatch(String address, UUID uuid, int capacity, int slotSize) {
+        mAddress = address;
+        mUuid = uuid;
+        mSlotSize = slotSize;
+        mData = new byte[capacity * slotSize];
+        mLengths = new int[capacity];
+        mTimestamps = new long[capacity];
+    }
+
+    void set(int index, byte[] source, int sourceOffset, int length, long timestampNanos) {
+        System.arraycopy(source, sourceOffset, mData, index * mSlotSize, length);
+        mLengths[index] = length;
+        mTimestamps[index] = timestampNanos;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    public UUID getUuid() {
+        return mUuid;
+    }
+
+    /**
+     * number of notifications in the batch
+     *
+     * @return
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * get the backing array of all values, value {@code i} starts at {@link #getOffset(int)}
+     *
+     * @return
+     */
+    public byte[] getData() {
+        return mData;
+    }
+
+    public int getOffset(int index) {
+        return index * mSlotSize;
+    }
+
+    public int getLength(int index) {
+        return mLengths[index];
+    }
+
+    /**
+     * get the {@code System.nanoTime()} at which the notification was received
+     *
+     * @param index
+     * @return
+     */
+    public long getTimestampNanos(int index) {
+        return mTimestamps[index];
+    }
+
+    /**
+     * get a private copy of one value
+     *
+     * @param index
+     * @return
+     */
+    public byte[] copyValue(int index) {
+        int offset = getOffset(index);
+        return Arrays.copyOfRange(mData, offset, offset + mLengths[index]);
+    }
+
+    /**
+     * get the total number of notifications the buffer has dropped so far
+     *
+     * @return
+     */
+    public long getOverflowCount() {
+        return mOverflowCount;
+    }
+}
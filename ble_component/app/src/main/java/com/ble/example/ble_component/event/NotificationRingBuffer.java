@@ -0,0 +1,408 @@
+package com.ble.example.ble_component.event;
+
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded buffer between a high rate characteristic and a slow consumer. Notifications are
+ * copied into preallocated slots on the publishing thread and handed to the
+ * {@link BatchListener} in batches, either once {@code batchSize} notifications are waiting
+ * or every {@code maxDelayMs}, whichever comes first. When the consumer falls behind the
+ * {@link Policy} decides what is lost, and every loss is counted.
+ * <p>
+ * Create instances with {@link Builder}, then subscribe them to a
+ * {@link CharacteristicEventBus} with {@link #attach(CharacteristicEventBus)}.
+ */
+public class NotificationRingBuffer implements CharacteristicListener {
+
+    /**
+     * what to do with a notification that arrives while the buffer is full
+     */
+    public enum Policy {
+        /**
+         * overwrite the oldest buffered notification
+         */
+        DROP_OLDEST,
+        /**
+         * discard the new notification
+         */
+        DROP_NEWEST,
+        /**
+         * block the publishing thread until the consumer makes room or the block timeout
+         * expires, then discard the new notification
+         */
+        BLOCK
+    }
+
+    private final String mAddress;
+    private final UUID mUuid;
+    private final int mCapacity;
+    private final int mSlotSize;
+    private final Policy mPolicy;
+    private final long mBlockTimeoutMs;
+    private final int mBatchSize;
+    private final long mMaxDelayMs;
+    private final Executor mDeliveryExecutor;
+    private final ScheduledExecutorService mTimer;
+    private final BatchListener mListener;
+
+    private final byte[] mData;
+    private final int[] mLengths;
+    private final long[] mTimestamps;
+    private final NotificationBatch mBatch;
+    private final Runnable mDeliverTask = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    private final Object mLock = new Object();
+    private int mHead;
+    private int mCount;
+    private boolean mInFlight;
+    private boolean mClosed;
+    private CharacteristicEventBus mBus;
+    private ScheduledFuture<?> mFlushTask;
+
+    private long mReceivedCount;
+    private long mDeliveredCount;
+    private long mDroppedOldestCount;
+    private long mDroppedNewestCount;
+    private long mTruncatedCount;
+
+    private NotificationRingBuffer(Builder builder) {
+        mAddress = builder.mAddress;
+        mUuid = builder.mUuid;
+        mCapacity = builder.mCapacity;
+        mSlotSize = builder.mMaxValueLength;
+        mPolicy = builder.mPolicy;
+        mBlockTimeoutMs = builder.mBlockTimeoutMs;
+        mBatchSize = Math.min(builder.mBatchSize, builder.mCapacity);
+        mMaxDelayMs = builder.mMaxDelayMs;
+        mDeliveryExecutor = builder.mDeliveryExecutor;
+        mTimer = builder.mTimer;
+        mListener = builder.mListener;
+
+        mData = new byte[mCapacity * mSlotSize];
+        mLengths = new int[mCapacity];
+        mTimestamps = new long[mCapacity];
+        mBatch = new NotificationBatch(mAddress, mUuid, mBatchSize, mSlotSize);
+    }
+
+    /**
+     * subscribe to the bus and start the periodic flush
+     *
+     * @param bus
+     * @return this buffer
+     */
+    public NotificationRingBuffer attach(CharacteristicEventBus bus) {
+        synchronized (mLock) {
+            if (mClosed || mBus != null) {
+                return this;
+            }
+            mBus = bus;
+            if (mTimer != null && mMaxDelayMs > 0) {
+                mFlushTask = mTimer.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, mMaxDelayMs, mMaxDelayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        bus.subscribe(mAddress, mUuid, this);
+        return this;
+    }
+
+    /**
+     * unsubscribe, stop the flush and release blocked publishers, buffered notifications are
+     * discarded
+     */
+    public void close() {
+        CharacteristicEventBus bus;
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            bus = mBus;
+            mBus = null;
+            if (mFlushTask != null) {
+                mFlushTask.cancel(false);
+                mFlushTask = null;
+            }
+            mLock.notifyAll();
+        }
+        if (bus != null) {
+            bus.unsubscribe(mAddress, mUuid, this);
+        }
+    }
+
+    @Override
+    public void onCharacteristicChanged(CharacteristicEvent event) {
+        byte[] value = event.getValue();
+        int length = value == null ? 0 : value.length;
+        boolean deliver;
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mReceivedCount++;
+            if (mCount == mCapacity && !makeRoom()) {
+                mDroppedNewestCount++;
+                return;
+            }
+            if (length > mSlotSize) {
+                length = mSlotSize;
+                mTruncatedCount++;
+            }
+            int slot = (mHead + mCount) % mCapacity;
+            if (length > 0) {
+                System.arraycopy(value, 0, mData, slot * mSlotSize, length);
+            }
+            mLengths[slot] = length;
+            mTimestamps[slot] = event.getTimestampNanos();
+            mCount++;
+
+            deliver = mCount >= mBatchSize && !mInFlight;
+            if (deliver) {
+                mInFlight = true;
+            }
+        }
+        if (deliver) {
+            mDeliveryExecutor.execute(mDeliverTask);
+        }
+    }
+
+    /**
+     * @return true if there is a free slot now
+     */
+    private boolean makeRoom() {
+        switch (mPolicy) {
+            case DROP_OLDEST:
+                mHead = (mHead + 1) % mCapacity;
+                mCount--;
+                mDroppedOldestCount++;
+                return true;
+            case BLOCK:
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mBlockTimeoutMs);
+                try {
+                    while (mCount == mCapacity && !mClosed) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(mLock, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                return !mClosed;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * deliver whatever is buffered now, regardless of the batch size
+     */
+    public void flush() {
+        synchronized (mLock) {
+            if (mInFlight || mCount == 0 || mClosed) {
+                return;
+            }
+            mInFlight = true;
+        }
+        mDeliveryExecutor.execute(mDeliverTask);
+    }
+
+    private void deliver() {
+        synchronized (mLock) {
+            int size = Math.min(mCount, mBatchSize);
+            if (size == 0 || mClosed) {
+                mInFlight = false;
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                int slot = (mHead + i) % mCapacity;
+                mBatch.set(i, mData, slot * mSlotSize, mLengths[slot], mTimestamps[slot]);
+            }
+            mHead = (mHead + size) % mCapacity;
+            mCount -= size;
+            mBatch.mSize = size;
+            mBatch.mOverflowCount = mDroppedOldestCount + mDroppedNewestCount;
+            mDeliveredCount += size;
+            mLock.notifyAll();
+        }
+
+        mListener.onBatch(mBatch);
+
+        boolean again;
+        synchronized (mLock) {
+            mBatch.mSize = 0;
+            again = mCount >= mBatchSize && !mClosed;
+            mInFlight = again;
+        }
+        if (again) {
+            mDeliveryExecutor.execute(mDeliverTask);
+        }
+    }
+
+    /**
+     * number of notifications waiting for delivery
+     *
+     * @return
+     */
+    public int size() {
+        synchronized (mLock) {
+            return mCount;
+        }
+    }
+
+    public long getReceivedCount() {
+        synchronized (mLock) {
+            return mReceivedCount;
+        }
+    }
+
+    public long getDeliveredCount() {
+        synchronized (mLock) {
+            return mDeliveredCount;
+        }
+    }
+
+    /**
+     * notifications overwritten by {@link Policy#DROP_OLDEST}
+     *
+     * @return
+     */
+    public long getDroppedOldestCount() {
+        synchronized (mLock) {
+            return mDroppedOldestCount;
+        }
+    }
+
+    /**
+     * notifications discarded by {@link Policy#DROP_NEWEST} or an expired {@link Policy#BLOCK}
+     *
+     * @return
+     */
+    public long getDroppedNewestCount() {
+        synchronized (mLock) {
+            return mDroppedNewestCount;
+        }
+    }
+
+    /**
+     * notifications longer than the slot size, which were cut
+     *
+     * @return
+     */
+    public long getTruncatedCount() {
+        synchronized (mLock) {
+            return mTruncatedCount;
+        }
+    }
+
+    /**
+     * all dropped notifications
+     *
+     * @return
+     */
+    public long getOverflowCount() {
+        synchronized (mLock) {
+            return mDroppedOldestCount + mDroppedNewestCount;
+        }
+    }
+
+    public static class Builder {
+        private final String mAddress;
+        private final UUID mUuid;
+        private final BatchListener mListener;
+        private int mCapacity = 256;
+        private int mMaxValueLength = 20;
+        private Policy mPolicy = Policy.DROP_OLDEST;
+        private long mBlockTimeoutMs = 100;
+        private int mBatchSize = 32;
+        private long mMaxDelayMs = 100;
+        private Executor mDeliveryExecutor;
+        private ScheduledExecutorService mTimer;
+
+        /**
+         * @param address  the device address
+         * @param uuid     the characteristic uuid
+         * @param listener the consumer of the batches
+         */
+        public Builder(String address, UUID uuid, BatchListener listener) {
+            mAddress = address;
+            mUuid = uuid;
+            mListener = listener;
+        }
+
+        /**
+         * number of notifications the buffer can hold, 256 by default
+         */
+        public Builder setCapacity(int capacity) {
+            mCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * size of one slot, longer values are truncated; 20 by default, use MTU - 3 for
+         * connections with a larger MTU
+         */
+        public Builder setMaxValueLength(int maxValueLength) {
+            mMaxValueLength = maxValueLength;
+            return this;
+        }
+
+        /**
+         * @param policy       what to do when full, {@link Policy#DROP_OLDEST} by default
+         * @param blockTimeoutMs how long {@link Policy#BLOCK} may stall the publishing thread
+         */
+        public Builder setPolicy(Policy policy, long blockTimeoutMs) {
+            mPolicy = policy;
+            mBlockTimeoutMs = blockTimeoutMs;
+            return this;
+        }
+
+        /**
+         * Deliver once {@code batchSize} notifications are waiting, or after {@code maxDelayMs}.
+         * A delay of 0 disables the time based delivery.
+         */
+        public Builder setCadence(int batchSize, long maxDelayMs) {
+            mBatchSize = batchSize;
+            mMaxDelayMs = maxDelayMs;
+            return this;
+        }
+
+        /**
+         * @param deliveryExecutor runs {@link BatchListener#onBatch(NotificationBatch)}
+         * @param timer            drives the time based delivery
+         */
+        public Builder setExecutors(Executor deliveryExecutor, ScheduledExecutorService timer) {
+            mDeliveryExecutor = deliveryExecutor;
+            mTimer = timer;
+            return this;
+        }
+
+        public boolean hasExecutors() {
+            return mDeliveryExecutor != null;
+        }
+
+        public NotificationRingBuffer build() {
+            if (mCapacity <= 0 || mMaxValueLength <= 0 || mBatchSize <= 0) {
+                throw new IllegalArgumentException("capacity, value length and batch size must be positive");
+            }
+            if (mDeliveryExecutor == null) {
+                throw new IllegalStateException("no delivery executor");
+            }
+            return new NotificationRingBuffer(this);
+        }
+    }
+}
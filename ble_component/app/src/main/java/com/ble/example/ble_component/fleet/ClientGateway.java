@@ -0,0 +1,235 @@
+package com.ble.example.ble_component.fleet;
+
+import com.ble.example.ble_component.connection.ConnectionScheduler;
+import com.ble.example.ble_component.connection.ConnectionState;
+import com.ble.example.ble_component.connection.SubscriptionManager;
+import com.ble.example.ble_component.event.CharacteristicEvent;
+import com.ble.example.ble_component.event.CharacteristicEventBus;
+import com.ble.example.ble_component.event.CharacteristicListener;
+import com.ble.example.ble_component.transport.BleTransport;
+import com.ble.example.ble_component.transport.GattClient;
+import com.ble.example.ble_component.util.Scheduler;
+
+import java.util.HashSet;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A {@link Gateway} in this process, running a {@link GattClient} on one
+ * {@link BleTransport}: an Android adapter or a simulated one. Every assigned device is kept
+ * connected with reconnects and backoff, its characteristic is subscribed, and a device which
+ * failed too many attempts in a row is reported lost. The load in the heartbeats is the number
+ * of devices over the capacity.
+ * <p>
+ * Reports are posted to the scheduler, so the coordinator is never called with the connection
+ * scheduler's lock held.
+ */
+public class ClientGateway implements Gateway {
+
+    private final String mId;
+    private final Scheduler mScheduler;
+    private final CharacteristicEventBus mBus;
+    private final GattClient mClient;
+    private final UUID mServiceUuid;
+    private final UUID mCharacteristicUuid;
+    private final HashSet<String> mDevices = new HashSet<>();
+
+    private volatile int mCapacity;
+    private long mHeartbeatPeriodMs = 1000;
+    private int mMaxFailures = 3;
+    private volatile Reporter mReporter;
+    private Scheduler.Task mHeartbeat;
+
+    private final CharacteristicListener mDataListener = new CharacteristicListener() {
+        @Override
+        public void onCharacteristicChanged(CharacteristicEvent event) {
+            Reporter reporter = mReporter;
+            if (reporter != null) {
+                reporter.onData(mId, event.getAddress(), event.getUuid(), event.getValue(),
+                        event.getTimestampNanos());
+            }
+        }
+    };
+
+    private final ConnectionScheduler.Listener mStateListener = new ConnectionScheduler.Listener() {
+        @Override
+        public void onConnectionStateChanged(final String address, ConnectionState state) {
+            if (state == ConnectionState.READY) {
+                // restored by the client after every later reconnect
+                mClient.subscribe(address, mServiceUuid, mCharacteristicUuid, SubscriptionManager.MODE_AUTO);
+            } else if (state == ConnectionState.BACKOFF
+                    && mClient.getConnectionScheduler().getFailureCount(address) >= getMaxFailures()) {
+                mScheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        giveUp(address);
+                    }
+                }, 0);
+            }
+        }
+    };
+
+    /**
+     * @param id                 unique in the fleet
+     * @param transport
+     * @param scheduler          clock of the connections and heartbeats
+     * @param timeoutExecutor    used for the operation timeouts of the connections
+     * @param capacity           most devices the gateway holds
+     * @param serviceUuid        the service of the characteristic to collect
+     * @param characteristicUuid the characteristic whose notifications are reported
+     */
+    public ClientGateway(String id, BleTransport transport, Scheduler scheduler,
+                         ScheduledExecutorService timeoutExecutor, int capacity,
+                         UUID serviceUuid, UUID characteristicUuid) {
+        mId = id;
+        mScheduler = scheduler;
+        mCapacity = capacity;
+        mServiceUuid = serviceUuid;
+        mCharacteristicUuid = characteristicUuid;
+        // nothing is streamed, the timeout thread can stand in for the transfers
+        mClient = new GattClient(scheduler, timeoutExecutor, timeoutExecutor);
+        mClient.setTransport(transport);
+        mBus = mClient.getEventBus();
+        mClient.getConnectionScheduler().addListener(mStateListener);
+    }
+
+    /**
+     * tune connects and backoff of the devices
+     *
+     * @return
+     */
+    public ConnectionScheduler getConnectionScheduler() {
+        return mClient.getConnectionScheduler();
+    }
+
+    /**
+     * Change the capacity, e.g. when the radio gets congested. A gateway holding more devices
+     * reports a load above 1 and the coordinator moves some of them.
+     *
+     * @param capacity
+     */
+    public void setCapacity(int capacity) {
+        mCapacity = capacity;
+    }
+
+    /**
+     * @param heartbeatPeriodMs 1 s by default, must be well below the coordinator's timeout
+     */
+    public synchronized void setHeartbeatPeriod(long heartbeatPeriodMs) {
+        mHeartbeatPeriodMs = heartbeatPeriodMs;
+    }
+
+    /**
+     * @param maxFailures failed attempts in a row before a device is reported lost, 3 by default
+     */
+    public synchronized void setMaxFailures(int maxFailures) {
+        mMaxFailures = maxFailures;
+    }
+
+    private synchronized int getMaxFailures() {
+        return mMaxFailures;
+    }
+
+    @Override
+    public String getId() {
+        return mId;
+    }
+
+    @Override
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    @Override
+    public void start(Reporter reporter) {
+        synchronized (this) {
+            if (mReporter != null) {
+                return;
+            }
+            mReporter = reporter;
+        }
+        mBus.subscribe(null, mCharacteristicUuid, mDataListener);
+        heartbeat();
+    }
+
+    @Override
+    public void assign(String address) {
+        synchronized (this) {
+            if (mReporter == null || !mDevices.add(address)) {
+                return;
+            }
+        }
+        mClient.getConnectionScheduler().connect(address, true);
+    }
+
+    @Override
+    public void release(String address) {
+        synchronized (this) {
+            if (!mDevices.remove(address)) {
+                return;
+            }
+        }
+        mClient.getConnectionScheduler().disconnect(address);
+    }
+
+    @Override
+    public void stop() {
+        String[] devices;
+        synchronized (this) {
+            if (mReporter == null) {
+                return;
+            }
+            mReporter = null;
+            if (mHeartbeat != null) {
+                mHeartbeat.cancel();
+                mHeartbeat = null;
+            }
+            devices = mDevices.toArray(new String[mDevices.size()]);
+            mDevices.clear();
+        }
+        mBus.unsubscribe(null, mCharacteristicUuid, mDataListener);
+        for (String address : devices) {
+            mClient.getConnectionScheduler().disconnect(address);
+        }
+    }
+
+    /**
+     * number of assigned devices
+     *
+     * @return
+     */
+    public synchronized int getDeviceCount() {
+        return mDevices.size();
+    }
+
+    private void heartbeat() {
+        Reporter reporter;
+        float load;
+        synchronized (this) {
+            reporter = mReporter;
+            if (reporter == null) {
+                return;
+            }
+            load = mCapacity > 0 ? (float) mDevices.size() / mCapacity : Float.MAX_VALUE;
+            mHeartbeat = mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    heartbeat();
+                }
+            }, mHeartbeatPeriodMs);
+        }
+        reporter.onHeartbeat(mId, load);
+    }
+
+    private void giveUp(String address) {
+        Reporter reporter;
+        synchronized (this) {
+            reporter = mReporter;
+            if (reporter == null || !mDevices.remove(address)) {
+                return;
+            }
+        }
+        mClient.getConnectionScheduler().disconnect(address);
+        reporter.onDeviceLost(mId, address);
+    }
+}
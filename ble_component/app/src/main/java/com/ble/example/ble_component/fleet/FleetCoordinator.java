@@ -0,0 +1,485 @@
+package com.ble.example.ble_component.fleet;
+
+import com.ble.example.ble_component.util.Scheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Partitions a set of devices across several {@link Gateway}s, each with its own adapter and
+ * connection slots, and merges what they report into one {@link FleetListener}.
+ * <p>
+ * A device goes to the gateway with the highest rendezvous hash of (gateway, address) which
+ * is alive, has capacity left and is not overloaded, so adding or losing a gateway only moves
+ * the devices it gains or held. A gateway without a heartbeat within the timeout is failed and
+ * its devices are assigned to the others; it rejoins with its next heartbeat. An overloaded
+ * gateway hands one device per heartbeat to another gateway until its load drops, and a
+ * device a gateway gives up on is tried on the others first.
+ * <p>
+ * Data is only passed on from the gateway which owns the device, so a gateway which lost a
+ * device, or was failed while still running, cannot produce duplicates. All methods are thread
+ * safe. The gateways and {@link FleetListener#onAssignmentChanged} are called with the
+ * coordinator's lock held and must not block; {@link FleetListener#onData} is called without.
+ */
+public class FleetCoordinator implements Gateway.Reporter {
+
+    private static class Member {
+        final Gateway mGateway;
+        final HashSet<String> mDevices = new HashSet<>();
+        final AtomicLong mDataCount = new AtomicLong();
+        long mLastHeartbeat;
+        float mLoad;
+        boolean mAlive = true;
+
+        Member(Gateway gateway) {
+            mGateway = gateway;
+        }
+
+        String getId() {
+            return mGateway.getId();
+        }
+    }
+
+    private static class Device {
+        final String mAddress;
+        Member mOwner;
+        /**
+         * gateways which gave up on the device
+         */
+        final HashSet<String> mExcluded = new HashSet<>();
+        /**
+         * the gateway last reported to the listener
+         */
+        String mReported;
+
+        Device(String address) {
+            mAddress = address;
+        }
+    }
+
+    private final Scheduler mScheduler;
+    private final FleetListener mListener;
+    private final LinkedHashMap<String, Member> mMembers = new LinkedHashMap<>();
+    private final HashMap<String, Device> mDevices = new HashMap<>();
+    // read without the lock by onData
+    private final ConcurrentHashMap<String, Member> mOwners = new ConcurrentHashMap<>();
+    private final AtomicLong mStaleCount = new AtomicLong();
+    private Scheduler.Task mSweep;
+    private long mMoveCount;
+    private boolean mClosed;
+
+    private long mHeartbeatTimeoutMs = 5000;
+    private float mOverloadThreshold = 1f;
+
+    /**
+     * @param scheduler runs the heartbeat check
+     * @param listener
+     */
+    public FleetCoordinator(Scheduler scheduler, FleetListener listener) {
+        mScheduler = scheduler;
+        mListener = listener;
+    }
+
+    /**
+     * fail a gateway without a heartbeat for this long, 5 s by default
+     *
+     * @param heartbeatTimeoutMs
+     */
+    public synchronized void setHeartbeatTimeout(long heartbeatTimeoutMs) {
+        mHeartbeatTimeoutMs = heartbeatTimeoutMs;
+    }
+
+    /**
+     * shed devices from a gateway reporting a higher load, 1 by default
+     *
+     * @param overloadThreshold
+     */
+    public synchronized void setOverloadThreshold(float overloadThreshold) {
+        mOverloadThreshold = overloadThreshold;
+    }
+
+    /**
+     * start the gateway and give it its share of the unassigned devices
+     *
+     * @param gateway
+     */
+    public synchronized void addGateway(Gateway gateway) {
+        if (mClosed || mMembers.containsKey(gateway.getId())) {
+            return;
+        }
+        Member member = new Member(gateway);
+        member.mLastHeartbeat = mScheduler.now();
+        mMembers.put(gateway.getId(), member);
+        gateway.start(this);
+        placePending();
+        if (mSweep == null) {
+            scheduleSweep();
+        }
+    }
+
+    /**
+     * stop the gateway and move its devices to the others
+     *
+     * @param gatewayId
+     */
+    public synchronized void removeGateway(String gatewayId) {
+        Member member = mMembers.remove(gatewayId);
+        if (member == null) {
+            return;
+        }
+        List<Device> devices = devicesOf(member);
+        for (Device device : devices) {
+            unassign(device, false);
+        }
+        member.mGateway.stop();
+        for (Device device : devices) {
+            place(device, null);
+        }
+    }
+
+    /**
+     * @param address
+     */
+    public synchronized void addDevice(String address) {
+        if (mClosed || mDevices.containsKey(address)) {
+            return;
+        }
+        Device device = new Device(address);
+        mDevices.put(address, device);
+        place(device, null);
+    }
+
+    /**
+     * @param address
+     */
+    public synchronized void removeDevice(String address) {
+        Device device = mDevices.remove(address);
+        if (device != null && device.mOwner != null) {
+            unassign(device, true);
+        }
+    }
+
+    /**
+     * Even the devices out across the live gateways, e.g. after a gateway rejoined. Devices
+     * are only moved off gateways holding more than their share.
+     */
+    public synchronized void rebalance() {
+        int alive = 0;
+        for (Member member : mMembers.values()) {
+            if (member.mAlive) {
+                alive++;
+            }
+        }
+        if (alive == 0) {
+            return;
+        }
+        int assigned = mDevices.size() - getUnassignedCount();
+        int share = (assigned + alive - 1) / alive;
+        for (Member member : new ArrayList<>(mMembers.values())) {
+            while (member.mAlive && member.mDevices.size() > share) {
+                Device device = weakest(member);
+                Member target = candidate(device, member, share);
+                if (target == null) {
+                    break;
+                }
+                move(device, target);
+            }
+        }
+        placePending();
+    }
+
+    /**
+     * release every device and stop the gateways
+     */
+    public synchronized void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        if (mSweep != null) {
+            mSweep.cancel();
+            mSweep = null;
+        }
+        for (Device device : mDevices.values()) {
+            if (device.mOwner != null) {
+                unassign(device, true);
+            }
+        }
+        mDevices.clear();
+        for (Member member : mMembers.values()) {
+            member.mGateway.stop();
+        }
+        mMembers.clear();
+    }
+
+    @Override
+    public void onData(String gatewayId, String address, UUID uuid, byte[] value, long timestampNanos) {
+        Member owner = mOwners.get(address);
+        if (owner == null || !owner.getId().equals(gatewayId)) {
+            mStaleCount.incrementAndGet();
+            return;
+        }
+        owner.mDataCount.incrementAndGet();
+        mListener.onData(address, uuid, value, timestampNanos);
+    }
+
+    @Override
+    public synchronized void onHeartbeat(String gatewayId, float load) {
+        Member member = mMembers.get(gatewayId);
+        if (member == null || mClosed) {
+            return;
+        }
+        member.mLastHeartbeat = mScheduler.now();
+        member.mLoad = load;
+        member.mAlive = true;
+        if (load > mOverloadThreshold && !member.mDevices.isEmpty()) {
+            Device device = weakest(member);
+            Member target = candidate(device, member, Integer.MAX_VALUE);
+            if (target != null) {
+                move(device, target);
+            }
+        }
+        placePending();
+    }
+
+    @Override
+    public synchronized void onDeviceLost(String gatewayId, String address) {
+        Device device = mDevices.get(address);
+        if (device == null || device.mOwner == null || !device.mOwner.getId().equals(gatewayId)) {
+            return;
+        }
+        device.mExcluded.add(gatewayId);
+        unassign(device, true);
+        place(device, null);
+    }
+
+    /**
+     * @param address
+     * @return the id of the gateway owning the device, null if none
+     */
+    public String getGatewayId(String address) {
+        Member owner = mOwners.get(address);
+        return owner == null ? null : owner.getId();
+    }
+
+    /**
+     * @param gatewayId
+     * @return number of devices assigned to the gateway
+     */
+    public synchronized int getDeviceCount(String gatewayId) {
+        Member member = mMembers.get(gatewayId);
+        return member == null ? 0 : member.mDevices.size();
+    }
+
+    /**
+     * @param gatewayId
+     * @return number of notifications passed on from the gateway
+     */
+    public synchronized long getDataCount(String gatewayId) {
+        Member member = mMembers.get(gatewayId);
+        return member == null ? 0 : member.mDataCount.get();
+    }
+
+    /**
+     * @param gatewayId
+     * @return false while the gateway is failed or unknown
+     */
+    public synchronized boolean isAlive(String gatewayId) {
+        Member member = mMembers.get(gatewayId);
+        return member != null && member.mAlive;
+    }
+
+    /**
+     * number of devices no gateway can take right now
+     *
+     * @return
+     */
+    public synchronized int getUnassignedCount() {
+        int count = 0;
+        for (Device device : mDevices.values()) {
+            if (device.mOwner == null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * number of devices moved from one gateway to another
+     *
+     * @return
+     */
+    public synchronized long getMoveCount() {
+        return mMoveCount;
+    }
+
+    /**
+     * number of notifications dropped because they came from a gateway not owning the device
+     *
+     * @return
+     */
+    public long getStaleCount() {
+        return mStaleCount.get();
+    }
+
+    private void scheduleSweep() {
+        mSweep = mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                sweep();
+            }
+        }, Math.max(1, mHeartbeatTimeoutMs / 2));
+    }
+
+    /**
+     * fail the gateways whose heartbeat is overdue
+     */
+    private synchronized void sweep() {
+        if (mClosed) {
+            return;
+        }
+        long now = mScheduler.now();
+        for (Member member : mMembers.values()) {
+            if (member.mAlive && now - member.mLastHeartbeat > mHeartbeatTimeoutMs) {
+                member.mAlive = false;
+                List<Device> devices = devicesOf(member);
+                // released as well, in case the gateway still runs but cannot report
+                for (Device device : devices) {
+                    unassign(device, true);
+                }
+                for (Device device : devices) {
+                    place(device, null);
+                }
+            }
+        }
+        scheduleSweep();
+    }
+
+    private void placePending() {
+        for (Device device : mDevices.values()) {
+            if (device.mOwner == null) {
+                place(device, null);
+            }
+        }
+    }
+
+    /**
+     * assign an unassigned device to the best gateway
+     *
+     * @param avoid not this gateway, may be null
+     */
+    private void place(Device device, Member avoid) {
+        Member target = candidate(device, avoid, Integer.MAX_VALUE);
+        if (target == null && !device.mExcluded.isEmpty()) {
+            // every gateway gave up once, let them try again later
+            device.mExcluded.clear();
+        }
+        if (target == null) {
+            if (device.mReported != null) {
+                device.mReported = null;
+                mListener.onAssignmentChanged(device.mAddress, null);
+            }
+            return;
+        }
+        assign(device, target);
+    }
+
+    private void move(Device device, Member target) {
+        unassign(device, true);
+        assign(device, target);
+        mMoveCount++;
+    }
+
+    private void assign(Device device, Member member) {
+        device.mOwner = member;
+        member.mDevices.add(device.mAddress);
+        mOwners.put(device.mAddress, member);
+        member.mGateway.assign(device.mAddress);
+        device.mReported = member.getId();
+        mListener.onAssignmentChanged(device.mAddress, member.getId());
+    }
+
+    /**
+     * @param release tell the gateway to disconnect the device
+     */
+    private void unassign(Device device, boolean release) {
+        Member owner = device.mOwner;
+        device.mOwner = null;
+        owner.mDevices.remove(device.mAddress);
+        mOwners.remove(device.mAddress, owner);
+        if (release) {
+            owner.mGateway.release(device.mAddress);
+        }
+    }
+
+    /**
+     * the live gateway with the highest score for the device which can take it
+     *
+     * @param avoid    not this gateway, may be null
+     * @param maxCount only gateways holding fewer devices
+     * @return null if there is none
+     */
+    private Member candidate(Device device, Member avoid, int maxCount) {
+        Member best = null;
+        long bestScore = 0;
+        for (Member member : mMembers.values()) {
+            if (member == avoid || !member.mAlive || member.mLoad > mOverloadThreshold
+                    || device.mExcluded.contains(member.getId())) {
+                continue;
+            }
+            int count = member.mDevices.size();
+            if (count >= member.mGateway.getCapacity() || count >= maxCount) {
+                continue;
+            }
+            long score = score(member.getId(), device.mAddress);
+            if (best == null || score > bestScore) {
+                best = member;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * the device of the gateway with the lowest score, the first to leave
+     */
+    private Device weakest(Member member) {
+        Device weakest = null;
+        long weakestScore = 0;
+        for (String address : member.mDevices) {
+            long score = score(member.getId(), address);
+            if (weakest == null || score < weakestScore) {
+                weakest = mDevices.get(address);
+                weakestScore = score;
+            }
+        }
+        return weakest;
+    }
+
+    private List<Device> devicesOf(Member member) {
+        List<Device> devices = new ArrayList<>(member.mDevices.size());
+        for (String address : member.mDevices) {
+            devices.add(mDevices.get(address));
+        }
+        return devices;
+    }
+
+    /**
+     * rendezvous hash of a gateway and a device, mixed so similar ids spread
+     */
+    static long score(String gatewayId, String address) {
+        long h = gatewayId.hashCode() * 0x9E3779B97F4A7C15L + address.hashCode();
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
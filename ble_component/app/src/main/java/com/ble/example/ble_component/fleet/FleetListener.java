@@ -0,0 +1,27 @@
+package com.ble.example.ble_component.fleet;
+
+import java.util.UUID;
+
+/**
+ * Receives the aggregated results of a {@link FleetCoordinator}.
+ */
+public interface FleetListener {
+
+    /**
+     * a notification of a device, from the gateway which currently owns it
+     *
+     * @param address
+     * @param uuid
+     * @param value          only valid during the call
+     * @param timestampNanos
+     */
+    void onData(String address, UUID uuid, byte[] value, long timestampNanos);
+
+    /**
+     * the device moved
+     *
+     * @param address
+     * @param gatewayId null while no gateway can take the device
+     */
+    void onAssignmentChanged(String address, String gatewayId);
+}
@@ -0,0 +1,81 @@
+package com.ble.example.ble_component.fleet;
+
+import java.util.UUID;
+
+/**
+ * One member of a fleet: an adapter, a process or a node which connects the devices the
+ * {@link FleetCoordinator} assigns to it. A gateway in another process or on another node is
+ * represented by a proxy implementing this interface over its transport; the coordinator only
+ * relies on the calls below and on the reports, and treats a gateway which stops reporting
+ * as failed.
+ */
+public interface Gateway {
+
+    /**
+     * the coordinator's side, may be called from any thread
+     */
+    interface Reporter {
+        /**
+         * a notification of an assigned device
+         *
+         * @param gatewayId
+         * @param address
+         * @param uuid
+         * @param value          only valid during the call
+         * @param timestampNanos
+         */
+        void onData(String gatewayId, String address, UUID uuid, byte[] value, long timestampNanos);
+
+        /**
+         * the gateway is alive
+         *
+         * @param gatewayId
+         * @param load      used share of the capacity, above 1 when overloaded
+         */
+        void onHeartbeat(String gatewayId, float load);
+
+        /**
+         * the gateway gave up on an assigned device, e.g. it is out of its range
+         *
+         * @param gatewayId
+         * @param address
+         */
+        void onDeviceLost(String gatewayId, String address);
+    }
+
+    /**
+     * @return unique in the fleet
+     */
+    String getId();
+
+    /**
+     * @return how many devices it can hold
+     */
+    int getCapacity();
+
+    /**
+     * start reporting
+     *
+     * @param reporter
+     */
+    void start(Reporter reporter);
+
+    /**
+     * connect the device and keep it connected until it is released
+     *
+     * @param address
+     */
+    void assign(String address);
+
+    /**
+     * disconnect the device
+     *
+     * @param address
+     */
+    void release(String address);
+
+    /**
+     * release every device and stop reporting
+     */
+    void stop();
+}
@@ -0,0 +1,97 @@
+package com.ble.example.ble_component.frame;
+
+/**
+ * The check value at the end of a frame, right before the delimiter if there is one.
+ */
+public enum Checksum {
+    /**
+     * no check value
+     */
+    NONE(0),
+    /**
+     * CRC-16/CCITT-FALSE (poly 0x1021, init 0xFFFF), big endian
+     */
+    CRC16_CCITT(2),
+    /**
+     * CRC-32 as used by zip and Ethernet, little endian
+     */
+    CRC32(4);
+
+    private static final int[] CRC16_TABLE = new int[256];
+    private static final int[] CRC32_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc16 = i << 8;
+            int crc32 = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x1021 : crc16 << 1;
+                crc32 = (crc32 & 1) != 0 ? (crc32 >>> 1) ^ 0xEDB88320 : crc32 >>> 1;
+            }
+            CRC16_TABLE[i] = crc16 & 0xFFFF;
+            CRC32_TABLE[i] = crc32;
+        }
+    }
+
+    private final int mLength;
+
+    Checksum(int length) {
+        mLength = length;
+    }
+
+    /**
+     * get the number of bytes the check value takes
+     *
+     * @return
+     */
+    public int length() {
+        return mLength;
+    }
+
+    /**
+     * @param data
+     * @param offset
+     * @param length
+     * @return the check value of the bytes, 0 for {@link #NONE}
+     */
+    public int compute(byte[] data, int offset, int length) {
+        int end = offset + length;
+        switch (this) {
+            case CRC16_CCITT: {
+                int crc = 0xFFFF;
+                for (int i = offset; i < end; i++) {
+                    crc = ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+                }
+                return crc;
+            }
+            case CRC32: {
+                int crc = 0xFFFFFFFF;
+                for (int i = offset; i < end; i++) {
+                    crc = (crc >>> 8) ^ CRC32_TABLE[(crc ^ data[i]) & 0xFF];
+                }
+                return ~crc;
+            }
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param frame  payload followed by the check value
+     * @param offset
+     * @param length of payload and check value
+     * @return true if the check value matches the payload
+     */
+    public boolean verify(byte[] frame, int offset, int length) {
+        if (length < mLength) {
+            return false;
+        }
+        int payload = length - mLength;
+        int expected = 0;
+        for (int i = 0; i < mLength; i++) {
+            int b = frame[offset + payload + i] & 0xFF;
+            expected |= this == CRC16_CCITT ? b << (8 * (mLength - 1 - i)) : b << (8 * i);
+        }
+        return compute(frame, offset, payload) == expected;
+    }
+}
@@ -0,0 +1,54 @@
+package com.ble.example.ble_component.frame;
+
+/**
+ * Frames which end with a delimiter byte, {@code [payload][checksum][delimiter]}. The payload
+ * must not contain the delimiter, encode it first (COBS or SLIP) if it can. Empty frames are
+ * ignored, so peripherals may send a delimiter first to flush a partial frame.
+ */
+public class DelimitedReassembler implements Reassembler {
+
+    private final byte mDelimiter;
+    private boolean mSkipping;
+
+    /**
+     * @param delimiter the byte which ends a frame
+     */
+    public DelimitedReassembler(byte delimiter) {
+        mDelimiter = delimiter;
+    }
+
+    @Override
+    public void onFragment(byte[] fragment, Output out) {
+        int start = 0;
+        for (int i = 0; i < fragment.length; i++) {
+            if (fragment[i] != mDelimiter) {
+                continue;
+            }
+            collect(fragment, start, i - start, out);
+            if (out.inFrame()) {
+                out.end();
+            }
+            mSkipping = false;
+            start = i + 1;
+        }
+        collect(fragment, start, fragment.length - start, out);
+    }
+
+    private void collect(byte[] fragment, int offset, int length, Output out) {
+        if (length == 0 || mSkipping) {
+            return;
+        }
+        if (!out.inFrame() && !out.begin()) {
+            mSkipping = true;
+            return;
+        }
+        if (!out.append(fragment, offset, length)) {
+            mSkipping = true;
+        }
+    }
+
+    @Override
+    public void reset() {
+        mSkipping = false;
+    }
+}
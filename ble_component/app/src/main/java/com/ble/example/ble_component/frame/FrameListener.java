@@ -0,0 +1,22 @@
+package com.ble.example.ble_component.frame;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Receives the frames decoded by a {@link FramePipeline}.
+ */
+public interface FrameListener {
+
+    /**
+     * Called on the delivery executor of the pipeline, never concurrently for the same pipeline.
+     *
+     * @param address        the device address
+     * @param uuid           the characteristic uuid
+     * @param frame          the payload between position and limit, without prefix, delimiter
+     *                       or checksum. The buffer is pooled and only valid for the duration
+     *                       of the call
+     * @param timestampNanos the {@code System.nanoTime()} of the last fragment of the frame
+     */
+    void onFrame(String address, UUID uuid, ByteBuffer frame, long timestampNanos);
+}
@@ -0,0 +1,413 @@
+package com.ble.example.ble_component.frame;
+
+import com.ble.example.ble_component.event.CharacteristicEvent;
+import com.ble.example.ble_component.event.CharacteristicEventBus;
+import com.ble.example.ble_component.event.CharacteristicListener;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Decoding stage between the notifications of a characteristic and a {@link FrameListener}.
+ * The {@link Reassembler} finds the frame boundaries, the fragments are copied once, straight
+ * from the notification into a pooled {@link ByteBuffer}, the {@link Checksum} is verified and
+ * the buffer is handed to the listener and recycled when it returns. When the listener falls
+ * behind and the pool runs dry, new frames are dropped; every loss is counted.
+ * <p>
+ * Create instances with {@link Builder}, then subscribe them to a
+ * {@link CharacteristicEventBus} with {@link #attach(CharacteristicEventBus)}.
+ */
+public class FramePipeline implements CharacteristicListener {
+
+    private final String mAddress;
+    private final UUID mUuid;
+    private final Reassembler mReassembler;
+    private final Checksum mChecksum;
+    private final FrameListener mListener;
+    private final Executor mDeliveryExecutor;
+
+    private final Object mLock = new Object();
+    private final ArrayDeque<Slot> mFree;
+    private final ArrayDeque<Slot> mReady;
+    private final Output mOutput = new Output();
+    private Slot mOpen;
+    private long mTimestampNanos;
+    private boolean mClosed;
+    private CharacteristicEventBus mBus;
+
+    private long mFragmentCount;
+    private long mFrameCount;
+    private long mByteCount;
+    private long mChecksumErrorCount;
+    private long mLostFragmentCount;
+    private long mDiscardedCount;
+    private long mOverflowCount;
+    private long mDroppedCount;
+
+    private FramePipeline(Builder builder) {
+        mAddress = builder.mAddress;
+        mUuid = builder.mUuid;
+        mReassembler = builder.mReassembler;
+        mChecksum = builder.mChecksum;
+        mListener = builder.mListener;
+        mDeliveryExecutor = builder.mDeliveryExecutor;
+
+        mFree = new ArrayDeque<>(builder.mPoolSize);
+        mReady = new ArrayDeque<>(builder.mPoolSize);
+        for (int i = 0; i < builder.mPoolSize; i++) {
+            mFree.add(new Slot(ByteBuffer.allocate(builder.mMaxFrameLength + mChecksum.length())));
+        }
+    }
+
+    /**
+     * subscribe to the bus
+     *
+     * @param bus
+     * @return this pipeline
+     */
+    public FramePipeline attach(CharacteristicEventBus bus) {
+        synchronized (mLock) {
+            if (mClosed || mBus != null) {
+                return this;
+            }
+            mBus = bus;
+        }
+        bus.subscribe(mAddress, mUuid, this);
+        return this;
+    }
+
+    /**
+     * unsubscribe, a partial frame is discarded
+     */
+    public void close() {
+        CharacteristicEventBus bus;
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            bus = mBus;
+            mBus = null;
+            recycleOpen();
+        }
+        if (bus != null) {
+            bus.unsubscribe(mAddress, mUuid, this);
+        }
+    }
+
+    /**
+     * Drop a partial frame and restart the reassembler, call it when the peripheral restarts
+     * its stream, for example after a reconnect.
+     */
+    public void reset() {
+        synchronized (mLock) {
+            if (mOpen != null) {
+                mDiscardedCount++;
+                recycleOpen();
+            }
+            mReassembler.reset();
+        }
+    }
+
+    @Override
+    public void onCharacteristicChanged(CharacteristicEvent event) {
+        byte[] value = event.getValue();
+        if (value == null) {
+            return;
+        }
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mFragmentCount++;
+            mTimestampNanos = event.getTimestampNanos();
+            mReassembler.onFragment(value, mOutput);
+        }
+        dispatch();
+    }
+
+    /**
+     * hand the completed frames to the listener, in order
+     */
+    private void dispatch() {
+        while (true) {
+            Slot slot;
+            synchronized (mLock) {
+                slot = mReady.poll();
+            }
+            if (slot == null) {
+                return;
+            }
+            if (mDeliveryExecutor == null) {
+                slot.run();
+            } else {
+                mDeliveryExecutor.execute(slot);
+            }
+        }
+    }
+
+    private void recycle(Slot slot) {
+        slot.mBuffer.clear();
+        synchronized (mLock) {
+            mFree.push(slot);
+        }
+    }
+
+    private void recycleOpen() {
+        if (mOpen != null) {
+            mOpen.mBuffer.clear();
+            mFree.push(mOpen);
+            mOpen = null;
+        }
+    }
+
+    public long getFragmentCount() {
+        synchronized (mLock) {
+            return mFragmentCount;
+        }
+    }
+
+    /**
+     * number of frames which passed the checksum and were handed to the listener
+     *
+     * @return
+     */
+    public long getFrameCount() {
+        synchronized (mLock) {
+            return mFrameCount;
+        }
+    }
+
+    /**
+     * number of payload bytes delivered, without prefixes, delimiters and checksums
+     *
+     * @return
+     */
+    public long getByteCount() {
+        synchronized (mLock) {
+            return mByteCount;
+        }
+    }
+
+    public long getChecksumErrorCount() {
+        synchronized (mLock) {
+            return mChecksumErrorCount;
+        }
+    }
+
+    /**
+     * number of fragments the reassembler found missing, from gaps in the sequence numbers
+     *
+     * @return
+     */
+    public long getLostFragmentCount() {
+        synchronized (mLock) {
+            return mLostFragmentCount;
+        }
+    }
+
+    /**
+     * number of partial frames dropped because a fragment was missing or a new frame started
+     *
+     * @return
+     */
+    public long getDiscardedCount() {
+        synchronized (mLock) {
+            return mDiscardedCount;
+        }
+    }
+
+    /**
+     * number of frames longer than the maximum frame length
+     *
+     * @return
+     */
+    public long getOverflowCount() {
+        synchronized (mLock) {
+            return mOverflowCount;
+        }
+    }
+
+    /**
+     * number of frames dropped because every buffer was still held by the listener
+     *
+     * @return
+     */
+    public long getDroppedCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    /**
+     * a pooled buffer, and the task which delivers it
+     */
+    private final class Slot implements Runnable {
+        final ByteBuffer mBuffer;
+        long mTimestampNanos;
+
+        Slot(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mListener.onFrame(mAddress, mUuid, mBuffer, mTimestampNanos);
+            } finally {
+                recycle(this);
+            }
+        }
+    }
+
+    /**
+     * the reassembler's view of the pipeline, only called with {@code mLock} held
+     */
+    private final class Output implements Reassembler.Output {
+
+        @Override
+        public boolean begin() {
+            if (mOpen != null) {
+                mDiscardedCount++;
+                recycleOpen();
+            }
+            mOpen = mFree.poll();
+            if (mOpen == null) {
+                mDroppedCount++;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean inFrame() {
+            return mOpen != null;
+        }
+
+        @Override
+        public boolean append(byte[] src, int offset, int length) {
+            if (mOpen == null) {
+                return false;
+            }
+            if (mOpen.mBuffer.remaining() < length) {
+                mOverflowCount++;
+                recycleOpen();
+                return false;
+            }
+            mOpen.mBuffer.put(src, offset, length);
+            return true;
+        }
+
+        @Override
+        public void end() {
+            if (mOpen == null) {
+                return;
+            }
+            Slot slot = mOpen;
+            mOpen = null;
+            ByteBuffer buffer = slot.mBuffer;
+            int length = buffer.position();
+            if (!mChecksum.verify(buffer.array(), buffer.arrayOffset(), length)) {
+                mChecksumErrorCount++;
+                buffer.clear();
+                mFree.push(slot);
+                return;
+            }
+            int payload = length - mChecksum.length();
+            buffer.position(0);
+            buffer.limit(payload);
+            slot.mTimestampNanos = mTimestampNanos;
+            mFrameCount++;
+            mByteCount += payload;
+            mReady.add(slot);
+        }
+
+        @Override
+        public void discard() {
+            if (mOpen != null) {
+                mDiscardedCount++;
+                recycleOpen();
+            }
+        }
+
+        @Override
+        public void lost(int fragments) {
+            mLostFragmentCount += fragments;
+        }
+    }
+
+    public static class Builder {
+        private final String mAddress;
+        private final UUID mUuid;
+        private final Reassembler mReassembler;
+        private final FrameListener mListener;
+        private Checksum mChecksum = Checksum.NONE;
+        private int mMaxFrameLength = 512;
+        private int mPoolSize = 8;
+        private Executor mDeliveryExecutor;
+
+        /**
+         * @param address     the device address
+         * @param uuid        the characteristic uuid
+         * @param reassembler finds the frames in the notifications, one instance per pipeline
+         * @param listener    the consumer of the frames
+         */
+        public Builder(String address, UUID uuid, Reassembler reassembler, FrameListener listener) {
+            mAddress = address;
+            mUuid = uuid;
+            mReassembler = reassembler;
+            mListener = listener;
+        }
+
+        /**
+         * the check value at the end of every frame, {@link Checksum#NONE} by default
+         */
+        public Builder setChecksum(Checksum checksum) {
+            mChecksum = checksum;
+            return this;
+        }
+
+        /**
+         * longest payload, without the checksum, 512 bytes by default; longer frames are
+         * dropped
+         */
+        public Builder setMaxFrameLength(int maxFrameLength) {
+            mMaxFrameLength = maxFrameLength;
+            return this;
+        }
+
+        /**
+         * number of frame buffers, 8 by default; bounds how many frames can wait for the
+         * listener
+         */
+        public Builder setPoolSize(int poolSize) {
+            mPoolSize = poolSize;
+            return this;
+        }
+
+        /**
+         * @param deliveryExecutor runs {@link FrameListener#onFrame}, null to deliver on the
+         *                         publishing thread
+         */
+        public Builder setExecutor(Executor deliveryExecutor) {
+            mDeliveryExecutor = deliveryExecutor;
+            return this;
+        }
+
+        public boolean hasExecutor() {
+            return mDeliveryExecutor != null;
+        }
+
+        public FramePipeline build() {
+            if (mMaxFrameLength <= 0 || mPoolSize <= 0) {
+                throw new IllegalArgumentException("frame length and pool size must be positive");
+            }
+            if (mReassembler == null || mListener == null) {
+                throw new IllegalArgumentException("no reassembler or listener");
+            }
+            return new FramePipeline(this);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.ble.example.ble_component.frame;
+
+/**
+ * Frames which start with their payload length, {@code [length][payload][checksum]}. The
+ * length counts the payload and checksum but not the prefix itself. Frames may span several
+ * notifications and a notification may hold the end of one frame and the start of the next.
+ * A frame that is too long is skipped using its declared length, so the stream stays in sync.
+ */
+public class LengthPrefixedReassembler implements Reassembler {
+
+    private final int mPrefixLength;
+    private final boolean mBigEndian;
+
+    private int mHeaderRead;
+    private long mLength;
+    private long mRemaining;
+    private boolean mSkipping;
+
+    /**
+     * @param prefixLength size of the length field, 1 to 4 bytes
+     * @param bigEndian    byte order of the length field
+     */
+    public LengthPrefixedReassembler(int prefixLength, boolean bigEndian) {
+        if (prefixLength < 1 || prefixLength > 4) {
+            throw new IllegalArgumentException("prefix length must be 1 to 4 bytes");
+        }
+        mPrefixLength = prefixLength;
+        mBigEndian = bigEndian;
+    }
+
+    @Override
+    public void onFragment(byte[] fragment, Output out) {
+        int i = 0;
+        while (i < fragment.length) {
+            if (mRemaining == 0) {
+                int b = fragment[i++] & 0xFF;
+                if (mBigEndian) {
+                    mLength = (mLength << 8) | b;
+                } else {
+                    mLength |= (long) b << (8 * mHeaderRead);
+                }
+                if (++mHeaderRead == mPrefixLength) {
+                    mRemaining = mLength;
+                    mHeaderRead = 0;
+                    mLength = 0;
+                    mSkipping = !out.begin();
+                    if (mRemaining == 0 && !mSkipping) {
+                        out.end();
+                    }
+                }
+                continue;
+            }
+            int n = (int) Math.min(mRemaining, fragment.length - i);
+            if (!mSkipping && !out.append(fragment, i, n)) {
+                mSkipping = true;
+            }
+            i += n;
+            mRemaining -= n;
+            if (mRemaining == 0 && !mSkipping) {
+                out.end();
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        mHeaderRead = 0;
+        mLength = 0;
+        mRemaining = 0;
+        mSkipping = false;
+    }
+}
@@ -0,0 +1,66 @@
+package com.ble.example.ble_component.frame;
+
+/**
+ * Splits a stream of notifications into frames. A reassembler only finds the boundaries, the
+ * bytes are collected, checked and delivered by the {@link Output} of its {@link FramePipeline}.
+ * Implementations keep state between notifications and are only called by one pipeline.
+ */
+public interface Reassembler {
+
+    /**
+     * where a reassembler puts the frames it finds
+     */
+    interface Output {
+
+        /**
+         * start a new frame, an unfinished frame is discarded
+         *
+         * @return false if no buffer is free, the frame is dropped and its bytes must be skipped
+         */
+        boolean begin();
+
+        /**
+         * @return true while a frame is open
+         */
+        boolean inFrame();
+
+        /**
+         * add bytes to the open frame
+         *
+         * @param src
+         * @param offset
+         * @param length
+         * @return false if the frame got longer than the maximum, it is dropped and the rest
+         * of its bytes must be skipped
+         */
+        boolean append(byte[] src, int offset, int length);
+
+        /**
+         * close the open frame, verify its checksum and deliver it
+         */
+        void end();
+
+        /**
+         * drop the open frame, for example because a fragment of it is missing
+         */
+        void discard();
+
+        /**
+         * count fragments which never arrived
+         *
+         * @param fragments
+         */
+        void lost(int fragments);
+    }
+
+    /**
+     * @param fragment the notification value, only valid for the duration of the call
+     * @param out
+     */
+    void onFragment(byte[] fragment, Output out);
+
+    /**
+     * forget any partial frame, called when the stream restarts
+     */
+    void reset();
+}
@@ -0,0 +1,50 @@
+package com.ble.example.ble_component.frame;
+
+/**
+ * Frames split into numbered fragments. Every notification starts with a header byte,
+ * {@link #FLAG_START} on the first fragment of a frame, {@link #FLAG_END} on the last and a
+ * rolling sequence number in the low six bits. A jump in the sequence counts the missing
+ * fragments and drops the frame they belonged to; fragments are then ignored until the next
+ * start.
+ */
+public class SequencedReassembler implements Reassembler {
+
+    public static final int FLAG_START = 0x80;
+    public static final int FLAG_END = 0x40;
+    public static final int SEQUENCE_MASK = 0x3F;
+
+    private int mExpected = -1;
+
+    @Override
+    public void onFragment(byte[] fragment, Output out) {
+        if (fragment.length == 0) {
+            return;
+        }
+        int header = fragment[0] & 0xFF;
+        int sequence = header & SEQUENCE_MASK;
+        if (mExpected >= 0 && sequence != mExpected) {
+            out.lost((sequence - mExpected) & SEQUENCE_MASK);
+            if (out.inFrame()) {
+                out.discard();
+            }
+        }
+        mExpected = (sequence + 1) & SEQUENCE_MASK;
+
+        if ((header & FLAG_START) != 0) {
+            if (!out.begin()) {
+                return;
+            }
+        } else if (!out.inFrame()) {
+            // the start of this frame was lost or dropped
+            return;
+        }
+        if (out.append(fragment, 1, fragment.length - 1) && (header & FLAG_END) != 0) {
+            out.end();
+        }
+    }
+
+    @Override
+    public void reset() {
+        mExpected = -1;
+    }
+}
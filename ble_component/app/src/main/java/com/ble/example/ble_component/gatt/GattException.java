@@ -0,0 +1,80 @@
+package com.ble.example.ble_component.gatt;
+
+/**
+ * Failure of a queued GATT operation. Positive values of {@link #getStatus()} are the
+ * status codes reported by the remote stack, negative values are raised locally.
+ */
+public class GattException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * the operation did not complete within its timeout
+     */
+    public static final int STATUS_TIMEOUT = -1;
+
+    /**
+     * the platform refused to start the operation
+     */
+    public static final int STATUS_REJECTED = -2;
+
+    /**
+     * the operation was cancelled before it completed
+     */
+    public static final int STATUS_CANCELLED = -3;
+
+    /**
+     * the connection went away while the operation was pending
+     */
+    public static final int STATUS_DISCONNECTED = -4;
+
+    /**
+     * there is no connection, service or characteristic to run the operation on
+     */
+    public static final int STATUS_NOT_CONNECTED = -5;
+
+    /**
+     * the characteristic handle belongs to a service table which is no longer valid
+     */
+    public static final int STATUS_STALE_HANDLE = -6;
+
+    /**
+     * the peer echoed a prepared write with a different value, the reliable write was aborted
+     */
+    public static final int STATUS_VERIFY_FAILED = -7;
+
+    /**
+     * the pairing was rejected by the user or the peer, or the keys did not match
+     */
+    public static final int STATUS_BOND_FAILED = -8;
+
+    /**
+     * the client was closed while the operation was pending
+     */
+    public static final int STATUS_CLOSED = -9;
+
+    /**
+     * {@code GATT_INVALID_ATTRIBUTE_LENGTH}, also used locally for values which cannot be written
+     */
+    public static final int STATUS_INVALID_ATTRIBUTE_LENGTH = 0x0D;
+
+    private final int mStatus;
+
+    public GattException(int status) {
+        this(status, "gatt status " + status);
+    }
+
+    public GattException(int status, String message) {
+        super(message);
+        mStatus = status;
+    }
+
+    /**
+     * get the gatt status code of the failure
+     *
+     * @return
+     */
+    public int getStatus() {
+        return mStatus;
+    }
+}
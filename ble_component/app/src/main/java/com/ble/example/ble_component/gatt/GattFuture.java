@@ -0,0 +1,200 @@
+package com.ble.example.ble_component.gatt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of an asynchronous GATT operation. Callers may either block on {@link #get()} or
+ * register a {@link Listener}, which is invoked on the thread that completes the future.
+ *
+ * @param <T> the result type
+ */
+public class GattFuture<T> implements Future<T> {
+
+    /**
+     * completion callback of a {@link GattFuture}
+     */
+    public interface Listener<T> {
+        void onSuccess(T result);
+
+        void onFailure(GattException e);
+    }
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_SUCCESS = 1;
+    private static final int STATE_FAILED = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    private int mState = STATE_PENDING;
+    private T mResult;
+    private GattException mException;
+    private List<Listener<T>> mListeners;
+
+    /**
+     * create a future which has already failed
+     *
+     * @param status
+     * @return
+     */
+    public static <T> GattFuture<T> failed(int status) {
+        GattFuture<T> future = new GattFuture<>();
+        future.fail(new GattException(status));
+        return future;
+    }
+
+    /**
+     * create a future which has already succeeded
+     *
+     * @param result
+     * @return
+     */
+    public static <T> GattFuture<T> succeeded(T result) {
+        GattFuture<T> future = new GattFuture<>();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * complete the future with a result
+     *
+     * @param result
+     * @return false if the future was already done
+     */
+    public boolean complete(T result) {
+        List<Listener<T>> listeners;
+        synchronized (this) {
+            if (mState != STATE_PENDING) {
+                return false;
+            }
+            mResult = result;
+            mState = STATE_SUCCESS;
+            listeners = mListeners;
+            mListeners = null;
+            notifyAll();
+        }
+        if (listeners != null) {
+            for (Listener<T> listener : listeners) {
+                listener.onSuccess(result);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * fail the future
+     *
+     * @param e
+     * @return false if the future was already done
+     */
+    public boolean fail(GattException e) {
+        return finish(STATE_FAILED, e);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(STATE_CANCELLED, new GattException(GattException.STATUS_CANCELLED));
+    }
+
+    private boolean finish(int state, GattException e) {
+        List<Listener<T>> listeners;
+        synchronized (this) {
+            if (mState != STATE_PENDING) {
+                return false;
+            }
+            mException = e;
+            mState = state;
+            listeners = mListeners;
+            mListeners = null;
+            notifyAll();
+        }
+        if (listeners != null) {
+            for (Listener<T> listener : listeners) {
+                listener.onFailure(e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * register a completion listener, it is called immediately if the future is already done
+     *
+     * @param listener
+     * @return this future
+     */
+    public GattFuture<T> addListener(Listener<T> listener) {
+        boolean success;
+        synchronized (this) {
+            if (mState == STATE_PENDING) {
+                if (mListeners == null) {
+                    mListeners = new ArrayList<>(1);
+                }
+                mListeners.add(listener);
+                return this;
+            }
+            success = mState == STATE_SUCCESS;
+        }
+        if (success) {
+            listener.onSuccess(mResult);
+        } else {
+            listener.onFailure(mException);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == STATE_CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != STATE_PENDING;
+    }
+
+    /**
+     * whether the future completed with a result
+     *
+     * @return
+     */
+    public synchronized boolean isSuccess() {
+        return mState == STATE_SUCCESS;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (mState == STATE_PENDING) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (mState == STATE_PENDING) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        switch (mState) {
+            case STATE_SUCCESS:
+                return mResult;
+            case STATE_CANCELLED:
+                throw new CancellationException();
+            default:
+                throw new ExecutionException(mException);
+        }
+    }
+}
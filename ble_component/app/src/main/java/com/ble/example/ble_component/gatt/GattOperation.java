@@ -0,0 +1,92 @@
+package com.ble.example.ble_component.gatt;
+
+import java.util.UUID;
+
+/**
+ * A single GATT request waiting in a {@link GattOperationQueue}. Subclasses start the request
+ * in {@link #execute()}; the queue completes it when the matching
+ * {@code BluetoothGattCallback} event is reported through
+ * {@link GattOperationQueue#onOperationCompleted(int, UUID, int, Object)}.
+ *
+ * @param <T> the result type
+ */
+public abstract class GattOperation<T> {
+
+    public static final int TYPE_DISCOVER_SERVICES = 1;
+    public static final int TYPE_READ_CHARACTERISTIC = 2;
+    public static final int TYPE_WRITE_CHARACTERISTIC = 3;
+    public static final int TYPE_READ_DESCRIPTOR = 4;
+    public static final int TYPE_WRITE_DESCRIPTOR = 5;
+    public static final int TYPE_REQUEST_MTU = 6;
+    public static final int TYPE_READ_RSSI = 7;
+    /**
+     * a prepared write of a reliable write, completed with the echoed value
+     */
+    public static final int TYPE_PREPARE_WRITE = 8;
+    public static final int TYPE_EXECUTE_WRITE = 9;
+
+    /**
+     * operations which finish as soon as {@link #execute()} returns, e.g. the local
+     * {@code BluetoothGatt#setCharacteristicNotification} call
+     */
+    public static final int TYPE_LOCAL = 100;
+
+    private final int mType;
+    private final UUID mUuid;
+    private final GattFuture<T> mFuture = new GattFuture<>();
+    private long mTimeoutMs = -1;
+
+    // set by the queue while an observer watches it
+    boolean mObserved;
+    boolean mStarted;
+    long mEnqueuedNanos;
+    long mStartedNanos;
+
+    /**
+     * @param type one of the {@code TYPE_} constants
+     * @param uuid the characteristic or descriptor the completion event must refer to,
+     *             or null to accept any completion of the same type
+     */
+    protected GattOperation(int type, UUID uuid) {
+        mType = type;
+        mUuid = uuid;
+    }
+
+    /**
+     * Start the request.
+     *
+     * @return false if the platform refused to start it.
+     */
+    protected abstract boolean execute();
+
+    public int getType() {
+        return mType;
+    }
+
+    public UUID getUuid() {
+        return mUuid;
+    }
+
+    public GattFuture<T> getFuture() {
+        return mFuture;
+    }
+
+    /**
+     * override the queue's default timeout for this operation
+     *
+     * @param timeoutMs
+     * @return this operation
+     */
+    public GattOperation<T> setTimeout(long timeoutMs) {
+        mTimeoutMs = timeoutMs;
+        return this;
+    }
+
+    long getTimeout() {
+        return mTimeoutMs;
+    }
+
+    boolean matches(int type, UUID uuid) {
+        return mType == type && (mUuid == null || mUuid.equals(uuid));
+    }
+}
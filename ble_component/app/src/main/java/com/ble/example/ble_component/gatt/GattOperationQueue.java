@@ -0,0 +1,366 @@
+package com.ble.example.ble_component.gatt;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes the GATT operations of one connection. Android only allows one outstanding
+ * request per {@code BluetoothGatt}, so operations are started one after another: the next
+ * one runs as soon as the completion event of the current one arrives, fails or times out.
+ * <p>
+ * All methods are thread safe, completions are usually reported from binder threads.
+ */
+public class GattOperationQueue {
+
+    public static final long DEFAULT_TIMEOUT_MS = 5000;
+
+    /**
+     * told about the operations of the queue, e.g. to collect metrics
+     */
+    public interface Observer {
+        /**
+         * @return false while nobody collects, the queue then skips taking timestamps
+         */
+        boolean isEnabled();
+
+        /**
+         * @param depth operations waiting or running
+         */
+        void onQueueDepthChanged(int depth);
+
+        /**
+         * Called before the future of the operation completes. Operations which were queued
+         * while the observer was disabled are not reported.
+         *
+         * @param type      the {@code GattOperation.TYPE_} of the operation
+         * @param status    the gatt status, or a {@code GattException.STATUS_} of the queue
+         * @param waitNanos time the operation waited for its turn
+         * @param runNanos  time from its start to its completion, -1 if it never started
+         */
+        void onOperationFinished(int type, int status, long waitNanos, long runNanos);
+    }
+
+    private final ScheduledExecutorService mTimeoutExecutor;
+    private final ArrayDeque<GattOperation<?>> mPending = new ArrayDeque<>();
+    private long mDefaultTimeoutMs = DEFAULT_TIMEOUT_MS;
+    private volatile Observer mObserver;
+
+    private GattOperation<?> mCurrent;
+    private ScheduledFuture<?> mCurrentTimeout;
+    // the last timed out operation, its completion event may still arrive
+    private GattOperation<?> mTimedOut;
+    private boolean mDraining;
+    private int mClosedStatus;
+    private boolean mClosed;
+
+    /**
+     * @param timeoutExecutor used to schedule the per operation timeouts
+     */
+    public GattOperationQueue(ScheduledExecutorService timeoutExecutor) {
+        mTimeoutExecutor = timeoutExecutor;
+    }
+
+    public synchronized void setDefaultTimeout(long timeoutMs) {
+        mDefaultTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * @param observer null to remove the observer
+     */
+    public void setObserver(Observer observer) {
+        mObserver = observer;
+    }
+
+    /**
+     * number of operations waiting or running
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return mPending.size() + (mCurrent != null ? 1 : 0);
+    }
+
+    /**
+     * append an operation, it is started immediately if the connection is idle
+     *
+     * @param operation
+     * @return the future of the operation
+     */
+    public <T> GattFuture<T> enqueue(GattOperation<T> operation) {
+        Observer observer = observer();
+        if (observer != null) {
+            operation.mObserved = true;
+            operation.mEnqueuedNanos = System.nanoTime();
+        }
+        boolean closed;
+        int closedStatus;
+        // decided under one lock, close() either sees the operations or they are refused here
+        synchronized (this) {
+            closed = mClosed;
+            closedStatus = mClosedStatus;
+            if (!closed) {
+                mPending.add(operation);
+            }
+        }
+        if (closed) {
+            finished(operation, closedStatus);
+            operation.getFuture().fail(new GattException(closedStatus));
+            return operation.getFuture();
+        }
+        if (observer != null) {
+            observer.onQueueDepthChanged(size());
+        }
+        drain();
+        return operation.getFuture();
+    }
+
+    /**
+     * append operations as one block, no operation of another caller runs between them
+     *
+     * @param operations
+     * @return the futures of the operations, in the same order
+     */
+    public <T> List<GattFuture<T>> enqueueAll(List<? extends GattOperation<T>> operations) {
+        Observer observer = observer();
+        List<GattFuture<T>> futures = new ArrayList<>(operations.size());
+        for (GattOperation<T> operation : operations) {
+            if (observer != null) {
+                operation.mObserved = true;
+                operation.mEnqueuedNanos = System.nanoTime();
+            }
+            futures.add(operation.getFuture());
+        }
+        boolean closed;
+        int closedStatus;
+        synchronized (this) {
+            closed = mClosed;
+            closedStatus = mClosedStatus;
+            if (!closed) {
+                mPending.addAll(operations);
+            }
+        }
+        if (closed) {
+            for (GattOperation<T> operation : operations) {
+                finished(operation, closedStatus);
+                operation.getFuture().fail(new GattException(closedStatus));
+            }
+            return futures;
+        }
+        if (observer != null) {
+            observer.onQueueDepthChanged(size());
+        }
+        drain();
+        return futures;
+    }
+
+    /**
+     * Report the completion event of an operation. Events which do not match the running
+     * operation are ignored, as is the first event matching an operation which timed out:
+     * it is the late completion of that one rather than of the running operation.
+     *
+     * @param type   the {@code GattOperation.TYPE_} of the event
+     * @param uuid   the characteristic or descriptor of the event, may be null
+     * @param status the gatt status
+     * @param result the result handed to the future on success
+     * @return true if the event completed the running operation
+     */
+    public boolean onOperationCompleted(int type, UUID uuid, int status, Object result) {
+        return complete(type, uuid, status, result) != null;
+    }
+
+    /**
+     * like {@link #onOperationCompleted(int, UUID, int, Object)}, for callers which need to know
+     * what the event completed
+     *
+     * @return the completed operation, null if the event did not match the running one
+     */
+    public GattOperation<?> complete(int type, UUID uuid, int status, Object result) {
+        GattOperation<?> operation;
+        synchronized (this) {
+            if (mTimedOut != null && mTimedOut.matches(type, uuid)) {
+                mTimedOut = null;
+                return null;
+            }
+            if (mCurrent == null || !mCurrent.matches(type, uuid)) {
+                return null;
+            }
+            // the stack answered a later request, the timed out one will not be answered anymore
+            mTimedOut = null;
+            operation = mCurrent;
+            finishCurrent();
+        }
+        finished(operation, status);
+        if (status == 0) {
+            succeed(operation, result);
+        } else {
+            operation.getFuture().fail(new GattException(status));
+        }
+        drain();
+        return operation;
+    }
+
+    /**
+     * fail the running and all waiting operations, e.g. after a disconnect
+     *
+     * @param status
+     */
+    public void clear(int status) {
+        GattOperation<?>[] operations;
+        synchronized (this) {
+            // no late events after a disconnect
+            mTimedOut = null;
+            if (mCurrent != null) {
+                mPending.addFirst(mCurrent);
+                finishCurrent();
+            }
+            operations = mPending.toArray(new GattOperation<?>[mPending.size()]);
+            mPending.clear();
+        }
+        for (GattOperation<?> operation : operations) {
+            finished(operation, status);
+            operation.getFuture().fail(new GattException(status));
+        }
+    }
+
+    /**
+     * fail all operations like {@link #clear(int)} and refuse every later one with the same status
+     *
+     * @param status
+     */
+    public void close(int status) {
+        synchronized (this) {
+            mClosedStatus = status;
+            mClosed = true;
+        }
+        clear(status);
+    }
+
+    public synchronized boolean isClosed() {
+        return mClosed;
+    }
+
+    private void drain() {
+        while (true) {
+            GattOperation<?> operation;
+            synchronized (this) {
+                if (mCurrent != null || mDraining) {
+                    return;
+                }
+                operation = mPending.poll();
+                while (operation != null && operation.getFuture().isDone()) {
+                    // cancelled while waiting
+                    operation = mPending.poll();
+                }
+                if (operation == null) {
+                    return;
+                }
+                mCurrent = operation;
+                mDraining = true;
+                if (operation.mObserved) {
+                    operation.mStarted = true;
+                    operation.mStartedNanos = System.nanoTime();
+                }
+            }
+
+            boolean started;
+            try {
+                started = operation.execute();
+            } catch (RuntimeException e) {
+                started = false;
+            }
+
+            boolean succeeded;
+            synchronized (this) {
+                mDraining = false;
+                if (mCurrent != operation) {
+                    // completed while execute() was still running
+                    continue;
+                }
+                if (started && operation.getType() != GattOperation.TYPE_LOCAL) {
+                    long timeout = operation.getTimeout() >= 0 ? operation.getTimeout() : mDefaultTimeoutMs;
+                    mCurrentTimeout = mTimeoutExecutor.schedule(new Timeout(operation), timeout,
+                            TimeUnit.MILLISECONDS);
+                    return;
+                }
+                finishCurrent();
+                succeeded = started;
+            }
+            finished(operation, succeeded ? 0 : GattException.STATUS_REJECTED);
+            if (succeeded) {
+                succeed(operation, null);
+            } else {
+                operation.getFuture().fail(new GattException(GattException.STATUS_REJECTED));
+            }
+        }
+    }
+
+    private void finishCurrent() {
+        mCurrent = null;
+        if (mCurrentTimeout != null) {
+            mCurrentTimeout.cancel(false);
+            mCurrentTimeout = null;
+        }
+    }
+
+    /**
+     * @return the observer if it is collecting
+     */
+    private Observer observer() {
+        Observer observer = mObserver;
+        return observer != null && observer.isEnabled() ? observer : null;
+    }
+
+    /**
+     * report the end of an operation to the observer, must not hold the lock
+     */
+    private void finished(GattOperation<?> operation, int status) {
+        if (!operation.mObserved) {
+            return;
+        }
+        Observer observer = observer();
+        if (observer == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (operation.mStarted) {
+            observer.onOperationFinished(operation.getType(), status,
+                    operation.mStartedNanos - operation.mEnqueuedNanos, now - operation.mStartedNanos);
+        } else {
+            observer.onOperationFinished(operation.getType(), status, now - operation.mEnqueuedNanos, -1);
+        }
+        observer.onQueueDepthChanged(size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void succeed(GattOperation<?> operation, Object result) {
+        ((GattFuture<Object>) operation.getFuture()).complete(result);
+    }
+
+    private class Timeout implements Runnable {
+        private final GattOperation<?> mOperation;
+
+        Timeout(GattOperation<?> operation) {
+            mOperation = operation;
+        }
+
+        @Override
+        public void run() {
+            synchronized (GattOperationQueue.this) {
+                if (mCurrent != mOperation) {
+                    return;
+                }
+                mCurrent = null;
+                mCurrentTimeout = null;
+                mTimedOut = mOperation;
+            }
+            finished(mOperation, GattException.STATUS_TIMEOUT);
+            mOperation.getFuture().fail(new GattException(GattException.STATUS_TIMEOUT));
+            drain();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.ble.example.ble_component.gatt;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The results of a batch of characteristic reads on one device, in the order they were
+ * requested. Every item has its own status, so a failed read does not hide the others.
+ * Snapshots are immutable, values are copied on the way in and out.
+ */
+public final class ReadSnapshot {
+
+    /**
+     * the result of one read
+     */
+    public static final class Item {
+        private final UUID mUuid;
+        private final byte[] mValue;
+        private final int mStatus;
+        private final long mTimestampNanos;
+
+        Item(UUID uuid, byte[] value, int status, long timestampNanos) {
+            mUuid = uuid;
+            mValue = value;
+            mStatus = status;
+            mTimestampNanos = timestampNanos;
+        }
+
+        public UUID getUuid() {
+            return mUuid;
+        }
+
+        /**
+         * @return a copy of the value, null if the read failed
+         */
+        public byte[] getValue() {
+            return mValue == null ? null : mValue.clone();
+        }
+
+        /**
+         * @return 0, or the gatt status or {@code GattException.STATUS_} the read failed with
+         */
+        public int getStatus() {
+            return mStatus;
+        }
+
+        public boolean isSuccess() {
+            return mStatus == 0;
+        }
+
+        /**
+         * get the {@code System.nanoTime()} at which the read completed
+         *
+         * @return
+         */
+        public long getTimestampNanos() {
+            return mTimestampNanos;
+        }
+    }
+
+    private final String mAddress;
+    private final Item[] mItems;
+    private final long mStartedNanos;
+    private final long mCompletedNanos;
+
+    private ReadSnapshot(String address, Item[] items, long startedNanos, long completedNanos) {
+        mAddress = address;
+        mItems = items;
+        mStartedNanos = startedNanos;
+        mCompletedNanos = completedNanos;
+    }
+
+    /**
+     * Wait for queued reads and collect them into a snapshot. The future never fails, the
+     * failures are in the items.
+     *
+     * @param address
+     * @param uuids   the characteristic of each read
+     * @param reads   the futures of the reads, same order as the uuids
+     * @return the future of the snapshot, completed once every read is done
+     */
+    public static GattFuture<ReadSnapshot> collect(final String address, List<UUID> uuids,
+                                                   List<GattFuture<byte[]>> reads) {
+        final long started = System.nanoTime();
+        final UUID[] targets = uuids.toArray(new UUID[uuids.size()]);
+        final Item[] items = new Item[reads.size()];
+        final GattFuture<ReadSnapshot> future = new GattFuture<>();
+        if (items.length == 0) {
+            future.complete(new ReadSnapshot(address, items, started, started));
+            return future;
+        }
+        final AtomicInteger remaining = new AtomicInteger(items.length);
+        for (int i = 0; i < items.length; i++) {
+            final int index = i;
+            reads.get(i).addListener(new GattFuture.Listener<byte[]>() {
+                @Override
+                public void onSuccess(byte[] result) {
+                    done(new Item(targets[index], result == null ? new byte[0] : result.clone(), 0,
+                            System.nanoTime()));
+                }
+
+                @Override
+                public void onFailure(GattException e) {
+                    done(new Item(targets[index], null, e.getStatus(), System.nanoTime()));
+                }
+
+                private void done(Item item) {
+                    synchronized (items) {
+                        items[index] = item;
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        synchronized (items) {
+                            future.complete(new ReadSnapshot(address, items, started, System.nanoTime()));
+                        }
+                    }
+                }
+            });
+        }
+        return future;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    public int size() {
+        return mItems.length;
+    }
+
+    public Item getItem(int index) {
+        return mItems[index];
+    }
+
+    /**
+     * @param uuid
+     * @return the first item of the characteristic, null if it was not read
+     */
+    public Item getItem(UUID uuid) {
+        for (Item item : mItems) {
+            if (item.mUuid.equals(uuid)) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param uuid
+     * @return a copy of the value, null if the characteristic was not read or the read failed
+     */
+    public byte[] getValue(UUID uuid) {
+        Item item = getItem(uuid);
+        return item == null ? null : item.getValue();
+    }
+
+    /**
+     * @return true if every read succeeded
+     */
+    public boolean isComplete() {
+        for (Item item : mItems) {
+            if (!item.isSuccess()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * get the {@code System.nanoTime()} at which the reads were collected, right after queueing them
+     *
+     * @return
+     */
+    public long getStartedNanos() {
+        return mStartedNanos;
+    }
+
+    public long getCompletedNanos() {
+        return mCompletedNanos;
+    }
+}
@@ -0,0 +1,225 @@
+package com.ble.example.ble_component.metrics;
+
+import com.ble.example.ble_component.gatt.GattOperation;
+import com.ble.example.ble_component.gatt.GattOperationQueue;
+
+/**
+ * Counters and latencies of one device: per kind of operation how often it ran, how often it
+ * failed with which gatt status and how long it took; the time operations wait in the queue and
+ * the depth of the queue. As the observer of the device's {@link GattOperationQueue} it collects
+ * the reads, writes and discoveries itself, connects and notifications are reported by the
+ * service through {@link GattMetrics}.
+ */
+public class DeviceMetrics implements GattOperationQueue.Observer {
+
+    public static final int OP_CONNECT = 0;
+    public static final int OP_DISCOVER = 1;
+    public static final int OP_READ = 2;
+    public static final int OP_WRITE = 3;
+    public static final int OP_NOTIFY = 4;
+    /**
+     * MTU and RSSI requests
+     */
+    public static final int OP_OTHER = 5;
+    /**
+     * disconnects, counted with their status but without latency
+     */
+    public static final int OP_DISCONNECT = 6;
+    public static final int OP_COUNT = 7;
+
+    /**
+     * tallied status codes: the negative ones of the queue and the 8 bit gatt statuses
+     */
+    public static final int MIN_STATUS = -8;
+    public static final int MAX_STATUS = 0xFF;
+
+    private static final String[] NAMES = {"connect", "discover", "read", "write", "notify", "other", "disconnect"};
+
+    private final GattMetrics mOwner;
+    private final String mAddress;
+    private final LatencyHistogram[] mLatencies = new LatencyHistogram[OP_COUNT];
+    private final long[] mFailures = new long[OP_COUNT];
+    // per operation the number of failures by status, allocated on the first failure
+    private final long[][] mStatusCounts = new long[OP_COUNT][];
+    private LatencyHistogram mQueueWait = new LatencyHistogram();
+    private int mQueueDepth;
+    private int mMaxQueueDepth;
+    private long mConnectStartedNanos = -1;
+
+    DeviceMetrics(GattMetrics owner, String address) {
+        mOwner = owner;
+        mAddress = address;
+        for (int i = 0; i < OP_COUNT; i++) {
+            mLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * @param op one of the {@code OP_} constants
+     * @return the name used by the exporters
+     */
+    public static String getName(int op) {
+        return NAMES[op];
+    }
+
+    /**
+     * @param op
+     * @return completed and failed operations
+     */
+    public synchronized long getCount(int op) {
+        return mLatencies[op].getCount() + mFailures[op];
+    }
+
+    public synchronized long getFailures(int op) {
+        return mFailures[op];
+    }
+
+    /**
+     * @param op
+     * @param status between {@link #MIN_STATUS} and {@link #MAX_STATUS}
+     * @return number of times the operation ended with the status, 0 counts successes
+     */
+    public synchronized long getStatusCount(int op, int status) {
+        if (status == 0) {
+            return mLatencies[op].getCount();
+        }
+        long[] counts = mStatusCounts[op];
+        return counts == null ? 0 : counts[indexOf(status)];
+    }
+
+    /**
+     * @param op
+     * @return the latencies of the successful operations
+     */
+    public synchronized LatencyHistogram getLatency(int op) {
+        return mLatencies[op].copy();
+    }
+
+    public synchronized LatencyHistogram getQueueWait() {
+        return mQueueWait.copy();
+    }
+
+    public synchronized int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    public synchronized int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return mOwner.isEnabled();
+    }
+
+    @Override
+    public synchronized void onQueueDepthChanged(int depth) {
+        mQueueDepth = depth;
+        mMaxQueueDepth = Math.max(mMaxQueueDepth, depth);
+    }
+
+    @Override
+    public synchronized void onOperationFinished(int type, int status, long waitNanos, long runNanos) {
+        int op = opOf(type);
+        if (op < 0) {
+            return;
+        }
+        mQueueWait.record(waitNanos);
+        if (status == 0) {
+            mLatencies[op].record(runNanos);
+        } else {
+            fail(op, status);
+        }
+    }
+
+    synchronized void onConnectStarted() {
+        mConnectStartedNanos = System.nanoTime();
+    }
+
+    synchronized void onConnected() {
+        if (mConnectStartedNanos >= 0) {
+            mLatencies[OP_CONNECT].record(System.nanoTime() - mConnectStartedNanos);
+            mConnectStartedNanos = -1;
+        }
+    }
+
+    synchronized void onConnectFailed(int status) {
+        mConnectStartedNanos = -1;
+        fail(OP_CONNECT, status);
+    }
+
+    synchronized void onDisconnected(int status) {
+        if (status == 0) {
+            mLatencies[OP_DISCONNECT].record(0);
+        } else {
+            fail(OP_DISCONNECT, status);
+        }
+    }
+
+    synchronized void onNotification(long dispatchNanos) {
+        mLatencies[OP_NOTIFY].record(dispatchNanos);
+    }
+
+    synchronized void reset() {
+        for (int i = 0; i < OP_COUNT; i++) {
+            mLatencies[i] = new LatencyHistogram();
+            mFailures[i] = 0;
+            mStatusCounts[i] = null;
+        }
+        mQueueWait = new LatencyHistogram();
+        mMaxQueueDepth = mQueueDepth;
+    }
+
+    synchronized DeviceMetrics copy() {
+        DeviceMetrics copy = new DeviceMetrics(mOwner, mAddress);
+        for (int i = 0; i < OP_COUNT; i++) {
+            copy.mLatencies[i] = mLatencies[i].copy();
+            copy.mFailures[i] = mFailures[i];
+            copy.mStatusCounts[i] = mStatusCounts[i] == null ? null : mStatusCounts[i].clone();
+        }
+        copy.mQueueWait = mQueueWait.copy();
+        copy.mQueueDepth = mQueueDepth;
+        copy.mMaxQueueDepth = mMaxQueueDepth;
+        return copy;
+    }
+
+    private void fail(int op, int status) {
+        mFailures[op]++;
+        if (mStatusCounts[op] == null) {
+            mStatusCounts[op] = new long[MAX_STATUS - MIN_STATUS + 1];
+        }
+        mStatusCounts[op][indexOf(status)]++;
+    }
+
+    /**
+     * statuses out of range are tallied as {@link #MAX_STATUS}
+     */
+    private static int indexOf(int status) {
+        return (status < MIN_STATUS || status > MAX_STATUS ? MAX_STATUS : status) - MIN_STATUS;
+    }
+
+    private static int opOf(int type) {
+        switch (type) {
+            case GattOperation.TYPE_DISCOVER_SERVICES:
+                return OP_DISCOVER;
+            case GattOperation.TYPE_READ_CHARACTERISTIC:
+            case GattOperation.TYPE_READ_DESCRIPTOR:
+                return OP_READ;
+            case GattOperation.TYPE_WRITE_CHARACTERISTIC:
+            case GattOperation.TYPE_WRITE_DESCRIPTOR:
+            case GattOperation.TYPE_PREPARE_WRITE:
+            case GattOperation.TYPE_EXECUTE_WRITE:
+                return OP_WRITE;
+            case GattOperation.TYPE_REQUEST_MTU:
+            case GattOperation.TYPE_READ_RSSI:
+                return OP_OTHER;
+            default:
+                // local operations never reach the radio
+                return -1;
+        }
+    }
+}
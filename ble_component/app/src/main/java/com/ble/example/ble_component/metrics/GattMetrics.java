@@ -0,0 +1,155 @@
+package com.ble.example.ble_component.metrics;
+
+import com.ble.example.ble_component.util.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The metrics of all devices. Disabled by default: then every {@code on} method returns after
+ * reading a volatile flag and the operation queues skip their timestamps, so leaving the
+ * instrumentation in the code costs next to nothing.
+ * <p>
+ * Install {@link #getDevice(String)} as the observer of a device's {@code GattOperationQueue}
+ * to collect its operations; report connects, disconnects and notifications through the
+ * methods here.
+ */
+public class GattMetrics {
+
+    private final ConcurrentHashMap<String, DeviceMetrics> mDevices = new ConcurrentHashMap<>();
+    private volatile boolean mEnabled;
+
+    private MetricsExporter mExporter;
+    private Scheduler.Task mExportTask;
+
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * @param address
+     * @return the metrics of the device, created on first use
+     */
+    public DeviceMetrics getDevice(String address) {
+        DeviceMetrics device = mDevices.get(address);
+        if (device == null) {
+            DeviceMetrics created = new DeviceMetrics(this, address);
+            device = mDevices.putIfAbsent(address, created);
+            if (device == null) {
+                device = created;
+            }
+        }
+        return device;
+    }
+
+    /**
+     * @return a copy of the metrics of every device
+     */
+    public List<DeviceMetrics> snapshot() {
+        List<DeviceMetrics> devices = new ArrayList<>(mDevices.size());
+        for (DeviceMetrics device : mDevices.values()) {
+            devices.add(device.copy());
+        }
+        return devices;
+    }
+
+    /**
+     * forget everything collected so far
+     */
+    public void reset() {
+        for (DeviceMetrics device : mDevices.values()) {
+            device.reset();
+        }
+    }
+
+    public void onConnectStarted(String address) {
+        if (mEnabled) {
+            getDevice(address).onConnectStarted();
+        }
+    }
+
+    public void onConnected(String address) {
+        if (mEnabled) {
+            getDevice(address).onConnected();
+        }
+    }
+
+    /**
+     * @param address
+     * @param status the gatt status the attempt failed with
+     */
+    public void onConnectFailed(String address, int status) {
+        if (mEnabled) {
+            getDevice(address).onConnectFailed(status);
+        }
+    }
+
+    public void onDisconnected(String address, int status) {
+        if (mEnabled) {
+            getDevice(address).onDisconnected(status);
+        }
+    }
+
+    /**
+     * @param address
+     * @param dispatchNanos time it took to hand the notification to its listeners
+     */
+    public void onNotification(String address, long dispatchNanos) {
+        if (mEnabled) {
+            getDevice(address).onNotification(dispatchNanos);
+        }
+    }
+
+    /**
+     * export a snapshot periodically while enabled, replaces an earlier exporter
+     *
+     * @param exporter
+     * @param scheduler runs the exports
+     * @param periodMs
+     */
+    public synchronized void startExport(final MetricsExporter exporter, final Scheduler scheduler,
+                                         final long periodMs) {
+        stopExport();
+        mExporter = exporter;
+        mExportTask = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (GattMetrics.this) {
+                    if (mExporter != exporter) {
+                        return;
+                    }
+                    mExportTask = scheduler.schedule(this, periodMs);
+                }
+                if (mEnabled) {
+                    exporter.export(snapshot());
+                }
+            }
+        }, periodMs);
+    }
+
+    public synchronized void stopExport() {
+        if (mExportTask != null) {
+            mExportTask.cancel();
+            mExportTask = null;
+        }
+        mExporter = null;
+    }
+
+    /**
+     * export a snapshot to the exporter of {@link #startExport} now
+     */
+    public void export() {
+        MetricsExporter exporter;
+        synchronized (this) {
+            exporter = mExporter;
+        }
+        if (exporter != null) {
+            exporter.export(snapshot());
+        }
+    }
+}
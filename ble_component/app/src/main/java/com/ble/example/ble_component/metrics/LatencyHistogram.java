@@ -0,0 +1,85 @@
+package com.ble.example.ble_component.metrics;
+
+/**
+ * Latencies in power of two buckets of microseconds: bucket 0 holds everything below 1 us,
+ * bucket {@code i} the range {@code [2^(i-1), 2^i)} us, the last one everything above. Recording
+ * never allocates; percentiles are the upper bound of the bucket they fall in.
+ * <p>
+ * Not thread safe, {@link DeviceMetrics} guards its histograms.
+ */
+public class LatencyHistogram {
+
+    public static final int BUCKETS = 32;
+
+    private final long[] mCounts = new long[BUCKETS];
+    private long mCount;
+    private long mTotalNanos;
+    private long mMaxNanos;
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        mCounts[bucketOf(nanos)]++;
+        mCount++;
+        mTotalNanos += nanos;
+        mMaxNanos = Math.max(mMaxNanos, nanos);
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getBucketCount(int bucket) {
+        return mCounts[bucket];
+    }
+
+    public long getMeanNanos() {
+        return mCount == 0 ? 0 : mTotalNanos / mCount;
+    }
+
+    public long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return the upper bound of the bucket the quantile falls in, at most the largest latency
+     */
+    public long getPercentileNanos(double quantile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * mCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.min(getUpperBoundNanos(i), mMaxNanos);
+            }
+        }
+        return mMaxNanos;
+    }
+
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        System.arraycopy(mCounts, 0, copy.mCounts, 0, BUCKETS);
+        copy.mCount = mCount;
+        copy.mTotalNanos = mTotalNanos;
+        copy.mMaxNanos = mMaxNanos;
+        return copy;
+    }
+
+    /**
+     * @param bucket
+     * @return the exclusive upper bound of the bucket, {@code Long.MAX_VALUE} for the last one
+     */
+    public static long getUpperBoundNanos(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) * 1000;
+    }
+
+    static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+}
@@ -0,0 +1,62 @@
+package com.ble.example.ble_component.metrics;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes the metrics to logcat, one line per device and kind of operation:
+ * <pre>
+ * AA:BB:CC:DD:EE:FF read n=120 failed=2 p50=16.4ms p99=65.5ms max=71.2ms status[133]=2
+ * AA:BB:CC:DD:EE:FF notify n=5400 failed=0 p50=8us p99=32us max=1.2ms
+ * AA:BB:CC:DD:EE:FF queue depth=0 max=6 wait p50=1us p99=32.8ms
+ * </pre>
+ */
+public class LogExporter implements MetricsExporter {
+
+    private final String mTag;
+
+    public LogExporter(String tag) {
+        mTag = tag;
+    }
+
+    @Override
+    public void export(List<DeviceMetrics> devices) {
+        for (DeviceMetrics device : devices) {
+            for (int op = 0; op < DeviceMetrics.OP_COUNT; op++) {
+                if (device.getCount(op) > 0) {
+                    Log.i(mTag, format(device, op));
+                }
+            }
+            LatencyHistogram wait = device.getQueueWait();
+            Log.i(mTag, String.format(Locale.US, "%s queue depth=%d max=%d wait p50=%s p99=%s",
+                    device.getAddress(), device.getQueueDepth(), device.getMaxQueueDepth(),
+                    duration(wait.getPercentileNanos(0.5)), duration(wait.getPercentileNanos(0.99))));
+        }
+    }
+
+    static String format(DeviceMetrics device, int op) {
+        LatencyHistogram latency = device.getLatency(op);
+        StringBuilder line = new StringBuilder(String.format(Locale.US, "%s %s n=%d failed=%d",
+                device.getAddress(), DeviceMetrics.getName(op), device.getCount(op), device.getFailures(op)));
+        if (op != DeviceMetrics.OP_DISCONNECT && latency.getCount() > 0) {
+            line.append(" p50=").append(duration(latency.getPercentileNanos(0.5)))
+                    .append(" p99=").append(duration(latency.getPercentileNanos(0.99)))
+                    .append(" max=").append(duration(latency.getMaxNanos()));
+        }
+        if (device.getFailures(op) > 0) {
+            for (int status = DeviceMetrics.MIN_STATUS; status <= DeviceMetrics.MAX_STATUS; status++) {
+                long count = status == 0 ? 0 : device.getStatusCount(op, status);
+                if (count > 0) {
+                    line.append(" status[").append(status).append("]=").append(count);
+                }
+            }
+        }
+        return line.toString();
+    }
+
+    private static String duration(long nanos) {
+        return nanos < 1000000 ? nanos / 1000 + "us" : String.format(Locale.US, "%.1fms", nanos / 1e6);
+    }
+}
@@ -0,0 +1,13 @@
+package com.ble.example.ble_component.metrics;
+
+import java.util.List;
+
+/**
+ * receives the metrics of all devices, periodically or on {@link GattMetrics#export()}
+ */
+public interface MetricsExporter {
+    /**
+     * @param devices snapshots, the exporter may keep them
+     */
+    void export(List<DeviceMetrics> devices);
+}
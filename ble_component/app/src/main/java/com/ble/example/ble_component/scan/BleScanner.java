@@ -0,0 +1,335 @@
+package com.ble.example.ble_component.scan;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelUuid;
+import android.os.SystemClock;
+
+import com.ble.example.ble_component.advert.AdvertisementRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Scan pipeline on top of {@code BluetoothLeScanner}. The filters of the {@link ScanConfig}
+ * run in the controller and, where the controller supports it, the results are batched in
+ * hardware. A {@link DeviceTracker} then coalesces the advertisements per device, and the
+ * listener gets the devices worth reporting in one call per report delay instead of one call
+ * per advertisement.
+ * <p>
+ * Before Lollipop the deprecated {@code startLeScan} feeds the same pipeline and the filters
+ * run in software. All methods must be called on the looper thread of the scanner, which is
+ * also where the listener is called.
+ */
+public class BleScanner {
+
+    private final BluetoothAdapter mAdapter;
+    private final Handler mHandler;
+    private final AdvertisementRecord mRecord = new AdvertisementRecord();
+    private final ArrayList<SeenDevice> mPending = new ArrayList<>();
+    private final List<SeenDevice> mPendingView = Collections.unmodifiableList(mPending);
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private ScanConfig mConfig;
+    private ScanListener mListener;
+    private DeviceTracker mTracker;
+    private boolean mScanning;
+    private boolean mFlushScheduled;
+    private boolean mInBatch;
+    private long mSoftwareDelayMs;
+    private Object mScanCallback;
+    private BluetoothAdapter.LeScanCallback mLeScanCallback;
+
+    private long mAdvertisementCount;
+    private long mReportCount;
+    private long mDeliveryCount;
+
+    /**
+     * @param adapter
+     * @param looper the thread of the pipeline and the listener
+     */
+    public BleScanner(BluetoothAdapter adapter, Looper looper) {
+        mAdapter = adapter;
+        mHandler = new Handler(looper);
+    }
+
+    /**
+     * Start scanning, a running scan is restarted with the new settings. Restarting with the
+     * same config keeps the devices seen so far, so their reports stay deduplicated.
+     *
+     * @param config
+     * @param listener
+     * @return false if the scan could not be started
+     */
+    public boolean start(ScanConfig config, ScanListener listener) {
+        stop();
+        if (mTracker == null || config != mConfig) {
+            mTracker = new DeviceTracker(config.getMaxDevices(), config.getDedupIntervalMs(),
+                    config.getRssiThreshold(), config.getRssiSmoothing());
+        }
+        mConfig = config;
+        mListener = listener;
+        mScanning = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? startLollipop() : startLegacy();
+        return mScanning;
+    }
+
+    /**
+     * stop scanning and deliver what is still pending
+     */
+    public void stop() {
+        if (!mScanning) {
+            return;
+        }
+        mScanning = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            stopLollipop();
+        } else {
+            mAdapter.stopLeScan(mLeScanCallback);
+            mLeScanCallback = null;
+        }
+        flush();
+    }
+
+    public boolean isScanning() {
+        return mScanning;
+    }
+
+    /**
+     * the devices seen so far
+     *
+     * @return null before the first start
+     */
+    public DeviceTracker getTracker() {
+        return mTracker;
+    }
+
+    /**
+     * number of advertisements which reached the application
+     *
+     * @return
+     */
+    public long getAdvertisementCount() {
+        return mAdvertisementCount;
+    }
+
+    /**
+     * number of device updates handed to the listener
+     *
+     * @return
+     */
+    public long getReportCount() {
+        return mReportCount;
+    }
+
+    /**
+     * number of listener calls
+     *
+     * @return
+     */
+    public long getDeliveryCount() {
+        return mDeliveryCount;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private boolean startLollipop() {
+        BluetoothLeScanner scanner = mAdapter.getBluetoothLeScanner();
+        if (scanner == null) {
+            return false;
+        }
+        long reportDelay = mConfig.getReportDelayMs();
+        boolean hardwareBatching = reportDelay > 0 && mAdapter.isOffloadedScanBatchingSupported();
+        mSoftwareDelayMs = hardwareBatching ? 0 : reportDelay;
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(mConfig.getScanMode())
+                .setReportDelay(hardwareBatching ? reportDelay : 0)
+                .build();
+
+        List<ScanFilter> filters = new ArrayList<>();
+        for (DeviceFilter filter : mConfig.getFilters()) {
+            ScanFilter.Builder builder = new ScanFilter.Builder();
+            if (filter.getAddress() != null) {
+                builder.setDeviceAddress(filter.getAddress());
+            }
+            if (filter.getName() != null) {
+                builder.setDeviceName(filter.getName());
+            }
+            if (filter.getServiceUuid() != null) {
+                builder.setServiceUuid(new ParcelUuid(filter.getServiceUuid()));
+            }
+            if (filter.getManufacturerId() >= 0) {
+                builder.setManufacturerData(filter.getManufacturerId(), new byte[0]);
+            }
+            filters.add(builder.build());
+        }
+
+        ScanCallback callback = new ScanCallback() {
+            @Override
+            public void onScanResult(int callbackType, final ScanResult result) {
+                if (Looper.myLooper() == mHandler.getLooper()) {
+                    onScanResultReceived(this, result);
+                } else {
+                    final ScanCallback callback = this;
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onScanResultReceived(callback, result);
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void onBatchScanResults(final List<ScanResult> results) {
+                final ScanCallback callback = this;
+                Runnable task = new Runnable() {
+                    @Override
+                    public void run() {
+                        // one listener call for the whole hardware batch
+                        mInBatch = true;
+                        try {
+                            for (int i = 0; i < results.size(); i++) {
+                                onScanResultReceived(callback, results.get(i));
+                            }
+                        } finally {
+                            mInBatch = false;
+                        }
+                        flush();
+                    }
+                };
+                if (Looper.myLooper() == mHandler.getLooper()) {
+                    task.run();
+                } else {
+                    mHandler.post(task);
+                }
+            }
+
+            @Override
+            public void onScanFailed(final int errorCode) {
+                final ScanCallback callback = this;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mScanCallback != callback) {
+                            return;
+                        }
+                        mScanCallback = null;
+                        mScanning = false;
+                        mListener.onScanFailed(errorCode);
+                    }
+                });
+            }
+        };
+        mScanCallback = callback;
+        scanner.startScan(filters, settings, callback);
+        return true;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void onScanResultReceived(ScanCallback callback, ScanResult result) {
+        if (callback != mScanCallback) {
+            // a late result of a stopped run
+            return;
+        }
+        ScanRecord record = result.getScanRecord();
+        onAdvertisement(result.getDevice().getAddress(), record == null ? null : record.getDeviceName(),
+                result.getRssi(), record == null ? null : record.getBytes(), false);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void stopLollipop() {
+        BluetoothLeScanner scanner = mAdapter.getBluetoothLeScanner();
+        ScanCallback callback = (ScanCallback) mScanCallback;
+        mScanCallback = null;
+        if (scanner != null && callback != null) {
+            scanner.stopScan(callback);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private boolean startLegacy() {
+        mSoftwareDelayMs = mConfig.getReportDelayMs();
+        mLeScanCallback = new BluetoothAdapter.LeScanCallback() {
+            @Override
+            public void onLeScan(final BluetoothDevice device, final int rssi, final byte[] scanRecord) {
+                final BluetoothAdapter.LeScanCallback callback = this;
+                // called on a binder thread, the pipeline lives on the looper
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (callback == mLeScanCallback) {
+                            onAdvertisement(device.getAddress(), null, rssi, scanRecord, true);
+                        }
+                    }
+                });
+            }
+        };
+        return mAdapter.startLeScan(mLeScanCallback);
+    }
+
+    private void onAdvertisement(String address, String name, int rssi, byte[] scanRecord, boolean softwareFilter) {
+        mAdvertisementCount++;
+        if (rssi < mConfig.getMinRssi()) {
+            return;
+        }
+        if (softwareFilter) {
+            AdvertisementRecord record = scanRecord == null ? null : mRecord.wrap(scanRecord);
+            if (record != null && name == null && mTracker.get(address) == null) {
+                // parse the name once per device instead of asking the adapter for it
+                name = record.getLocalName();
+            }
+            if (!mConfig.matches(address, name, record)) {
+                return;
+            }
+        }
+        SeenDevice device = mTracker.offer(address, name, rssi, scanRecord, SystemClock.elapsedRealtime());
+        if (device == null || device.mPending) {
+            return;
+        }
+        device.mPending = true;
+        mPending.add(device);
+        if (mSoftwareDelayMs <= 0) {
+            if (!mInBatch) {
+                flush();
+            }
+        } else if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mHandler.postDelayed(mFlushTask, mSoftwareDelayMs);
+        }
+    }
+
+    private void flush() {
+        if (mFlushScheduled) {
+            mFlushScheduled = false;
+            mHandler.removeCallbacks(mFlushTask);
+        }
+        if (mPending.isEmpty()) {
+            return;
+        }
+        mReportCount += mPending.size();
+        mDeliveryCount++;
+        try {
+            mListener.onDevicesUpdated(mPendingView);
+        } finally {
+            for (int i = 0; i < mPending.size(); i++) {
+                mPending.get(i).mPending = false;
+            }
+            mPending.clear();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.ble.example.ble_component.scan;
+
+import com.ble.example.ble_component.advert.AdvertisementRecord;
+
+import java.util.UUID;
+
+/**
+ * Criteria an advertisement has to meet, all criteria which are set must match. On Lollipop
+ * and later the filter is handed to the controller as a {@code ScanFilter}, so advertisements
+ * which do not match never wake the application up. Older platforms apply it in software.
+ */
+public class DeviceFilter {
+
+    private String mAddress;
+    private String mName;
+    private UUID mServiceUuid;
+    private int mManufacturerId = -1;
+
+    /**
+     * @param address the device address, e.g. "00:11:22:33:44:55"
+     * @return this filter
+     */
+    public DeviceFilter setAddress(String address) {
+        mAddress = address;
+        return this;
+    }
+
+    /**
+     * @param name the complete local name
+     * @return this filter
+     */
+    public DeviceFilter setName(String name) {
+        mName = name;
+        return this;
+    }
+
+    /**
+     * @param serviceUuid a service uuid listed in the advertisement
+     * @return this filter
+     */
+    public DeviceFilter setServiceUuid(UUID serviceUuid) {
+        mServiceUuid = serviceUuid;
+        return this;
+    }
+
+    /**
+     * @param manufacturerId the company identifier of the manufacturer specific data
+     * @return this filter
+     */
+    public DeviceFilter setManufacturerId(int manufacturerId) {
+        mManufacturerId = manufacturerId;
+        return this;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public UUID getServiceUuid() {
+        return mServiceUuid;
+    }
+
+    /**
+     * @return -1 if the filter does not look at manufacturer data
+     */
+    public int getManufacturerId() {
+        return mManufacturerId;
+    }
+
+    /**
+     * software version of the filter
+     *
+     * @param address
+     * @param name       may be null
+     * @param scanRecord the raw advertisement, may be null
+     * @return
+     */
+    public boolean matches(String address, String name, byte[] scanRecord) {
+        return matches(address, name, scanRecord == null ? null : new AdvertisementRecord().wrap(scanRecord));
+    }
+
+    /**
+     * software version of the filter over an already parsed advertisement
+     *
+     * @param address
+     * @param name   may be null
+     * @param record may be null
+     * @return
+     */
+    public boolean matches(String address, String name, AdvertisementRecord record) {
+        if (mAddress != null && !mAddress.equalsIgnoreCase(address)) {
+            return false;
+        }
+        if (mName != null && !mName.equals(name)) {
+            return false;
+        }
+        if (mServiceUuid == null && mManufacturerId < 0) {
+            return true;
+        }
+        return record != null
+                && (mServiceUuid == null || record.hasServiceUuid(mServiceUuid))
+                && (mManufacturerId < 0 || record.getManufacturerData(mManufacturerId) != null);
+    }
+}
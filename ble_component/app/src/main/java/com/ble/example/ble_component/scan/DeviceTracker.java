@@ -0,0 +1,118 @@
+package com.ble.example.ble_component.scan;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Software stage of the scan pipeline: coalesces the advertisements of each device and decides
+ * which of them are worth a report. A device is reported when it is first seen, when its
+ * smoothed rssi moved by at least the rssi threshold, when its advertisement content changed,
+ * and otherwise at most once per dedup interval. The devices are kept in a bounded LRU, the
+ * device which advertised least recently is forgotten first.
+ * <p>
+ * Not thread safe, the pipeline confines it to one thread.
+ */
+public class DeviceTracker {
+
+    private final LinkedHashMap<String, SeenDevice> mDevices;
+    private final long mDedupIntervalMs;
+    private final float mRssiThreshold;
+    private final float mRssiSmoothing;
+    private long mEvictedCount;
+
+    /**
+     * @param maxDevices      number of devices remembered
+     * @param dedupIntervalMs minimum time between two reports of an unchanged device
+     * @param rssiThreshold   report early when the smoothed rssi moved by this many dB
+     * @param rssiSmoothing   weight of a new sample in the smoothed rssi, 1 disables smoothing
+     */
+    public DeviceTracker(final int maxDevices, long dedupIntervalMs, float rssiThreshold, float rssiSmoothing) {
+        mDevices = new LinkedHashMap<String, SeenDevice>(Math.min(maxDevices, 64), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SeenDevice> eldest) {
+                if (size() > maxDevices) {
+                    mEvictedCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        mDedupIntervalMs = dedupIntervalMs;
+        mRssiThreshold = rssiThreshold;
+        mRssiSmoothing = rssiSmoothing;
+    }
+
+    /**
+     * account for one advertisement
+     *
+     * @param address
+     * @param name       may be null
+     * @param rssi
+     * @param scanRecord may be null
+     * @param nowMs
+     * @return the device if the advertisement should be reported, otherwise null
+     */
+    public SeenDevice offer(String address, String name, int rssi, byte[] scanRecord, long nowMs) {
+        SeenDevice device = mDevices.get(address);
+        if (device == null) {
+            device = new SeenDevice(address);
+            device.mFirstSeenMs = nowMs;
+            device.mSmoothedRssi = rssi;
+            device.mName = name;
+            device.mScanRecord = scanRecord;
+            mDevices.put(address, device);
+            return report(device, rssi, nowMs);
+        }
+        device.mSmoothedRssi += mRssiSmoothing * (rssi - device.mSmoothedRssi);
+        if (name != null) {
+            device.mName = name;
+        }
+        boolean changed = scanRecord != null && !Arrays.equals(scanRecord, device.mScanRecord);
+        if (scanRecord != null) {
+            device.mScanRecord = scanRecord;
+        }
+        if (changed || nowMs - device.mReportedMs >= mDedupIntervalMs
+                || Math.abs(device.mSmoothedRssi - device.mReportedRssi) >= mRssiThreshold) {
+            return report(device, rssi, nowMs);
+        }
+        device.mRssi = rssi;
+        device.mLastSeenMs = nowMs;
+        device.mSeenCount++;
+        return null;
+    }
+
+    private static SeenDevice report(SeenDevice device, int rssi, long nowMs) {
+        device.mRssi = rssi;
+        device.mLastSeenMs = nowMs;
+        device.mSeenCount++;
+        device.mReportedMs = nowMs;
+        device.mReportedRssi = device.mSmoothedRssi;
+        return device;
+    }
+
+    /**
+     * @param address
+     * @return null if the device was never seen or has been evicted
+     */
+    public SeenDevice get(String address) {
+        return mDevices.get(address);
+    }
+
+    public int size() {
+        return mDevices.size();
+    }
+
+    /**
+     * number of devices forgotten because the LRU was full
+     *
+     * @return
+     */
+    public long getEvictedCount() {
+        return mEvictedCount;
+    }
+
+    public void clear() {
+        mDevices.clear();
+    }
+}
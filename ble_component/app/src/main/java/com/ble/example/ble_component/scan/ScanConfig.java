@@ -0,0 +1,204 @@
+package com.ble.example.ble_component.scan;
+
+import com.ble.example.ble_component.advert.AdvertisementRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Settings of a {@link BleScanner} run, create instances with {@link Builder}.
+ */
+public final class ScanConfig {
+
+    /**
+     * {@code ScanSettings.SCAN_MODE_LOW_POWER}
+     */
+    public static final int SCAN_MODE_LOW_POWER = 0;
+    /**
+     * {@code ScanSettings.SCAN_MODE_BALANCED}
+     */
+    public static final int SCAN_MODE_BALANCED = 1;
+    /**
+     * {@code ScanSettings.SCAN_MODE_LOW_LATENCY}
+     */
+    public static final int SCAN_MODE_LOW_LATENCY = 2;
+
+    public static class Builder {
+        private final List<DeviceFilter> mFilters = new ArrayList<>();
+        private int mScanMode = SCAN_MODE_BALANCED;
+        private long mReportDelayMs = 1000;
+        private long mDedupIntervalMs = 1000;
+        private float mRssiThreshold = 6;
+        private float mRssiSmoothing = 0.25f;
+        private int mMinRssi = -127;
+        private int mMaxDevices = 512;
+
+        /**
+         * Only report devices matching the filter. Several filters are or-ed, without filters
+         * every device is reported.
+         *
+         * @param filter
+         * @return
+         */
+        public Builder addFilter(DeviceFilter filter) {
+            mFilters.add(filter);
+            return this;
+        }
+
+        /**
+         * @param scanMode one of the {@code SCAN_MODE_...} constants, balanced by default
+         * @return
+         */
+        public Builder setScanMode(int scanMode) {
+            mScanMode = scanMode;
+            return this;
+        }
+
+        /**
+         * Deliver the reports at most this often, 1 s by default. Where the controller supports
+         * it, the advertisements are batched in hardware and the application processor sleeps
+         * in between; otherwise they are batched in software. 0 delivers every report
+         * immediately.
+         *
+         * @param reportDelayMs
+         * @return
+         */
+        public Builder setReportDelay(long reportDelayMs) {
+            mReportDelayMs = reportDelayMs;
+            return this;
+        }
+
+        /**
+         * Coalesce the advertisements of a device: an unchanged device is reported at most once
+         * per {@code dedupIntervalMs}, unless its smoothed rssi moves by {@code rssiThreshold}
+         * dB. Defaults are 1 s and 6 dB.
+         *
+         * @param dedupIntervalMs
+         * @param rssiThreshold
+         * @return
+         */
+        public Builder setDedup(long dedupIntervalMs, float rssiThreshold) {
+            mDedupIntervalMs = dedupIntervalMs;
+            mRssiThreshold = rssiThreshold;
+            return this;
+        }
+
+        /**
+         * @param rssiSmoothing weight of a new rssi sample in the exponential average, 0.25 by
+         *                      default, 1 disables smoothing
+         * @return
+         */
+        public Builder setRssiSmoothing(float rssiSmoothing) {
+            mRssiSmoothing = Math.max(0.01f, Math.min(1, rssiSmoothing));
+            return this;
+        }
+
+        /**
+         * @param minRssi ignore advertisements weaker than this
+         * @return
+         */
+        public Builder setMinRssi(int minRssi) {
+            mMinRssi = minRssi;
+            return this;
+        }
+
+        /**
+         * @param maxDevices number of devices remembered for deduplication, 512 by default
+         * @return
+         */
+        public Builder setMaxDevices(int maxDevices) {
+            mMaxDevices = Math.max(1, maxDevices);
+            return this;
+        }
+
+        public ScanConfig build() {
+            return new ScanConfig(this);
+        }
+    }
+
+    private final List<DeviceFilter> mFilters;
+    private final int mScanMode;
+    private final long mReportDelayMs;
+    private final long mDedupIntervalMs;
+    private final float mRssiThreshold;
+    private final float mRssiSmoothing;
+    private final int mMinRssi;
+    private final int mMaxDevices;
+
+    private ScanConfig(Builder builder) {
+        mFilters = Collections.unmodifiableList(new ArrayList<>(builder.mFilters));
+        mScanMode = builder.mScanMode;
+        mReportDelayMs = builder.mReportDelayMs;
+        mDedupIntervalMs = builder.mDedupIntervalMs;
+        mRssiThreshold = builder.mRssiThreshold;
+        mRssiSmoothing = builder.mRssiSmoothing;
+        mMinRssi = builder.mMinRssi;
+        mMaxDevices = builder.mMaxDevices;
+    }
+
+    public List<DeviceFilter> getFilters() {
+        return mFilters;
+    }
+
+    public int getScanMode() {
+        return mScanMode;
+    }
+
+    public long getReportDelayMs() {
+        return mReportDelayMs;
+    }
+
+    public long getDedupIntervalMs() {
+        return mDedupIntervalMs;
+    }
+
+    public float getRssiThreshold() {
+        return mRssiThreshold;
+    }
+
+    public float getRssiSmoothing() {
+        return mRssiSmoothing;
+    }
+
+    public int getMinRssi() {
+        return mMinRssi;
+    }
+
+    public int getMaxDevices() {
+        return mMaxDevices;
+    }
+
+    /**
+     * software version of the filters
+     *
+     * @param address
+     * @param name
+     * @param scanRecord
+     * @return
+     */
+    public boolean matches(String address, String name, byte[] scanRecord) {
+        return mFilters.isEmpty()
+                || matches(address, name, scanRecord == null ? null : new AdvertisementRecord().wrap(scanRecord));
+    }
+
+    /**
+     * software version of the filters over an already parsed advertisement
+     *
+     * @param address
+     * @param name
+     * @param record
+     * @return
+     */
+    public boolean matches(String address, String name, AdvertisementRecord record) {
+        if (mFilters.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < mFilters.size(); i++) {
+            if (mFilters.get(i).matches(address, name, record)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
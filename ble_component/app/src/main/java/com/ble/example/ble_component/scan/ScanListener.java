@@ -0,0 +1,22 @@
+package com.ble.example.ble_component.scan;
+
+import java.util.List;
+
+public interface ScanListener {
+
+    /**
+     * Devices which advertised something worth reporting since the last call, each device at
+     * most once. Called on the scanner's thread; the list and the devices are only valid during
+     * the call.
+     *
+     * @param devices
+     */
+    void onDevicesUpdated(List<SeenDevice> devices);
+
+    /**
+     * the platform could not start the scan
+     *
+     * @param errorCode one of the {@code ScanCallback.SCAN_FAILED_...} codes
+     */
+    void onScanFailed(int errorCode);
+}
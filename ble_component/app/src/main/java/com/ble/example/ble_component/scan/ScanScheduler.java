@@ -0,0 +1,314 @@
+package com.ble.example.ble_component.scan;
+
+import com.ble.example.ble_component.util.Scheduler;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Runs scans in duty cycled windows instead of keeping the radio busy. Every scan period
+ * starts with a scan window of fixed length; the period adapts to what the windows find: a
+ * window which found new devices resets it to the minimum, a window which found nothing
+ * stretches it by the backoff factor up to the maximum.
+ * <p>
+ * Since Android 7 the platform silently ignores the sixth scan start of an app within 30 s.
+ * The scheduler keeps the start times of the recent windows and postpones a window which would
+ * exceed that limit, counting it as a throttle event.
+ * <p>
+ * The scheduler drives a {@link Radio} and is fed the discoveries through
+ * {@link #onDevicesFound(int)}. All methods are thread safe, the radio and the listeners are
+ * called with the scheduler's lock held.
+ */
+public class ScanScheduler {
+
+    /**
+     * the scanning side of the scheduler
+     */
+    public interface Radio {
+        /**
+         * @return false if the scan could not be started
+         */
+        boolean startScan();
+
+        void stopScan();
+    }
+
+    public interface Listener {
+        /**
+         * @param windowMs     how long the window scanned
+         * @param newDevices   devices seen for the first time in the window
+         * @param nextPeriodMs the scan period chosen for the next window
+         */
+        void onWindowFinished(long windowMs, int newDevices, long nextPeriodMs);
+    }
+
+    public static final int DEFAULT_MAX_STARTS = 5;
+    public static final long DEFAULT_THROTTLE_PERIOD_MS = 30000;
+
+    private final Radio mRadio;
+    private final Scheduler mScheduler;
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    private long mWindowMs = 4000;
+    private long mMinPeriodMs = 10000;
+    private long mMaxPeriodMs = 120000;
+    private float mBackoffFactor = 2;
+    private long[] mStarts = new long[DEFAULT_MAX_STARTS];
+    private long mThrottlePeriodMs = DEFAULT_THROTTLE_PERIOD_MS;
+
+    private boolean mRunning;
+    private boolean mScanning;
+    private Scheduler.Task mTimer;
+    private long mTimerGeneration;
+    private long mPeriodMs = mMinPeriodMs;
+    private long mWindowStart;
+    private int mWindowDevices;
+    private int mStartCount;
+
+    private long mScanTimeMs;
+    private long mWindowCount;
+    private long mDevicesFound;
+    private int mLastWindowDevices;
+    private long mThrottleCount;
+    private long mStartFailureCount;
+
+    public ScanScheduler(Radio radio, Scheduler scheduler) {
+        mRadio = radio;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * length of a scan window, 4 s by default
+     *
+     * @param windowMs
+     */
+    public synchronized void setWindow(long windowMs) {
+        mWindowMs = Math.max(1, windowMs);
+    }
+
+    /**
+     * Configure the scan period, the time from one window start to the next. It starts at
+     * {@code minMs}, grows by {@code backoffFactor} with every window which found nothing up to
+     * {@code maxMs} and falls back to {@code minMs} as soon as new devices show up. Defaults are
+     * 10 s, 120 s and 2.
+     */
+    public synchronized void setPeriod(long minMs, long maxMs, float backoffFactor) {
+        mMinPeriodMs = minMs;
+        mMaxPeriodMs = Math.max(minMs, maxMs);
+        mBackoffFactor = Math.max(1, backoffFactor);
+        mPeriodMs = Math.max(mMinPeriodMs, Math.min(mPeriodMs, mMaxPeriodMs));
+    }
+
+    /**
+     * the platform's scan start limit, 5 starts per 30 s by default
+     *
+     * @param maxStarts
+     * @param periodMs
+     */
+    public synchronized void setThrottle(int maxStarts, long periodMs) {
+        mStarts = new long[Math.max(1, maxStarts)];
+        mStartCount = 0;
+        mThrottlePeriodMs = periodMs;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * start the duty cycle with a window right away
+     */
+    public synchronized void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mPeriodMs = mMinPeriodMs;
+        startWindow();
+    }
+
+    /**
+     * stop the duty cycle, a running window is cut short
+     */
+    public synchronized void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        cancelTimer();
+        if (mScanning) {
+            mScanning = false;
+            mRadio.stopScan();
+            mScanTimeMs += mScheduler.now() - mWindowStart;
+        }
+    }
+
+    /**
+     * report discoveries of the running window
+     *
+     * @param newDevices devices seen for the first time
+     */
+    public synchronized void onDevicesFound(int newDevices) {
+        if (mScanning) {
+            mWindowDevices += newDevices;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return mRunning;
+    }
+
+    public synchronized boolean isScanning() {
+        return mScanning;
+    }
+
+    /**
+     * total time the radio was scanning
+     *
+     * @return
+     */
+    public synchronized long getScanTimeMs() {
+        return mScanTimeMs;
+    }
+
+    public synchronized long getWindowCount() {
+        return mWindowCount;
+    }
+
+    /**
+     * new devices found over all windows
+     *
+     * @return
+     */
+    public synchronized long getDevicesFound() {
+        return mDevicesFound;
+    }
+
+    public synchronized int getLastWindowDevices() {
+        return mLastWindowDevices;
+    }
+
+    /**
+     * number of windows which were postponed to stay within the scan start limit
+     *
+     * @return
+     */
+    public synchronized long getThrottleCount() {
+        return mThrottleCount;
+    }
+
+    public synchronized long getStartFailureCount() {
+        return mStartFailureCount;
+    }
+
+    /**
+     * the scan period the next window is scheduled with
+     *
+     * @return
+     */
+    public synchronized long getPeriodMs() {
+        return mPeriodMs;
+    }
+
+    private void startWindow() {
+        mTimer = null;
+        if (!mRunning) {
+            return;
+        }
+        long now = mScheduler.now();
+        long throttledUntil = throttledUntil(now);
+        if (throttledUntil > now) {
+            mThrottleCount++;
+            schedule(true, throttledUntil - now);
+            return;
+        }
+        recordStart(now);
+        if (!mRadio.startScan()) {
+            mStartFailureCount++;
+            scheduleNextWindow(mPeriodMs);
+            return;
+        }
+        mScanning = true;
+        mWindowStart = now;
+        mWindowDevices = 0;
+        schedule(false, mWindowMs);
+    }
+
+    private void endWindow() {
+        mTimer = null;
+        if (!mScanning) {
+            return;
+        }
+        mScanning = false;
+        mRadio.stopScan();
+        long windowMs = mScheduler.now() - mWindowStart;
+        mScanTimeMs += windowMs;
+        mWindowCount++;
+        mLastWindowDevices = mWindowDevices;
+        mDevicesFound += mWindowDevices;
+        if (mWindowDevices > 0) {
+            mPeriodMs = mMinPeriodMs;
+        } else {
+            mPeriodMs = Math.min(mMaxPeriodMs, (long) (mPeriodMs * mBackoffFactor));
+        }
+        for (Listener listener : mListeners) {
+            listener.onWindowFinished(windowMs, mWindowDevices, mPeriodMs);
+        }
+        scheduleNextWindow(mPeriodMs - windowMs);
+    }
+
+    private synchronized void onTimer(long generation, boolean windowStart) {
+        if (generation != mTimerGeneration) {
+            // replaced by a newer timer while it was waiting for the lock
+            return;
+        }
+        if (windowStart) {
+            startWindow();
+        } else {
+            endWindow();
+        }
+    }
+
+    private void scheduleNextWindow(long delayMs) {
+        schedule(true, Math.max(0, delayMs));
+    }
+
+    /**
+     * @return the time from which another start is allowed, or {@code now} if it is allowed
+     */
+    private long throttledUntil(long now) {
+        if (mStartCount < mStarts.length) {
+            return now;
+        }
+        // the ring is full, its oldest entry is the one after the newest
+        long oldest = mStarts[mStartCount % mStarts.length];
+        return Math.max(now, oldest + mThrottlePeriodMs);
+    }
+
+    private void recordStart(long now) {
+        mStarts[mStartCount % mStarts.length] = now;
+        mStartCount++;
+    }
+
+    private void schedule(final boolean windowStart, long delayMs) {
+        cancelTimer();
+        final long generation = mTimerGeneration;
+        mTimer = mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onTimer(generation, windowStart);
+            }
+        }, delayMs);
+    }
+
+    private void cancelTimer() {
+        mTimerGeneration++;
+        if (mTimer != null) {
+            mTimer.cancel();
+            mTimer = null;
+        }
+    }
+}
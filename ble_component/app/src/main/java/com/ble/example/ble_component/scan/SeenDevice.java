@@ -0,0 +1,79 @@
+package com.ble.example.ble_component.scan;
+
+/**
+ * What the scan pipeline knows about one advertising device. Instances are owned and updated
+ * by the pipeline, read them only inside the {@link ScanListener} callback or copy what you
+ * need.
+ */
+public final class SeenDevice {
+
+    final String mAddress;
+    String mName;
+    int mRssi;
+    float mSmoothedRssi;
+    byte[] mScanRecord;
+    long mFirstSeenMs;
+    long mLastSeenMs;
+    int mSeenCount;
+
+    long mReportedMs;
+    float mReportedRssi;
+    boolean mPending;
+
+    SeenDevice(String address) {
+        mAddress = address;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * @return the advertised name, or null if the device never advertised one
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the rssi of the latest advertisement
+     */
+    public int getRssi() {
+        return mRssi;
+    }
+
+    /**
+     * @return the exponentially smoothed rssi, which is what decides about reports
+     */
+    public float getSmoothedRssi() {
+        return mSmoothedRssi;
+    }
+
+    /**
+     * @return the raw latest advertisement, may be null
+     */
+    public byte[] getScanRecord() {
+        return mScanRecord;
+    }
+
+    public long getFirstSeenMs() {
+        return mFirstSeenMs;
+    }
+
+    public long getLastSeenMs() {
+        return mLastSeenMs;
+    }
+
+    /**
+     * @return number of advertisements received, including the ones which were not reported
+     */
+    public int getSeenCount() {
+        return mSeenCount;
+    }
+
+    @Override
+    public String toString() {
+        return "SeenDevice{" + mAddress + " " + mName + " rssi " + mRssi + " (" + Math.round(mSmoothedRssi)
+                + ") seen " + mSeenCount + "}";
+    }
+}
@@ -0,0 +1,363 @@
+package com.ble.example.ble_component.session;
+
+import com.ble.example.ble_component.event.CharacteristicEvent;
+import com.ble.example.ble_component.event.CharacteristicEventBus;
+import com.ble.example.ble_component.event.CharacteristicListener;
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.util.Scheduler;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Everything an app does with one device, in one object. Notifications are exposed as
+ * {@link Stream}s per characteristic: the first observer turns the notifications on, the
+ * last cancelled subscription turns them off again, and the subscription survives reconnects
+ * in between. Each stream is subscribed to the {@link CharacteristicEventBus} under its exact
+ * (address, uuid) pair, so dispatching a notification costs one lookup and reaches only the
+ * observers of that characteristic, however many devices and streams exist.
+ * <p>
+ * Values handed to observers are copies shared by all observers of the event, they must not
+ * be modified.
+ */
+public class DeviceSession implements Closeable {
+
+    /**
+     * the device side of the session
+     */
+    public interface Link {
+        /**
+         * turn the notifications or indications of the characteristic on
+         */
+        GattFuture<Void> subscribe(UUID serviceUuid, UUID characteristicUuid);
+
+        GattFuture<Void> unsubscribe(UUID serviceUuid, UUID characteristicUuid);
+
+        GattFuture<byte[]> read(UUID serviceUuid, UUID characteristicUuid);
+
+        /**
+         * the session was closed, release the device
+         */
+        void close();
+    }
+
+    private final String mAddress;
+    private final Link mLink;
+    private final CharacteristicEventBus mBus;
+    private final Scheduler mScheduler;
+    private final HashMap<Key, Channel> mChannels = new HashMap<>();
+    private boolean mClosed;
+
+    /**
+     * @param address
+     * @param link
+     * @param bus       the bus the device's notifications are published on
+     * @param scheduler runs the timed operators
+     */
+    public DeviceSession(String address, Link link, CharacteristicEventBus bus, Scheduler scheduler) {
+        mAddress = address;
+        mLink = link;
+        mBus = bus;
+        mScheduler = scheduler;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * Hot stream of the notifications of a characteristic. Subscribing the first observer
+     * turns the notifications on, if that fails the observers get the error.
+     *
+     * @param serviceUuid
+     * @param characteristicUuid
+     * @return the same stream for repeated calls
+     */
+    public synchronized Stream<byte[]> notifications(UUID serviceUuid, UUID characteristicUuid) {
+        Key key = new Key(serviceUuid, characteristicUuid);
+        Channel channel = mChannels.get(key);
+        if (channel == null) {
+            channel = new Channel(serviceUuid, characteristicUuid);
+            mChannels.put(key, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * Cold stream which reads the characteristic once per subscription, emits the value and
+     * completes.
+     *
+     * @param serviceUuid
+     * @param characteristicUuid
+     * @return
+     */
+    public Stream<byte[]> read(final UUID serviceUuid, final UUID characteristicUuid) {
+        return new Stream<byte[]>(mScheduler) {
+            @Override
+            public Subscription subscribe(final Observer<? super byte[]> observer) {
+                final Handle handle = new Handle(null, null);
+                if (isClosed()) {
+                    observer.onComplete();
+                    return handle;
+                }
+                mLink.read(serviceUuid, characteristicUuid).addListener(new GattFuture.Listener<byte[]>() {
+                    @Override
+                    public void onSuccess(byte[] result) {
+                        if (!handle.isCancelled()) {
+                            observer.onNext(result);
+                            observer.onComplete();
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(GattException e) {
+                        if (!handle.isCancelled()) {
+                            observer.onError(e);
+                        }
+                    }
+                });
+                return handle;
+            }
+        };
+    }
+
+    /**
+     * number of characteristics with subscribed observers
+     *
+     * @return
+     */
+    public synchronized int getActiveStreamCount() {
+        int count = 0;
+        for (Channel channel : mChannels.values()) {
+            if (channel.mObservers.length > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * complete every stream, turn the notifications off and release the device
+     */
+    @Override
+    public void close() {
+        List<Channel> channels;
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            channels = new ArrayList<>(mChannels.values());
+            mChannels.clear();
+        }
+        for (Channel channel : channels) {
+            channel.complete();
+        }
+        mLink.close();
+    }
+
+    /**
+     * subscription of one observer to a channel, or of a read
+     */
+    private static final class Handle implements Subscription {
+        private final Channel mChannel;
+        final Observer<? super byte[]> mObserver;
+        private volatile boolean mCancelled;
+
+        Handle(Channel channel, Observer<? super byte[]> observer) {
+            mChannel = channel;
+            mObserver = observer;
+        }
+
+        @Override
+        public void cancel() {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            if (mChannel != null) {
+                mChannel.remove(this);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    private static final Handle[] NO_OBSERVERS = new Handle[0];
+
+    /**
+     * a characteristic uuid can appear in several services, the channels are kept apart
+     */
+    private static final class Key {
+        final UUID mServiceUuid;
+        final UUID mCharacteristicUuid;
+
+        Key(UUID serviceUuid, UUID characteristicUuid) {
+            mServiceUuid = serviceUuid;
+            mCharacteristicUuid = characteristicUuid;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mServiceUuid.equals(other.mServiceUuid) && mCharacteristicUuid.equals(other.mCharacteristicUuid);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mServiceUuid.hashCode() + mCharacteristicUuid.hashCode();
+        }
+    }
+
+    /**
+     * the hot stream of one characteristic, its observers are copy on write so dispatching
+     * takes no lock
+     */
+    private final class Channel extends Stream<byte[]> implements CharacteristicListener {
+        final UUID mServiceUuid;
+        final UUID mCharacteristicUuid;
+        volatile Handle[] mObservers = NO_OBSERVERS;
+
+        Channel(UUID serviceUuid, UUID characteristicUuid) {
+            super(DeviceSession.this.mScheduler);
+            mServiceUuid = serviceUuid;
+            mCharacteristicUuid = characteristicUuid;
+        }
+
+        @Override
+        public Subscription subscribe(Observer<? super byte[]> observer) {
+            Handle handle = new Handle(this, observer);
+            boolean first;
+            synchronized (DeviceSession.this) {
+                if (mClosed) {
+                    observer.onComplete();
+                    return handle;
+                }
+                Handle[] observers = mObservers;
+                Handle[] grown = new Handle[observers.length + 1];
+                System.arraycopy(observers, 0, grown, 0, observers.length);
+                grown[observers.length] = handle;
+                mObservers = grown;
+                first = observers.length == 0;
+                if (first) {
+                    mBus.subscribe(mAddress, mCharacteristicUuid, this);
+                }
+            }
+            if (first) {
+                mLink.subscribe(mServiceUuid, mCharacteristicUuid).addListener(new GattFuture.Listener<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                    }
+
+                    @Override
+                    public void onFailure(GattException e) {
+                        fail(e);
+                    }
+                });
+            }
+            return handle;
+        }
+
+        @Override
+        public void onCharacteristicChanged(CharacteristicEvent event) {
+            Handle[] observers = mObservers;
+            if (observers.length == 0) {
+                return;
+            }
+            // one copy for everybody, the event's array belongs to the stack
+            byte[] value = event.copyValue();
+            for (Handle handle : observers) {
+                if (!handle.isCancelled()) {
+                    synchronized (handle) {
+                        handle.mObserver.onNext(value);
+                    }
+                }
+            }
+        }
+
+        void remove(Handle handle) {
+            boolean last;
+            synchronized (DeviceSession.this) {
+                Handle[] observers = mObservers;
+                int index = -1;
+                for (int i = 0; i < observers.length; i++) {
+                    if (observers[i] == handle) {
+                        index = i;
+                        break;
+                    }
+                }
+                if (index < 0) {
+                    return;
+                }
+                Handle[] shrunk = new Handle[observers.length - 1];
+                System.arraycopy(observers, 0, shrunk, 0, index);
+                System.arraycopy(observers, index + 1, shrunk, index, observers.length - index - 1);
+                mObservers = shrunk;
+                last = shrunk.length == 0;
+                if (last) {
+                    mBus.unsubscribe(mAddress, mCharacteristicUuid, this);
+                }
+            }
+            if (last) {
+                mLink.unsubscribe(mServiceUuid, mCharacteristicUuid);
+            }
+        }
+
+        /**
+         * turning the notifications on failed, end every observer with the error
+         */
+        void fail(GattException e) {
+            for (Handle handle : detach()) {
+                synchronized (handle) {
+                    handle.mObserver.onError(e);
+                }
+            }
+        }
+
+        /**
+         * the session closed
+         */
+        void complete() {
+            for (Handle handle : detach()) {
+                synchronized (handle) {
+                    handle.mObserver.onComplete();
+                }
+            }
+        }
+
+        /**
+         * drop every observer and turn the notifications off
+         */
+        private Handle[] detach() {
+            Handle[] observers;
+            synchronized (DeviceSession.this) {
+                observers = mObservers;
+                mObservers = NO_OBSERVERS;
+                if (observers.length > 0) {
+                    mBus.unsubscribe(mAddress, mCharacteristicUuid, this);
+                }
+            }
+            if (observers.length > 0) {
+                mLink.unsubscribe(mServiceUuid, mCharacteristicUuid);
+            }
+            for (Handle handle : observers) {
+                handle.mCancelled = true;
+            }
+            return observers;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.ble.example.ble_component.session;
+
+import com.ble.example.ble_component.gatt.GattException;
+
+/**
+ * Receives the values of a {@link Stream}. The calls for one subscription never overlap, but
+ * they may come from different threads: notifications arrive on a binder thread, timed
+ * operators emit on the scheduler's thread.
+ */
+public interface Observer<T> {
+
+    void onNext(T value);
+
+    /**
+     * the stream failed, no more calls follow
+     *
+     * @param error
+     */
+    void onError(GattException error);
+
+    /**
+     * the stream ended, no more calls follow
+     */
+    void onComplete();
+}
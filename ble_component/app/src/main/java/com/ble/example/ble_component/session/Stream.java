@@ -0,0 +1,290 @@
+package com.ble.example.ble_component.session;
+
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.util.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sequence of values from a device which observers subscribe to. Streams from
+ * {@link DeviceSession#notifications} are hot: every observer sees the notifications that
+ * arrive while it is subscribed. Streams from {@link DeviceSession#read} are cold: every
+ * subscription runs its own read.
+ * <p>
+ * The operators return new streams; nothing happens until an observer subscribes, and
+ * cancelling the returned {@link Subscription} cancels the whole chain. Timed operators run
+ * on the scheduler of the stream.
+ */
+public abstract class Stream<T> {
+
+    final Scheduler mScheduler;
+
+    protected Stream(Scheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    /**
+     * @param observer
+     * @return cancel it to stop receiving values
+     */
+    public abstract Subscription subscribe(Observer<? super T> observer);
+
+    /**
+     * Emit the latest value once per period, nothing in periods without a new value. Useful to
+     * redraw a UI at a fixed rate however fast the device sends.
+     *
+     * @param periodMs
+     * @return
+     */
+    public Stream<T> sample(final long periodMs) {
+        final Stream<T> upstream = this;
+        return new Stream<T>(mScheduler) {
+            @Override
+            public Subscription subscribe(Observer<? super T> observer) {
+                Sampler<T> sampler = new Sampler<>(mScheduler, observer, periodMs);
+                sampler.schedule(periodMs);
+                return sampler.start(upstream);
+            }
+        };
+    }
+
+    /**
+     * Emit a value, then drop the values of the next {@code intervalMs}.
+     *
+     * @param intervalMs
+     * @return
+     */
+    public Stream<T> throttle(final long intervalMs) {
+        final Stream<T> upstream = this;
+        return new Stream<T>(mScheduler) {
+            @Override
+            public Subscription subscribe(Observer<? super T> observer) {
+                return new Throttle<T>(mScheduler, observer, intervalMs).start(upstream);
+            }
+        };
+    }
+
+    /**
+     * Collect the values into lists of {@code count}, or whatever arrived within
+     * {@code timeMs} of the first value of the list. The rest is emitted when the stream
+     * completes.
+     *
+     * @param count  values per list
+     * @param timeMs 0 to only cut by count
+     * @return
+     */
+    public Stream<List<T>> window(final int count, final long timeMs) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive");
+        }
+        final Stream<T> upstream = this;
+        return new Stream<List<T>>(mScheduler) {
+            @Override
+            public Subscription subscribe(Observer<? super List<T>> observer) {
+                return new Window<>(mScheduler, observer, count, timeMs).start(upstream);
+            }
+        };
+    }
+
+    /**
+     * Subscription of an operator: observes the upstream and feeds the downstream. All state is
+     * guarded by the operator itself, which also keeps the calls to the downstream serial.
+     */
+    private abstract static class Operator<T, R> implements Observer<T>, Subscription {
+        final Scheduler mScheduler;
+        final Observer<? super R> mDownstream;
+        private Subscription mUpstream;
+        private Scheduler.Task mTimer;
+        boolean mDone;
+
+        Operator(Scheduler scheduler, Observer<? super R> downstream) {
+            mScheduler = scheduler;
+            mDownstream = downstream;
+        }
+
+        Subscription start(Stream<T> upstream) {
+            Subscription subscription = upstream.subscribe(this);
+            synchronized (this) {
+                if (!mDone) {
+                    mUpstream = subscription;
+                    return this;
+                }
+            }
+            subscription.cancel();
+            return this;
+        }
+
+        /**
+         * run {@link #onTimer()} after the delay, replacing the pending timer
+         */
+        synchronized void schedule(long delayMs) {
+            cancelTimer();
+            mTimer = mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (Operator.this) {
+                        mTimer = null;
+                        if (!mDone) {
+                            onTimer();
+                        }
+                    }
+                }
+            }, delayMs);
+        }
+
+        void cancelTimer() {
+            if (mTimer != null) {
+                mTimer.cancel();
+                mTimer = null;
+            }
+        }
+
+        void onTimer() {
+        }
+
+        /**
+         * emit what is left before completing
+         */
+        void flush() {
+        }
+
+        @Override
+        public void cancel() {
+            Subscription upstream;
+            synchronized (this) {
+                mDone = true;
+                cancelTimer();
+                upstream = mUpstream;
+                mUpstream = null;
+            }
+            if (upstream != null) {
+                upstream.cancel();
+            }
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return mDone;
+        }
+
+        @Override
+        public synchronized void onError(GattException error) {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+            cancelTimer();
+            mDownstream.onError(error);
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            if (mDone) {
+                return;
+            }
+            flush();
+            mDone = true;
+            cancelTimer();
+            mDownstream.onComplete();
+        }
+    }
+
+    private static final class Sampler<T> extends Operator<T, T> {
+        private final long mPeriodMs;
+        private T mLatest;
+        private boolean mHasValue;
+
+        Sampler(Scheduler scheduler, Observer<? super T> downstream, long periodMs) {
+            super(scheduler, downstream);
+            mPeriodMs = periodMs;
+        }
+
+        @Override
+        public synchronized void onNext(T value) {
+            mLatest = value;
+            mHasValue = true;
+        }
+
+        @Override
+        void onTimer() {
+            if (mHasValue) {
+                T latest = mLatest;
+                mLatest = null;
+                mHasValue = false;
+                mDownstream.onNext(latest);
+            }
+            if (!mDone) {
+                schedule(mPeriodMs);
+            }
+        }
+    }
+
+    private static final class Throttle<T> extends Operator<T, T> {
+        private final long mIntervalMs;
+        private long mLastEmitted;
+        private boolean mEmitted;
+
+        Throttle(Scheduler scheduler, Observer<? super T> downstream, long intervalMs) {
+            super(scheduler, downstream);
+            mIntervalMs = intervalMs;
+        }
+
+        @Override
+        public synchronized void onNext(T value) {
+            if (mDone) {
+                return;
+            }
+            long now = mScheduler.now();
+            if (mEmitted && now - mLastEmitted < mIntervalMs) {
+                return;
+            }
+            mEmitted = true;
+            mLastEmitted = now;
+            mDownstream.onNext(value);
+        }
+    }
+
+    private static final class Window<T> extends Operator<T, List<T>> {
+        private final int mCount;
+        private final long mTimeMs;
+        private List<T> mValues;
+
+        Window(Scheduler scheduler, Observer<? super List<T>> downstream, int count, long timeMs) {
+            super(scheduler, downstream);
+            mCount = count;
+            mTimeMs = timeMs;
+            mValues = new ArrayList<>(count);
+        }
+
+        @Override
+        public synchronized void onNext(T value) {
+            if (mDone) {
+                return;
+            }
+            if (mValues.isEmpty() && mTimeMs > 0) {
+                schedule(mTimeMs);
+            }
+            mValues.add(value);
+            if (mValues.size() >= mCount) {
+                cancelTimer();
+                flush();
+            }
+        }
+
+        @Override
+        void onTimer() {
+            flush();
+        }
+
+        @Override
+        void flush() {
+            if (mValues.isEmpty()) {
+                return;
+            }
+            List<T> values = mValues;
+            mValues = new ArrayList<>(mCount);
+            mDownstream.onNext(values);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.ble.example.ble_component.session;
+
+/**
+ * Handle of an {@link Observer} subscribed to a {@link Stream}.
+ */
+public interface Subscription {
+
+    /**
+     * stop receiving values; the last subscription of a notification stream also turns the
+     * notifications off on the device
+     */
+    void cancel();
+
+    boolean isCancelled();
+}
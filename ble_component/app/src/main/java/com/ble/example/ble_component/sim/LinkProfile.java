@@ -0,0 +1,122 @@
+package com.ble.example.ble_component.sim;
+
+/**
+ * Radio conditions of a {@link SimulatedTransport}. Every request costs a round trip of
+ * {@code latency} plus the air time of its payload at the link throughput; every lost packet is
+ * retransmitted one connection interval later, like the link layer does.
+ */
+public class LinkProfile {
+
+    private long mLatencyMs = 30;
+    private long mJitterMs;
+    private long mConnectionIntervalMs = 30;
+    private int mMaxMtu = 247;
+    private float mPacketLoss;
+    private int mBytesPerSecond = 100000;
+    private long mConnectLatencyMs = 100;
+    private float mConnectFailureRate;
+    private long mSeed = 1;
+
+    /**
+     * @param latencyMs round trip of a request and its response, 30 ms by default
+     * @param jitterMs  uniformly distributed extra latency
+     * @return this profile
+     */
+    public LinkProfile setLatency(long latencyMs, long jitterMs) {
+        mLatencyMs = latencyMs;
+        mJitterMs = jitterMs;
+        return this;
+    }
+
+    /**
+     * @param intervalMs the connection interval, the cost of a retransmission, 30 ms by default
+     * @return this profile
+     */
+    public LinkProfile setConnectionInterval(long intervalMs) {
+        mConnectionIntervalMs = intervalMs;
+        return this;
+    }
+
+    /**
+     * @param maxMtu the largest ATT MTU the peer accepts, 247 by default
+     * @return this profile
+     */
+    public LinkProfile setMaxMtu(int maxMtu) {
+        mMaxMtu = maxMtu;
+        return this;
+    }
+
+    /**
+     * @param rate probability that a packet is lost and has to be sent again, below 1
+     * @return this profile
+     */
+    public LinkProfile setPacketLoss(float rate) {
+        mPacketLoss = Math.max(0, Math.min(0.99f, rate));
+        return this;
+    }
+
+    /**
+     * @param bytesPerSecond payload throughput of the link, 100 kB/s by default
+     * @return this profile
+     */
+    public LinkProfile setThroughput(int bytesPerSecond) {
+        mBytesPerSecond = Math.max(1, bytesPerSecond);
+        return this;
+    }
+
+    /**
+     * @param latencyMs  time until a connection attempt completes, 100 ms by default
+     * @param failureRate probability that an attempt fails
+     * @return this profile
+     */
+    public LinkProfile setConnect(long latencyMs, float failureRate) {
+        mConnectLatencyMs = latencyMs;
+        mConnectFailureRate = failureRate;
+        return this;
+    }
+
+    /**
+     * @param seed seed of the loss, jitter and failure draws, runs with the same seed repeat
+     * @return this profile
+     */
+    public LinkProfile setSeed(long seed) {
+        mSeed = seed;
+        return this;
+    }
+
+    public long getLatencyMs() {
+        return mLatencyMs;
+    }
+
+    public long getJitterMs() {
+        return mJitterMs;
+    }
+
+    public long getConnectionIntervalMs() {
+        return mConnectionIntervalMs;
+    }
+
+    public int getMaxMtu() {
+        return mMaxMtu;
+    }
+
+    public float getPacketLoss() {
+        return mPacketLoss;
+    }
+
+    public int getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+
+    public long getConnectLatencyMs() {
+        return mConnectLatencyMs;
+    }
+
+    public float getConnectFailureRate() {
+        return mConnectFailureRate;
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+}
@@ -0,0 +1,552 @@
+package com.ble.example.ble_component.sim;
+
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.transport.GattLink;
+import com.ble.example.ble_component.transport.GattLinkCallback;
+import com.ble.example.ble_component.util.Scheduler;
+import com.ble.example.ble_component.util.Uuids;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * {@link GattLink} to a {@link SimulatedPeripheral}. Like {@code BluetoothGatt} it runs one
+ * request at a time and refuses a second one. Writes without response and notifications share
+ * the air time of the link, so a stream is bounded by the profile's throughput.
+ */
+class SimulatedLink implements GattLink {
+
+    static final int STATUS_INVALID_ATTRIBUTE_LENGTH = 0x0D;
+    static final int STATUS_READ_NOT_PERMITTED = 0x02;
+    static final int STATUS_INVALID_OFFSET = 0x07;
+    static final int STATUS_PREPARE_QUEUE_FULL = 0x09;
+
+    private static final UUID CLIENT_CONFIG_UUID = Uuids.fromShortId(0x2902);
+    private static final int DEFAULT_MTU = 23;
+    private static final int ATT_HEADER_SIZE = 3;
+    private static final int MAX_ATTRIBUTE_SIZE = 512;
+    // l2cap and att headers of a packet on air
+    private static final int PACKET_OVERHEAD = 7;
+    private static final int MAX_PACKET_PAYLOAD = 251;
+    private static final int PREPARE_HEADER_SIZE = 5;
+    private static final int MAX_PREPARED_WRITES = 64;
+
+    private static final int STATE_CONNECTING = 0;
+    private static final int STATE_CONNECTED = 1;
+    private static final int STATE_DISCONNECTED = 2;
+
+    private final SimulatedTransport mTransport;
+    private final Scheduler mScheduler;
+    private final LinkProfile mProfile;
+    private final String mAddress;
+    private final GattLinkCallback mCallback;
+    private final HashSet<UUID> mNotifying = new HashSet<>();
+    private final HashSet<UUID> mSubscribed = new HashSet<>();
+    // the prepare queue of the peer, null outside of a reliable write
+    private ArrayList<PreparedWrite> mPrepared;
+
+    private SimulatedPeripheral mPeripheral;
+    private int mState = STATE_CONNECTING;
+    private boolean mClosed;
+    private boolean mBusy;
+    // completions scheduled before the last state change are dropped
+    private int mEpoch;
+    private int mMtu = DEFAULT_MTU;
+    private GattLayout mServices;
+    // time at which the air is free for the next packet
+    private double mAirFreeAt;
+
+    SimulatedLink(SimulatedTransport transport, String address, GattLinkCallback callback) {
+        mTransport = transport;
+        mScheduler = transport.getScheduler();
+        mProfile = transport.getProfile();
+        mAddress = address;
+        mCallback = callback;
+    }
+
+    @Override
+    public String getAddress() {
+        return mAddress;
+    }
+
+    @Override
+    public boolean discoverServices() {
+        final SimulatedPeripheral peripheral;
+        int rounds = 1;
+        synchronized (this) {
+            if (!startRequest()) {
+                return false;
+            }
+            peripheral = mPeripheral;
+            // one round trip per service and characteristic, roughly what the discovery takes
+            for (GattLayout.Service service : peripheral.getLayout().getServices()) {
+                rounds += 1 + service.getCharacteristics().length;
+            }
+        }
+        complete(rounds * roundTrip(0), new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedLink.this) {
+                    mServices = peripheral.getLayout();
+                }
+                mCallback.onServicesDiscovered(SimulatedLink.this, 0);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public synchronized GattLayout getServices() {
+        return mServices;
+    }
+
+    @Override
+    public boolean readCharacteristic(UUID serviceUuid, final UUID characteristicUuid) {
+        final byte[] value;
+        long delay;
+        synchronized (this) {
+            if (!startRequest(characteristicUuid)) {
+                return false;
+            }
+            value = mPeripheral.getValue(characteristicUuid);
+            int length = value == null ? 0 : Math.min(value.length, MAX_ATTRIBUTE_SIZE);
+            // a long read takes one read blob per MTU
+            int rounds = Math.max(1, (length + mMtu - 2) / (mMtu - 1));
+            delay = rounds * roundTrip(0) + airTimeMs(length);
+        }
+        complete(delay, new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onCharacteristicRead(SimulatedLink.this, characteristicUuid, value,
+                        value == null ? STATUS_READ_NOT_PERMITTED : 0);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean writeCharacteristic(UUID serviceUuid, final UUID characteristicUuid, byte[] value, int writeType) {
+        final SimulatedPeripheral peripheral;
+        final byte[] copy = value.clone();
+        long delay;
+        boolean tooLong;
+        synchronized (this) {
+            if (!startRequest(characteristicUuid)) {
+                return false;
+            }
+            peripheral = mPeripheral;
+            int payload = mMtu - ATT_HEADER_SIZE;
+            if (writeType == WRITE_TYPE_NO_RESPONSE) {
+                // a command only has to get on air, the stack reports it as soon as it is sent
+                tooLong = copy.length > payload;
+                delay = transmit(copy.length) - mScheduler.now();
+            } else {
+                // a long write is split into prepare writes of MTU - 5 bytes and an execute
+                tooLong = copy.length > MAX_ATTRIBUTE_SIZE;
+                int rounds = copy.length <= payload ? 1 : (copy.length + payload - 3) / (payload - 2) + 1;
+                delay = rounds * roundTrip(0) + airTimeMs(copy.length);
+            }
+        }
+        final boolean rejected = tooLong;
+        complete(delay, new Runnable() {
+            @Override
+            public void run() {
+                int status = rejected ? STATUS_INVALID_ATTRIBUTE_LENGTH : peripheral.onWrite(characteristicUuid, copy);
+                mCallback.onCharacteristicWrite(SimulatedLink.this, characteristicUuid, status);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean writeDescriptor(UUID serviceUuid, final UUID characteristicUuid, final UUID descriptorUuid,
+                                   byte[] value) {
+        final boolean enable = value.length > 0 && value[0] != 0;
+        synchronized (this) {
+            if (!startRequest(characteristicUuid)) {
+                return false;
+            }
+        }
+        complete(roundTrip(value.length), new Runnable() {
+            @Override
+            public void run() {
+                if (CLIENT_CONFIG_UUID.equals(descriptorUuid)) {
+                    synchronized (SimulatedLink.this) {
+                        if (enable) {
+                            mSubscribed.add(characteristicUuid);
+                        } else {
+                            mSubscribed.remove(characteristicUuid);
+                        }
+                    }
+                }
+                mCallback.onDescriptorWrite(SimulatedLink.this, descriptorUuid, 0);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public synchronized boolean beginReliableWrite() {
+        if (mState != STATE_CONNECTED || mBusy || mPrepared != null) {
+            return false;
+        }
+        mPrepared = new ArrayList<>();
+        return true;
+    }
+
+    @Override
+    public boolean prepareWrite(UUID serviceUuid, final UUID characteristicUuid, int offset, byte[] value) {
+        final SimulatedPeripheral peripheral;
+        final int status;
+        final byte[] part = value.clone();
+        synchronized (this) {
+            if (mPrepared == null || !startRequest(characteristicUuid)) {
+                return false;
+            }
+            peripheral = mPeripheral;
+            if (part.length > mMtu - PREPARE_HEADER_SIZE) {
+                status = STATUS_INVALID_ATTRIBUTE_LENGTH;
+            } else if (mPrepared.size() >= MAX_PREPARED_WRITES) {
+                status = STATUS_PREPARE_QUEUE_FULL;
+            } else {
+                status = 0;
+                mPrepared.add(new PreparedWrite(characteristicUuid, offset, part));
+            }
+        }
+        complete(roundTrip(part.length), new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onPreparedWrite(SimulatedLink.this, characteristicUuid,
+                        status == 0 ? peripheral.echo(part) : null, status);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean supportsWriteOffsets() {
+        return true;
+    }
+
+    @Override
+    public boolean executeReliableWrite() {
+        final SimulatedPeripheral peripheral;
+        final ArrayList<PreparedWrite> prepared;
+        synchronized (this) {
+            if (mPrepared == null || !startRequest()) {
+                return false;
+            }
+            peripheral = mPeripheral;
+            prepared = mPrepared;
+            mPrepared = null;
+        }
+        complete(roundTrip(0), new Runnable() {
+            @Override
+            public void run() {
+                LinkedHashMap<UUID, byte[]> values = assemble(prepared);
+                int status = values == null ? STATUS_INVALID_OFFSET : peripheral.onExecuteWrite(values);
+                mCallback.onReliableWriteCompleted(SimulatedLink.this, status);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public synchronized void abortReliableWrite() {
+        mPrepared = null;
+    }
+
+    @Override
+    public synchronized boolean setCharacteristicNotification(UUID serviceUuid, UUID characteristicUuid,
+                                                              boolean enabled) {
+        if (mState != STATE_CONNECTED || !mPeripheral.hasCharacteristic(characteristicUuid)) {
+            return false;
+        }
+        if (enabled) {
+            mNotifying.add(characteristicUuid);
+        } else {
+            mNotifying.remove(characteristicUuid);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean requestMtu(int mtu) {
+        final int settled;
+        synchronized (this) {
+            if (!startRequest()) {
+                return false;
+            }
+            settled = Math.max(DEFAULT_MTU, Math.min(mtu, mProfile.getMaxMtu()));
+        }
+        complete(roundTrip(0), new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedLink.this) {
+                    mMtu = settled;
+                }
+                mCallback.onMtuChanged(SimulatedLink.this, settled, 0);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean readRemoteRssi() {
+        final int rssi;
+        synchronized (this) {
+            if (!startRequest()) {
+                return false;
+            }
+            rssi = mPeripheral.getRssi();
+        }
+        // the controller measures it, no round trip to the peer
+        complete(mProfile.getConnectionIntervalMs(), new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onReadRemoteRssi(SimulatedLink.this, rssi, 0);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * accepted, the link keeps the interval of its profile
+     */
+    @Override
+    public synchronized boolean requestConnectionPriority(int priority) {
+        return mState == STATE_CONNECTED;
+    }
+
+    /**
+     * ignored, the throughput of the profile is the air the link has
+     */
+    @Override
+    public void setPreferredPhy(int txPhyMask, int rxPhyMask) {
+    }
+
+    @Override
+    public void disconnect() {
+        synchronized (this) {
+            if (mClosed || mState == STATE_DISCONNECTED) {
+                return;
+            }
+        }
+        final int epoch = epoch();
+        mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (goDown(epoch)) {
+                    mCallback.onConnectionStateChanged(SimulatedLink.this, 0, false);
+                }
+            }
+        }, mProfile.getConnectionIntervalMs());
+    }
+
+    @Override
+    public void close() {
+        SimulatedPeripheral peripheral;
+        synchronized (this) {
+            mClosed = true;
+            mState = STATE_DISCONNECTED;
+            mPrepared = null;
+            mEpoch++;
+            peripheral = mPeripheral;
+        }
+        if (peripheral != null) {
+            peripheral.removeLink(this);
+        }
+    }
+
+    void onConnectResult(SimulatedPeripheral peripheral) {
+        synchronized (this) {
+            if (mClosed || mState != STATE_CONNECTING) {
+                return;
+            }
+            if (peripheral == null) {
+                mState = STATE_DISCONNECTED;
+            } else {
+                mState = STATE_CONNECTED;
+                mPeripheral = peripheral;
+                mAirFreeAt = mScheduler.now();
+            }
+            mEpoch++;
+        }
+        if (peripheral == null) {
+            mCallback.onConnectionStateChanged(this, SimulatedTransport.STATUS_CONNECT_FAILED, false);
+        } else {
+            peripheral.addLink(this);
+            mCallback.onConnectionStateChanged(this, 0, true);
+        }
+    }
+
+    /**
+     * the peer went away, reported right away like a supervision timeout which expired
+     */
+    void onLinkLost(final int status) {
+        final int epoch = epoch();
+        mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (goDown(epoch)) {
+                    mCallback.onConnectionStateChanged(SimulatedLink.this, status, false);
+                }
+            }
+        }, 0);
+    }
+
+    /**
+     * @return true if the peer sent the notification, i.e. the client subscribed to it
+     */
+    boolean sendNotification(final UUID characteristicUuid, byte[] value) {
+        final byte[] copy;
+        final boolean routed;
+        long at;
+        synchronized (this) {
+            if (mState != STATE_CONNECTED || !mSubscribed.contains(characteristicUuid)) {
+                return false;
+            }
+            copy = value.length > mMtu - ATT_HEADER_SIZE ? Arrays.copyOf(value, mMtu - ATT_HEADER_SIZE)
+                    : value.clone();
+            routed = mNotifying.contains(characteristicUuid);
+            at = transmit(copy.length);
+        }
+        if (routed) {
+            final int epoch = epoch();
+            mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (epoch() == epoch) {
+                        mCallback.onCharacteristicChanged(SimulatedLink.this, characteristicUuid, copy);
+                    }
+                }
+            }, at - mScheduler.now());
+        }
+        return true;
+    }
+
+    /**
+     * @return the values of the prepared writes, null if one has a gap or is too long
+     */
+    private static LinkedHashMap<UUID, byte[]> assemble(List<PreparedWrite> prepared) {
+        LinkedHashMap<UUID, byte[]> values = new LinkedHashMap<>();
+        for (PreparedWrite write : prepared) {
+            byte[] value = values.get(write.mCharacteristicUuid);
+            int length = value == null ? 0 : value.length;
+            if (write.mOffset > length || write.mOffset + write.mValue.length > MAX_ATTRIBUTE_SIZE) {
+                return null;
+            }
+            byte[] grown = value == null ? new byte[write.mOffset + write.mValue.length]
+                    : Arrays.copyOf(value, Math.max(length, write.mOffset + write.mValue.length));
+            System.arraycopy(write.mValue, 0, grown, write.mOffset, write.mValue.length);
+            values.put(write.mCharacteristicUuid, grown);
+        }
+        return values;
+    }
+
+    private synchronized int epoch() {
+        return mEpoch;
+    }
+
+    /**
+     * @return true if the link was up in the given epoch and is down now
+     */
+    private boolean goDown(int epoch) {
+        SimulatedPeripheral peripheral;
+        synchronized (this) {
+            if (mClosed || mEpoch != epoch || mState == STATE_DISCONNECTED) {
+                return false;
+            }
+            mState = STATE_DISCONNECTED;
+            mBusy = false;
+            mPrepared = null;
+            mEpoch++;
+            peripheral = mPeripheral;
+        }
+        if (peripheral != null) {
+            peripheral.removeLink(this);
+        }
+        return true;
+    }
+
+    /**
+     * must hold the lock
+     */
+    private boolean startRequest() {
+        if (mState != STATE_CONNECTED || mBusy) {
+            return false;
+        }
+        mBusy = true;
+        return true;
+    }
+
+    /**
+     * start a request on a characteristic of the peer, must hold the lock
+     */
+    private boolean startRequest(UUID characteristicUuid) {
+        return mState == STATE_CONNECTED && mPeripheral.hasCharacteristic(characteristicUuid) && startRequest();
+    }
+
+    /**
+     * run the event after the delay unless the link changed state in the meantime
+     */
+    private void complete(long delayMs, final Runnable event) {
+        final int epoch = epoch();
+        mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedLink.this) {
+                    if (mEpoch != epoch) {
+                        return;
+                    }
+                    mBusy = false;
+                }
+                event.run();
+            }
+        }, Math.max(0, delayMs));
+    }
+
+    /**
+     * @return the time of a request with response carrying the payload
+     */
+    private long roundTrip(int bytes) {
+        return mProfile.getLatencyMs() + mTransport.jitter() + airTimeMs(bytes)
+                + mTransport.retransmissionMs(packets(bytes));
+    }
+
+    /**
+     * put a packet on air behind the ones already waiting, must hold the lock
+     *
+     * @return the time at which it has been sent
+     */
+    private long transmit(int bytes) {
+        double start = Math.max(mScheduler.now(), mAirFreeAt);
+        mAirFreeAt = start + (bytes + PACKET_OVERHEAD) * 1000.0 / mProfile.getBytesPerSecond()
+                + mTransport.retransmissionMs(packets(bytes));
+        return (long) Math.ceil(mAirFreeAt);
+    }
+
+    private long airTimeMs(int bytes) {
+        return (long) Math.ceil(bytes * 1000.0 / mProfile.getBytesPerSecond());
+    }
+
+    private static int packets(int bytes) {
+        return 1 + bytes / MAX_PACKET_PAYLOAD;
+    }
+
+    private static class PreparedWrite {
+        final UUID mCharacteristicUuid;
+        final int mOffset;
+        final byte[] mValue;
+
+        PreparedWrite(UUID characteristicUuid, int offset, byte[] value) {
+            mCharacteristicUuid = characteristicUuid;
+            mOffset = offset;
+            mValue = value;
+        }
+    }
+}
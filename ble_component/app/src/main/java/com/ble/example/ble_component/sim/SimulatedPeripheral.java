@@ -0,0 +1,316 @@
+package com.ble.example.ble_component.sim;
+
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.util.Scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An in-memory GATT server for a {@link SimulatedTransport}: an attribute table, the values of
+ * its characteristics, an advertisement and optionally a stream of notifications. Characteristics
+ * are addressed by their uuid alone, which is enough for the tables the simulation is used with.
+ */
+public class SimulatedPeripheral {
+
+    /**
+     * GATT status of a disconnect by supervision timeout, as reported on Android
+     */
+    public static final int STATUS_LINK_LOSS = 0x08;
+
+    /**
+     * decides on the writes to the peripheral
+     */
+    public interface WriteHandler {
+        /**
+         * @param value only valid during the call
+         * @return the gatt status of the write, 0 to accept it
+         */
+        int onWrite(UUID characteristicUuid, byte[] value);
+    }
+
+    private final String mAddress;
+    private final GattLayout mLayout;
+    private final HashMap<UUID, byte[]> mValues = new HashMap<>();
+    private final HashMap<UUID, Scheduler.Task> mStreams = new HashMap<>();
+    private final CopyOnWriteArrayList<SimulatedLink> mLinks = new CopyOnWriteArrayList<>();
+
+    private SimulatedTransport mTransport;
+    private WriteHandler mWriteHandler;
+    private boolean mConnectable = true;
+    private byte[] mAdvertisement;
+    private long mAdvertisingIntervalMs = 100;
+    private int mRssi = -60;
+    private int mCorruptedEchoes;
+
+    private long mWriteCount;
+    private long mBytesWritten;
+    private long mNotificationCount;
+
+    public SimulatedPeripheral(String address, GattLayout layout) {
+        mAddress = address;
+        mLayout = layout;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    public GattLayout getLayout() {
+        return mLayout;
+    }
+
+    /**
+     * @param record     the raw advertisement
+     * @param intervalMs the advertising interval, 100 ms by default
+     * @param rssi       the rssi the scanner sees
+     * @return this peripheral
+     */
+    public synchronized SimulatedPeripheral setAdvertisement(byte[] record, long intervalMs, int rssi) {
+        mAdvertisement = record;
+        mAdvertisingIntervalMs = Math.max(1, intervalMs);
+        mRssi = rssi;
+        return this;
+    }
+
+    /**
+     * @param connectable false to let every connection attempt fail
+     * @return this peripheral
+     */
+    public synchronized SimulatedPeripheral setConnectable(boolean connectable) {
+        mConnectable = connectable;
+        return this;
+    }
+
+    public synchronized SimulatedPeripheral setWriteHandler(WriteHandler handler) {
+        mWriteHandler = handler;
+        return this;
+    }
+
+    /**
+     * echo the next prepared writes with a flipped bit, like a link which corrupts them
+     *
+     * @param count number of prepared writes to corrupt
+     * @return this peripheral
+     */
+    public synchronized SimulatedPeripheral corruptPreparedWrites(int count) {
+        mCorruptedEchoes = count;
+        return this;
+    }
+
+    public synchronized SimulatedPeripheral setValue(UUID characteristicUuid, byte[] value) {
+        mValues.put(characteristicUuid, value);
+        return this;
+    }
+
+    /**
+     * @return the current value, the last write or {@link #setValue}
+     */
+    public synchronized byte[] getValue(UUID characteristicUuid) {
+        return mValues.get(characteristicUuid);
+    }
+
+    /**
+     * send a notification to every client which subscribed to the characteristic
+     *
+     * @param characteristicUuid
+     * @param value
+     */
+    public void notify(UUID characteristicUuid, byte[] value) {
+        synchronized (this) {
+            mValues.put(characteristicUuid, value);
+        }
+        for (SimulatedLink link : mLinks) {
+            if (link.sendNotification(characteristicUuid, value)) {
+                synchronized (this) {
+                    mNotificationCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Notify the characteristic at a fixed rate until {@link #stopNotifications(UUID)}. The
+     * payload carries a little endian sequence number in its first four bytes.
+     *
+     * @param characteristicUuid
+     * @param ratePerSecond
+     * @param payloadBytes       at least 4
+     */
+    public void startNotifications(final UUID characteristicUuid, int ratePerSecond, int payloadBytes) {
+        final Scheduler scheduler = transport().getScheduler();
+        final long periodMs = Math.max(1, 1000 / Math.max(1, ratePerSecond));
+        final byte[] payload = new byte[Math.max(4, payloadBytes)];
+        stopNotifications(characteristicUuid);
+        Runnable tick = new Runnable() {
+            int mSequence;
+
+            @Override
+            public void run() {
+                synchronized (SimulatedPeripheral.this) {
+                    if (!mStreams.containsKey(characteristicUuid)) {
+                        return;
+                    }
+                    mStreams.put(characteristicUuid, scheduler.schedule(this, periodMs));
+                }
+                payload[0] = (byte) mSequence;
+                payload[1] = (byte) (mSequence >> 8);
+                payload[2] = (byte) (mSequence >> 16);
+                payload[3] = (byte) (mSequence >> 24);
+                mSequence++;
+                SimulatedPeripheral.this.notify(characteristicUuid, payload);
+            }
+        };
+        synchronized (this) {
+            mStreams.put(characteristicUuid, scheduler.schedule(tick, periodMs));
+        }
+    }
+
+    public synchronized void stopNotifications(UUID characteristicUuid) {
+        Scheduler.Task task = mStreams.remove(characteristicUuid);
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * drop every connection as if the peripheral went out of range
+     */
+    public void dropConnections() {
+        for (SimulatedLink link : mLinks) {
+            link.onLinkLost(STATUS_LINK_LOSS);
+        }
+    }
+
+    /**
+     * @return the number of connected clients
+     */
+    public int getConnectionCount() {
+        return mLinks.size();
+    }
+
+    public synchronized long getWriteCount() {
+        return mWriteCount;
+    }
+
+    public synchronized long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * @return notifications handed to subscribed clients
+     */
+    public synchronized long getNotificationCount() {
+        return mNotificationCount;
+    }
+
+    synchronized void attach(SimulatedTransport transport) {
+        if (mTransport != null && mTransport != transport) {
+            throw new IllegalStateException(mAddress + " belongs to another transport");
+        }
+        mTransport = transport;
+    }
+
+    synchronized boolean isConnectable() {
+        return mConnectable;
+    }
+
+    synchronized byte[] getAdvertisement() {
+        return mAdvertisement;
+    }
+
+    synchronized long getAdvertisingIntervalMs() {
+        return mAdvertisingIntervalMs;
+    }
+
+    synchronized int getRssi() {
+        return mRssi;
+    }
+
+    void addLink(SimulatedLink link) {
+        mLinks.addIfAbsent(link);
+    }
+
+    void removeLink(SimulatedLink link) {
+        mLinks.remove(link);
+    }
+
+    /**
+     * @return the status of the write
+     */
+    int onWrite(UUID characteristicUuid, byte[] value) {
+        WriteHandler handler;
+        synchronized (this) {
+            handler = mWriteHandler;
+        }
+        int status = handler == null ? 0 : handler.onWrite(characteristicUuid, value);
+        synchronized (this) {
+            if (status == 0) {
+                mValues.put(characteristicUuid, value.clone());
+            }
+            mWriteCount++;
+            mBytesWritten += value.length;
+        }
+        return status;
+    }
+
+    /**
+     * write the values of an executed reliable write, all or none of them
+     *
+     * @return the status of the first rejected write, 0 if all were written
+     */
+    int onExecuteWrite(Map<UUID, byte[]> values) {
+        WriteHandler handler;
+        synchronized (this) {
+            handler = mWriteHandler;
+        }
+        if (handler != null) {
+            for (Map.Entry<UUID, byte[]> entry : values.entrySet()) {
+                int status = handler.onWrite(entry.getKey(), entry.getValue());
+                if (status != 0) {
+                    return status;
+                }
+            }
+        }
+        synchronized (this) {
+            for (Map.Entry<UUID, byte[]> entry : values.entrySet()) {
+                mValues.put(entry.getKey(), entry.getValue().clone());
+                mWriteCount++;
+                mBytesWritten += entry.getValue().length;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the echo of a prepared write
+     */
+    synchronized byte[] echo(byte[] part) {
+        byte[] echo = part.clone();
+        if (mCorruptedEchoes > 0 && echo.length > 0) {
+            mCorruptedEchoes--;
+            echo[0] ^= 1;
+        }
+        return echo;
+    }
+
+    boolean hasCharacteristic(UUID characteristicUuid) {
+        for (GattLayout.Service service : mLayout.getServices()) {
+            for (GattLayout.Characteristic characteristic : service.getCharacteristics()) {
+                if (characteristic.getUuid().equals(characteristicUuid)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private synchronized SimulatedTransport transport() {
+        if (mTransport == null) {
+            throw new IllegalStateException(mAddress + " is not added to a transport");
+        }
+        return mTransport;
+    }
+}
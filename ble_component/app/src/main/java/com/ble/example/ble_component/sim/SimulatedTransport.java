@@ -0,0 +1,189 @@
+package com.ble.example.ble_component.sim;
+
+import com.ble.example.ble_component.transport.BleTransport;
+import com.ble.example.ble_component.transport.GattLink;
+import com.ble.example.ble_component.transport.GattLinkCallback;
+import com.ble.example.ble_component.transport.ScanTransport;
+import com.ble.example.ble_component.util.Scheduler;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link BleTransport} which runs entirely in memory. Connections go to
+ * {@link SimulatedPeripheral}s and take the time the {@link LinkProfile} says; all events are
+ * delivered from tasks of the {@link Scheduler}, so a virtual clock makes a run deterministic
+ * and lets a benchmark cover minutes of radio time in milliseconds.
+ * <p>
+ * The loss, jitter and failure draws come from one seeded random generator.
+ */
+public class SimulatedTransport implements BleTransport {
+
+    /**
+     * GATT status of a failed connection attempt, the infamous 133 on Android
+     */
+    public static final int STATUS_CONNECT_FAILED = 0x85;
+
+    private final Scheduler mScheduler;
+    private final LinkProfile mProfile;
+    private final Random mRandom;
+    private final ConcurrentHashMap<String, SimulatedPeripheral> mPeripherals = new ConcurrentHashMap<>();
+    private final Scanner mScanner = new Scanner();
+    private volatile boolean mEnabled = true;
+
+    private long mConnectAttempts;
+
+    public SimulatedTransport(Scheduler scheduler, LinkProfile profile) {
+        mScheduler = scheduler;
+        mProfile = profile;
+        mRandom = new Random(profile.getSeed());
+    }
+
+    public Scheduler getScheduler() {
+        return mScheduler;
+    }
+
+    public LinkProfile getProfile() {
+        return mProfile;
+    }
+
+    public void addPeripheral(SimulatedPeripheral peripheral) {
+        peripheral.attach(this);
+        mPeripherals.put(peripheral.getAddress(), peripheral);
+    }
+
+    /**
+     * remove the peripheral as if it were switched off, its connections are lost
+     *
+     * @param address
+     */
+    public void removePeripheral(String address) {
+        SimulatedPeripheral peripheral = mPeripherals.remove(address);
+        if (peripheral != null) {
+            peripheral.dropConnections();
+        }
+    }
+
+    public SimulatedPeripheral getPeripheral(String address) {
+        return mPeripherals.get(address);
+    }
+
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public synchronized long getConnectAttempts() {
+        return mConnectAttempts;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    @Override
+    public GattLink connect(String address, boolean autoConnect, GattLinkCallback callback) {
+        if (!mEnabled) {
+            return null;
+        }
+        synchronized (this) {
+            mConnectAttempts++;
+        }
+        final SimulatedLink link = new SimulatedLink(this, address, callback);
+        mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                SimulatedPeripheral peripheral = mPeripherals.get(link.getAddress());
+                boolean connected = peripheral != null && peripheral.isConnectable()
+                        && !draw(mProfile.getConnectFailureRate());
+                link.onConnectResult(connected ? peripheral : null);
+            }
+        }, mProfile.getConnectLatencyMs() + jitter());
+        return link;
+    }
+
+    @Override
+    public ScanTransport getScanner() {
+        return mScanner;
+    }
+
+    /**
+     * @param probability
+     * @return true with the given probability
+     */
+    synchronized boolean draw(float probability) {
+        return probability > 0 && mRandom.nextFloat() < probability;
+    }
+
+    synchronized long jitter() {
+        long jitter = mProfile.getJitterMs();
+        return jitter > 0 ? (long) (mRandom.nextFloat() * (jitter + 1)) : 0;
+    }
+
+    /**
+     * @param packets
+     * @return the extra time of retransmitting the lost ones of the packets
+     */
+    synchronized long retransmissionMs(int packets) {
+        float loss = mProfile.getPacketLoss();
+        if (loss <= 0) {
+            return 0;
+        }
+        long retransmissions = 0;
+        for (int i = 0; i < packets; i++) {
+            while (mRandom.nextFloat() < loss) {
+                retransmissions++;
+            }
+        }
+        return retransmissions * mProfile.getConnectionIntervalMs();
+    }
+
+    private class Scanner implements ScanTransport {
+        // the next advertisement of every peripheral
+        private final HashMap<String, Scheduler.Task> mTasks = new HashMap<>();
+        private Callback mCallback;
+
+        @Override
+        public synchronized boolean startScan(Callback callback) {
+            if (!mEnabled) {
+                return false;
+            }
+            stopScan();
+            mCallback = callback;
+            for (SimulatedPeripheral peripheral : mPeripherals.values()) {
+                if (peripheral.getAdvertisement() != null) {
+                    advertise(callback, peripheral, peripheral.getAdvertisingIntervalMs() / 2);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized void stopScan() {
+            mCallback = null;
+            for (Scheduler.Task task : mTasks.values()) {
+                task.cancel();
+            }
+            mTasks.clear();
+        }
+
+        private void advertise(final Callback callback, final SimulatedPeripheral peripheral, long delayMs) {
+            mTasks.put(peripheral.getAddress(), mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (Scanner.this) {
+                        if (mCallback != callback) {
+                            return;
+                        }
+                        advertise(callback, peripheral, peripheral.getAdvertisingIntervalMs());
+                    }
+                    if (mPeripherals.get(peripheral.getAddress()) == peripheral) {
+                        callback.onAdvertisement(peripheral.getAddress(), peripheral.getRssi(),
+                                peripheral.getAdvertisement());
+                    }
+                }
+            }, delayMs));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.ble.example.ble_component.spool;
+
+import com.ble.example.ble_component.util.Uuids;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the records of a {@link TelemetrySpool} in order. Call {@link #next()} and then the
+ * getters, which describe the current record until the next call. A cursor is not thread safe,
+ * use one per consumer.
+ */
+public final class SpoolCursor {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final TelemetrySpool mSpool;
+    private final String mName;
+    private final byte[] mScratch = new byte[TelemetrySpool.MAX_RECORD_LENGTH];
+    private final CRC32 mCrc = new CRC32();
+    private long mPosition;
+    private long mGapCount;
+
+    private String mAddress;
+    private final byte[] mMac = new byte[6];
+    private UUID mUuid;
+    private long mTimestampMillis;
+    private int mValueOffset;
+    private int mValueLength;
+
+    SpoolCursor(TelemetrySpool spool, String name, long position) {
+        mSpool = spool;
+        mName = name;
+        mPosition = position;
+    }
+
+    /**
+     * move to the next record
+     *
+     * @return false if the consumer caught up with the writer, try again later
+     */
+    public boolean next() {
+        long next = mSpool.read(this, mPosition);
+        if (next < 0) {
+            return false;
+        }
+        mPosition = next;
+        return true;
+    }
+
+    /**
+     * get the position after the current record, where reading resumes
+     *
+     * @return
+     */
+    public long getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * Persist the position under the cursor's name, so {@link TelemetrySpool#openCursor(String)}
+     * resumes after the records consumed so far.
+     *
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        if (mName == null) {
+            throw new IllegalStateException("cursor has no name");
+        }
+        mSpool.commit(mName, mPosition);
+    }
+
+    /**
+     * number of times records were skipped because retention deleted them before they were
+     * read, or they were damaged
+     *
+     * @return
+     */
+    public long getGapCount() {
+        return mGapCount;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    public UUID getUuid() {
+        return mUuid;
+    }
+
+    public long getTimestampMillis() {
+        return mTimestampMillis;
+    }
+
+    /**
+     * get a copy of the value of the current record
+     *
+     * @return
+     */
+    public byte[] getValue() {
+        return Arrays.copyOfRange(mScratch, mValueOffset, mValueOffset + mValueLength);
+    }
+
+    public int getValueLength() {
+        return mValueLength;
+    }
+
+    void onGap() {
+        mGapCount++;
+    }
+
+    /**
+     * verify and parse the record at the offset of a segment
+     *
+     * @return false if the record is damaged
+     */
+    boolean decode(ByteBuffer segment, int offset, int length) {
+        if (length < 3 + 6 + 8 + 2 + 4 || length > mScratch.length) {
+            return false;
+        }
+        ByteBuffer view = segment.duplicate();
+        view.position(offset);
+        view.get(mScratch, 0, length);
+        mCrc.reset();
+        mCrc.update(mScratch, 2, length - 6);
+        if ((int) mCrc.getValue() != getInt(length - 4)) {
+            return false;
+        }
+
+        int flags = mScratch[2] & 0xFF;
+        int p = 3;
+        if ((flags & TelemetrySpool.FLAG_TEXT_ADDRESS) != 0) {
+            int textLength = mScratch[p++] & 0xFF;
+            mAddress = new String(mScratch, p, textLength, UTF_8);
+            p += textLength;
+        } else {
+            if (mAddress == null || !sameMac(p)) {
+                System.arraycopy(mScratch, p, mMac, 0, 6);
+                mAddress = formatMac(mMac);
+            }
+            p += 6;
+        }
+        mTimestampMillis = getLong(p);
+        p += 8;
+        if ((flags & TelemetrySpool.FLAG_SHORT_UUID) != 0) {
+            int shortId = (mScratch[p] & 0xFF) << 8 | (mScratch[p + 1] & 0xFF);
+            mUuid = Uuids.fromShortId(shortId);
+            p += 2;
+        } else {
+            mUuid = new UUID(getLong(p), getLong(p + 8));
+            p += 16;
+        }
+        mValueOffset = p;
+        mValueLength = length - 4 - p;
+        return mValueLength >= 0;
+    }
+
+    /**
+     * the address string is reused while records come from the same device
+     */
+    private boolean sameMac(int p) {
+        for (int i = 0; i < 6; i++) {
+            if (mMac[i] != mScratch[p + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String formatMac(byte[] mac) {
+        StringBuilder sb = new StringBuilder(17);
+        for (int i = 0; i < mac.length; i++) {
+            if (i > 0) {
+                sb.append(':');
+            }
+            sb.append(Character.toUpperCase(Character.forDigit((mac[i] >> 4) & 0xF, 16)));
+            sb.append(Character.toUpperCase(Character.forDigit(mac[i] & 0xF, 16)));
+        }
+        return sb.toString();
+    }
+
+    private int getInt(int p) {
+        return (mScratch[p] & 0xFF) << 24 | (mScratch[p + 1] & 0xFF) << 16
+                | (mScratch[p + 2] & 0xFF) << 8 | (mScratch[p + 3] & 0xFF);
+    }
+
+    private long getLong(int p) {
+        return (long) getInt(p) << 32 | (getInt(p + 4) & 0xFFFFFFFFL);
+    }
+}
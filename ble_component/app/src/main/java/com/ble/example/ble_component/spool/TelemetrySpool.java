@@ -0,0 +1,559 @@
+package com.ble.example.ble_component.spool;
+
+import com.ble.example.ble_component.event.CharacteristicEvent;
+import com.ble.example.ble_component.event.CharacteristicEventBus;
+import com.ble.example.ble_component.event.CharacteristicListener;
+import com.ble.example.ble_component.util.Uuids;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only store of characteristic values, so notifications survive a stalled consumer or a
+ * process restart. Records go into fixed size, memory mapped segment files; appending is a copy
+ * into the mapping on the publishing thread, the kernel writes the pages back even if the
+ * process dies. Consumers read with a {@link SpoolCursor}, named cursors persist their position.
+ * <p>
+ * Record format, big endian:
+ * <pre>
+ * u16  length of the whole record, written last; 0 ends the segment
+ * u8   flags, {@link #FLAG_SHORT_UUID} and {@link #FLAG_TEXT_ADDRESS}
+ * ...  address, 6 bytes, or u8 length and UTF-8 if it is not a MAC address
+ * i64  timestamp, milliseconds since the epoch
+ * ...  uuid, u16 assigned number or 16 bytes
+ * ...  value
+ * i32  CRC-32 of everything after the length
+ * </pre>
+ * Positions are {@code base of the segment + offset}, segments are named after their base.
+ * On open the last segment is scanned and a torn record at its end is cleared. Whole segments
+ * are deleted, oldest first, once the spool is over its size or they are over their age,
+ * whether or not a cursor has read them yet.
+ */
+public class TelemetrySpool implements CharacteristicListener, Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    public static final int FLAG_SHORT_UUID = 0x01;
+    public static final int FLAG_TEXT_ADDRESS = 0x02;
+
+    static final int MAX_VALUE_LENGTH = 512;
+    static final int MAX_RECORD_LENGTH = 2 + 1 + 1 + 255 + 8 + 16 + MAX_VALUE_LENGTH + 4;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CURSOR_SUFFIX = ".cursor";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mDirectory;
+    private final int mSegmentSize;
+    private final Object mLock = new Object();
+    private final List<Segment> mSegments = new ArrayList<>();
+    private final byte[] mScratch = new byte[MAX_RECORD_LENGTH];
+    private final CRC32 mCrc = new CRC32();
+    private long mMaxBytes = DEFAULT_MAX_BYTES;
+    private long mMaxAgeMs = DEFAULT_MAX_AGE_MS;
+    private int mWriteOffset;
+    private boolean mClosed;
+    private CharacteristicEventBus mBus;
+
+    private long mAppendedCount;
+    private long mDroppedCount;
+
+    /**
+     * Open the spool and recover the segments of an earlier run.
+     *
+     * @param directory   the directory of the segment and cursor files, created if needed
+     * @param segmentSize bytes per segment file, used for new segments
+     * @throws IOException if the directory or the last segment cannot be opened
+     */
+    public TelemetrySpool(File directory, int segmentSize) throws IOException {
+        if (segmentSize < MAX_RECORD_LENGTH) {
+            throw new IllegalArgumentException("segment too small for a record");
+        }
+        mDirectory = directory;
+        mSegmentSize = segmentSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        recover();
+    }
+
+    /**
+     * Limit the spool. The limits are applied when a segment fills up and by {@link #trim()}.
+     *
+     * @param maxBytes total size of the segment files, at least one segment is kept
+     * @param maxAgeMs drop segments whose last record is older than this
+     */
+    public void setLimits(long maxBytes, long maxAgeMs) {
+        synchronized (mLock) {
+            mMaxBytes = maxBytes;
+            mMaxAgeMs = maxAgeMs;
+        }
+    }
+
+    /**
+     * subscribe to every characteristic of every device on the bus
+     *
+     * @param bus
+     * @return this spool
+     */
+    public TelemetrySpool attach(CharacteristicEventBus bus) {
+        synchronized (mLock) {
+            if (mClosed || mBus != null) {
+                return this;
+            }
+            mBus = bus;
+        }
+        bus.subscribe(null, null, this);
+        return this;
+    }
+
+    @Override
+    public void onCharacteristicChanged(CharacteristicEvent event) {
+        long ageMs = (System.nanoTime() - event.getTimestampNanos()) / 1000000;
+        append(event.getAddress(), event.getUuid(), event.getValue(), System.currentTimeMillis() - ageMs);
+    }
+
+    /**
+     * Store one value.
+     *
+     * @param address
+     * @param uuid
+     * @param value           at most 512 bytes
+     * @param timestampMillis
+     * @return false if the spool is closed, the value too long or a new segment could not be
+     * created; the record is counted as dropped
+     */
+    public boolean append(String address, UUID uuid, byte[] value, long timestampMillis) {
+        int valueLength = value == null ? 0 : value.length;
+        synchronized (mLock) {
+            if (mClosed || valueLength > MAX_VALUE_LENGTH) {
+                mDroppedCount++;
+                return false;
+            }
+            int length = encode(address, uuid, value, valueLength, timestampMillis);
+            if (length < 0) {
+                mDroppedCount++;
+                return false;
+            }
+            Segment segment = last();
+            if (mWriteOffset + length > segment.mSize) {
+                try {
+                    segment = roll();
+                } catch (IOException e) {
+                    mDroppedCount++;
+                    return false;
+                }
+            }
+            MappedByteBuffer buffer = segment.mBuffer;
+            buffer.position(mWriteOffset + 2);
+            buffer.put(mScratch, 2, length - 2);
+            // the length makes the record visible, so it goes last
+            buffer.putShort(mWriteOffset, (short) length);
+            mWriteOffset += length;
+            mAppendedCount++;
+            return true;
+        }
+    }
+
+    /**
+     * encode a record into the scratch buffer
+     *
+     * @return the record length, -1 if the address is too long
+     */
+    private int encode(String address, UUID uuid, byte[] value, int valueLength, long timestampMillis) {
+        byte[] out = mScratch;
+        int flags = 0;
+        int p = 3;
+        if (!putMac(address, out, p)) {
+            byte[] text = address.getBytes(UTF_8);
+            if (text.length > 255) {
+                return -1;
+            }
+            flags |= FLAG_TEXT_ADDRESS;
+            out[p++] = (byte) text.length;
+            System.arraycopy(text, 0, out, p, text.length);
+            p += text.length;
+        } else {
+            p += 6;
+        }
+        p = putLong(out, p, timestampMillis);
+        int shortId = Uuids.toShortId(uuid);
+        if (shortId >= 0) {
+            flags |= FLAG_SHORT_UUID;
+            out[p++] = (byte) (shortId >> 8);
+            out[p++] = (byte) shortId;
+        } else {
+            p = putLong(out, p, uuid.getMostSignificantBits());
+            p = putLong(out, p, uuid.getLeastSignificantBits());
+        }
+        if (valueLength > 0) {
+            System.arraycopy(value, 0, out, p, valueLength);
+            p += valueLength;
+        }
+        out[2] = (byte) flags;
+        mCrc.reset();
+        mCrc.update(out, 2, p - 2);
+        int crc = (int) mCrc.getValue();
+        out[p++] = (byte) (crc >> 24);
+        out[p++] = (byte) (crc >> 16);
+        out[p++] = (byte) (crc >> 8);
+        out[p++] = (byte) crc;
+        return p;
+    }
+
+    /**
+     * force the mapped pages to disk, only needed to survive a power loss
+     */
+    public void flush() {
+        synchronized (mLock) {
+            if (!mClosed) {
+                last().mBuffer.force();
+            }
+        }
+    }
+
+    /**
+     * apply the size and age limits now
+     */
+    public void trim() {
+        synchronized (mLock) {
+            applyRetention();
+        }
+    }
+
+    /**
+     * Read from a position.
+     *
+     * @param position a position from {@link SpoolCursor#getPosition()}, or
+     *                 {@link #getStartPosition()}
+     * @return
+     */
+    public SpoolCursor openCursor(long position) {
+        return new SpoolCursor(this, null, position);
+    }
+
+    /**
+     * Read from the position last committed under the name, or from the start.
+     *
+     * @param name e.g. "uploader", the position is kept in a file of that name
+     * @return
+     */
+    public SpoolCursor openCursor(String name) {
+        long position = getStartPosition();
+        File file = cursorFile(name);
+        if (file.isFile()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new FileInputStream(file));
+                position = in.readLong();
+            } catch (IOException e) {
+                // unreadable, start over
+            } finally {
+                closeQuietly(in);
+            }
+        }
+        return new SpoolCursor(this, name, position);
+    }
+
+    /**
+     * get the position of the oldest record still kept
+     *
+     * @return
+     */
+    public long getStartPosition() {
+        synchronized (mLock) {
+            return mSegments.get(0).mBase;
+        }
+    }
+
+    /**
+     * get the position the next record will be written at
+     *
+     * @return
+     */
+    public long getEndPosition() {
+        synchronized (mLock) {
+            return last().mBase + mWriteOffset;
+        }
+    }
+
+    public long getAppendedCount() {
+        synchronized (mLock) {
+            return mAppendedCount;
+        }
+    }
+
+    public long getDroppedCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    /**
+     * unsubscribe and stop appending, the files stay for the next run
+     */
+    @Override
+    public void close() {
+        CharacteristicEventBus bus;
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            bus = mBus;
+            mBus = null;
+        }
+        if (bus != null) {
+            bus.unsubscribe(null, null, this);
+        }
+    }
+
+    void commit(String name, long position) throws IOException {
+        File file = cursorFile(name);
+        File temp = new File(mDirectory, name + CURSOR_SUFFIX + ".tmp");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(temp));
+        try {
+            out.writeLong(position);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("cannot replace " + file);
+        }
+    }
+
+    /**
+     * Decode the record at a position into the cursor, skipping to the next segment where one
+     * ends and past segments which were deleted.
+     *
+     * @return the position after the record, -1 if there is no record there yet
+     */
+    long read(SpoolCursor cursor, long position) {
+        synchronized (mLock) {
+            while (true) {
+                Segment first = mSegments.get(0);
+                if (position < first.mBase) {
+                    cursor.onGap();
+                    position = first.mBase;
+                }
+                int index = find(position);
+                if (index < 0) {
+                    return -1;
+                }
+                Segment segment = mSegments.get(index);
+                boolean active = index == mSegments.size() - 1;
+                int offset = (int) (position - segment.mBase);
+                int end = active ? mWriteOffset : segment.mSize;
+                int length = offset + 2 <= end ? segment.mBuffer.getShort(offset) & 0xFFFF : 0;
+                if (length > 0 && offset + length <= end && cursor.decode(segment.mBuffer, offset, length)) {
+                    return position + length;
+                }
+                if (active) {
+                    return -1;
+                }
+                if (length > 0) {
+                    // a damaged record, the rest of the segment cannot be trusted
+                    cursor.onGap();
+                }
+                position = mSegments.get(index + 1).mBase;
+            }
+        }
+    }
+
+    private int find(long position) {
+        for (int i = mSegments.size() - 1; i >= 0; i--) {
+            Segment segment = mSegments.get(i);
+            if (position >= segment.mBase) {
+                return position < segment.mBase + segment.mSize ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    private Segment last() {
+        return mSegments.get(mSegments.size() - 1);
+    }
+
+    private Segment roll() throws IOException {
+        Segment full = last();
+        full.mFile.setLastModified(System.currentTimeMillis());
+        Segment next = Segment.create(mDirectory, full.mBase + full.mSize, mSegmentSize);
+        mSegments.add(next);
+        mWriteOffset = 0;
+        applyRetention();
+        return next;
+    }
+
+    private void applyRetention() {
+        long total = 0;
+        for (Segment segment : mSegments) {
+            total += segment.mSize;
+        }
+        long now = System.currentTimeMillis();
+        while (mSegments.size() > 1) {
+            Segment oldest = mSegments.get(0);
+            if (total <= mMaxBytes && now - oldest.mFile.lastModified() <= mMaxAgeMs) {
+                break;
+            }
+            mSegments.remove(0);
+            oldest.mFile.delete();
+            total -= oldest.mSize;
+        }
+    }
+
+    private void recover() throws IOException {
+        File[] files = mDirectory.listFiles();
+        List<File> segments = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(SEGMENT_SUFFIX) && parseBase(file) >= 0) {
+                    segments.add(file);
+                }
+            }
+        }
+        File[] sorted = segments.toArray(new File[segments.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long left = parseBase(a);
+                long right = parseBase(b);
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+        for (File file : sorted) {
+            if (file.length() < MAX_RECORD_LENGTH) {
+                // never got its size, created by a run that died right away
+                file.delete();
+                continue;
+            }
+            mSegments.add(Segment.open(file, parseBase(file)));
+        }
+        if (mSegments.isEmpty()) {
+            mSegments.add(Segment.create(mDirectory, 0, mSegmentSize));
+            return;
+        }
+        Segment active = last();
+        SpoolCursor scanner = new SpoolCursor(this, null, active.mBase);
+        int offset = 0;
+        while (offset + 2 <= active.mSize) {
+            int length = active.mBuffer.getShort(offset) & 0xFFFF;
+            if (length == 0 || offset + length > active.mSize
+                    || !scanner.decode(active.mBuffer, offset, length)) {
+                break;
+            }
+            offset += length;
+        }
+        mWriteOffset = offset;
+        // clear a torn record so it cannot be mistaken for one later. Its length is written
+        // last, so the body can be there without it: clear as far as a record can reach
+        int end = (int) Math.min((long) offset + MAX_RECORD_LENGTH, active.mSize);
+        for (int i = offset; i < end; i++) {
+            active.mBuffer.put(i, (byte) 0);
+        }
+        applyRetention();
+    }
+
+    private File cursorFile(String name) {
+        return new File(mDirectory, name + CURSOR_SUFFIX);
+    }
+
+    private static long parseBase(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return false if the address is not a MAC address
+     */
+    private static boolean putMac(String address, byte[] out, int offset) {
+        if (address.length() != 17) {
+            return false;
+        }
+        for (int i = 0; i < 6; i++) {
+            int high = Character.digit(address.charAt(i * 3), 16);
+            int low = Character.digit(address.charAt(i * 3 + 1), 16);
+            if (high < 0 || low < 0 || (i < 5 && address.charAt(i * 3 + 2) != ':')) {
+                return false;
+            }
+            out[offset + i] = (byte) (high << 4 | low);
+        }
+        return true;
+    }
+
+    private static int putLong(byte[] out, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            out[offset++] = (byte) (value >> (8 * i));
+        }
+        return offset;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * a mapped segment file
+     */
+    static final class Segment {
+        final File mFile;
+        final long mBase;
+        final int mSize;
+        final MappedByteBuffer mBuffer;
+
+        private Segment(File file, long base, int size, MappedByteBuffer buffer) {
+            mFile = file;
+            mBase = base;
+            mSize = size;
+            mBuffer = buffer;
+        }
+
+        static Segment create(File directory, long base, int size) throws IOException {
+            File file = new File(directory, String.format("%016x", base) + SEGMENT_SUFFIX);
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(size);
+                return new Segment(file, base, size, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+            } finally {
+                // the mapping stays valid without the descriptor
+                raf.close();
+            }
+        }
+
+        static Segment open(File file, long base) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                int size = (int) Math.min(raf.length(), Integer.MAX_VALUE);
+                return new Segment(file, base, size, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+            } finally {
+                raf.close();
+            }
+        }
+    }
+}
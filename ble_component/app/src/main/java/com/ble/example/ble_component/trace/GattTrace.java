@@ -0,0 +1,44 @@
+package com.ble.example.ble_component.trace;
+
+/**
+ * The binary trace of the GATT events of a session, written by {@link TraceWriter} and read by
+ * {@link TraceReader}.
+ * <p>
+ * After a header of the magic and a version byte, every event is one record: the type byte,
+ * the time since the previous record in microseconds, the address, the uuid, the status, one
+ * argument and the value. Numbers are varints, so a notification of a known device costs a few
+ * bytes on top of its value: addresses and uuids are written in full the first time and as an
+ * index into the table of the seen ones after that.
+ */
+public final class GattTrace {
+
+    static final int MAGIC = 0x47545243;
+    static final int VERSION = 1;
+
+    /**
+     * the argument is 1 when connected, 0 when disconnected
+     */
+    public static final int TYPE_CONNECTION_STATE = 1;
+    /**
+     * the value is the {@link com.ble.example.ble_component.discovery.GattLayout#encode()
+     * encoded layout}
+     */
+    public static final int TYPE_SERVICES_DISCOVERED = 2;
+    public static final int TYPE_CHARACTERISTIC_READ = 3;
+    public static final int TYPE_CHARACTERISTIC_WRITE = 4;
+    public static final int TYPE_DESCRIPTOR_WRITE = 5;
+    public static final int TYPE_PREPARED_WRITE = 6;
+    public static final int TYPE_RELIABLE_WRITE_COMPLETED = 7;
+    public static final int TYPE_CHARACTERISTIC_CHANGED = 8;
+    /**
+     * the argument is the MTU
+     */
+    public static final int TYPE_MTU_CHANGED = 9;
+    /**
+     * the argument is the RSSI
+     */
+    public static final int TYPE_READ_REMOTE_RSSI = 10;
+
+    private GattTrace() {
+    }
+}
@@ -0,0 +1,140 @@
+package com.ble.example.ble_component.trace;
+
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.transport.BleTransport;
+import com.ble.example.ble_component.transport.GattLink;
+import com.ble.example.ble_component.transport.GattLinkCallback;
+import com.ble.example.ble_component.transport.ScanTransport;
+import com.ble.example.ble_component.util.Scheduler;
+
+import java.util.UUID;
+
+/**
+ * A {@link BleTransport} which records every link event of the transport it wraps into a
+ * {@link TraceWriter}, on the way to the stack. Works with any transport, including the
+ * simulated one.
+ */
+public class RecordingTransport implements BleTransport {
+
+    private final BleTransport mTransport;
+    private final Scheduler mClock;
+    private volatile TraceWriter mTrace;
+
+    /**
+     * @param transport the transport to record
+     * @param clock     stamps the events
+     * @param trace     null to record only once {@link #setTrace(TraceWriter)} is called
+     */
+    public RecordingTransport(BleTransport transport, Scheduler clock, TraceWriter trace) {
+        mTransport = transport;
+        mClock = clock;
+        mTrace = trace;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return mTransport.isEnabled();
+    }
+
+    @Override
+    public GattLink connect(String address, boolean autoConnect, GattLinkCallback callback) {
+        return mTransport.connect(address, autoConnect, new Recorder(callback));
+    }
+
+    @Override
+    public ScanTransport getScanner() {
+        return mTransport.getScanner();
+    }
+
+    /**
+     * switch the trace the events go to, the links connected before record into it as well
+     *
+     * @param trace null to stop recording
+     */
+    public void setTrace(TraceWriter trace) {
+        mTrace = trace;
+    }
+
+    private void record(int type, GattLink link, UUID uuid, int status, int arg, byte[] value) {
+        TraceWriter trace = mTrace;
+        if (trace != null) {
+            trace.record(type, mClock.now() * 1000, link.getAddress(), uuid, status, arg, value);
+        }
+    }
+
+    private class Recorder implements GattLinkCallback {
+        private final GattLinkCallback mCallback;
+
+        Recorder(GattLinkCallback callback) {
+            mCallback = callback;
+        }
+
+        @Override
+        public void onConnectionStateChanged(GattLink link, int status, boolean connected) {
+            record(GattTrace.TYPE_CONNECTION_STATE, link, null, status, connected ? 1 : 0, null);
+            mCallback.onConnectionStateChanged(link, status, connected);
+        }
+
+        @Override
+        public void onServicesDiscovered(GattLink link, int status) {
+            GattLayout layout = status == 0 && mTrace != null ? link.getServices() : null;
+            record(GattTrace.TYPE_SERVICES_DISCOVERED, link, null, status, 0,
+                    layout == null ? null : layout.encode());
+            mCallback.onServicesDiscovered(link, status);
+        }
+
+        @Override
+        public void onCharacteristicRead(GattLink link, UUID characteristicUuid, byte[] value, int status) {
+            record(GattTrace.TYPE_CHARACTERISTIC_READ, link, characteristicUuid, status, 0, value);
+            mCallback.onCharacteristicRead(link, characteristicUuid, value, status);
+        }
+
+        @Override
+        public void onCharacteristicWrite(GattLink link, UUID characteristicUuid, int status) {
+            record(GattTrace.TYPE_CHARACTERISTIC_WRITE, link, characteristicUuid, status, 0, null);
+            mCallback.onCharacteristicWrite(link, characteristicUuid, status);
+        }
+
+        @Override
+        public void onDescriptorWrite(GattLink link, UUID descriptorUuid, int status) {
+            record(GattTrace.TYPE_DESCRIPTOR_WRITE, link, descriptorUuid, status, 0, null);
+            mCallback.onDescriptorWrite(link, descriptorUuid, status);
+        }
+
+        @Override
+        public void onPreparedWrite(GattLink link, UUID characteristicUuid, byte[] echo, int status) {
+            record(GattTrace.TYPE_PREPARED_WRITE, link, characteristicUuid, status, 0, echo);
+            mCallback.onPreparedWrite(link, characteristicUuid, echo, status);
+        }
+
+        @Override
+        public void onReliableWriteCompleted(GattLink link, int status) {
+            record(GattTrace.TYPE_RELIABLE_WRITE_COMPLETED, link, null, status, 0, null);
+            mCallback.onReliableWriteCompleted(link, status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(GattLink link, UUID characteristicUuid, byte[] value) {
+            record(GattTrace.TYPE_CHARACTERISTIC_CHANGED, link, characteristicUuid, 0, 0, value);
+            mCallback.onCharacteristicChanged(link, characteristicUuid, value);
+        }
+
+        @Override
+        public void onMtuChanged(GattLink link, int mtu, int status) {
+            record(GattTrace.TYPE_MTU_CHANGED, link, null, status, mtu, null);
+            mCallback.onMtuChanged(link, mtu, status);
+        }
+
+        @Override
+        public void onReadRemoteRssi(GattLink link, int rssi, int status) {
+            record(GattTrace.TYPE_READ_REMOTE_RSSI, link, null, status, rssi, null);
+            mCallback.onReadRemoteRssi(link, rssi, status);
+        }
+
+        @Override
+        public void onPhyUpdate(GattLink link, int txPhy, int rxPhy, int status) {
+            // not part of a trace, the replay has no PHYs
+            mCallback.onPhyUpdate(link, txPhy, rxPhy, status);
+        }
+    }
+}
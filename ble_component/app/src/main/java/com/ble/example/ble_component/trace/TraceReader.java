@@ -0,0 +1,179 @@
+package com.ble.example.ble_component.trace;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.UUID;
+
+/**
+ * Reads the records of a {@link GattTrace} in order. Call {@link #next()} and then the getters,
+ * which describe the current record until the next call. A record cut off by the end of the
+ * stream, e.g. because the app died while recording, ends the trace. Not thread safe.
+ */
+public class TraceReader implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final DataInputStream mIn;
+    private final ArrayList<String> mAddresses = new ArrayList<>();
+    private final ArrayList<UUID> mUuids = new ArrayList<>();
+
+    private int mType;
+    private long mTimeMicros;
+    private String mAddress;
+    private UUID mUuid;
+    private int mStatus;
+    private int mArg;
+    private byte[] mValue;
+
+    /**
+     * @param in buffer it, records are read in small pieces
+     * @throws IOException if the stream is not a trace or of another version
+     */
+    public TraceReader(InputStream in) throws IOException {
+        mIn = new DataInputStream(in);
+        if (mIn.readInt() != GattTrace.MAGIC) {
+            throw new IOException("not a gatt trace");
+        }
+        int version = mIn.readUnsignedByte();
+        if (version != GattTrace.VERSION) {
+            throw new IOException("trace version " + version);
+        }
+    }
+
+    /**
+     * move to the next record
+     *
+     * @return false at the end of the trace
+     * @throws IOException if the trace is corrupt
+     */
+    public boolean next() throws IOException {
+        int type = mIn.read();
+        if (type < 0) {
+            return false;
+        }
+        try {
+            long timeMicros = mTimeMicros + readVarint();
+            String address = readAddress();
+            UUID uuid = readUuid();
+            int status = unzigzag(readVarint());
+            int arg = unzigzag(readVarint());
+            int length = (int) readVarint();
+            byte[] value = null;
+            if (length > 0) {
+                value = new byte[length - 1];
+                mIn.readFully(value);
+            }
+            mType = type;
+            mTimeMicros = timeMicros;
+            mAddress = address;
+            mUuid = uuid;
+            mStatus = status;
+            mArg = arg;
+            mValue = value;
+            return true;
+        } catch (EOFException e) {
+            // the last record was torn
+            return false;
+        }
+    }
+
+    /**
+     * @return one of the {@code GattTrace.TYPE_} constants
+     */
+    public int getType() {
+        return mType;
+    }
+
+    /**
+     * @return time since the first record
+     */
+    public long getTimeMicros() {
+        return mTimeMicros;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * @return null if the event has no attribute
+     */
+    public UUID getUuid() {
+        return mUuid;
+    }
+
+    public int getStatus() {
+        return mStatus;
+    }
+
+    /**
+     * @return state, MTU or RSSI, see the types
+     */
+    public int getArg() {
+        return mArg;
+    }
+
+    /**
+     * @return null if the event has no value
+     */
+    public byte[] getValue() {
+        return mValue;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+
+    private String readAddress() throws IOException {
+        int index = (int) readVarint();
+        if (index < mAddresses.size()) {
+            return mAddresses.get(index);
+        }
+        if (index != mAddresses.size()) {
+            throw new IOException("address index " + index);
+        }
+        byte[] bytes = new byte[(int) readVarint()];
+        mIn.readFully(bytes);
+        String address = new String(bytes, UTF_8);
+        mAddresses.add(address);
+        return address;
+    }
+
+    private UUID readUuid() throws IOException {
+        int index = (int) readVarint();
+        if (index == 0) {
+            return null;
+        }
+        if (index <= mUuids.size()) {
+            return mUuids.get(index - 1);
+        }
+        if (index != mUuids.size() + 1) {
+            throw new IOException("uuid index " + index);
+        }
+        UUID uuid = new UUID(mIn.readLong(), mIn.readLong());
+        mUuids.add(uuid);
+        return uuid;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = mIn.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private static int unzigzag(long value) {
+        return (int) ((value >>> 1) ^ -(value & 1));
+    }
+}
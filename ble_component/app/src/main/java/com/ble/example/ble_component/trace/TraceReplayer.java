@@ -0,0 +1,228 @@
+package com.ble.example.ble_component.trace;
+
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.sim.SimulatedPeripheral;
+import com.ble.example.ble_component.sim.SimulatedTransport;
+import com.ble.example.ble_component.util.Scheduler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+
+/**
+ * Plays a recorded {@link GattTrace} back through a {@link SimulatedTransport}, so the stack
+ * sees the devices of a real session on the JVM. Set as the transport of a
+ * {@link com.ble.example.ble_component.transport.GattClient}, the replay runs through the same
+ * dispatch as the service's Bluetooth callbacks: the operation queues, the event bus and the
+ * client's listeners. Every recorded device becomes a
+ * {@link SimulatedPeripheral} with its discovered layout. On replay its notifications are sent
+ * with the recorded timing divided by the speed, its read values are served from the time
+ * they were recorded and its link losses drop the connection. The requests come from the
+ * stack under test: it connects and subscribes itself, and notifications of a characteristic
+ * nobody subscribed are not delivered, like on the air.
+ * <p>
+ * With a virtual clock like the tests' {@code VirtualScheduler} the replay is
+ * deterministic and runs as fast as the stack can take it.
+ */
+public class TraceReplayer {
+
+    private static class Event {
+        final int mType;
+        final long mTimeMicros;
+        final String mAddress;
+        final UUID mUuid;
+        final int mStatus;
+        final int mArg;
+        final byte[] mValue;
+
+        Event(TraceReader reader) {
+            mType = reader.getType();
+            mTimeMicros = reader.getTimeMicros();
+            mAddress = reader.getAddress();
+            mUuid = reader.getUuid();
+            mStatus = reader.getStatus();
+            mArg = reader.getArg();
+            mValue = reader.getValue();
+        }
+    }
+
+    private final Scheduler mScheduler;
+    private final ArrayList<Event> mEvents = new ArrayList<>();
+    private final LinkedHashMap<String, SimulatedPeripheral> mPeripherals = new LinkedHashMap<>();
+    private final Runnable mReplay = new Runnable() {
+        @Override
+        public void run() {
+            replay();
+        }
+    };
+
+    private float mSpeed = 1;
+    private GattFuture<Void> mFuture;
+    private Scheduler.Task mTask;
+    private long mStartedAt;
+    private int mNext;
+
+    /**
+     * Load the trace and add its devices to the transport.
+     *
+     * @param reader    read to the end, the caller closes it
+     * @param transport
+     * @throws IOException if the trace or a recorded layout is corrupt
+     */
+    public TraceReplayer(TraceReader reader, SimulatedTransport transport) throws IOException {
+        mScheduler = transport.getScheduler();
+        // the peripherals need their layout before the first event, so read everything first
+        LinkedHashMap<String, GattLayout> layouts = new LinkedHashMap<>();
+        while (reader.next()) {
+            Event event = new Event(reader);
+            mEvents.add(event);
+            GattLayout layout = layouts.get(event.mAddress);
+            if (layout == null && event.mType == GattTrace.TYPE_SERVICES_DISCOVERED && event.mStatus == 0
+                    && event.mValue != null) {
+                layout = GattLayout.decode(event.mValue);
+            }
+            layouts.put(event.mAddress, layout);
+        }
+        for (String address : layouts.keySet()) {
+            GattLayout layout = layouts.get(address);
+            SimulatedPeripheral peripheral = new SimulatedPeripheral(address,
+                    layout == null ? new GattLayout() : layout);
+            mPeripherals.put(address, peripheral);
+            transport.addPeripheral(peripheral);
+        }
+    }
+
+    /**
+     * @param speed 1 for the recorded timing, 10 to replay ten times as fast
+     */
+    public synchronized void setSpeed(float speed) {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("speed must be positive");
+        }
+        mSpeed = speed;
+    }
+
+    /**
+     * @return the recorded devices, in the order of their first event
+     */
+    public Collection<SimulatedPeripheral> getPeripherals() {
+        return Collections.unmodifiableCollection(mPeripherals.values());
+    }
+
+    public SimulatedPeripheral getPeripheral(String address) {
+        return mPeripherals.get(address);
+    }
+
+    public int getEventCount() {
+        return mEvents.size();
+    }
+
+    /**
+     * @return the recorded time from the first to the last event
+     */
+    public long getDurationMicros() {
+        return mEvents.isEmpty() ? 0 : mEvents.get(mEvents.size() - 1).mTimeMicros;
+    }
+
+    /**
+     * number of events played so far
+     *
+     * @return
+     */
+    public synchronized int getReplayedCount() {
+        return mNext;
+    }
+
+    /**
+     * Start from the first event, once the stack connected to the peripherals it is interested
+     * in.
+     *
+     * @return completes after the last event, the pending future if a replay runs
+     */
+    public synchronized GattFuture<Void> start() {
+        if (mFuture != null) {
+            return mFuture;
+        }
+        mFuture = new GattFuture<>();
+        mStartedAt = mScheduler.now();
+        mNext = 0;
+        GattFuture<Void> future = mFuture;
+        mTask = mScheduler.schedule(mReplay, 0);
+        return future;
+    }
+
+    /**
+     * stop the replay, the future fails with {@link GattException#STATUS_CANCELLED}
+     */
+    public synchronized void stop() {
+        if (mFuture == null) {
+            return;
+        }
+        if (mTask != null) {
+            mTask.cancel();
+            mTask = null;
+        }
+        GattFuture<Void> future = mFuture;
+        mFuture = null;
+        future.fail(new GattException(GattException.STATUS_CANCELLED, "replay stopped"));
+    }
+
+    /**
+     * play every event which is due, then wait for the next
+     */
+    private void replay() {
+        while (true) {
+            Event event;
+            synchronized (this) {
+                mTask = null;
+                if (mFuture == null) {
+                    return;
+                }
+                if (mNext >= mEvents.size()) {
+                    GattFuture<Void> future = mFuture;
+                    mFuture = null;
+                    future.complete(null);
+                    return;
+                }
+                event = mEvents.get(mNext);
+                long delay = mStartedAt + (long) (event.mTimeMicros / 1000.0 / mSpeed) - mScheduler.now();
+                if (delay > 0) {
+                    mTask = mScheduler.schedule(mReplay, delay);
+                    return;
+                }
+                mNext++;
+            }
+            apply(event);
+        }
+    }
+
+    private void apply(Event event) {
+        SimulatedPeripheral peripheral = mPeripherals.get(event.mAddress);
+        switch (event.mType) {
+            case GattTrace.TYPE_CHARACTERISTIC_CHANGED:
+                if (event.mValue != null) {
+                    peripheral.notify(event.mUuid, event.mValue);
+                }
+                break;
+            case GattTrace.TYPE_CHARACTERISTIC_READ:
+                if (event.mStatus == 0 && event.mValue != null) {
+                    peripheral.setValue(event.mUuid, event.mValue);
+                }
+                break;
+            case GattTrace.TYPE_CONNECTION_STATE:
+                if (event.mArg == 0 && event.mStatus != 0) {
+                    peripheral.dropConnections();
+                }
+                break;
+            default:
+                // the responses to the requests of the recorded app, the stack under test
+                // makes its own
+                break;
+        }
+    }
+}
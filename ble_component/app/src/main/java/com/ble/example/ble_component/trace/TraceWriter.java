@@ -0,0 +1,151 @@
+package com.ble.example.ble_component.trace;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Writes GATT events into a {@link GattTrace}. Recording must not disturb the session, so a
+ * failed write does not throw: it stops the trace and is reported by {@link #isFailed()}. All
+ * methods are thread safe.
+ */
+public class TraceWriter implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final DataOutputStream mOut;
+    private final HashMap<String, Integer> mAddresses = new HashMap<>();
+    private final HashMap<UUID, Integer> mUuids = new HashMap<>();
+    private long mLastMicros = -1;
+    private long mRecordCount;
+    private boolean mFailed;
+    private boolean mClosed;
+
+    /**
+     * @param out buffer it, every record is several small writes
+     * @throws IOException if the header cannot be written
+     */
+    public TraceWriter(OutputStream out) throws IOException {
+        mOut = new DataOutputStream(out);
+        mOut.writeInt(GattTrace.MAGIC);
+        mOut.writeByte(GattTrace.VERSION);
+    }
+
+    /**
+     * Append an event.
+     *
+     * @param type       one of the {@code GattTrace.TYPE_} constants
+     * @param timeMicros monotonic time of the event, earlier times are recorded as the previous
+     * @param address
+     * @param uuid       characteristic or descriptor, may be null
+     * @param status
+     * @param arg        state, MTU or RSSI of the event, 0 if it has none
+     * @param value      may be null
+     * @return false if the trace is closed or failed
+     */
+    public synchronized boolean record(int type, long timeMicros, String address, UUID uuid, int status, int arg,
+                                       byte[] value) {
+        if (mClosed || mFailed) {
+            return false;
+        }
+        try {
+            long delta = mLastMicros < 0 ? 0 : Math.max(0, timeMicros - mLastMicros);
+            mLastMicros = Math.max(mLastMicros, timeMicros);
+            mOut.writeByte(type);
+            writeVarint(delta);
+            writeAddress(address);
+            writeUuid(uuid);
+            writeVarint(zigzag(status));
+            writeVarint(zigzag(arg));
+            if (value == null) {
+                writeVarint(0);
+            } else {
+                writeVarint(value.length + 1);
+                mOut.write(value);
+            }
+            mRecordCount++;
+            return true;
+        } catch (IOException e) {
+            mFailed = true;
+            return false;
+        }
+    }
+
+    public synchronized long getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * @return bytes written, including the header
+     */
+    public synchronized long getByteCount() {
+        return mOut.size();
+    }
+
+    /**
+     * @return true if a write failed and the trace stopped
+     */
+    public synchronized boolean isFailed() {
+        return mFailed;
+    }
+
+    public synchronized void flush() throws IOException {
+        mOut.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        mOut.close();
+    }
+
+    private void writeAddress(String address) throws IOException {
+        Integer index = mAddresses.get(address);
+        if (index != null) {
+            writeVarint(index);
+            return;
+        }
+        // the next free index announces a new address
+        writeVarint(mAddresses.size());
+        mAddresses.put(address, mAddresses.size());
+        byte[] bytes = address.getBytes(UTF_8);
+        writeVarint(bytes.length);
+        mOut.write(bytes);
+    }
+
+    private void writeUuid(UUID uuid) throws IOException {
+        if (uuid == null) {
+            writeVarint(0);
+            return;
+        }
+        Integer index = mUuids.get(uuid);
+        if (index != null) {
+            writeVarint(index);
+            return;
+        }
+        index = mUuids.size() + 1;
+        writeVarint(index);
+        mUuids.put(uuid, index);
+        mOut.writeLong(uuid.getMostSignificantBits());
+        mOut.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            mOut.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        mOut.writeByte((int) value);
+    }
+
+    private static long zigzag(int value) {
+        return ((long) value << 1) ^ (value >> 31);
+    }
+}
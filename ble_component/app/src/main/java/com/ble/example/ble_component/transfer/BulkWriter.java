@@ -0,0 +1,262 @@
+package com.ble.example.ble_component.transfer;
+
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Streams a large payload into a characteristic with writes without response. The MTU is
+ * negotiated first and the payload is cut into MTU - 3 byte chunks. Flow control comes from
+ * the write callbacks: at most {@code window} chunks are queued on the connection, the next
+ * one is read from the stream whenever the stack accepts one.
+ * <p>
+ * The stream is read and all state is kept on the given executor, which should be a single
+ * background thread.
+ */
+public class BulkWriter {
+
+    public static final int DEFAULT_MTU = 23;
+    public static final int MAX_MTU = 517;
+    public static final int ATT_HEADER_SIZE = 3;
+
+    /**
+     * progress callback of a transfer, called on the writer's executor
+     */
+    public interface ProgressListener {
+        void onProgress(TransferStats stats);
+    }
+
+    private final WriteChannel mChannel;
+    private final InputStream mInput;
+    private final long mTotalBytes;
+    private final Executor mExecutor;
+    private final GattFuture<TransferStats> mFuture = new GattFuture<>();
+
+    private int mRequestedMtu = MAX_MTU;
+    private int mWindow = 4;
+    private long mProgressIntervalNanos = 100000000L;
+    private ProgressListener mProgressListener;
+
+    // only touched on mExecutor
+    private final ArrayDeque<byte[]> mFreeBuffers = new ArrayDeque<>();
+    private int mMtu = DEFAULT_MTU;
+    private int mChunkSize;
+    private int mInFlight;
+    private boolean mEndOfStream;
+    private boolean mStarted;
+    private long mBytesAcked;
+    private int mChunksAcked;
+    private long mStartNanos;
+    private long mLastProgressNanos;
+
+    /**
+     * @param channel    the characteristic to write
+     * @param input      the payload, it is closed when the transfer ends
+     * @param totalBytes the payload size for progress reporting, or -1 if unknown
+     * @param executor   a single background thread
+     */
+    public BulkWriter(WriteChannel channel, InputStream input, long totalBytes, Executor executor) {
+        mChannel = channel;
+        mInput = input;
+        mTotalBytes = totalBytes;
+        mExecutor = executor;
+    }
+
+    /**
+     * the MTU to ask for, {@link #MAX_MTU} by default
+     */
+    public BulkWriter setRequestedMtu(int mtu) {
+        mRequestedMtu = mtu;
+        return this;
+    }
+
+    /**
+     * number of chunks queued on the connection at once, 4 by default
+     */
+    public BulkWriter setWindow(int window) {
+        mWindow = Math.max(1, window);
+        return this;
+    }
+
+    /**
+     * @param listener
+     * @param intervalMs minimum time between two progress reports
+     */
+    public BulkWriter setProgressListener(ProgressListener listener, long intervalMs) {
+        mProgressListener = listener;
+        mProgressIntervalNanos = intervalMs * 1000000L;
+        return this;
+    }
+
+    /**
+     * start the transfer
+     *
+     * @return the future of the final statistics
+     */
+    public GattFuture<TransferStats> start() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mStarted) {
+                    return;
+                }
+                mStarted = true;
+                mStartNanos = System.nanoTime();
+                negotiateMtu();
+            }
+        });
+        return mFuture;
+    }
+
+    private void negotiateMtu() {
+        mChannel.requestMtu(mRequestedMtu).addListener(new GattFuture.Listener<Integer>() {
+            @Override
+            public void onSuccess(final Integer mtu) {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        begin(mtu == null ? DEFAULT_MTU : mtu);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(GattException e) {
+                // the peer may refuse the exchange, the default MTU always works
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        begin(DEFAULT_MTU);
+                    }
+                });
+            }
+        });
+    }
+
+    private void begin(int mtu) {
+        mMtu = mtu;
+        mChunkSize = mtu - ATT_HEADER_SIZE;
+        pump();
+    }
+
+    private void pump() {
+        if (mFuture.isDone()) {
+            return;
+        }
+        while (!mEndOfStream && mInFlight < mWindow) {
+            byte[] buffer = mFreeBuffers.isEmpty() ? new byte[mChunkSize] : mFreeBuffers.poll();
+            int length;
+            try {
+                length = readFully(buffer);
+            } catch (IOException e) {
+                finish(new GattException(GattException.STATUS_CANCELLED, "read failed: " + e.getMessage()));
+                return;
+            }
+            if (length < buffer.length) {
+                mEndOfStream = true;
+                if (length == 0) {
+                    mFreeBuffers.add(buffer);
+                    break;
+                }
+                buffer = Arrays.copyOf(buffer, length);
+            }
+            send(buffer);
+        }
+        if (mEndOfStream && mInFlight == 0) {
+            finish(null);
+        }
+    }
+
+    private void send(final byte[] chunk) {
+        mInFlight++;
+        mChannel.writeChunk(chunk).addListener(new GattFuture.Listener<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mInFlight--;
+                        mBytesAcked += chunk.length;
+                        mChunksAcked++;
+                        if (chunk.length == mChunkSize) {
+                            mFreeBuffers.add(chunk);
+                        }
+                        reportProgress(false);
+                        pump();
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(final GattException e) {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mInFlight--;
+                        finish(e);
+                    }
+                });
+            }
+        });
+    }
+
+    private int readFully(byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = mInput.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private void reportProgress(boolean force) {
+        if (mProgressListener == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (force || now - mLastProgressNanos >= mProgressIntervalNanos) {
+            mLastProgressNanos = now;
+            mProgressListener.onProgress(stats(now));
+        }
+    }
+
+    private TransferStats stats(long now) {
+        return new TransferStats(mBytesAcked, mTotalBytes, mChunksAcked, mMtu, now - mStartNanos);
+    }
+
+    private void finish(GattException error) {
+        if (mFuture.isDone()) {
+            return;
+        }
+        try {
+            mInput.close();
+        } catch (IOException ignored) {
+        }
+        if (error != null) {
+            mFuture.fail(error);
+            return;
+        }
+        reportProgress(true);
+        mFuture.complete(stats(System.nanoTime()));
+    }
+
+    /**
+     * abort the transfer, chunks already queued are still sent
+     */
+    public void cancel() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                finish(new GattException(GattException.STATUS_CANCELLED));
+            }
+        });
+    }
+}
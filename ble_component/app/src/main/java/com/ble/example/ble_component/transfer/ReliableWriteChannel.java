@@ -0,0 +1,42 @@
+package com.ble.example.ble_component.transfer;
+
+import com.ble.example.ble_component.gatt.GattFuture;
+
+/**
+ * The connection a {@link ReliableWriter} runs its transaction on. Implementations queue the
+ * requests on the connection's {@code GattOperationQueue}.
+ *
+ * @param <K> how the channel addresses a characteristic, e.g. a handle or a uuid
+ */
+public interface ReliableWriteChannel<K> {
+
+    /**
+     * @return the current ATT MTU, a prepared write carries MTU - 5 bytes
+     */
+    int getMtu();
+
+    /**
+     * @return false if every value has to fit in a single prepared write at offset 0
+     */
+    boolean supportsWriteOffsets();
+
+    GattFuture<Void> begin();
+
+    /**
+     * @param target the characteristic
+     * @param offset where the part goes in the value
+     * @param part   at most MTU - 5 bytes
+     * @return the future of the value the peer echoed, null if the channel does not report it
+     */
+    GattFuture<byte[]> prepareWrite(K target, int offset, byte[] part);
+
+    /**
+     * @return the future of the peer writing all prepared values
+     */
+    GattFuture<Void> execute();
+
+    /**
+     * discard the prepared values
+     */
+    GattFuture<Void> abort();
+}
@@ -0,0 +1,184 @@
+package com.ble.example.ble_component.transfer;
+
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes one or more values as a single transaction. Each value is cut into prepared writes of
+ * MTU - 5 bytes at increasing offsets; every echo from the peer is compared with what was sent,
+ * and only when all of them match is the transaction executed. On a mismatch or failure it is
+ * aborted, so the peer ends up with either all values or none of them.
+ * <p>
+ * The check needs a channel which reports the echo, like the simulator's. {@code BluetoothGatt}
+ * does not hand it out, there the parts are executed unverified.
+ * <p>
+ * A value can be at most 512 bytes, the ATT limit. If the channel does not support offsets,
+ * each value must fit in one prepared write.
+ *
+ * @param <K> how the channel addresses a characteristic
+ */
+public class ReliableWriter<K> {
+
+    public static final int MAX_VALUE_SIZE = 512;
+    /**
+     * ATT header of a prepared write: opcode, handle and offset
+     */
+    public static final int PREPARE_HEADER_SIZE = 5;
+
+    private final ReliableWriteChannel<K> mChannel;
+    private final List<K> mTargets = new ArrayList<>();
+    private final List<byte[]> mValues = new ArrayList<>();
+    private final GattFuture<TransferStats> mFuture = new GattFuture<>();
+
+    private boolean mStarted;
+    private int mPartSize;
+    private int mValue;
+    private int mOffset;
+    private int mParts;
+    private long mBytes;
+    private long mTotalBytes;
+    private long mStartNanos;
+
+    public ReliableWriter(ReliableWriteChannel<K> channel) {
+        mChannel = channel;
+    }
+
+    /**
+     * add a value to the transaction, values are written in the order they were added
+     *
+     * @param target
+     * @param value  copied
+     * @return this writer
+     */
+    public synchronized ReliableWriter<K> add(K target, byte[] value) {
+        if (mStarted) {
+            throw new IllegalStateException("already started");
+        }
+        mTargets.add(target);
+        mValues.add(value.clone());
+        mTotalBytes += value.length;
+        return this;
+    }
+
+    /**
+     * start the transaction
+     *
+     * @return the future of the statistics: the bytes written, the prepared writes and the time
+     * from the start to the executed transaction
+     */
+    public GattFuture<TransferStats> start() {
+        synchronized (this) {
+            if (mStarted) {
+                return mFuture;
+            }
+            mStarted = true;
+            mStartNanos = System.nanoTime();
+            mPartSize = mChannel.getMtu() - PREPARE_HEADER_SIZE;
+            for (byte[] value : mValues) {
+                if (value.length > MAX_VALUE_SIZE
+                        || (!mChannel.supportsWriteOffsets() && value.length > mPartSize)) {
+                    // rejected before anything was sent
+                    mFuture.fail(new GattException(GattException.STATUS_INVALID_ATTRIBUTE_LENGTH,
+                            value.length + " bytes cannot be written reliably"));
+                    return mFuture;
+                }
+            }
+        }
+        mChannel.begin().addListener(new GattFuture.Listener<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                prepareNext();
+            }
+
+            @Override
+            public void onFailure(GattException e) {
+                mFuture.fail(e);
+            }
+        });
+        return mFuture;
+    }
+
+    private void prepareNext() {
+        final byte[] part;
+        K target;
+        int offset;
+        synchronized (this) {
+            offset = mOffset;
+            if (mValue == mValues.size()) {
+                part = null;
+                target = null;
+            } else {
+                byte[] value = mValues.get(mValue);
+                part = Arrays.copyOfRange(value, mOffset, Math.min(value.length, mOffset + mPartSize));
+                target = mTargets.get(mValue);
+            }
+        }
+        if (part == null) {
+            execute();
+            return;
+        }
+        mChannel.prepareWrite(target, offset, part).addListener(new GattFuture.Listener<byte[]>() {
+            @Override
+            public void onSuccess(byte[] echo) {
+                if (echo != null && !Arrays.equals(part, echo)) {
+                    abort(new GattException(GattException.STATUS_VERIFY_FAILED,
+                            "prepared write echoed a different value"));
+                    return;
+                }
+                synchronized (ReliableWriter.this) {
+                    mParts++;
+                    mBytes += part.length;
+                    mOffset += part.length;
+                    if (mOffset >= mValues.get(mValue).length) {
+                        mValue++;
+                        mOffset = 0;
+                    }
+                }
+                prepareNext();
+            }
+
+            @Override
+            public void onFailure(GattException e) {
+                abort(e);
+            }
+        });
+    }
+
+    private void execute() {
+        mChannel.execute().addListener(new GattFuture.Listener<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                synchronized (ReliableWriter.this) {
+                    mFuture.complete(new TransferStats(mBytes, mTotalBytes, mParts, mPartSize + PREPARE_HEADER_SIZE,
+                            System.nanoTime() - mStartNanos));
+                }
+            }
+
+            @Override
+            public void onFailure(GattException e) {
+                mFuture.fail(e);
+            }
+        });
+    }
+
+    /**
+     * discard what was prepared and fail with the cause, whatever the abort itself does
+     */
+    private void abort(final GattException cause) {
+        mChannel.abort().addListener(new GattFuture.Listener<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                mFuture.fail(cause);
+            }
+
+            @Override
+            public void onFailure(GattException e) {
+                mFuture.fail(cause);
+            }
+        });
+    }
+}
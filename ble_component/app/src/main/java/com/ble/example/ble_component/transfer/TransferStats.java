@@ -0,0 +1,80 @@
+package com.ble.example.ble_component.transfer;
+
+/**
+ * Progress and throughput of a bulk transfer.
+ */
+public final class TransferStats {
+
+    private final long mBytes;
+    private final long mTotalBytes;
+    private final int mChunks;
+    private final int mMtu;
+    private final long mElapsedNanos;
+
+    public TransferStats(long bytes, long totalBytes, int chunks, int mtu, long elapsedNanos) {
+        mBytes = bytes;
+        mTotalBytes = totalBytes;
+        mChunks = chunks;
+        mMtu = mtu;
+        mElapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * bytes acknowledged by the stack so far
+     *
+     * @return
+     */
+    public long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * total size of the payload, or -1 if unknown
+     *
+     * @return
+     */
+    public long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public int getChunks() {
+        return mChunks;
+    }
+
+    /**
+     * the negotiated MTU, chunks are MTU - 3 bytes long
+     *
+     * @return
+     */
+    public int getMtu() {
+        return mMtu;
+    }
+
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /**
+     * average throughput since the transfer started
+     *
+     * @return
+     */
+    public double getBytesPerSecond() {
+        return mElapsedNanos <= 0 ? 0 : mBytes * 1e9 / mElapsedNanos;
+    }
+
+    /**
+     * completed fraction between 0 and 1, or -1 if the total size is unknown
+     *
+     * @return
+     */
+    public float getProgress() {
+        return mTotalBytes <= 0 ? -1 : (float) mBytes / mTotalBytes;
+    }
+
+    @Override
+    public String toString() {
+        return mBytes + "/" + mTotalBytes + " bytes in " + mChunks + " chunks, mtu " + mMtu + ", "
+                + (long) getBytesPerSecond() + " B/s";
+    }
+}
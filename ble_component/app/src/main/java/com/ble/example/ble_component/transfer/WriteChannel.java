@@ -0,0 +1,27 @@
+package com.ble.example.ble_component.transfer;
+
+import com.ble.example.ble_component.gatt.GattFuture;
+
+/**
+ * The characteristic a {@link BulkWriter} streams into. Implementations queue the requests on
+ * the connection's {@code GattOperationQueue}.
+ */
+public interface WriteChannel {
+
+    /**
+     * negotiate the ATT MTU
+     *
+     * @param mtu the requested MTU
+     * @return the future of the MTU the link settled on
+     */
+    GattFuture<Integer> requestMtu(int mtu);
+
+    /**
+     * Write one chunk without response. The future completes when the stack has accepted the
+     * chunk, i.e. on {@code onCharacteristicWrite}.
+     *
+     * @param chunk at most MTU - 3 bytes, the array may be reused once the future completes
+     * @return
+     */
+    GattFuture<Void> writeChunk(byte[] chunk);
+}
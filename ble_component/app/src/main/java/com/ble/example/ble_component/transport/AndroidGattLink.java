@@ -0,0 +1,281 @@
+package com.ble.example.ble_component.transport;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.os.Build;
+import android.util.Log;
+
+import com.ble.example.ble_component.discovery.GattLayout;
+
+import java.lang.reflect.Method;
+import java.util.UUID;
+
+/**
+ * {@link GattLink} on a {@link BluetoothGatt}, translating the {@link BluetoothGattCallback}
+ * events into {@link GattLinkCallback} events.
+ */
+class AndroidGattLink implements GattLink {
+
+    private static final String TAG = AndroidGattLink.class.getSimpleName();
+
+    /**
+     * {@code BluetoothGatt#setPreferredPhy(int, int, int)}, added in Oreo; null before
+     */
+    private static final Method SET_PREFERRED_PHY = findSetPreferredPhy();
+
+    private final String mAddress;
+    private final GattLinkCallback mCallback;
+    private volatile BluetoothGatt mGatt;
+    private volatile GattLayout mServices;
+    // between beginReliableWrite and executeReliableWrite the writes are prepared writes
+    private volatile boolean mReliable;
+
+    private final BluetoothGattCallback mGattCallback = new BluetoothGattCallback() {
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            // the first callback can arrive before connectGatt returned and the gatt was set,
+            // the link is used from the callback on
+            if (mGatt == null) {
+                mGatt = gatt;
+            }
+            mCallback.onConnectionStateChanged(AndroidGattLink.this, status,
+                    status == BluetoothGatt.GATT_SUCCESS && newState == BluetoothProfile.STATE_CONNECTED);
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                mServices = GattLayout.of(gatt.getServices());
+            }
+            mCallback.onServicesDiscovered(AndroidGattLink.this, status);
+        }
+
+        @Override
+        public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            mCallback.onCharacteristicRead(AndroidGattLink.this, characteristic.getUuid(), characteristic.getValue(),
+                    status);
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            if (mReliable) {
+                // the platform does not hand out the echo, the characteristic only holds the value
+                // written locally
+                mCallback.onPreparedWrite(AndroidGattLink.this, characteristic.getUuid(), null, status);
+            } else {
+                mCallback.onCharacteristicWrite(AndroidGattLink.this, characteristic.getUuid(), status);
+            }
+        }
+
+        @Override
+        public void onReliableWriteCompleted(BluetoothGatt gatt, int status) {
+            mCallback.onReliableWriteCompleted(AndroidGattLink.this, status);
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            mCallback.onDescriptorWrite(AndroidGattLink.this, descriptor.getUuid(), status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            mCallback.onCharacteristicChanged(AndroidGattLink.this, characteristic.getUuid(), characteristic.getValue());
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            mCallback.onMtuChanged(AndroidGattLink.this, mtu, status);
+        }
+
+        @Override
+        public void onReadRemoteRssi(BluetoothGatt gatt, int rssi, int status) {
+            mCallback.onReadRemoteRssi(AndroidGattLink.this, rssi, status);
+        }
+
+        /**
+         * not an override, the callback was added in Oreo and is only called there
+         */
+        public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+            mCallback.onPhyUpdate(AndroidGattLink.this, txPhy, rxPhy, status);
+        }
+    };
+
+    AndroidGattLink(String address, GattLinkCallback callback) {
+        mAddress = address;
+        mCallback = callback;
+    }
+
+    BluetoothGattCallback getGattCallback() {
+        return mGattCallback;
+    }
+
+    /**
+     * the gatt returned by {@code connectGatt}, the same one the callbacks are called with
+     */
+    void setGatt(BluetoothGatt gatt) {
+        mGatt = gatt;
+    }
+
+    BluetoothGatt getGatt() {
+        return mGatt;
+    }
+
+    @Override
+    public String getAddress() {
+        return mAddress;
+    }
+
+    @Override
+    public boolean discoverServices() {
+        return mGatt.discoverServices();
+    }
+
+    @Override
+    public GattLayout getServices() {
+        return mServices;
+    }
+
+    @Override
+    public boolean readCharacteristic(UUID serviceUuid, UUID characteristicUuid) {
+        BluetoothGattCharacteristic characteristic = find(serviceUuid, characteristicUuid);
+        return characteristic != null && mGatt.readCharacteristic(characteristic);
+    }
+
+    @Override
+    public boolean writeCharacteristic(UUID serviceUuid, UUID characteristicUuid, byte[] value, int writeType) {
+        BluetoothGattCharacteristic characteristic = find(serviceUuid, characteristicUuid);
+        if (characteristic == null) {
+            return false;
+        }
+        return write(characteristic, value, writeType);
+    }
+
+    @Override
+    public boolean writeDescriptor(UUID serviceUuid, UUID characteristicUuid, UUID descriptorUuid, byte[] value) {
+        BluetoothGattCharacteristic characteristic = find(serviceUuid, characteristicUuid);
+        BluetoothGattDescriptor descriptor = characteristic == null ? null : characteristic.getDescriptor(descriptorUuid);
+        if (descriptor == null) {
+            return false;
+        }
+        descriptor.setValue(value);
+        return mGatt.writeDescriptor(descriptor);
+    }
+
+    @Override
+    public boolean beginReliableWrite() {
+        if (!mGatt.beginReliableWrite()) {
+            return false;
+        }
+        mReliable = true;
+        return true;
+    }
+
+    @Override
+    public boolean prepareWrite(UUID serviceUuid, UUID characteristicUuid, int offset, byte[] value) {
+        BluetoothGattCharacteristic characteristic = find(serviceUuid, characteristicUuid);
+        if (characteristic == null || offset != 0) {
+            return false;
+        }
+        return write(characteristic, value, BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+    }
+
+    @Override
+    public boolean supportsWriteOffsets() {
+        return false;
+    }
+
+    @Override
+    public boolean executeReliableWrite() {
+        mReliable = false;
+        return mGatt.executeReliableWrite();
+    }
+
+    @Override
+    public void abortReliableWrite() {
+        mReliable = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            mGatt.abortReliableWrite();
+        } else {
+            mGatt.abortReliableWrite(mGatt.getDevice());
+        }
+    }
+
+    @Override
+    public boolean setCharacteristicNotification(UUID serviceUuid, UUID characteristicUuid, boolean enabled) {
+        BluetoothGattCharacteristic characteristic = find(serviceUuid, characteristicUuid);
+        return characteristic != null && mGatt.setCharacteristicNotification(characteristic, enabled);
+    }
+
+    @Override
+    public boolean requestMtu(int mtu) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+        return mGatt.requestMtu(mtu);
+    }
+
+    @Override
+    public boolean readRemoteRssi() {
+        return mGatt.readRemoteRssi();
+    }
+
+    @Override
+    public boolean requestConnectionPriority(int priority) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+        return mGatt.requestConnectionPriority(priority);
+    }
+
+    @Override
+    public void setPreferredPhy(int txPhyMask, int rxPhyMask) {
+        if (SET_PREFERRED_PHY == null) {
+            return;
+        }
+        try {
+            SET_PREFERRED_PHY.invoke(mGatt, txPhyMask, rxPhyMask, 0);
+        } catch (Exception e) {
+            Log.w(TAG, "setPreferredPhy failed", e);
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        mGatt.disconnect();
+    }
+
+    @Override
+    public void close() {
+        mGatt.close();
+    }
+
+    /**
+     * the characteristic object is shared with every other user of the gatt, so its write type
+     * is only borrowed for the write
+     */
+    private boolean write(BluetoothGattCharacteristic characteristic, byte[] value, int writeType) {
+        characteristic.setValue(value);
+        int previousWriteType = characteristic.getWriteType();
+        characteristic.setWriteType(writeType);
+        boolean started = mGatt.writeCharacteristic(characteristic);
+        characteristic.setWriteType(previousWriteType);
+        return started;
+    }
+
+    private BluetoothGattCharacteristic find(UUID serviceUuid, UUID characteristicUuid) {
+        BluetoothGattService service = mGatt.getService(serviceUuid);
+        return service == null ? null : service.getCharacteristic(characteristicUuid);
+    }
+
+    private static Method findSetPreferredPhy() {
+        try {
+            return BluetoothGatt.class.getMethod("setPreferredPhy", int.class, int.class, int.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.ble.example.ble_component.transport;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+
+/**
+ * {@link ScanTransport} on {@code BluetoothAdapter.startLeScan}, which is available on every
+ * supported API level. Filtering and batching are left to the caller.
+ */
+class AndroidScanTransport implements ScanTransport {
+
+    private final BluetoothAdapter mAdapter;
+    private BluetoothAdapter.LeScanCallback mLeScanCallback;
+
+    AndroidScanTransport(BluetoothAdapter adapter) {
+        mAdapter = adapter;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public synchronized boolean startScan(final Callback callback) {
+        stopScan();
+        mLeScanCallback = new BluetoothAdapter.LeScanCallback() {
+            @Override
+            public void onLeScan(BluetoothDevice device, int rssi, byte[] scanRecord) {
+                callback.onAdvertisement(device.getAddress(), rssi, scanRecord);
+            }
+        };
+        if (!mAdapter.startLeScan(mLeScanCallback)) {
+            mLeScanCallback = null;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public synchronized void stopScan() {
+        if (mLeScanCallback != null) {
+            mAdapter.stopLeScan(mLeScanCallback);
+            mLeScanCallback = null;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.ble.example.ble_component.transport;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.content.Context;
+
+/**
+ * {@link BleTransport} on the platform's {@link BluetoothAdapter}.
+ */
+public class AndroidTransport implements BleTransport {
+
+    private final Context mContext;
+    private final BluetoothAdapter mAdapter;
+    private final AndroidScanTransport mScanner;
+
+    /**
+     * @param context used to connect, the application context is kept
+     * @param adapter
+     */
+    public AndroidTransport(Context context, BluetoothAdapter adapter) {
+        mContext = context.getApplicationContext();
+        mAdapter = adapter;
+        mScanner = new AndroidScanTransport(adapter);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return mAdapter.isEnabled();
+    }
+
+    @Override
+    public GattLink connect(String address, boolean autoConnect, GattLinkCallback callback) {
+        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
+            return null;
+        }
+        BluetoothDevice device = mAdapter.getRemoteDevice(address);
+        AndroidGattLink link = new AndroidGattLink(address, callback);
+        BluetoothGatt gatt = device.connectGatt(mContext, autoConnect, link.getGattCallback());
+        if (gatt == null) {
+            return null;
+        }
+        link.setGatt(gatt);
+        return link;
+    }
+
+    @Override
+    public ScanTransport getScanner() {
+        return mScanner;
+    }
+
+    /**
+     * get the platform object of a link, for the callers which still work with
+     * {@code BluetoothGattService}s
+     *
+     * @param link
+     * @return null if the link is not one of this transport
+     */
+    public static BluetoothGatt getGatt(GattLink link) {
+        return link instanceof AndroidGattLink ? ((AndroidGattLink) link).getGatt() : null;
+    }
+}
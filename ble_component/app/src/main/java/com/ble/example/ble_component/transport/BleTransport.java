@@ -0,0 +1,28 @@
+package com.ble.example.ble_component.transport;
+
+/**
+ * The radio the stack runs on: the local adapter, its GATT client connections and its
+ * scanner. {@link AndroidTransport} drives {@code android.bluetooth}, the simulated transport
+ * in the {@code sim} package runs in memory so the stack can be tested and benchmarked on the
+ * JVM.
+ */
+public interface BleTransport {
+
+    boolean isEnabled();
+
+    /**
+     * Start connecting to a device. The result is reported through
+     * {@link GattLinkCallback#onConnectionStateChanged(GattLink, int, boolean)}.
+     *
+     * @param address     the device address, e.g. "00:11:22:33:44:55"
+     * @param autoConnect connect whenever the device becomes available instead of once
+     * @param callback    receives every event of the link
+     * @return the link, or null if the attempt could not be started
+     */
+    GattLink connect(String address, boolean autoConnect, GattLinkCallback callback);
+
+    /**
+     * @return the scanner, null if the adapter cannot scan
+     */
+    ScanTransport getScanner();
+}
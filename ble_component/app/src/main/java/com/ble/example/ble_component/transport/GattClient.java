@@ -0,0 +1,1224 @@
+package com.ble.example.ble_component.transport;
+
+import com.ble.example.ble_component.connection.BleConnection;
+import com.ble.example.ble_component.connection.CharacteristicHandle;
+import com.ble.example.ble_component.connection.ConnectionProfile;
+import com.ble.example.ble_component.connection.ConnectionRegistry;
+import com.ble.example.ble_component.connection.ConnectionScheduler;
+import com.ble.example.ble_component.connection.ConnectionState;
+import com.ble.example.ble_component.connection.LinkParameters;
+import com.ble.example.ble_component.connection.SubscriptionManager;
+import com.ble.example.ble_component.discovery.DiscoveryCache;
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.event.CharacteristicEventBus;
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.gatt.GattOperation;
+import com.ble.example.ble_component.gatt.GattOperationQueue;
+import com.ble.example.ble_component.gatt.ReadSnapshot;
+import com.ble.example.ble_component.metrics.GattMetrics;
+import com.ble.example.ble_component.session.DeviceSession;
+import com.ble.example.ble_component.trace.RecordingTransport;
+import com.ble.example.ble_component.trace.TraceWriter;
+import com.ble.example.ble_component.transfer.BulkWriter;
+import com.ble.example.ble_component.transfer.ReliableWriteChannel;
+import com.ble.example.ble_component.transfer.ReliableWriter;
+import com.ble.example.ble_component.transfer.TransferStats;
+import com.ble.example.ble_component.transfer.WriteChannel;
+import com.ble.example.ble_component.util.Scheduler;
+import com.ble.example.ble_component.util.Uuids;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The GATT client of the stack on top of any {@link BleTransport}: connections are opened by a
+ * {@link ConnectionScheduler}, kept in a {@link ConnectionRegistry} and their requests queued
+ * on the {@link GattOperationQueue} of each connection, completed from the
+ * {@link GattLinkCallback} events. Notifications are published to a
+ * {@link CharacteristicEventBus}. {@code BluetoothLeService} runs it on the
+ * {@link AndroidTransport}, tests and benchmarks on the simulated transport.
+ * <p>
+ * All methods are thread safe.
+ */
+public class GattClient {
+
+    /**
+     * the Client Characteristic Configuration descriptor
+     */
+    public static final UUID CLIENT_CONFIG_UUID = Uuids.fromShortId(0x2902);
+
+    /**
+     * the Service Changed characteristic of the Generic Attribute service
+     */
+    public static final UUID SERVICE_CHANGED_UUID = Uuids.fromShortId(0x2A05);
+
+    private static final int PROPERTY_WRITE_NO_RESPONSE = 0x04;
+
+    /**
+     * Events for the app, reported after the client handled them. They arrive on the thread
+     * of the transport.
+     */
+    public interface Listener {
+        /**
+         * @param status the status of the link event, 0 for a regular connect or disconnect
+         */
+        void onConnectionStateChanged(String address, boolean connected, int status);
+
+        void onServicesDiscovered(String address);
+
+        /**
+         * @param value only valid during the call
+         */
+        void onCharacteristicRead(String address, UUID characteristicUuid, byte[] value);
+
+        /**
+         * @param value the value the write sent, null if the write was not queued by this client;
+         *              must not be modified
+         */
+        void onCharacteristicWrite(String address, UUID characteristicUuid, byte[] value, int status);
+
+        void onDescriptorWrite(String address, UUID descriptorUuid);
+
+        /**
+         * @param value only valid during the call
+         */
+        void onCharacteristicChanged(String address, UUID characteristicUuid, byte[] value);
+    }
+
+    private final Scheduler mClock;
+    private final Executor mTransferExecutor;
+    private final ConnectionRegistry mConnections;
+    private final ConnectionScheduler mConnectionScheduler;
+    private final CharacteristicEventBus mEventBus = new CharacteristicEventBus();
+    private final GattMetrics mMetrics = new GattMetrics();
+    // profiles chosen per device, applied on every connect
+    private final ConcurrentHashMap<String, ConnectionProfile> mProfiles = new ConcurrentHashMap<>();
+    // subscriptions per device, restored after every discovery
+    private final ConcurrentHashMap<String, SubscriptionManager> mSubscriptions = new ConcurrentHashMap<>();
+    // open sessions, closing one disconnects its device
+    private final HashMap<String, DeviceSession> mSessions = new HashMap<>();
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private volatile BleTransport mTransport;
+    private volatile RecordingTransport mRecorder;
+    private volatile DiscoveryCache mDiscoveryCache;
+    private volatile TraceWriter mTrace;
+
+    private final ConnectionScheduler.Connector mConnector = new ConnectionScheduler.Connector() {
+        @Override
+        public boolean connect(String address) {
+            return connectLink(address);
+        }
+
+        @Override
+        public boolean discoverServices(final String address) {
+            BleConnection connection = mConnections.get(address);
+            final boolean cached = connection != null && connection.getIndex().isProvisional();
+            GattClient.this.discoverServices(address).addListener(new GattFuture.Listener<GattLayout>() {
+                @Override
+                public void onSuccess(GattLayout result) {
+                    mConnectionScheduler.onServicesDiscovered(address, true);
+                }
+
+                @Override
+                public void onFailure(GattException e) {
+                    if (cached) {
+                        // the device was handed out as ready already, start over
+                        closeConnection(address);
+                        mConnectionScheduler.onDisconnected(address, e.getStatus());
+                    } else {
+                        mConnectionScheduler.onServicesDiscovered(address, false);
+                    }
+                }
+            });
+            if (cached) {
+                // the cached layout makes the device usable now, the operations queue up behind
+                // the discovery which confirms it
+                mConnectionScheduler.onServicesDiscovered(address, true);
+            }
+            return true;
+        }
+
+        @Override
+        public void disconnect(String address) {
+            closeConnection(address);
+        }
+    };
+
+    /**
+     * @param clock            clock of the connection scheduler, the sessions and the trace
+     * @param timeoutExecutor  used for the operation timeouts
+     * @param transferExecutor runs the bulk transfers
+     */
+    public GattClient(Scheduler clock, ScheduledExecutorService timeoutExecutor, Executor transferExecutor) {
+        mClock = clock;
+        mTransferExecutor = transferExecutor;
+        mConnections = new ConnectionRegistry(timeoutExecutor);
+        mConnectionScheduler = new ConnectionScheduler(mConnector, clock);
+        mConnectionScheduler.addListener(new ConnectionScheduler.Listener() {
+            @Override
+            public void onConnectionStateChanged(String address, ConnectionState state) {
+                if (state == ConnectionState.IDLE) {
+                    endSession(address);
+                }
+            }
+        });
+    }
+
+    /**
+     * set the transport later connects go to, the current connections keep theirs
+     *
+     * @param transport
+     */
+    public void setTransport(BleTransport transport) {
+        RecordingTransport recorder = new RecordingTransport(transport, mClock, mTrace);
+        mTransport = transport;
+        mRecorder = recorder;
+    }
+
+    /**
+     * @return null until {@link #setTransport(BleTransport)}
+     */
+    public BleTransport getTransport() {
+        return mTransport;
+    }
+
+    /**
+     * start connections with the layout the device had last time, see
+     * {@link BleConnection#setCachedLayout(GattLayout)}
+     *
+     * @param cache null to always wait for the discovery
+     */
+    public void setDiscoveryCache(DiscoveryCache cache) {
+        mDiscoveryCache = cache;
+    }
+
+    public DiscoveryCache getDiscoveryCache() {
+        return mDiscoveryCache;
+    }
+
+    /**
+     * Record every link event into the trace, for replay with a
+     * {@link com.ble.example.ble_component.trace.TraceReplayer}.
+     *
+     * @param trace null to stop recording, the caller closes it
+     */
+    public void setTrace(TraceWriter trace) {
+        mTrace = trace;
+        RecordingTransport recorder = mRecorder;
+        if (recorder != null) {
+            recorder.setTrace(trace);
+        }
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Connect to a device as soon as the connection scheduler has a free connect slot; services
+     * are discovered right after the link comes up.
+     *
+     * @param address
+     * @param autoReconnect If true, failed attempts are retried with backoff and the device is
+     *                      reconnected whenever the link is lost, until {@link #disconnect(String)}.
+     * @return false if there is no transport yet
+     */
+    public boolean connect(String address, boolean autoReconnect) {
+        if (mTransport == null || address == null) {
+            return false;
+        }
+        mConnectionScheduler.connect(address, autoReconnect);
+        return true;
+    }
+
+    /**
+     * Connect to a device and get its session. While the session is open, repeated calls
+     * return it; closing it disconnects the device. Once the device is dropped, e.g. after a
+     * disconnect without auto reconnect, the session completes its streams and closes.
+     *
+     * @param address
+     * @param autoReconnect keep the device connected until the session is closed
+     * @return null if there is no transport yet
+     */
+    public DeviceSession openSession(final String address, boolean autoReconnect) {
+        if (mTransport == null) {
+            return null;
+        }
+        DeviceSession session;
+        synchronized (mSessions) {
+            session = mSessions.get(address);
+            if (session != null) {
+                return session;
+            }
+            session = new DeviceSession(address, new DeviceSession.Link() {
+                @Override
+                public GattFuture<Void> subscribe(UUID serviceUuid, UUID characteristicUuid) {
+                    return GattClient.this.subscribe(address, serviceUuid, characteristicUuid,
+                            SubscriptionManager.MODE_AUTO);
+                }
+
+                @Override
+                public GattFuture<Void> unsubscribe(UUID serviceUuid, UUID characteristicUuid) {
+                    return GattClient.this.unsubscribe(address, serviceUuid, characteristicUuid);
+                }
+
+                @Override
+                public GattFuture<byte[]> read(UUID serviceUuid, UUID characteristicUuid) {
+                    CharacteristicHandle handle = getCharacteristicHandle(address, serviceUuid, characteristicUuid);
+                    if (handle == null) {
+                        return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+                    }
+                    return readCharacteristic(handle);
+                }
+
+                @Override
+                public void close() {
+                    synchronized (mSessions) {
+                        mSessions.remove(address);
+                    }
+                    disconnect(address);
+                }
+            }, mEventBus, mClock);
+            mSessions.put(address, session);
+        }
+        // not under mSessions, the scheduler takes it from its listener while holding its own lock
+        connect(address, autoReconnect);
+        return session;
+    }
+
+    /**
+     * the scheduler dropped the device, its session is over
+     */
+    private void endSession(String address) {
+        DeviceSession session;
+        synchronized (mSessions) {
+            session = mSessions.remove(address);
+        }
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    /**
+     * get the scheduler which manages the connection attempts
+     *
+     * @return
+     */
+    public ConnectionScheduler getConnectionScheduler() {
+        return mConnectionScheduler;
+    }
+
+    /**
+     * @param address
+     * @return the current connection of the device, null if there is none
+     */
+    public BleConnection getConnection(String address) {
+        return mConnections.get(address);
+    }
+
+    /**
+     * Disconnect a device or cancel its pending connection, and stop reconnecting it.
+     *
+     * @param address
+     */
+    public void disconnect(String address) {
+        if (mConnectionScheduler.getState(address) != ConnectionState.IDLE) {
+            mConnectionScheduler.disconnect(address);
+            return;
+        }
+        closeConnection(address);
+    }
+
+    /**
+     * Release the connection of a device without waiting for the disconnect, pending
+     * operations fail. Like {@code BluetoothGatt.close()} this is not reported.
+     *
+     * @param address
+     */
+    public void close(String address) {
+        closeConnection(address);
+    }
+
+    /**
+     * Stop managing and release every connection, pending operations fail with
+     * {@link GattException#STATUS_CLOSED}. The client can be connected again afterwards.
+     */
+    public void close() {
+        for (BleConnection connection : mConnections.closeAll(GattException.STATUS_CLOSED)) {
+            dropSubscriptions(connection.getAddress());
+            GattLink link = connection.getLink();
+            if (link != null) {
+                link.disconnect();
+                link.close();
+            }
+        }
+        mConnectionScheduler.disconnectAll();
+    }
+
+    private boolean connectLink(String address) {
+        RecordingTransport transport = mRecorder;
+        if (transport == null) {
+            return false;
+        }
+        mMetrics.onConnectStarted(address);
+        // registered before the connect, so the first events of the link find it
+        BleConnection connection = mConnections.open(address);
+        connection.getQueue().setObserver(mMetrics.getDevice(address));
+        ConnectionProfile profile = mProfiles.get(address);
+        if (profile != null) {
+            connection.setProfile(profile);
+        }
+        DiscoveryCache cache = mDiscoveryCache;
+        GattLayout layout = cache == null ? null : cache.get(address);
+        if (layout != null) {
+            connection.setCachedLayout(layout);
+        }
+        GattLink link = transport.connect(address, false, new LinkCallback(connection));
+        if (link == null) {
+            mConnections.close(connection);
+            return false;
+        }
+        // keep the link so that a timed out attempt can be cancelled
+        connection.attach(link);
+        return true;
+    }
+
+    private void closeConnection(String address) {
+        BleConnection connection = mConnections.close(address);
+        if (connection == null) {
+            return;
+        }
+        dropSubscriptions(address);
+        GattLink link = connection.getLink();
+        if (link != null) {
+            link.disconnect();
+            link.close();
+        }
+    }
+
+    /**
+     * Request a read through a handle from {@link #getCharacteristicHandle(String, UUID, UUID)}.
+     *
+     * @param handle
+     * @return the future of the read value, it fails with {@link GattException#STATUS_STALE_HANDLE}
+     * if the services changed since the handle was looked up.
+     */
+    public GattFuture<byte[]> readCharacteristic(CharacteristicHandle handle) {
+        BleConnection connection = connectionOf(handle);
+        if (connection == null) {
+            return GattFuture.failed(handle.isValid() ? GattException.STATUS_NOT_CONNECTED
+                    : GattException.STATUS_STALE_HANDLE);
+        }
+        return connection.getQueue().enqueue(readOperation(connection, handle.getServiceUuid(), handle.getUuid(),
+                handle));
+    }
+
+    /**
+     * request a read of a characteristic by uuid, for callers which hold no handle
+     *
+     * @param address
+     * @param serviceUuid
+     * @param characteristicUuid
+     * @return the future of the read value
+     */
+    public GattFuture<byte[]> readCharacteristic(String address, UUID serviceUuid, UUID characteristicUuid) {
+        BleConnection connection = connectedConnection(address);
+        if (connection == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+        }
+        return connection.getQueue().enqueue(readOperation(connection, serviceUuid, characteristicUuid, null));
+    }
+
+    /**
+     * Read several characteristics of a device back to back, no other operation runs between
+     * them. The snapshot has an item per handle in the same order; reads which could not be
+     * queued, e.g. through a stale handle, fail in their item.
+     *
+     * @param address
+     * @param handles from {@link #getCharacteristicHandle(String, UUID, UUID)} of the device
+     * @return the future of the snapshot, it never fails
+     */
+    public GattFuture<ReadSnapshot> readCharacteristics(String address, List<CharacteristicHandle> handles) {
+        BleConnection connection = connectedConnection(address);
+        List<UUID> uuids = new ArrayList<>(handles.size());
+        List<GattOperation<byte[]>> operations = new ArrayList<>(handles.size());
+        List<GattFuture<byte[]>> reads = new ArrayList<>(handles.size());
+        for (CharacteristicHandle handle : handles) {
+            uuids.add(handle.getUuid());
+            if (!handle.isValid() || !handle.getAddress().equals(address)) {
+                reads.add(GattFuture.<byte[]>failed(GattException.STATUS_STALE_HANDLE));
+            } else if (connection == null) {
+                reads.add(GattFuture.<byte[]>failed(GattException.STATUS_NOT_CONNECTED));
+            } else {
+                GattOperation<byte[]> operation = readOperation(connection, handle.getServiceUuid(),
+                        handle.getUuid(), handle);
+                operations.add(operation);
+                reads.add(operation.getFuture());
+            }
+        }
+        if (!operations.isEmpty()) {
+            connection.getQueue().enqueueAll(operations);
+        }
+        return ReadSnapshot.collect(address, uuids, reads);
+    }
+
+    /**
+     * a handle is checked again when the read starts because the discovery it queued behind
+     * may have replaced a cached layout
+     */
+    private GattOperation<byte[]> readOperation(final BleConnection connection, final UUID serviceUuid,
+                                                final UUID uuid, final CharacteristicHandle handle) {
+        return new GattOperation<byte[]>(GattOperation.TYPE_READ_CHARACTERISTIC, uuid) {
+            @Override
+            protected boolean execute() {
+                return (handle == null || handle.isValid())
+                        && connection.getLink().readCharacteristic(serviceUuid, uuid);
+            }
+        };
+    }
+
+    /**
+     * Request a write through a handle from {@link #getCharacteristicHandle(String, UUID, UUID)}.
+     *
+     * @param handle
+     * @param value
+     * @param writeType one of the {@code GattLink.WRITE_TYPE_} constants, or -1 for the one the
+     *                  characteristic's properties suggest
+     * @return the future of the write, it fails with {@link GattException#STATUS_STALE_HANDLE}
+     * if the services changed since the handle was looked up.
+     */
+    public GattFuture<Void> writeCharacteristic(CharacteristicHandle handle, byte[] value, int writeType) {
+        BleConnection connection = connectionOf(handle);
+        if (connection == null) {
+            return GattFuture.failed(handle.isValid() ? GattException.STATUS_NOT_CONNECTED
+                    : GattException.STATUS_STALE_HANDLE);
+        }
+        if (writeType < 0) {
+            writeType = (handle.getProperties() & PROPERTY_WRITE_NO_RESPONSE) != 0
+                    ? GattLink.WRITE_TYPE_NO_RESPONSE : GattLink.WRITE_TYPE_DEFAULT;
+        }
+        return enqueueWrite(connection, handle.getServiceUuid(), handle.getUuid(), handle, value, writeType);
+    }
+
+    /**
+     * request a write of a characteristic by uuid, for callers which hold no handle
+     *
+     * @param address
+     * @param serviceUuid
+     * @param characteristicUuid
+     * @param value
+     * @param writeType one of the {@code GattLink.WRITE_TYPE_} constants
+     * @return the future of the write
+     */
+    public GattFuture<Void> writeCharacteristic(String address, UUID serviceUuid, UUID characteristicUuid,
+                                                byte[] value, int writeType) {
+        BleConnection connection = connectedConnection(address);
+        if (connection == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+        }
+        return enqueueWrite(connection, serviceUuid, characteristicUuid, null, value, writeType);
+    }
+
+    private GattFuture<Void> enqueueWrite(final BleConnection connection, final UUID serviceUuid, final UUID uuid,
+                                          final CharacteristicHandle handle, final byte[] value,
+                                          final int writeType) {
+        return connection.getQueue().enqueue(new WriteOperation<Void>(GattOperation.TYPE_WRITE_CHARACTERISTIC, uuid,
+                value) {
+            @Override
+            protected boolean execute() {
+                return (handle == null || handle.isValid())
+                        && connection.getLink().writeCharacteristic(serviceUuid, uuid, value, writeType);
+            }
+        });
+    }
+
+    /**
+     * Write a value longer than MTU - 3 bytes. The stack splits it into prepared writes, checks
+     * every echo and executes them, so the peer gets the whole value or nothing.
+     *
+     * @param handle
+     * @param value  at most 512 bytes
+     * @return the future of the write, it fails with
+     * {@link GattException#STATUS_INVALID_ATTRIBUTE_LENGTH} if the value is too long.
+     */
+    public GattFuture<Void> writeLongCharacteristic(CharacteristicHandle handle, byte[] value) {
+        if (value.length > ReliableWriter.MAX_VALUE_SIZE) {
+            return GattFuture.failed(GattException.STATUS_INVALID_ATTRIBUTE_LENGTH);
+        }
+        return writeCharacteristic(handle, value, GattLink.WRITE_TYPE_DEFAULT);
+    }
+
+    /**
+     * Open a channel for a {@link ReliableWriter} to write several characteristics of the device
+     * as one transaction. On links without {@link GattLink#supportsWriteOffsets() offsets} each
+     * value must fit in a single prepared write of MTU - 5 bytes. The echoes are only verified if
+     * the link reports them.
+     *
+     * @param address
+     * @return null if the device is not connected
+     */
+    public ReliableWriteChannel<CharacteristicHandle> openReliableWriteChannel(final String address) {
+        if (connectedConnection(address) == null) {
+            return null;
+        }
+        return new ReliableWriteChannel<CharacteristicHandle>() {
+            @Override
+            public int getMtu() {
+                return GattClient.this.getMtu(address);
+            }
+
+            @Override
+            public boolean supportsWriteOffsets() {
+                BleConnection connection = connectedConnection(address);
+                return connection != null && connection.getLink().supportsWriteOffsets();
+            }
+
+            @Override
+            public GattFuture<Void> begin() {
+                final BleConnection connection = connectedConnection(address);
+                if (connection == null) {
+                    return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+                }
+                return connection.getQueue().enqueue(new GattOperation<Void>(GattOperation.TYPE_LOCAL, null) {
+                    @Override
+                    protected boolean execute() {
+                        return connection.getLink().beginReliableWrite();
+                    }
+                });
+            }
+
+            @Override
+            public GattFuture<byte[]> prepareWrite(final CharacteristicHandle handle, final int offset,
+                                                   final byte[] part) {
+                final BleConnection connection = connectionOf(handle);
+                if (connection == null) {
+                    return GattFuture.failed(handle.isValid() ? GattException.STATUS_NOT_CONNECTED
+                            : GattException.STATUS_STALE_HANDLE);
+                }
+                if (offset != 0 && !connection.getLink().supportsWriteOffsets()) {
+                    return GattFuture.failed(GattException.STATUS_INVALID_ATTRIBUTE_LENGTH);
+                }
+                return connection.getQueue().enqueue(new WriteOperation<byte[]>(GattOperation.TYPE_PREPARE_WRITE,
+                        handle.getUuid(), part) {
+                    @Override
+                    protected boolean execute() {
+                        return handle.isValid() && connection.getLink().prepareWrite(handle.getServiceUuid(),
+                                handle.getUuid(), offset, part);
+                    }
+                });
+            }
+
+            @Override
+            public GattFuture<Void> execute() {
+                final BleConnection connection = connectedConnection(address);
+                if (connection == null) {
+                    return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+                }
+                return connection.getQueue().enqueue(new GattOperation<Void>(GattOperation.TYPE_EXECUTE_WRITE, null) {
+                    @Override
+                    protected boolean execute() {
+                        return connection.getLink().executeReliableWrite();
+                    }
+                });
+            }
+
+            @Override
+            public GattFuture<Void> abort() {
+                final BleConnection connection = connectedConnection(address);
+                if (connection == null) {
+                    // the peer drops the prepared values with the connection
+                    return GattFuture.succeeded(null);
+                }
+                return connection.getQueue().enqueue(new GattOperation<Void>(GattOperation.TYPE_LOCAL, null) {
+                    @Override
+                    protected boolean execute() {
+                        connection.getLink().abortReliableWrite();
+                        return true;
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Negotiate the ATT MTU.
+     *
+     * @param address
+     * @param mtu the requested MTU
+     * @return the future of the MTU the link settled on, it fails if the link cannot change it
+     */
+    public GattFuture<Integer> requestMtu(String address, final int mtu) {
+        final BleConnection connection = connectedConnection(address);
+        if (connection == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+        }
+        return connection.getQueue().enqueue(new GattOperation<Integer>(GattOperation.TYPE_REQUEST_MTU, null) {
+            @Override
+            protected boolean execute() {
+                return connection.getLink().requestMtu(mtu);
+            }
+        });
+    }
+
+    /**
+     * get the MTU negotiated on the connection
+     *
+     * @param address
+     * @return
+     */
+    public int getMtu(String address) {
+        BleConnection connection = mConnections.get(address);
+        return connection == null ? BulkWriter.DEFAULT_MTU : connection.getMtu();
+    }
+
+    /**
+     * @param address
+     * @return the future of the signal strength in dBm
+     */
+    public GattFuture<Integer> readRemoteRssi(String address) {
+        final BleConnection connection = connectedConnection(address);
+        if (connection == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+        }
+        return connection.getQueue().enqueue(new GattOperation<Integer>(GattOperation.TYPE_READ_RSSI, null) {
+            @Override
+            protected boolean execute() {
+                return connection.getLink().readRemoteRssi();
+            }
+        });
+    }
+
+    /**
+     * Choose the profile of the device. It is applied now if the device is connected and on every
+     * later connect; during bulk transfers the connection runs with
+     * {@link ConnectionProfile#HIGH_THROUGHPUT} and returns to the profile afterwards.
+     *
+     * @param address
+     * @param profile
+     * @return the future of the requests, it completes once they ran; the values the link
+     * settled on are in {@link #getLinkParameters(String)}
+     */
+    public GattFuture<Void> setConnectionProfile(String address, ConnectionProfile profile) {
+        mProfiles.put(address, profile);
+        BleConnection connection = mConnections.get(address);
+        if (connection != null) {
+            connection.setProfile(profile);
+        }
+        if (connection == null || !connection.isConnected() || connection.isTransferring()) {
+            return GattFuture.succeeded(null);
+        }
+        return applyProfile(connection, profile);
+    }
+
+    /**
+     * @param address
+     * @return the applied profile, MTU and PHYs, null if the device is not connected
+     */
+    public LinkParameters getLinkParameters(String address) {
+        BleConnection connection = mConnections.get(address);
+        return connection == null ? null : connection.getLinkParameters();
+    }
+
+    /**
+     * queue the priority, MTU and PHY requests of the profile. A request the platform does not
+     * have fails on its own and does not stop the others.
+     */
+    private GattFuture<Void> applyProfile(final BleConnection connection, final ConnectionProfile profile) {
+        GattOperationQueue queue = connection.getQueue();
+        connection.setAppliedProfile(profile);
+        queue.enqueue(new GattOperation<Void>(GattOperation.TYPE_LOCAL, null) {
+            @Override
+            protected boolean execute() {
+                return connection.getLink().requestConnectionPriority(profile.getPriority());
+            }
+        });
+        if (profile.getMtu() > connection.getMtu()) {
+            requestMtu(connection.getAddress(), profile.getMtu());
+        }
+        // the last request, its future completes after the others
+        return queue.enqueue(new GattOperation<Void>(GattOperation.TYPE_LOCAL, null) {
+            @Override
+            protected boolean execute() {
+                connection.getLink().setPreferredPhy(profile.getPhyMask(), profile.getPhyMask());
+                return true;
+            }
+        });
+    }
+
+    /**
+     * A channel for a {@link BulkWriter} which streams into the characteristic without response.
+     * The chunks are written through the handle, so a stream can start on a cached layout and
+     * queue up behind the discovery which confirms it.
+     *
+     * @param handle from {@link #getCharacteristicHandle(String, UUID, UUID)}
+     * @return
+     */
+    public WriteChannel openWriteChannel(final CharacteristicHandle handle) {
+        return new WriteChannel() {
+            @Override
+            public GattFuture<Integer> requestMtu(int mtu) {
+                return GattClient.this.requestMtu(handle.getAddress(), mtu);
+            }
+
+            @Override
+            public GattFuture<Void> writeChunk(byte[] chunk) {
+                return writeCharacteristic(handle, chunk, GattLink.WRITE_TYPE_NO_RESPONSE);
+            }
+        };
+    }
+
+    /**
+     * Stream a large payload into the characteristic with MTU sized writes without response. The
+     * connection switches to {@link ConnectionProfile#HIGH_THROUGHPUT} for the transfer.
+     *
+     * @param handle     from {@link #getCharacteristicHandle(String, UUID, UUID)}
+     * @param input      the payload, closed when the transfer ends
+     * @param totalBytes the payload size, or -1 if unknown
+     * @param listener   progress reports on a background thread, may be null
+     * @return the future of the transfer statistics, it fails with
+     * {@link GattException#STATUS_STALE_HANDLE} if the services changed since the handle was
+     * looked up.
+     */
+    public GattFuture<TransferStats> writeCharacteristicStream(CharacteristicHandle handle, InputStream input,
+                                                               long totalBytes, BulkWriter.ProgressListener listener) {
+        final BleConnection connection = connectionOf(handle);
+        if (connection == null) {
+            return GattFuture.failed(handle.isValid() ? GattException.STATUS_NOT_CONNECTED
+                    : GattException.STATUS_STALE_HANDLE);
+        }
+        if (connection.beginTransfer()) {
+            applyProfile(connection, ConnectionProfile.HIGH_THROUGHPUT);
+        }
+        GattFuture<TransferStats> transfer = new BulkWriter(openWriteChannel(handle), input, totalBytes,
+                mTransferExecutor)
+                .setProgressListener(listener, 100)
+                .start();
+        transfer.addListener(new GattFuture.Listener<TransferStats>() {
+            @Override
+            public void onSuccess(TransferStats result) {
+                onTransferEnded(connection);
+            }
+
+            @Override
+            public void onFailure(GattException e) {
+                onTransferEnded(connection);
+            }
+        });
+        return transfer;
+    }
+
+    private void onTransferEnded(BleConnection connection) {
+        if (connection.endTransfer() && connection.isConnected()) {
+            applyProfile(connection, connection.getProfile());
+        }
+    }
+
+    /**
+     * Route the notifications of a characteristic to the app or stop it. This is local, see
+     * {@link #subscribe} to have the peer send them.
+     *
+     * @param address
+     * @param serviceUuid
+     * @param characteristicUuid
+     * @param enabled
+     * @return the future of the request
+     */
+    public GattFuture<Void> setCharacteristicNotification(String address, final UUID serviceUuid,
+                                                          final UUID characteristicUuid, final boolean enabled) {
+        final BleConnection connection = connectedConnection(address);
+        if (connection == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+        }
+        return connection.getQueue().enqueue(new GattOperation<Void>(GattOperation.TYPE_LOCAL, characteristicUuid) {
+            @Override
+            protected boolean execute() {
+                return connection.getLink().setCharacteristicNotification(serviceUuid, characteristicUuid, enabled);
+            }
+        });
+    }
+
+    /**
+     * Subscribe to notifications or indications of a characteristic. The subscription is kept
+     * across reconnects and written again after every discovery; a descriptor which already has
+     * the mode is not written again.
+     *
+     * @param address
+     * @param serviceUuid
+     * @param characteristicUuid
+     * @param mode               a {@code SubscriptionManager.MODE_}, usually {@code MODE_AUTO}
+     * @return the future of the descriptor write, while the services are unknown it waits for
+     * the discovery
+     */
+    public GattFuture<Void> subscribe(String address, UUID serviceUuid, UUID characteristicUuid, int mode) {
+        return subscriptionsOf(address).subscribe(serviceUuid, characteristicUuid, mode);
+    }
+
+    public GattFuture<Void> unsubscribe(String address, UUID serviceUuid, UUID characteristicUuid) {
+        return subscriptionsOf(address).unsubscribe(serviceUuid, characteristicUuid);
+    }
+
+    public SubscriptionManager subscriptionsOf(String address) {
+        SubscriptionManager subscriptions = mSubscriptions.get(address);
+        if (subscriptions == null) {
+            SubscriptionManager created = new SubscriptionManager(address);
+            subscriptions = mSubscriptions.putIfAbsent(address, created);
+            if (subscriptions == null) {
+                subscriptions = created;
+            }
+        }
+        return subscriptions;
+    }
+
+    /**
+     * the connection is gone, the subscriptions wait for the next discovery
+     */
+    private void dropSubscriptions(String address) {
+        SubscriptionManager subscriptions = mSubscriptions.get(address);
+        if (subscriptions != null) {
+            subscriptions.onDisconnected();
+        }
+    }
+
+    /**
+     * the subscriptions' view of a connection, requests go to its queue
+     */
+    private SubscriptionManager.Link subscriptionLink(final BleConnection connection) {
+        return new SubscriptionManager.Link() {
+            @Override
+            public int getProperties(UUID serviceUuid, UUID characteristicUuid) {
+                CharacteristicHandle handle = connection.getIndex().find(serviceUuid, characteristicUuid);
+                return handle == null ? -1 : handle.getProperties();
+            }
+
+            @Override
+            public GattFuture<Void> setNotification(final UUID serviceUuid, final UUID characteristicUuid,
+                                                    final boolean enabled) {
+                return connection.getQueue().enqueue(new GattOperation<Void>(GattOperation.TYPE_LOCAL,
+                        characteristicUuid) {
+                    @Override
+                    protected boolean execute() {
+                        return connection.getLink().setCharacteristicNotification(serviceUuid, characteristicUuid,
+                                enabled);
+                    }
+                });
+            }
+
+            @Override
+            public GattFuture<Void> writeClientConfig(final UUID serviceUuid, final UUID characteristicUuid,
+                                                      final byte[] value) {
+                return connection.getQueue().enqueue(new GattOperation<Void>(GattOperation.TYPE_WRITE_DESCRIPTOR,
+                        CLIENT_CONFIG_UUID) {
+                    @Override
+                    protected boolean execute() {
+                        return connection.getLink().writeDescriptor(serviceUuid, characteristicUuid,
+                                CLIENT_CONFIG_UUID, value);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Resolve a characteristic once for repeated reads and writes. The handle turns stale when
+     * the connection closes or the services are discovered again.
+     *
+     * @param address
+     * @param serviceUuid
+     * @param characteristicUuid
+     * @return null if the device is not connected or does not have the characteristic
+     */
+    public CharacteristicHandle getCharacteristicHandle(String address, UUID serviceUuid, UUID characteristicUuid) {
+        BleConnection connection = mConnections.get(address);
+        return connection == null ? null : connection.getIndex().find(serviceUuid, characteristicUuid);
+    }
+
+    /**
+     * Resolve a characteristic by its 16 bit assigned number, e.g. 0x2A37.
+     *
+     * @param address
+     * @param shortId
+     * @return null if the device is not connected or does not have the characteristic
+     */
+    public CharacteristicHandle getCharacteristicHandle(String address, int shortId) {
+        BleConnection connection = mConnections.get(address);
+        return connection == null ? null : connection.getIndex().find(shortId);
+    }
+
+    /**
+     * Queue a service discovery on the connection.
+     *
+     * @param address
+     * @return the future of the discovered attribute table.
+     */
+    public GattFuture<GattLayout> discoverServices(String address) {
+        final BleConnection connection = connectedConnection(address);
+        if (connection == null) {
+            return GattFuture.failed(GattException.STATUS_NOT_CONNECTED);
+        }
+        return connection.getQueue().enqueue(new GattOperation<GattLayout>(GattOperation.TYPE_DISCOVER_SERVICES,
+                null) {
+            @Override
+            protected boolean execute() {
+                // the handles of the old table are stale from now on
+                connection.prepareDiscovery();
+                return connection.getLink().discoverServices();
+            }
+        });
+    }
+
+    /**
+     * Get the bus which receives every characteristic notification. This is the cheap path for
+     * high rate data, values are handed over without copying.
+     *
+     * @return
+     */
+    public CharacteristicEventBus getEventBus() {
+        return mEventBus;
+    }
+
+    /**
+     * Get the metrics of the connections. They are disabled until
+     * {@link GattMetrics#setEnabled(boolean)}.
+     *
+     * @return
+     */
+    public GattMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * get the connection a handle can run on
+     *
+     * @param handle
+     * @return null if the handle is stale or the device is not connected
+     */
+    private BleConnection connectionOf(CharacteristicHandle handle) {
+        return handle.isValid() ? connectedConnection(handle.getAddress()) : null;
+    }
+
+    private BleConnection connectedConnection(String address) {
+        BleConnection connection = mConnections.get(address);
+        return connection == null || !connection.isConnected() ? null : connection;
+    }
+
+    /**
+     * a write which keeps its value, so its completion can report what was written
+     */
+    private abstract static class WriteOperation<T> extends GattOperation<T> {
+        final byte[] mValue;
+
+        WriteOperation(int type, UUID uuid, byte[] value) {
+            super(type, uuid);
+            mValue = value;
+        }
+    }
+
+    private static byte[] valueOf(GattOperation<?> operation) {
+        return operation instanceof WriteOperation ? ((WriteOperation<?>) operation).mValue : null;
+    }
+
+    /**
+     * the events of one connection attempt, a later attempt of the device gets its own
+     */
+    private class LinkCallback implements GattLinkCallback {
+        private final BleConnection mConnection;
+        private final String mAddress;
+
+        LinkCallback(BleConnection connection) {
+            mConnection = connection;
+            mAddress = connection.getAddress();
+        }
+
+        /**
+         * @return false for a link the registry no longer holds
+         */
+        private boolean accept(GattLink link) {
+            // the event can beat connect() to attaching the link
+            mConnection.attach(link);
+            return mConnections.get(mAddress) == mConnection;
+        }
+
+        @Override
+        public void onConnectionStateChanged(GattLink link, int status, boolean connected) {
+            if (!accept(link)) {
+                // a link of an earlier attempt, the registry holds the current one of the
+                // address; adopting it would orphan that connection
+                link.close();
+                return;
+            }
+            if (connected) {
+                if (!mConnection.compareAndSetState(ConnectionState.CONNECTING, ConnectionState.CONNECTED)) {
+                    return;
+                }
+                mMetrics.onConnected(mAddress);
+                if (mConnection.getProfile() != ConnectionProfile.BALANCED) {
+                    // queued ahead of the discovery, so it already runs with the profile
+                    applyProfile(mConnection, mConnection.getProfile());
+                }
+                for (Listener listener : mListeners) {
+                    listener.onConnectionStateChanged(mAddress, true, status);
+                }
+                // the scheduler discovers the services next
+                mConnectionScheduler.onConnected(mAddress);
+                return;
+            }
+            boolean wasConnected = mConnection.isConnected();
+            mConnections.close(mConnection);
+            if (wasConnected) {
+                mMetrics.onDisconnected(mAddress, status);
+                dropSubscriptions(mAddress);
+            } else {
+                mMetrics.onConnectFailed(mAddress, status);
+            }
+            // like BluetoothGatt, a link is not reused after it went down
+            link.disconnect();
+            link.close();
+            for (Listener listener : mListeners) {
+                listener.onConnectionStateChanged(mAddress, false, status);
+            }
+            mConnectionScheduler.onDisconnected(mAddress, status);
+        }
+
+        @Override
+        public void onServicesDiscovered(GattLink link, int status) {
+            if (!accept(link)) {
+                return;
+            }
+            GattLayout layout = status == 0 ? link.getServices() : null;
+            if (layout != null) {
+                mConnection.setServices(layout);
+                mConnection.compareAndSetState(ConnectionState.CONNECTED, ConnectionState.READY);
+                DiscoveryCache cache = mDiscoveryCache;
+                if (cache != null) {
+                    cache.update(mAddress, layout);
+                }
+            }
+            mConnection.getQueue().onOperationCompleted(GattOperation.TYPE_DISCOVER_SERVICES, null, status, layout);
+            if (layout != null) {
+                // queued behind whatever the discovery's listeners started
+                subscriptionsOf(mAddress).onConnected(subscriptionLink(mConnection));
+                for (Listener listener : mListeners) {
+                    listener.onServicesDiscovered(mAddress);
+                }
+            }
+        }
+
+        @Override
+        public void onCharacteristicRead(GattLink link, UUID characteristicUuid, byte[] value, int status) {
+            if (!accept(link)) {
+                return;
+            }
+            mConnection.getQueue().onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, characteristicUuid,
+                    status, value == null ? null : value.clone());
+            if (status == 0) {
+                for (Listener listener : mListeners) {
+                    listener.onCharacteristicRead(mAddress, characteristicUuid, value);
+                }
+            }
+        }
+
+        @Override
+        public void onCharacteristicWrite(GattLink link, UUID characteristicUuid, int status) {
+            if (!accept(link)) {
+                return;
+            }
+            GattOperation<?> write = mConnection.getQueue().complete(GattOperation.TYPE_WRITE_CHARACTERISTIC,
+                    characteristicUuid, status, null);
+            byte[] value = valueOf(write);
+            for (Listener listener : mListeners) {
+                listener.onCharacteristicWrite(mAddress, characteristicUuid, value, status);
+            }
+        }
+
+        @Override
+        public void onDescriptorWrite(GattLink link, UUID descriptorUuid, int status) {
+            if (!accept(link)) {
+                return;
+            }
+            mConnection.getQueue().onOperationCompleted(GattOperation.TYPE_WRITE_DESCRIPTOR, descriptorUuid, status,
+                    null);
+            if (status == 0) {
+                for (Listener listener : mListeners) {
+                    listener.onDescriptorWrite(mAddress, descriptorUuid);
+                }
+            }
+        }
+
+        @Override
+        public void onPreparedWrite(GattLink link, UUID characteristicUuid, byte[] echo, int status) {
+            if (!accept(link)) {
+                return;
+            }
+            GattOperation<?> write = mConnection.getQueue().complete(GattOperation.TYPE_PREPARE_WRITE,
+                    characteristicUuid, status, echo == null ? null : echo.clone());
+            byte[] value = valueOf(write);
+            for (Listener listener : mListeners) {
+                listener.onCharacteristicWrite(mAddress, characteristicUuid, value, status);
+            }
+        }
+
+        @Override
+        public void onReliableWriteCompleted(GattLink link, int status) {
+            if (accept(link)) {
+                mConnection.getQueue().onOperationCompleted(GattOperation.TYPE_EXECUTE_WRITE, null, status, null);
+            }
+        }
+
+        @Override
+        public void onCharacteristicChanged(GattLink link, UUID characteristicUuid, byte[] value) {
+            if (!accept(link)) {
+                return;
+            }
+            if (SERVICE_CHANGED_UUID.equals(characteristicUuid)) {
+                // the handles point into the old service table, discover it again
+                mConnection.invalidateServices();
+                discoverServices(mAddress);
+            }
+            long received = System.nanoTime();
+            mEventBus.publish(mAddress, characteristicUuid, value, received);
+            if (mMetrics.isEnabled()) {
+                mMetrics.onNotification(mAddress, System.nanoTime() - received);
+            }
+            for (Listener listener : mListeners) {
+                listener.onCharacteristicChanged(mAddress, characteristicUuid, value);
+            }
+        }
+
+        @Override
+        public void onMtuChanged(GattLink link, int mtu, int status) {
+            if (!accept(link)) {
+                return;
+            }
+            if (status == 0) {
+                mConnection.setMtu(mtu);
+            }
+            mConnection.getQueue().onOperationCompleted(GattOperation.TYPE_REQUEST_MTU, null, status, mtu);
+        }
+
+        @Override
+        public void onReadRemoteRssi(GattLink link, int rssi, int status) {
+            if (accept(link)) {
+                mConnection.getQueue().onOperationCompleted(GattOperation.TYPE_READ_RSSI, null, status, rssi);
+            }
+        }
+
+        @Override
+        public void onPhyUpdate(GattLink link, int txPhy, int rxPhy, int status) {
+            if (accept(link) && status == 0) {
+                mConnection.setPhy(txPhy, rxPhy);
+            }
+        }
+    }
+}
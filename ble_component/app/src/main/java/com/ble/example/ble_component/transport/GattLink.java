@@ -0,0 +1,114 @@
+package com.ble.example.ble_component.transport;
+
+import com.ble.example.ble_component.discovery.GattLayout;
+
+import java.util.UUID;
+
+/**
+ * One GATT client connection of a {@link BleTransport}. Attributes are addressed by uuid
+ * instead of platform objects. Like {@code BluetoothGatt} a link runs one request at a time: a
+ * request returns false if it could not be started, otherwise its completion is reported to
+ * the {@link GattLinkCallback}. Callers serialize the requests, e.g. with a
+ * {@code GattOperationQueue}.
+ */
+public interface GattLink {
+
+    /**
+     * same values as {@code BluetoothGattCharacteristic.WRITE_TYPE_}
+     */
+    int WRITE_TYPE_NO_RESPONSE = 1;
+    int WRITE_TYPE_DEFAULT = 2;
+
+    String getAddress();
+
+    boolean discoverServices();
+
+    /**
+     * @return the attribute table of the last successful discovery, null before
+     */
+    GattLayout getServices();
+
+    boolean readCharacteristic(UUID serviceUuid, UUID characteristicUuid);
+
+    /**
+     * @param value     the array may be reused once the write completed
+     * @param writeType one of the {@code WRITE_TYPE_} constants
+     */
+    boolean writeCharacteristic(UUID serviceUuid, UUID characteristicUuid, byte[] value, int writeType);
+
+    boolean writeDescriptor(UUID serviceUuid, UUID characteristicUuid, UUID descriptorUuid, byte[] value);
+
+    /**
+     * Start a reliable write: the following {@link #prepareWrite} requests are queued by the
+     * peer until {@link #executeReliableWrite()} or {@link #abortReliableWrite()}.
+     */
+    boolean beginReliableWrite();
+
+    /**
+     * queue a part of a value on the peer, the echo is reported through
+     * {@link GattLinkCallback#onPreparedWrite}
+     *
+     * @param offset where the part goes in the value, see {@link #supportsWriteOffsets()}
+     * @param value  at most MTU - 5 bytes
+     */
+    boolean prepareWrite(UUID serviceUuid, UUID characteristicUuid, int offset, byte[] value);
+
+    /**
+     * @return false if {@link #prepareWrite} only accepts offset 0, like {@code BluetoothGatt}
+     * which writes every value of a reliable write as a whole
+     */
+    boolean supportsWriteOffsets();
+
+    /**
+     * write all prepared values at once, reported through
+     * {@link GattLinkCallback#onReliableWriteCompleted}
+     */
+    boolean executeReliableWrite();
+
+    /**
+     * discard the prepared values, not reported
+     */
+    void abortReliableWrite();
+
+    /**
+     * Route notifications of the characteristic to the callback. This is local, the peer only
+     * sends them once its client characteristic configuration descriptor has been written.
+     *
+     * @return false if the characteristic is unknown
+     */
+    boolean setCharacteristicNotification(UUID serviceUuid, UUID characteristicUuid, boolean enabled);
+
+    /**
+     * @return false if the platform cannot change the MTU
+     */
+    boolean requestMtu(int mtu);
+
+    boolean readRemoteRssi();
+
+    /**
+     * Ask for a connection interval, done as soon as it returns.
+     *
+     * @param priority one of the {@code ConnectionProfile.PRIORITY_} constants
+     * @return false if the platform cannot change the priority
+     */
+    boolean requestConnectionPriority(int priority);
+
+    /**
+     * Ask for PHYs, a hint the controller may ignore. What the link settles on is reported
+     * through {@link GattLinkCallback#onPhyUpdate} where the platform knows about PHYs.
+     *
+     * @param txPhyMask {@code ConnectionProfile.PHY_LE_*_MASK} bits
+     * @param rxPhyMask
+     */
+    void setPreferredPhy(int txPhyMask, int rxPhyMask);
+
+    /**
+     * Tear the connection down, reported through the callback. Pending requests are dropped.
+     */
+    void disconnect();
+
+    /**
+     * release the link, no further events are reported
+     */
+    void close();
+}
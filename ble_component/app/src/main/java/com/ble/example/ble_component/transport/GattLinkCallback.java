@@ -0,0 +1,46 @@
+package com.ble.example.ble_component.transport;
+
+import java.util.UUID;
+
+/**
+ * Events of a {@link GattLink}, the counterpart of {@code BluetoothGattCallback}. Statuses are
+ * gatt statuses, 0 means success. Events may arrive on any thread.
+ */
+public interface GattLinkCallback {
+
+    /**
+     * @param status    0 for a regular connect or disconnect
+     * @param connected the new state of the link
+     */
+    void onConnectionStateChanged(GattLink link, int status, boolean connected);
+
+    void onServicesDiscovered(GattLink link, int status);
+
+    /**
+     * @param value only valid during the call
+     */
+    void onCharacteristicRead(GattLink link, UUID characteristicUuid, byte[] value, int status);
+
+    void onCharacteristicWrite(GattLink link, UUID characteristicUuid, int status);
+
+    void onDescriptorWrite(GattLink link, UUID descriptorUuid, int status);
+
+    /**
+     * @param echo the part of the value as the peer received it, only valid during the call; null
+     *             if the transport does not report it
+     */
+    void onPreparedWrite(GattLink link, UUID characteristicUuid, byte[] echo, int status);
+
+    void onReliableWriteCompleted(GattLink link, int status);
+
+    /**
+     * @param value only valid during the call
+     */
+    void onCharacteristicChanged(GattLink link, UUID characteristicUuid, byte[] value);
+
+    void onMtuChanged(GattLink link, int mtu, int status);
+
+    void onReadRemoteRssi(GattLink link, int rssi, int status);
+
+    void onPhyUpdate(GattLink link, int txPhy, int rxPhy, int status);
+}
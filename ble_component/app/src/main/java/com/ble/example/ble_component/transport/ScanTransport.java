@@ -0,0 +1,22 @@
+package com.ble.example.ble_component.transport;
+
+/**
+ * The scanner of a {@link BleTransport}, a plain feed of advertisements without filtering or
+ * batching.
+ */
+public interface ScanTransport {
+
+    interface Callback {
+        /**
+         * @param scanRecord the raw advertisement, only valid during the call
+         */
+        void onAdvertisement(String address, int rssi, byte[] scanRecord);
+    }
+
+    /**
+     * @return false if the scan could not be started
+     */
+    boolean startScan(Callback callback);
+
+    void stopScan();
+}
@@ -0,0 +1,33 @@
+package com.ble.example.ble_component.util;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Scheduler} on top of a {@link ScheduledExecutorService} and {@code System.nanoTime()}.
+ */
+public class ExecutorScheduler implements Scheduler {
+
+    private final ScheduledExecutorService mExecutor;
+
+    public ExecutorScheduler(ScheduledExecutorService executor) {
+        mExecutor = executor;
+    }
+
+    @Override
+    public long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    @Override
+    public Task schedule(Runnable task, long delayMs) {
+        final ScheduledFuture<?> future = mExecutor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        return new Task() {
+            @Override
+            public void cancel() {
+                future.cancel(false);
+            }
+        };
+    }
+}
@@ -0,0 +1,34 @@
+package com.ble.example.ble_component.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * {@link Scheduler} on top of a {@link Handler} and {@code SystemClock.elapsedRealtime()}, for
+ * components which have to run on a looper thread.
+ */
+public class HandlerScheduler implements Scheduler {
+
+    private final Handler mHandler;
+
+    public HandlerScheduler(Looper looper) {
+        mHandler = new Handler(looper);
+    }
+
+    @Override
+    public long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public Task schedule(final Runnable task, long delayMs) {
+        mHandler.postDelayed(task, delayMs);
+        return new Task() {
+            @Override
+            public void cancel() {
+                mHandler.removeCallbacks(task);
+            }
+        };
+    }
+}
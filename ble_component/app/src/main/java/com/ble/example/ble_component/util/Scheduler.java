@@ -0,0 +1,31 @@
+package com.ble.example.ble_component.util;
+
+/**
+ * Clock and delayed execution used by the schedulers of the stack, so their timing can be
+ * driven by a virtual clock in tests.
+ */
+public interface Scheduler {
+
+    /**
+     * handle of a scheduled task
+     */
+    interface Task {
+        void cancel();
+    }
+
+    /**
+     * monotonic time in milliseconds
+     *
+     * @return
+     */
+    long now();
+
+    /**
+     * run the task once after the delay
+     *
+     * @param task
+     * @param delayMs
+     * @return
+     */
+    Task schedule(Runnable task, long delayMs);
+}
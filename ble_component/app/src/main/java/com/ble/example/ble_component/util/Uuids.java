@@ -0,0 +1,69 @@
+package com.ble.example.ble_component.util;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UUID helpers for the hot command path. {@link UUID#fromString(String)} splits and parses the
+ * string on every call, the callers of this component pass the same few constants over and
+ * over, so parsed UUIDs are interned.
+ */
+public final class Uuids {
+
+    /**
+     * upper bound of interned strings, anything beyond is parsed but not kept
+     */
+    static final int MAX_INTERNED = 256;
+
+    private static final long BASE_LSB = 0x800000805F9B34FBL;
+    private static final long BASE_MSB_LOW = 0x0000000000001000L;
+
+    private static final ConcurrentHashMap<String, UUID> sInterned = new ConcurrentHashMap<>();
+
+    private Uuids() {
+    }
+
+    /**
+     * parse the uuid, repeated calls with the same string return the same instance
+     *
+     * @param uuid
+     * @return
+     */
+    public static UUID fromString(String uuid) {
+        UUID result = sInterned.get(uuid);
+        if (result == null) {
+            result = UUID.fromString(uuid);
+            if (sInterned.size() < MAX_INTERNED) {
+                UUID previous = sInterned.putIfAbsent(uuid, result);
+                if (previous != null) {
+                    result = previous;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * expand a 16 bit assigned number to the Bluetooth base uuid
+     *
+     * @param shortId e.g. 0x2A37 for the heart rate measurement
+     * @return
+     */
+    public static UUID fromShortId(int shortId) {
+        return new UUID(((long) (shortId & 0xFFFF) << 32) | BASE_MSB_LOW, BASE_LSB);
+    }
+
+    /**
+     * get the 16 bit assigned number of a uuid on the Bluetooth base uuid
+     *
+     * @param uuid
+     * @return -1 if the uuid is not a 16 bit one
+     */
+    public static int toShortId(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        if (uuid.getLeastSignificantBits() != BASE_LSB || (msb & 0xFFFF0000FFFFFFFFL) != BASE_MSB_LOW) {
+            return -1;
+        }
+        return (int) (msb >>> 32) & 0xFFFF;
+    }
+}
@@ -0,0 +1,137 @@
+package com.ble.example.ble_component.advert;
+
+import com.ble.example.ble_component.util.Uuids;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static com.ble.example.ble_component.advert.AdvertisementCorpus.*;
+import static org.junit.Assert.*;
+
+public class AdvertisementParserTest {
+
+    private final AdvertisementParser mParser = new AdvertisementParser();
+
+    @Test
+    public void walksStructuresInPlace() {
+        AdvertisementRecord record = mParser.parse(HEART_RATE);
+        assertEquals(4, record.getStructureCount());
+        assertSame(HEART_RATE, record.getBytes());
+        assertEquals(0x06, record.getFlags());
+        assertEquals(4, record.getTxPower());
+        assertTrue(record.getLocalNameData().contentEquals("HMR1"));
+        assertEquals("HMR1", record.getLocalName());
+        assertFalse(record.isTruncated());
+
+        AdData data = record.getData(1);
+        assertSame(HEART_RATE, data.array());
+        assertEquals(0x180D, data.getUint16Le(0));
+        assertEquals(AdvertisementRecord.TYPE_UUID16_COMPLETE, record.getType(1));
+    }
+
+    @Test
+    public void readsServiceUuidsOfAllSizes() {
+        AdvertisementRecord record = mParser.parse(NORDIC_UART);
+        UUID uart = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+        assertEquals(1, record.getServiceUuidCount());
+        assertEquals(uart, record.getServiceUuid(0));
+        assertTrue(record.hasServiceUuid(uart));
+        assertEquals("Uart-01", record.getLocalName());
+
+        record = mParser.parse(THERMOMETER_32);
+        assertEquals(Uuids.fromShortId(0x1809), record.getServiceUuid(0));
+        assertTrue(record.hasServiceUuid(Uuids.fromShortId(0x1809)));
+
+        record = mParser.parse(HEART_RATE);
+        assertEquals(Uuids.fromShortId(0x180D).getMostSignificantBits(), record.getServiceUuidMsb(0));
+        assertFalse(record.hasServiceUuid(uart));
+        try {
+            record.getServiceUuidMsb(1);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    @Test
+    public void decodesIBeacon() {
+        assertSame(mParser.getIBeaconDecoder(), mParser.decode(IBEACON));
+        IBeaconDecoder beacon = mParser.getIBeaconDecoder();
+        assertEquals(UUID.fromString("e2c56db5-dffb-48d2-b060-d0f5a71096e0"), beacon.getUuid());
+        assertEquals(1, beacon.getMajor());
+        assertEquals(2, beacon.getMinor());
+        assertEquals(-59, beacon.getMeasuredPower());
+        assertEquals(IBeaconDecoder.COMPANY_APPLE, mParser.parse(IBEACON).getManufacturerId());
+
+        // other Apple manufacturer data is not a beacon
+        assertNull(mParser.decode(APPLE_CONTINUITY));
+        assertNull(mParser.decode(TRUNCATED));
+        assertTrue(mParser.parse(TRUNCATED).isTruncated());
+    }
+
+    @Test
+    public void decodesEddystoneFrames() {
+        EddystoneDecoder eddystone = mParser.getEddystoneDecoder();
+
+        assertSame(eddystone, mParser.decode(EDDYSTONE_UID));
+        assertEquals(EddystoneDecoder.FRAME_UID, eddystone.getFrameType());
+        assertEquals(-18, eddystone.getTxPower());
+        assertArrayEquals(hex("8b0ca750e2f8d3a76c3b"), eddystone.getNamespace());
+        assertArrayEquals(hex("010203040506"), eddystone.getInstance());
+
+        assertSame(eddystone, mParser.decode(EDDYSTONE_URL));
+        assertEquals(EddystoneDecoder.FRAME_URL, eddystone.getFrameType());
+        assertEquals("https://google.com", eddystone.getUrl());
+
+        assertSame(eddystone, mParser.decode(EDDYSTONE_TLM));
+        assertEquals(EddystoneDecoder.FRAME_TLM, eddystone.getFrameType());
+        assertEquals(3000, eddystone.getBatteryMillivolts());
+        assertEquals(23.5f, eddystone.getTemperature(), 0.001f);
+        assertEquals(256, eddystone.getAdvertisementCount());
+        assertEquals(10000, eddystone.getUptimeTenths());
+    }
+
+    @Test
+    public void runsRegisteredVendorDecoders() {
+        SwiftPairDecoder swiftPair = new SwiftPairDecoder();
+        assertNull(mParser.decode(SWIFT_PAIR));
+        mParser.register(swiftPair);
+        assertSame(swiftPair, mParser.decode(SWIFT_PAIR));
+        assertEquals(0x80, swiftPair.mRssiOffset);
+        assertSame(mParser.getIBeaconDecoder(), mParser.decode(IBEACON));
+
+        mParser.unregister(swiftPair);
+        assertNull(mParser.decode(SWIFT_PAIR));
+    }
+
+    @Test
+    public void copiesOnlyOnRequest() {
+        AdData data = mParser.parse(IBEACON).getManufacturerData(IBeaconDecoder.COMPANY_APPLE);
+        assertSame(IBEACON, data.array());
+        byte[] copy = data.toByteArray();
+        assertEquals(23, copy.length);
+        assertTrue(Arrays.equals(Arrays.copyOfRange(IBEACON, 7, 30), copy));
+        assertNull(mParser.parse(null).getManufacturerData(IBeaconDecoder.COMPANY_APPLE));
+    }
+
+    /**
+     * Microsoft Swift Pair, manufacturer data 0x0006 with scenario 0x03
+     */
+    static class SwiftPairDecoder extends ManufacturerDataDecoder {
+        int mRssiOffset;
+
+        SwiftPairDecoder() {
+            super(0x0006);
+        }
+
+        @Override
+        protected boolean decode(AdData data) {
+            if (data.length() < 3 || data.getUint8(0) != 0x03) {
+                return false;
+            }
+            mRssiOffset = data.getUint8(2);
+            return true;
+        }
+    }
+}
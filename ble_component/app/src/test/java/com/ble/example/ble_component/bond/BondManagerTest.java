@@ -0,0 +1,135 @@
+package com.ble.example.ble_component.bond;
+
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.util.VirtualScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class BondManagerTest {
+
+    private static final String A = "00:11:22:33:44:01";
+    private static final String B = "00:11:22:33:44:02";
+    private static final String C = "00:11:22:33:44:03";
+
+    private final VirtualScheduler mClock = new VirtualScheduler();
+    private final FakeBonder mBonder = new FakeBonder();
+    private final BondManager mManager = new BondManager(mBonder, mClock);
+
+    @Test
+    public void pairsOneDeviceAtATime() throws Exception {
+        GattFuture<Void> a = mManager.bond(A);
+        GattFuture<Void> b = mManager.bond(B);
+        assertSame(a, mManager.bond(A));
+        assertEquals(Arrays.asList("create " + A), mBonder.calls);
+        assertEquals(BondState.BONDING, mManager.getState(A));
+        assertEquals(BondState.QUEUED, mManager.getState(B));
+
+        // another device changing state does not disturb the running pairing
+        mManager.onBondStateChanged(C, BondManager.BOND_NONE);
+        assertFalse(a.isDone());
+
+        mManager.onBondStateChanged(A, BondManager.BOND_BONDING);
+        mManager.onBondStateChanged(A, BondManager.BOND_BONDED);
+        assertTrue(a.isSuccess());
+        assertEquals(Arrays.asList("create " + A, "create " + B), mBonder.calls);
+
+        mManager.onBondStateChanged(B, BondManager.BOND_NONE);
+        assertEquals(GattException.STATUS_BOND_FAILED, failure(b).getStatus());
+        assertTrue(mManager.isBonded(A));
+        assertFalse(mManager.isBonded(B));
+        assertTrue(mManager.bond(A).isSuccess());
+        assertEquals(2, mBonder.calls.size());
+    }
+
+    @Test
+    public void timesOutAndMovesOn() throws Exception {
+        mManager.setTimeouts(1000, 1000);
+        GattFuture<Void> a = mManager.bond(A);
+        GattFuture<Void> b = mManager.bond(B);
+        mClock.advance(1000);
+
+        assertEquals(GattException.STATUS_TIMEOUT, failure(a).getStatus());
+        assertEquals(Arrays.asList("create " + A, "cancel " + A, "create " + B), mBonder.calls);
+        assertEquals(BondState.NONE, mManager.getState(A));
+        mManager.onBondStateChanged(B, BondManager.BOND_BONDED);
+        assertTrue(b.isSuccess());
+    }
+
+    @Test
+    public void skipsRefusedPairings() throws Exception {
+        mBonder.refuse = A;
+        GattFuture<Void> a = mManager.bond(A);
+        GattFuture<Void> b = mManager.bond(B);
+        assertEquals(GattException.STATUS_REJECTED, failure(a).getStatus());
+        assertFalse(b.isDone());
+        assertEquals(BondState.BONDING, mManager.getState(B));
+    }
+
+    @Test
+    public void removesBondsFromTheCache() throws Exception {
+        mBonder.bonded.add(A);
+        mManager.refresh();
+        assertEquals(BondState.BONDED, mManager.getState(A));
+
+        GattFuture<Void> removal = mManager.removeBond(A);
+        assertSame(removal, mManager.removeBond(A));
+        assertEquals(GattException.STATUS_REJECTED, failure(mManager.bond(A)).getStatus());
+        mManager.onBondStateChanged(A, BondManager.BOND_NONE);
+        assertTrue(removal.isSuccess());
+        assertFalse(mManager.isBonded(A));
+        assertTrue(mManager.getBondedAddresses().isEmpty());
+
+        // removing a queued pairing cancels it
+        mManager.bond(B);
+        GattFuture<Void> c = mManager.bond(C);
+        assertTrue(mManager.removeBond(C).isSuccess());
+        assertEquals(GattException.STATUS_CANCELLED, failure(c).getStatus());
+        assertEquals(0, mManager.getQueuedCount());
+    }
+
+    private static GattException failure(GattFuture<?> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return (GattException) e.getCause();
+        }
+        throw new AssertionError("future did not fail");
+    }
+
+    private static class FakeBonder implements BondManager.Bonder {
+        final List<String> calls = new ArrayList<>();
+        final List<String> bonded = new ArrayList<>();
+        String refuse;
+
+        @Override
+        public boolean createBond(String address) {
+            calls.add("create " + address);
+            return !address.equals(refuse);
+        }
+
+        @Override
+        public void cancelBond(String address) {
+            calls.add("cancel " + address);
+        }
+
+        @Override
+        public boolean removeBond(String address) {
+            calls.add("remove " + address);
+            return true;
+        }
+
+        @Override
+        public Collection<String> getBondedAddresses() {
+            return bonded;
+        }
+    }
+}
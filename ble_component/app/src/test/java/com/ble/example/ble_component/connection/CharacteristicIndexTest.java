@@ -0,0 +1,106 @@
+package com.ble.example.ble_component.connection;
+
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.util.Uuids;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class CharacteristicIndexTest {
+
+    private static final String ADDRESS = "00:11:22:33:44:00";
+    private static final UUID HEART_RATE = Uuids.fromShortId(0x180D);
+    private static final UUID MEASUREMENT = Uuids.fromShortId(0x2A37);
+    private static final UUID BODY_LOCATION = Uuids.fromShortId(0x2A38);
+    private static final UUID CUSTOM_SERVICE = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final UUID CUSTOM_TX = UUID.fromString("6e400002-b5a3-f393-e0a9-e50e24dcca9e");
+
+    private CharacteristicIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new CharacteristicIndex(ADDRESS);
+        mIndex.addService(HEART_RATE);
+        mIndex.add(HEART_RATE, BODY_LOCATION, 0x02);
+        mIndex.add(HEART_RATE, MEASUREMENT, 0x10);
+        mIndex.addService(CUSTOM_SERVICE);
+        mIndex.add(CUSTOM_SERVICE, CUSTOM_TX, 0x0C);
+        mIndex.add(CUSTOM_SERVICE, MEASUREMENT, 0x10);
+    }
+
+    @Test
+    public void findsByServiceAndUuid() {
+        CharacteristicHandle handle = mIndex.find(HEART_RATE, MEASUREMENT);
+        assertEquals(HEART_RATE, handle.getServiceUuid());
+        assertEquals(MEASUREMENT, handle.getUuid());
+        assertEquals(ADDRESS, handle.getAddress());
+        assertSame(handle, mIndex.find(HEART_RATE, MEASUREMENT));
+
+        assertEquals(CUSTOM_SERVICE, mIndex.find(CUSTOM_SERVICE, MEASUREMENT).getServiceUuid());
+        assertNull(mIndex.find(HEART_RATE, CUSTOM_TX));
+        assertNull(mIndex.find(UUID.randomUUID(), MEASUREMENT));
+    }
+
+    @Test
+    public void firstServiceWinsUuidAndShortIdLookups() {
+        assertSame(mIndex.find(HEART_RATE, MEASUREMENT), mIndex.find(MEASUREMENT));
+        assertSame(mIndex.find(HEART_RATE, MEASUREMENT), mIndex.find(0x2A37));
+        assertSame(mIndex.find(HEART_RATE, BODY_LOCATION), mIndex.find(0x2A38));
+        assertSame(mIndex.find(CUSTOM_SERVICE, CUSTOM_TX), mIndex.find(CUSTOM_TX));
+        assertNull(mIndex.find(0x2A39));
+        assertEquals(3, mIndex.size());
+    }
+
+    @Test
+    public void duplicateServiceIsIgnored() {
+        assertFalse(mIndex.addService(HEART_RATE));
+    }
+
+    @Test
+    public void invalidationMakesHandlesStale() {
+        CharacteristicHandle handle = mIndex.find(MEASUREMENT);
+        assertTrue(handle.isValid());
+        mIndex.invalidate();
+        assertFalse(handle.isValid());
+        assertFalse(CharacteristicIndex.empty(ADDRESS).isValid());
+    }
+
+    @Test
+    public void cachedLayoutIsProvisionalUntilConfirmed() {
+        GattLayout layout = new GattLayout(new GattLayout.Service(HEART_RATE, 0,
+                new GattLayout.Characteristic(MEASUREMENT, 0x10)));
+        CharacteristicIndex index = CharacteristicIndex.fromLayout(ADDRESS, layout);
+
+        assertTrue(index.isValid());
+        assertTrue(index.isProvisional());
+        CharacteristicHandle handle = index.find(0x2A37);
+        assertEquals(MEASUREMENT, handle.getUuid());
+        assertEquals(0x10, handle.getProperties());
+
+        assertFalse(index.confirm(layout.getHash() + 1));
+        assertTrue(index.isProvisional());
+        assertTrue(index.confirm(layout.getHash()));
+        assertFalse(index.isProvisional());
+        assertFalse(index.confirm(layout.getHash()));
+    }
+
+    @Test
+    public void shortIdsRoundTrip() {
+        assertEquals(UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb"), MEASUREMENT);
+        assertEquals(0x2A37, Uuids.toShortId(MEASUREMENT));
+        assertEquals(0xFFFF, Uuids.toShortId(Uuids.fromShortId(0xFFFF)));
+        assertEquals(-1, Uuids.toShortId(CUSTOM_TX));
+        assertEquals(-1, Uuids.toShortId(UUID.fromString("12342a37-0000-1000-8000-00805f9b34fb")));
+    }
+
+    @Test
+    public void parsedUuidsAreInterned() {
+        String uuid = "0000fff1-0000-1000-8000-00805f9b34fb";
+        assertSame(Uuids.fromString(uuid), Uuids.fromString(new String(uuid)));
+        assertEquals(UUID.fromString(uuid), Uuids.fromString(uuid));
+    }
+}
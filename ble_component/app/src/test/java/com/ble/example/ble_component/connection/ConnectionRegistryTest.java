@@ -0,0 +1,200 @@
+package com.ble.example.ble_component.connection;
+
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.gatt.GattOperation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ConnectionRegistryTest {
+
+    private static final UUID CHAR_A = UUID.fromString("0000fff1-0000-1000-8000-00805f9b34fb");
+    private static final String ADDRESS = "00:11:22:33:44:00";
+
+    private ScheduledExecutorService mExecutor;
+    private ConnectionRegistry mRegistry;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+        mRegistry = new ConnectionRegistry(mExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void openReplacesAndClosesPreviousConnection() throws Exception {
+        BleConnection first = mRegistry.open(ADDRESS);
+        assertTrue(first.compareAndSetState(ConnectionState.CONNECTING, ConnectionState.CONNECTED));
+        GattFuture<byte[]> pending = first.getQueue().enqueue(new Read());
+
+        BleConnection second = mRegistry.open(ADDRESS);
+        assertSame(second, mRegistry.get(ADDRESS));
+        assertEquals(ConnectionState.IDLE, first.getState());
+        assertEquals(GattException.STATUS_DISCONNECTED, failure(pending).getStatus());
+        assertEquals(GattException.STATUS_DISCONNECTED,
+                failure(first.getQueue().enqueue(new Read())).getStatus());
+        assertEquals(1, mRegistry.size());
+    }
+
+    @Test
+    public void overlappingTransfersSwitchTheProfileOnce() {
+        BleConnection connection = mRegistry.open(ADDRESS);
+        connection.setProfile(ConnectionProfile.LOW_POWER);
+        assertTrue(connection.beginTransfer());
+        connection.setAppliedProfile(ConnectionProfile.HIGH_THROUGHPUT);
+        assertFalse(connection.beginTransfer());
+        connection.setMtu(247);
+        connection.setPhy(ConnectionProfile.PHY_LE_2M, ConnectionProfile.PHY_LE_2M);
+
+        assertFalse(connection.endTransfer());
+        assertTrue(connection.isTransferring());
+        assertTrue(connection.endTransfer());
+        assertFalse(connection.isTransferring());
+
+        LinkParameters parameters = connection.getLinkParameters();
+        assertEquals(ConnectionProfile.HIGH_THROUGHPUT, parameters.getProfile());
+        assertEquals(247, parameters.getMtu());
+        assertEquals(ConnectionProfile.PHY_LE_2M, parameters.getTxPhy());
+        assertEquals(ConnectionProfile.LOW_POWER, connection.getProfile());
+    }
+
+    @Test
+    public void closingStaleConnectionKeepsNewerOne() {
+        BleConnection stale = mRegistry.open(ADDRESS);
+        BleConnection current = mRegistry.open(ADDRESS);
+
+        assertFalse(mRegistry.close(stale));
+        assertSame(current, mRegistry.get(ADDRESS));
+        assertTrue(mRegistry.close(current));
+        assertNull(mRegistry.get(ADDRESS));
+        assertFalse(mRegistry.close(current));
+    }
+
+    /**
+     * Connects, disconnects, operations and completions race each other from several threads,
+     * the way binder callbacks and callers do. Afterwards every operation must have finished.
+     */
+    @Test
+    public void survivesConcurrentConnectDisconnectChurn() throws Exception {
+        final int threads = 8;
+        final int iterations = 5000;
+        final String[] addresses = new String[4];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = String.format("00:11:22:33:44:%02X", i);
+        }
+        final ConcurrentLinkedQueue<GattFuture<byte[]>> futures = new ConcurrentLinkedQueue<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < iterations; i++) {
+                            String address = addresses[random.nextInt(addresses.length)];
+                            BleConnection connection;
+                            switch (random.nextInt(5)) {
+                                case 0:
+                                    mRegistry.open(address);
+                                    break;
+                                case 1:
+                                    connection = mRegistry.get(address);
+                                    if (connection != null) {
+                                        connection.compareAndSetState(ConnectionState.CONNECTING,
+                                                ConnectionState.CONNECTED);
+                                    }
+                                    break;
+                                case 2:
+                                    if (random.nextBoolean()) {
+                                        mRegistry.close(address);
+                                    } else if ((connection = mRegistry.get(address)) != null) {
+                                        mRegistry.close(connection);
+                                    }
+                                    break;
+                                case 3:
+                                    connection = mRegistry.get(address);
+                                    if (connection != null && connection.isConnected()) {
+                                        futures.add(connection.getQueue().enqueue(new Read()));
+                                    }
+                                    break;
+                                default:
+                                    connection = mRegistry.get(address);
+                                    if (connection != null) {
+                                        connection.getQueue().onOperationCompleted(
+                                                GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_A, 0, new byte[]{1});
+                                    }
+                                    break;
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertNull(error.get());
+
+        for (String address : addresses) {
+            mRegistry.close(address);
+        }
+        assertEquals(0, mRegistry.size());
+        assertFalse(futures.isEmpty());
+        for (GattFuture<byte[]> future : futures) {
+            try {
+                future.get(1, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertEquals(GattException.STATUS_DISCONNECTED, ((GattException) e.getCause()).getStatus());
+            }
+        }
+    }
+
+    private static GattException failure(GattFuture<?> future) throws InterruptedException {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return (GattException) e.getCause();
+        } catch (TimeoutException e) {
+            fail("future not done");
+        }
+        fail("future succeeded");
+        return null;
+    }
+
+    private static class Read extends GattOperation<byte[]> {
+        Read() {
+            super(TYPE_READ_CHARACTERISTIC, CHAR_A);
+        }
+
+        @Override
+        protected boolean execute() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.ble.example.ble_component.connection;
+
+import com.ble.example.ble_component.util.VirtualScheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ConnectionSchedulerTest {
+
+    private final VirtualScheduler mClock = new VirtualScheduler();
+    private final SimulatedAdapter mAdapter = new SimulatedAdapter();
+    private ConnectionScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mScheduler = new ConnectionScheduler(mAdapter, mClock);
+        mScheduler.setBackoff(1000, 8000, 0);
+        mScheduler.setConnectTimeout(5000);
+    }
+
+    @Test
+    public void capsConnectsInFlight() {
+        mScheduler.setMaxConcurrentConnects(3);
+        for (int i = 0; i < 10; i++) {
+            mScheduler.connect(address(i), false);
+        }
+
+        assertEquals(3, mScheduler.getConnectingCount());
+        assertEquals(7, mScheduler.getWaitingCount());
+        assertEquals(3, mAdapter.connecting.size());
+        assertEquals(ConnectionState.PENDING, mScheduler.getState(address(3)));
+
+        mAdapter.link(address(0));
+        assertEquals(3, mScheduler.getConnectingCount());
+        assertEquals(ConnectionState.CONNECTING, mScheduler.getState(address(3)));
+    }
+
+    @Test
+    public void walksThroughStateMachine() {
+        final List<ConnectionState> states = new ArrayList<>();
+        mScheduler.addListener(new ConnectionScheduler.Listener() {
+            @Override
+            public void onConnectionStateChanged(String address, ConnectionState state) {
+                states.add(state);
+            }
+        });
+        mScheduler.connect(address(0), true);
+        mAdapter.link(address(0));
+        assertEquals(ConnectionState.DISCOVERING, mScheduler.getState(address(0)));
+        assertTrue(mAdapter.discovering.contains(address(0)));
+
+        mScheduler.onServicesDiscovered(address(0), true);
+        assertEquals(ConnectionState.READY, mScheduler.getState(address(0)));
+        assertEquals(5, states.size());
+        assertEquals(ConnectionState.PENDING, states.get(0));
+        assertEquals(ConnectionState.CONNECTING, states.get(1));
+        assertEquals(ConnectionState.CONNECTED, states.get(2));
+        assertEquals(ConnectionState.DISCOVERING, states.get(3));
+        assertEquals(ConnectionState.READY, states.get(4));
+    }
+
+    @Test
+    public void backsOffExponentially() {
+        mScheduler.connect(address(0), true);
+        long[] expected = {1000, 2000, 4000, 8000, 8000};
+        for (long delay : expected) {
+            mScheduler.onConnectFailed(address(0), 133);
+            assertEquals(ConnectionState.BACKOFF, mScheduler.getState(address(0)));
+            mClock.advance(delay - 1);
+            assertEquals(ConnectionState.BACKOFF, mScheduler.getState(address(0)));
+            mClock.advance(1);
+            assertEquals(ConnectionState.CONNECTING, mScheduler.getState(address(0)));
+        }
+        assertEquals(expected.length, mScheduler.getFailureCount(address(0)));
+
+        mAdapter.link(address(0));
+        mScheduler.onServicesDiscovered(address(0), true);
+        assertEquals(0, mScheduler.getFailureCount(address(0)));
+    }
+
+    @Test
+    public void timesOutStuckConnect() {
+        mScheduler.connect(address(0), true);
+        mClock.advance(5000);
+
+        assertEquals(ConnectionState.BACKOFF, mScheduler.getState(address(0)));
+        assertTrue(mAdapter.cancelled.contains(address(0)));
+        assertEquals(0, mScheduler.getConnectingCount());
+    }
+
+    @Test
+    public void flakyDeviceDoesNotStarveOthers() {
+        mScheduler.setMaxConcurrentConnects(1);
+        mScheduler.setBackoff(0, 0, 0);
+        mAdapter.alwaysFail.add(address(0));
+        for (int i = 0; i < 6; i++) {
+            mScheduler.connect(address(i), true);
+        }
+        for (int round = 0; round < 20; round++) {
+            mClock.advance(1);
+            mAdapter.linkAll();
+            mAdapter.discoverAll(mScheduler);
+        }
+
+        for (int i = 1; i < 6; i++) {
+            assertEquals(ConnectionState.READY, mScheduler.getState(address(i)));
+        }
+        assertTrue(mScheduler.getFailureCount(address(0)) > 0);
+    }
+
+    @Test
+    public void reconnectsAfterLinkLoss() {
+        mScheduler.connect(address(0), true);
+        mAdapter.link(address(0));
+        mScheduler.onServicesDiscovered(address(0), true);
+
+        mScheduler.onDisconnected(address(0), 8);
+        assertEquals(ConnectionState.BACKOFF, mScheduler.getState(address(0)));
+        mClock.advance(1000);
+        assertEquals(ConnectionState.CONNECTING, mScheduler.getState(address(0)));
+    }
+
+    @Test
+    public void oneShotConnectIsDroppedOnFailure() {
+        mScheduler.connect(address(0), false);
+        mScheduler.onConnectFailed(address(0), 133);
+
+        assertEquals(ConnectionState.IDLE, mScheduler.getState(address(0)));
+        assertEquals(0, mClock.pending());
+    }
+
+    @Test
+    public void disconnectReleasesSlot() {
+        mScheduler.setMaxConcurrentConnects(1);
+        mScheduler.connect(address(0), true);
+        mScheduler.connect(address(1), true);
+        mScheduler.disconnect(address(0));
+
+        assertEquals(ConnectionState.IDLE, mScheduler.getState(address(0)));
+        assertTrue(mAdapter.cancelled.contains(address(0)));
+        assertEquals(ConnectionState.CONNECTING, mScheduler.getState(address(1)));
+        assertEquals(1, mScheduler.getConnectingCount());
+    }
+
+    private static String address(int i) {
+        return String.format("00:11:22:33:44:%02X", i);
+    }
+
+    /**
+     * the radio side: records what the scheduler asks for, the test decides the outcome
+     */
+    private class SimulatedAdapter implements ConnectionScheduler.Connector {
+        final List<String> connecting = new ArrayList<>();
+        final Set<String> discovering = new HashSet<>();
+        final Set<String> cancelled = new HashSet<>();
+        final Set<String> alwaysFail = new HashSet<>();
+
+        @Override
+        public boolean connect(String address) {
+            connecting.add(address);
+            return true;
+        }
+
+        @Override
+        public boolean discoverServices(String address) {
+            discovering.add(address);
+            return true;
+        }
+
+        @Override
+        public void disconnect(String address) {
+            connecting.remove(address);
+            discovering.remove(address);
+            cancelled.add(address);
+        }
+
+        void link(String address) {
+            connecting.remove(address);
+            if (alwaysFail.contains(address)) {
+                mScheduler.onConnectFailed(address, 133);
+            } else {
+                mScheduler.onConnected(address);
+            }
+        }
+
+        void linkAll() {
+            for (String address : new ArrayList<>(connecting)) {
+                link(address);
+            }
+        }
+
+        void discoverAll(ConnectionScheduler scheduler) {
+            for (String address : new ArrayList<>(discovering)) {
+                discovering.remove(address);
+                scheduler.onServicesDiscovered(address, true);
+            }
+        }
+    }
+}
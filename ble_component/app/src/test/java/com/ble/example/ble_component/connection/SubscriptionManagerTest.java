@@ -0,0 +1,173 @@
+package com.ble.example.ble_component.connection;
+
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the manager against a fake link which records the requests and completes the
+ * descriptor writes when told to.
+ */
+public class SubscriptionManagerTest {
+
+    private static final UUID SERVICE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final UUID NOTIFY = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+    private static final UUID INDICATE = UUID.fromString("00002a35-0000-1000-8000-00805f9b34fb");
+
+    private final SubscriptionManager mManager = new SubscriptionManager("00:11:22:33:44:55");
+
+    @Test
+    public void redundantSubscriptionsWriteOnce() throws Exception {
+        FakeLink link = new FakeLink();
+        mManager.onConnected(link);
+
+        GattFuture<Void> first = mManager.subscribe(SERVICE, NOTIFY, SubscriptionManager.MODE_AUTO);
+        GattFuture<Void> second = mManager.subscribe(SERVICE, NOTIFY, SubscriptionManager.MODE_NOTIFY);
+        assertEquals(Arrays.asList("route " + NOTIFY + " true", "cccd " + NOTIFY + " 1"), link.requests);
+        assertFalse(second.isDone());
+
+        link.completeWrites(0);
+        assertTrue(first.isSuccess());
+        assertTrue(second.isSuccess());
+        assertEquals(SubscriptionManager.MODE_NOTIFY, mManager.getActualMode(SERVICE, NOTIFY));
+
+        assertTrue(mManager.subscribe(SERVICE, NOTIFY, SubscriptionManager.MODE_AUTO).isSuccess());
+        assertEquals(2, link.requests.size());
+    }
+
+    @Test
+    public void disablingClearsTheDescriptorBeforeRouting() throws Exception {
+        FakeLink link = new FakeLink();
+        mManager.onConnected(link);
+        mManager.subscribe(SERVICE, NOTIFY, SubscriptionManager.MODE_AUTO);
+        link.completeWrites(0);
+        link.requests.clear();
+
+        GattFuture<Void> off = mManager.unsubscribe(SERVICE, NOTIFY);
+        assertEquals(Arrays.asList("cccd " + NOTIFY + " 0", "route " + NOTIFY + " false"), link.requests);
+        link.completeWrites(0);
+        assertTrue(off.isSuccess());
+        assertEquals(0, mManager.size());
+        // nothing to clear any more
+        assertTrue(mManager.unsubscribe(SERVICE, NOTIFY).isSuccess());
+        assertEquals(2, link.requests.size());
+    }
+
+    @Test
+    public void picksIndicationsWhereNotificationsAreMissing() throws Exception {
+        FakeLink link = new FakeLink();
+        mManager.onConnected(link);
+
+        mManager.subscribe(SERVICE, INDICATE, SubscriptionManager.MODE_AUTO);
+        assertEquals("cccd " + INDICATE + " 2", link.requests.get(1));
+        link.completeWrites(0);
+        assertEquals(SubscriptionManager.MODE_INDICATE, mManager.getActualMode(SERVICE, INDICATE));
+
+        GattFuture<Void> notify = mManager.subscribe(SERVICE, INDICATE, SubscriptionManager.MODE_NOTIFY);
+        assertEquals(SubscriptionManager.STATUS_REQUEST_NOT_SUPPORTED, failure(notify).getStatus());
+    }
+
+    @Test
+    public void restoresEverySubscriptionAfterReconnect() throws Exception {
+        GattFuture<Void> early = mManager.subscribe(SERVICE, NOTIFY, SubscriptionManager.MODE_AUTO);
+        mManager.subscribe(SERVICE, INDICATE, SubscriptionManager.MODE_INDICATE);
+        assertFalse(early.isDone());
+
+        FakeLink first = new FakeLink();
+        GattFuture<Void> pass = mManager.onConnected(first);
+        assertEquals(4, first.requests.size());
+        first.completeWrites(0);
+        assertTrue(early.isSuccess());
+        assertTrue(pass.isSuccess());
+
+        mManager.onDisconnected();
+        assertEquals(SubscriptionManager.MODE_NONE, mManager.getActualMode(SERVICE, NOTIFY));
+        assertEquals(SubscriptionManager.MODE_AUTO, mManager.getMode(SERVICE, NOTIFY));
+
+        FakeLink second = new FakeLink();
+        pass = mManager.onConnected(second);
+        assertEquals(4, second.requests.size());
+        second.completeWrites(133);
+        assertEquals(133, failure(pass).getStatus());
+
+        // a failed write is retried by the next request
+        mManager.subscribe(SERVICE, NOTIFY, SubscriptionManager.MODE_AUTO);
+        assertEquals(6, second.requests.size());
+    }
+
+    @Test
+    public void followsAModeChangedDuringAWrite() throws Exception {
+        FakeLink link = new FakeLink();
+        mManager.onConnected(link);
+        GattFuture<Void> on = mManager.subscribe(SERVICE, NOTIFY, SubscriptionManager.MODE_AUTO);
+        GattFuture<Void> off = mManager.unsubscribe(SERVICE, NOTIFY);
+        assertEquals(4, link.requests.size());
+
+        link.completeWrites(0);
+        assertTrue(on.isSuccess());
+        link.completeWrites(0);
+        assertTrue(off.isSuccess());
+        assertEquals(SubscriptionManager.MODE_NONE, mManager.getActualMode(SERVICE, NOTIFY));
+        assertEquals(0, mManager.size());
+    }
+
+    private static GattException failure(GattFuture<?> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return (GattException) e.getCause();
+        }
+        throw new AssertionError("future did not fail");
+    }
+
+    private static class FakeLink implements SubscriptionManager.Link {
+        final List<String> requests = new ArrayList<>();
+        final List<GattFuture<Void>> writes = new ArrayList<>();
+
+        @Override
+        public int getProperties(UUID serviceUuid, UUID characteristicUuid) {
+            if (NOTIFY.equals(characteristicUuid)) {
+                return 0x10;
+            }
+            return INDICATE.equals(characteristicUuid) ? 0x20 : -1;
+        }
+
+        @Override
+        public GattFuture<Void> setNotification(UUID serviceUuid, UUID characteristicUuid, boolean enabled) {
+            requests.add("route " + characteristicUuid + " " + enabled);
+            return GattFuture.succeeded(null);
+        }
+
+        @Override
+        public GattFuture<Void> writeClientConfig(UUID serviceUuid, UUID characteristicUuid, byte[] value) {
+            requests.add("cccd " + characteristicUuid + " " + value[0]);
+            GattFuture<Void> write = new GattFuture<>();
+            writes.add(write);
+            return write;
+        }
+
+        /**
+         * complete the writes issued so far, writes started by the completions stay pending
+         */
+        void completeWrites(int status) {
+            List<GattFuture<Void>> pending = new ArrayList<>(writes);
+            writes.clear();
+            for (GattFuture<Void> write : pending) {
+                if (status == 0) {
+                    write.complete(null);
+                } else {
+                    write.fail(new GattException(status));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.ble.example.ble_component.connection;
+
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.sim.LinkProfile;
+import com.ble.example.ble_component.sim.SimulatedPeripheral;
+import com.ble.example.ble_component.sim.SimulatedTransport;
+import com.ble.example.ble_component.transport.GattClient;
+import com.ble.example.ble_component.util.VirtualScheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class WarmPoolTest {
+
+    private static final UUID SERVICE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final UUID MEASUREMENT = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+    private static final List<String> HOT = Arrays.asList("00:00:00:00:00:01", "00:00:00:00:00:02",
+            "00:00:00:00:00:03");
+
+    private final VirtualScheduler mClock = new VirtualScheduler();
+    private final LinkProfile mProfile = new LinkProfile();
+    private ScheduledExecutorService mTimeouts;
+    private SimulatedTransport mTransport;
+    private GattClient mClient;
+    private WarmPool mPool;
+
+    @Before
+    public void setUp() {
+        mTimeouts = Executors.newSingleThreadScheduledExecutor();
+        mProfile.setConnect(100, 0);
+        mTransport = new SimulatedTransport(mClock, mProfile);
+        for (String address : HOT) {
+            mTransport.addPeripheral(new SimulatedPeripheral(address, new GattLayout(
+                    new GattLayout.Service(SERVICE, 0, new GattLayout.Characteristic(MEASUREMENT, 0x10)))));
+        }
+        mClient = new GattClient(mClock, mTimeouts, mTimeouts);
+        mClient.setTransport(mTransport);
+        mClient.getConnectionScheduler().setBackoff(100, 400, 0);
+        mPool = new WarmPool(mClient.getConnectionScheduler(), mClock);
+    }
+
+    @After
+    public void tearDown() {
+        mTimeouts.shutdownNow();
+    }
+
+    @Test
+    public void connectsHotDevicesInParallel() throws Exception {
+        mClock.advance(50);
+        GattFuture<StartupReport> ready = mPool.warm(HOT, 0, 5000);
+        assertTrue(mPool.isWarming());
+        assertEquals(HOT.size(), mClient.getConnectionScheduler().getConnectingCount());
+        mClock.advance(1000);
+
+        assertTrue(ready.isSuccess());
+        StartupReport report = ready.get();
+        assertTrue(report.isComplete());
+        assertEquals(50, report.getInitMs());
+        assertEquals(HOT.size(), report.getReadyCount());
+        long slowest = 0;
+        for (String address : HOT) {
+            assertEquals(ConnectionState.READY, mClient.getConnectionScheduler().getState(address));
+            // the connects overlapped, nobody waited for another device
+            assertTrue(report.getReadyMs(address) < 50 + 2 * 100);
+            slowest = Math.max(slowest, report.getReadyMs(address));
+        }
+        assertEquals(slowest, report.getElapsedMs());
+        assertFalse(mPool.isWarming());
+    }
+
+    @Test
+    public void reportsWhatIsReadyWhenTheTimeoutExpires() throws Exception {
+        mTransport.getPeripheral(HOT.get(2)).setConnectable(false);
+        GattFuture<StartupReport> ready = mPool.warm(HOT, 0, 2000);
+        mClock.advance(1999);
+        assertFalse(ready.isDone());
+        mClock.advance(1);
+
+        StartupReport report = ready.get();
+        assertFalse(report.isComplete());
+        assertEquals(2, report.getReadyCount());
+        assertEquals(-1, report.getReadyMs(HOT.get(2)));
+        assertEquals(2000, report.getElapsedMs());
+
+        // the late device keeps connecting after the report
+        mTransport.getPeripheral(HOT.get(2)).setConnectable(true);
+        mClock.advance(1000);
+        assertEquals(ConnectionState.READY, mClient.getConnectionScheduler().getState(HOT.get(2)));
+    }
+
+    @Test
+    public void completesAtOnceWhenEverythingIsConnected() throws Exception {
+        mPool.warm(HOT, 0, 5000);
+        mClock.advance(1000);
+
+        GattFuture<StartupReport> again = mPool.warm(HOT, mClock.now(), 5000);
+        assertTrue(again.isSuccess());
+        assertEquals(0, again.get().getElapsedMs());
+        assertEquals(HOT.size(), again.get().getReadyCount());
+    }
+}
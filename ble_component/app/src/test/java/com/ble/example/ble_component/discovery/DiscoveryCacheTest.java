@@ -0,0 +1,170 @@
+package com.ble.example.ble_component.discovery;
+
+import com.ble.example.ble_component.util.Uuids;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class DiscoveryCacheTest {
+
+    private static final String ADDRESS = "00:11:22:33:44:00";
+    private static final UUID CCCD = Uuids.fromShortId(0x2902);
+    private static final UUID CUSTOM_SERVICE = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private DiscoveryCache mCache;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mFolder.newFolder("gatt");
+        mCache = new DiscoveryCache(mDirectory, DIRECT);
+    }
+
+    @Test
+    public void layoutSurvivesRoundTrip() throws IOException {
+        GattLayout layout = heartRateLayout();
+        byte[] encoded = layout.encode();
+        GattLayout decoded = GattLayout.decode(encoded);
+
+        assertEquals(layout, decoded);
+        assertEquals(layout.getHash(), decoded.getHash());
+        assertEquals(2, decoded.getServices().length);
+        GattLayout.Service service = decoded.getServices()[0];
+        assertEquals(Uuids.fromShortId(0x180D), service.getUuid());
+        assertEquals(0x10, service.getCharacteristics()[0].getProperties());
+        assertArrayEquals(new UUID[]{CCCD}, service.getCharacteristics()[0].getDescriptors());
+        assertEquals(CUSTOM_SERVICE, decoded.getServices()[1].getUuid());
+        // short uuids take 3 bytes, the full one 17
+        assertTrue(encoded.length < 80);
+    }
+
+    @Test
+    public void hashDependsOnLayout() {
+        GattLayout moved = new GattLayout(
+                new GattLayout.Service(Uuids.fromShortId(0x180D), 0,
+                        new GattLayout.Characteristic(Uuids.fromShortId(0x2A37), 0x10, CCCD)),
+                new GattLayout.Service(CUSTOM_SERVICE, 0,
+                        new GattLayout.Characteristic(Uuids.fromShortId(0x2A38), 0x02),
+                        new GattLayout.Characteristic(UUID.fromString("6e400002-b5a3-f393-e0a9-e50e24dcca9e"), 0x08)));
+
+        assertEquals(heartRateLayout().getHash(), heartRateLayout().getHash());
+        assertNotEquals(heartRateLayout().getHash(), moved.getHash());
+        assertNotEquals(heartRateLayout(), moved);
+    }
+
+    @Test
+    public void corruptDataIsRejected() {
+        byte[] encoded = heartRateLayout().encode();
+        for (int i = 0; i < encoded.length; i++) {
+            byte[] corrupt = encoded.clone();
+            corrupt[i] ^= 0x01;
+            assertDecodeFails(corrupt);
+        }
+        for (int length = 0; length < encoded.length; length++) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(encoded, 0, truncated, 0, length);
+            assertDecodeFails(truncated);
+        }
+    }
+
+    @Test
+    public void persistsAcrossInstances() {
+        assertNull(mCache.get(ADDRESS));
+        assertFalse(mCache.update(ADDRESS, heartRateLayout()));
+        assertTrue(new File(mDirectory, "001122334400.gatt").isFile());
+
+        DiscoveryCache restarted = new DiscoveryCache(mDirectory, DIRECT);
+        assertEquals(heartRateLayout(), restarted.get(ADDRESS));
+        assertTrue(restarted.update(ADDRESS, heartRateLayout()));
+    }
+
+    @Test
+    public void changedLayoutReplacesEntry() {
+        mCache.update(ADDRESS, heartRateLayout());
+        GattLayout updated = new GattLayout(new GattLayout.Service(CUSTOM_SERVICE, 0));
+        assertFalse(mCache.update(ADDRESS, updated));
+
+        assertEquals(updated, new DiscoveryCache(mDirectory, DIRECT).get(ADDRESS));
+    }
+
+    @Test
+    public void corruptFileIsDeleted() throws IOException {
+        File file = new File(mDirectory, "001122334400.gatt");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{1, 2, 3, 4, 5});
+        out.close();
+
+        assertNull(mCache.get(ADDRESS));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void evictsExpiredAndLeastRecentlyUsed() {
+        mCache.setLimits(2, 60 * 60 * 1000);
+        for (int i = 0; i < 3; i++) {
+            mCache.update(address(i), heartRateLayout());
+        }
+        long now = System.currentTimeMillis();
+        // device 1 was confirmed recently, device 2 two hours ago
+        mCache.file(address(0)).setLastModified(now - 60 * 1000);
+        mCache.file(address(1)).setLastModified(now - 10 * 1000);
+        mCache.file(address(2)).setLastModified(now - 2 * 60 * 60 * 1000);
+        mCache.update(address(3), heartRateLayout());
+
+        assertFalse(mCache.file(address(0)).exists());
+        assertTrue(mCache.file(address(1)).exists());
+        assertFalse(mCache.file(address(2)).exists());
+        assertTrue(mCache.file(address(3)).exists());
+    }
+
+    @Test
+    public void removeForgetsDevice() {
+        mCache.update(ADDRESS, heartRateLayout());
+        mCache.remove(ADDRESS);
+
+        assertNull(mCache.get(ADDRESS));
+        assertFalse(mCache.file(ADDRESS).exists());
+    }
+
+    private static void assertDecodeFails(byte[] data) {
+        try {
+            GattLayout.decode(data);
+            fail("decoded " + data.length + " corrupt bytes");
+        } catch (IOException expected) {
+            // rejected
+        }
+    }
+
+    private static String address(int i) {
+        return String.format("00:11:22:33:44:%02X", i);
+    }
+
+    private static GattLayout heartRateLayout() {
+        return new GattLayout(
+                new GattLayout.Service(Uuids.fromShortId(0x180D), 0,
+                        new GattLayout.Characteristic(Uuids.fromShortId(0x2A37), 0x10, CCCD),
+                        new GattLayout.Characteristic(Uuids.fromShortId(0x2A38), 0x02)),
+                new GattLayout.Service(CUSTOM_SERVICE, 0,
+                        new GattLayout.Characteristic(UUID.fromString("6e400002-b5a3-f393-e0a9-e50e24dcca9e"), 0x08)));
+    }
+}
@@ -0,0 +1,97 @@
+package com.ble.example.ble_component.event;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class CharacteristicEventBusTest {
+
+    private static final String DEVICE_1 = "00:11:22:33:44:55";
+    private static final String DEVICE_2 = "66:77:88:99:AA:BB";
+    private static final UUID CHAR_A = UUID.fromString("0000fff1-0000-1000-8000-00805f9b34fb");
+    private static final UUID CHAR_B = UUID.fromString("0000fff2-0000-1000-8000-00805f9b34fb");
+
+    private final CharacteristicEventBus mBus = new CharacteristicEventBus();
+
+    @Test
+    public void dispatchesByAddressAndUuid() {
+        Recorder exact = new Recorder();
+        Recorder device = new Recorder();
+        Recorder characteristic = new Recorder();
+        Recorder all = new Recorder();
+        mBus.subscribe(DEVICE_1, CHAR_A, exact);
+        mBus.subscribe(DEVICE_1, null, device);
+        mBus.subscribe(null, CHAR_A, characteristic);
+        mBus.subscribe(null, null, all);
+
+        assertEquals(4, mBus.publish(DEVICE_1, CHAR_A, new byte[]{1}, 0));
+        assertEquals(2, mBus.publish(DEVICE_1, CHAR_B, new byte[]{2}, 0));
+        assertEquals(2, mBus.publish(DEVICE_2, CHAR_A, new byte[]{3}, 0));
+        assertEquals(1, mBus.publish(DEVICE_2, CHAR_B, new byte[]{4}, 0));
+
+        assertEquals(1, exact.values.size());
+        assertEquals(2, device.values.size());
+        assertEquals(2, characteristic.values.size());
+        assertEquals(4, all.values.size());
+    }
+
+    @Test
+    public void unsubscribeStopsDelivery() {
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        mBus.subscribe(DEVICE_1, CHAR_A, first);
+        mBus.subscribe(DEVICE_1, CHAR_A, second);
+        mBus.subscribe(DEVICE_2, null, first);
+
+        mBus.unsubscribe(DEVICE_1, CHAR_A, first);
+        assertEquals(1, mBus.publish(DEVICE_1, CHAR_A, new byte[0], 0));
+        assertTrue(mBus.hasListeners(DEVICE_2, CHAR_B));
+
+        mBus.unsubscribe(first);
+        mBus.unsubscribe(second);
+        assertFalse(mBus.hasListeners(DEVICE_1, CHAR_A));
+        assertFalse(mBus.hasListeners(DEVICE_2, CHAR_B));
+        assertEquals(0, mBus.publish(DEVICE_1, CHAR_A, new byte[0], 0));
+    }
+
+    @Test
+    public void subscribingTwiceDeliversOnce() {
+        Recorder recorder = new Recorder();
+        mBus.subscribe(DEVICE_1, CHAR_A, recorder);
+        mBus.subscribe(DEVICE_1, CHAR_A, recorder);
+
+        assertEquals(1, mBus.publish(DEVICE_1, CHAR_A, new byte[0], 0));
+    }
+
+    @Test
+    public void eventIsRecycledAfterDispatch() {
+        final List<CharacteristicEvent> events = new ArrayList<>();
+        mBus.subscribe(null, null, new CharacteristicListener() {
+            @Override
+            public void onCharacteristicChanged(CharacteristicEvent event) {
+                assertEquals(DEVICE_1, event.getAddress());
+                assertEquals(CHAR_A, event.getUuid());
+                assertEquals(42L, event.getTimestampNanos());
+                events.add(event);
+            }
+        });
+        mBus.publish(DEVICE_1, CHAR_A, new byte[]{1}, 42L);
+        mBus.publish(DEVICE_1, CHAR_A, new byte[]{1}, 42L);
+
+        assertSame(events.get(0), events.get(1));
+        assertNull(events.get(0).getValue());
+    }
+
+    private static class Recorder implements CharacteristicListener {
+        final List<byte[]> values = new ArrayList<>();
+
+        @Override
+        public void onCharacteristicChanged(CharacteristicEvent event) {
+            values.add(event.copyValue());
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.ble.example.ble_component.event;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NotificationRingBufferTest {
+
+    private static final String DEVICE = "00:11:22:33:44:55";
+    private static final UUID CHAR_UUID = UUID.fromString("0000fff1-0000-1000-8000-00805f9b34fb");
+
+    private final CharacteristicEventBus mBus = new CharacteristicEventBus();
+    private final ManualExecutor mExecutor = new ManualExecutor();
+    private final Collector mCollector = new Collector();
+    private ScheduledExecutorService mTimer;
+    private NotificationRingBuffer mBuffer;
+
+    @After
+    public void tearDown() {
+        if (mBuffer != null) {
+            mBuffer.close();
+        }
+        if (mTimer != null) {
+            mTimer.shutdownNow();
+        }
+    }
+
+    @Test
+    public void deliversEveryBatchSizeNotifications() {
+        mBuffer = builder().setCapacity(16).setCadence(4, 0).build().attach(mBus);
+        publish(0, 10);
+
+        assertEquals(1, mExecutor.pending());
+        mExecutor.runAll();
+
+        assertEquals(2, mCollector.sizes.size());
+        assertEquals(Integer.valueOf(4), mCollector.sizes.get(0));
+        assertEquals(2, mBuffer.size());
+        assertEquals(Integer.valueOf(0), mCollector.values.get(0));
+        assertEquals(Integer.valueOf(7), mCollector.values.get(7));
+        assertEquals(8, mBuffer.getDeliveredCount());
+    }
+
+    @Test
+    public void flushDeliversPartialBatch() {
+        mBuffer = builder().setCadence(8, 0).build().attach(mBus);
+        publish(0, 3);
+        mBuffer.flush();
+        mExecutor.runAll();
+
+        assertEquals(1, mCollector.sizes.size());
+        assertEquals(Integer.valueOf(3), mCollector.sizes.get(0));
+    }
+
+    @Test
+    public void timerFlushesAfterMaxDelay() throws Exception {
+        mTimer = Executors.newSingleThreadScheduledExecutor();
+        final CountDownLatch delivered = new CountDownLatch(1);
+        mBuffer = new NotificationRingBuffer.Builder(DEVICE, CHAR_UUID, new BatchListener() {
+            @Override
+            public void onBatch(NotificationBatch batch) {
+                delivered.countDown();
+            }
+        }).setCadence(100, 10).setExecutors(new DirectExecutor(), mTimer).build().attach(mBus);
+        publish(0, 1);
+
+        assertTrue(delivered.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void dropOldestKeepsLatest() {
+        mBuffer = builder().setCapacity(4).setCadence(4, 0)
+                .setPolicy(NotificationRingBuffer.Policy.DROP_OLDEST, 0).build().attach(mBus);
+        publish(0, 10);
+        mExecutor.runAll();
+
+        assertEquals(6, mBuffer.getDroppedOldestCount());
+        assertEquals(6, mBuffer.getOverflowCount());
+        assertEquals(10, mBuffer.getReceivedCount());
+        assertEquals(Integer.valueOf(6), mCollector.values.get(0));
+        assertEquals(Integer.valueOf(9), mCollector.values.get(3));
+        assertEquals(6, mCollector.overflow.get(0).longValue());
+    }
+
+    @Test
+    public void dropNewestKeepsEarliest() {
+        mBuffer = builder().setCapacity(4).setCadence(4, 0)
+                .setPolicy(NotificationRingBuffer.Policy.DROP_NEWEST, 0).build().attach(mBus);
+        publish(0, 10);
+        mExecutor.runAll();
+
+        assertEquals(6, mBuffer.getDroppedNewestCount());
+        assertEquals(Integer.valueOf(0), mCollector.values.get(0));
+        assertEquals(Integer.valueOf(3), mCollector.values.get(3));
+    }
+
+    @Test
+    public void blockWaitsForConsumer() throws Exception {
+        mBuffer = builder().setCapacity(4).setCadence(4, 0)
+                .setPolicy(NotificationRingBuffer.Policy.BLOCK, 5000).build().attach(mBus);
+        publish(0, 4);
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                publish(4, 1);
+            }
+        });
+        producer.start();
+        Thread.sleep(50);
+        assertTrue(producer.isAlive());
+
+        mExecutor.runAll();
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+        assertEquals(0, mBuffer.getOverflowCount());
+        assertEquals(1, mBuffer.size());
+    }
+
+    @Test
+    public void blockGivesUpAfterTimeout() {
+        mBuffer = builder().setCapacity(2).setCadence(2, 0)
+                .setPolicy(NotificationRingBuffer.Policy.BLOCK, 10).build().attach(mBus);
+        publish(0, 3);
+
+        assertEquals(1, mBuffer.getDroppedNewestCount());
+    }
+
+    @Test
+    public void longValuesAreTruncated() {
+        mBuffer = builder().setMaxValueLength(4).setCadence(1, 0).build().attach(mBus);
+        mBus.publish(DEVICE, CHAR_UUID, new byte[]{1, 2, 3, 4, 5, 6}, 0);
+        mExecutor.runAll();
+
+        assertEquals(1, mBuffer.getTruncatedCount());
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, mCollector.raw.get(0));
+    }
+
+    @Test
+    public void closeUnsubscribes() {
+        mBuffer = builder().build().attach(mBus);
+        assertTrue(mBus.hasListeners(DEVICE, CHAR_UUID));
+        mBuffer.close();
+        assertFalse(mBus.hasListeners(DEVICE, CHAR_UUID));
+    }
+
+    private NotificationRingBuffer.Builder builder() {
+        return new NotificationRingBuffer.Builder(DEVICE, CHAR_UUID, mCollector).setExecutors(mExecutor, null);
+    }
+
+    private void publish(int first, int count) {
+        byte[] value = new byte[1];
+        for (int i = first; i < first + count; i++) {
+            value[0] = (byte) i;
+            mBus.publish(DEVICE, CHAR_UUID, value, i);
+        }
+    }
+
+    private static class Collector implements BatchListener {
+        final List<Integer> sizes = new ArrayList<>();
+        final List<Integer> values = new ArrayList<>();
+        final List<byte[]> raw = new ArrayList<>();
+        final List<Long> overflow = new ArrayList<>();
+
+        @Override
+        public void onBatch(NotificationBatch batch) {
+            sizes.add(batch.size());
+            overflow.add(batch.getOverflowCount());
+            for (int i = 0; i < batch.size(); i++) {
+                values.add((int) batch.getData()[batch.getOffset(i)]);
+                raw.add(batch.copyValue(i));
+            }
+        }
+    }
+
+    private static class ManualExecutor implements Executor {
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        synchronized int pending() {
+            return mTasks.size();
+        }
+
+        void runAll() {
+            Runnable task;
+            while (true) {
+                synchronized (this) {
+                    task = mTasks.poll();
+                }
+                if (task == null) {
+                    return;
+                }
+                task.run();
+            }
+        }
+    }
+
+    private static class DirectExecutor implements Executor {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.ble.example.ble_component.fleet;
+
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.sim.LinkProfile;
+import com.ble.example.ble_component.sim.SimulatedPeripheral;
+import com.ble.example.ble_component.sim.SimulatedTransport;
+import com.ble.example.ble_component.transport.GattClient;
+import com.ble.example.ble_component.util.VirtualScheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class FleetCoordinatorTest {
+
+    private static final UUID SERVICE = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final UUID TX = UUID.fromString("6e400003-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final int GATEWAYS = 3;
+    private static final int DEVICES = 6;
+
+    private final VirtualScheduler mClock = new VirtualScheduler();
+    private final List<SimulatedTransport> mTransports = new ArrayList<>();
+    private final List<ClientGateway> mGateways = new ArrayList<>();
+    // every device is in range of every gateway: one peripheral per transport
+    private final HashMap<String, List<SimulatedPeripheral>> mPeripherals = new HashMap<>();
+    private final HashMap<String, Integer> mReceived = new HashMap<>();
+    private ScheduledExecutorService mTimeouts;
+    private FleetCoordinator mCoordinator;
+
+    @Before
+    public void setUp() {
+        mTimeouts = Executors.newSingleThreadScheduledExecutor();
+        for (int i = 0; i < GATEWAYS; i++) {
+            SimulatedTransport transport = new SimulatedTransport(mClock, new LinkProfile());
+            mTransports.add(transport);
+            ClientGateway gateway = new ClientGateway("gw" + i, transport, mClock, mTimeouts, 3, SERVICE, TX);
+            gateway.getConnectionScheduler().setBackoff(200, 400, 0);
+            mGateways.add(gateway);
+        }
+        for (int d = 0; d < DEVICES; d++) {
+            String address = String.format("00:11:22:33:44:%02X", d);
+            List<SimulatedPeripheral> peripherals = new ArrayList<>();
+            for (SimulatedTransport transport : mTransports) {
+                SimulatedPeripheral peripheral = new SimulatedPeripheral(address, new GattLayout(
+                        new GattLayout.Service(SERVICE, 0,
+                                new GattLayout.Characteristic(TX, 0x10, GattClient.CLIENT_CONFIG_UUID))));
+                transport.addPeripheral(peripheral);
+                peripheral.startNotifications(TX, 10, 20);
+                peripherals.add(peripheral);
+            }
+            mPeripherals.put(address, peripherals);
+        }
+        mCoordinator = new FleetCoordinator(mClock, new FleetListener() {
+            @Override
+            public void onData(String address, UUID uuid, byte[] value, long timestampNanos) {
+                Integer count = mReceived.get(address);
+                mReceived.put(address, count == null ? 1 : count + 1);
+            }
+
+            @Override
+            public void onAssignmentChanged(String address, String gatewayId) {
+            }
+        });
+        mCoordinator.setHeartbeatTimeout(3000);
+        for (ClientGateway gateway : mGateways) {
+            mCoordinator.addGateway(gateway);
+        }
+        for (String address : mPeripherals.keySet()) {
+            mCoordinator.addDevice(address);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mCoordinator.close();
+        mTimeouts.shutdownNow();
+    }
+
+    @Test
+    public void partitionsDevicesAndAggregatesData() {
+        mClock.advance(2000);
+        assertEquals(0, mCoordinator.getUnassignedCount());
+        int total = 0;
+        long data = 0;
+        for (ClientGateway gateway : mGateways) {
+            int count = mCoordinator.getDeviceCount(gateway.getId());
+            assertTrue(count <= gateway.getCapacity());
+            assertEquals(count, gateway.getDeviceCount());
+            total += count;
+            data += mCoordinator.getDataCount(gateway.getId());
+        }
+        assertEquals(DEVICES, total);
+        // every device connected to exactly its owner, and all of them deliver
+        for (String address : mPeripherals.keySet()) {
+            int connections = 0;
+            for (SimulatedPeripheral peripheral : mPeripherals.get(address)) {
+                connections += peripheral.getConnectionCount();
+            }
+            assertEquals(1, connections);
+            assertTrue(mReceived.containsKey(address));
+        }
+        long received = 0;
+        for (int count : mReceived.values()) {
+            received += count;
+        }
+        assertEquals(data, received);
+    }
+
+    @Test
+    public void movesDevicesOfFailedGatewayAndRebalancesOnRejoin() {
+        mClock.advance(2000);
+        ClientGateway failed = busiest();
+        Set<String> orphans = devicesOf(failed.getId());
+        assertFalse(orphans.isEmpty());
+
+        // the gateway dies without telling anybody
+        failed.stop();
+        mClock.advance(4000);
+        assertFalse(mCoordinator.isAlive(failed.getId()));
+        assertEquals(0, mCoordinator.getDeviceCount(failed.getId()));
+        assertEquals(0, mCoordinator.getUnassignedCount());
+        mReceived.clear();
+        mClock.advance(2000);
+        for (String address : orphans) {
+            assertNotEquals(failed.getId(), mCoordinator.getGatewayId(address));
+            assertTrue(mReceived.containsKey(address));
+        }
+
+        // back again: it rejoins with its heartbeat and takes its share
+        failed.start(mCoordinator);
+        assertTrue(mCoordinator.isAlive(failed.getId()));
+        mCoordinator.rebalance();
+        for (ClientGateway gateway : mGateways) {
+            assertEquals(DEVICES / GATEWAYS, mCoordinator.getDeviceCount(gateway.getId()));
+        }
+        mClock.advance(2000);
+        assertEquals(DEVICES, mReceived.size());
+    }
+
+    @Test
+    public void shedsDevicesFromOverloadedGateway() {
+        mClock.advance(2000);
+        ClientGateway overloaded = busiest();
+        assertTrue(mCoordinator.getDeviceCount(overloaded.getId()) > 1);
+
+        overloaded.setCapacity(1);
+        mClock.advance(3000);
+        assertEquals(1, mCoordinator.getDeviceCount(overloaded.getId()));
+        assertEquals(1, overloaded.getDeviceCount());
+        assertTrue(mCoordinator.getMoveCount() > 0);
+        assertEquals(0, mCoordinator.getUnassignedCount());
+    }
+
+    @Test
+    public void triesLostDeviceOnAnotherGateway() {
+        mClock.advance(2000);
+        String address = mPeripherals.keySet().iterator().next();
+        String owner = mCoordinator.getGatewayId(address);
+        int index = Integer.parseInt(owner.substring(2));
+        // out of range of its gateway only
+        SimulatedPeripheral peripheral = mPeripherals.get(address).get(index);
+        peripheral.setConnectable(false);
+        peripheral.dropConnections();
+        mClock.advance(5000);
+        String next = mCoordinator.getGatewayId(address);
+        assertNotNull(next);
+        assertNotEquals(owner, next);
+        mReceived.clear();
+        mClock.advance(1000);
+        assertTrue(mReceived.containsKey(address));
+        // the stale gateway is silent, nothing came through twice
+        assertEquals(0, mCoordinator.getStaleCount());
+    }
+
+    private ClientGateway busiest() {
+        ClientGateway busiest = mGateways.get(0);
+        for (ClientGateway gateway : mGateways) {
+            if (gateway.getDeviceCount() > busiest.getDeviceCount()) {
+                busiest = gateway;
+            }
+        }
+        return busiest;
+    }
+
+    private Set<String> devicesOf(String gatewayId) {
+        Set<String> devices = new HashSet<>();
+        for (String address : mPeripherals.keySet()) {
+            if (gatewayId.equals(mCoordinator.getGatewayId(address))) {
+                devices.add(address);
+            }
+        }
+        return devices;
+    }
+}
@@ -0,0 +1,183 @@
+package com.ble.example.ble_component.frame;
+
+import com.ble.example.ble_component.event.CharacteristicEventBus;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class FramePipelineTest {
+
+    private static final String DEVICE = "00:11:22:33:44:55";
+    private static final UUID CHAR_UUID = UUID.fromString("0000fff1-0000-1000-8000-00805f9b34fb");
+
+    private final CharacteristicEventBus mBus = new CharacteristicEventBus();
+    private final Collector mCollector = new Collector();
+    private FramePipeline mPipeline;
+
+    @After
+    public void tearDown() {
+        if (mPipeline != null) {
+            mPipeline.close();
+        }
+    }
+
+    @Test
+    public void computesTheStandardCheckValues() {
+        byte[] check = "123456789".getBytes(Charset.forName("US-ASCII"));
+        assertEquals(0x29B1, Checksum.CRC16_CCITT.compute(check, 0, check.length));
+        assertEquals(0xCBF43926, Checksum.CRC32.compute(check, 0, check.length));
+        assertTrue(Checksum.CRC32.verify(new byte[]{0x31, 0x32, 0x33, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39,
+                0x26, 0x39, (byte) 0xF4, (byte) 0xCB}, 0, 13));
+    }
+
+    @Test
+    public void joinsLengthPrefixedFramesAcrossNotifications() {
+        mPipeline = new FramePipeline.Builder(DEVICE, CHAR_UUID, new LengthPrefixedReassembler(2, false), mCollector)
+                .setChecksum(Checksum.CRC16_CCITT)
+                .build().attach(mBus);
+        byte[] first = lengthPrefixed(bytes(0, 30));
+        byte[] second = lengthPrefixed(bytes(100, 5));
+        byte[] stream = concat(first, second);
+        // the second frame starts inside the second notification, its prefix is split too
+        publish(Arrays.copyOfRange(stream, 0, 20));
+        publish(Arrays.copyOfRange(stream, 20, first.length + 1));
+        publish(Arrays.copyOfRange(stream, first.length + 1, stream.length));
+
+        assertEquals(2, mCollector.frames.size());
+        assertArrayEquals(bytes(0, 30), mCollector.frames.get(0));
+        assertArrayEquals(bytes(100, 5), mCollector.frames.get(1));
+        assertEquals(35, mPipeline.getByteCount());
+
+        byte[] corrupt = lengthPrefixed(bytes(7, 10));
+        corrupt[5] ^= 1;
+        publish(concat(corrupt, lengthPrefixed(bytes(9, 3))));
+        assertEquals(1, mPipeline.getChecksumErrorCount());
+        assertArrayEquals(bytes(9, 3), mCollector.frames.get(2));
+    }
+
+    @Test
+    public void countsSequenceGapsAndResyncsOnTheNextStart() {
+        mPipeline = new FramePipeline.Builder(DEVICE, CHAR_UUID, new SequencedReassembler(), mCollector)
+                .build().attach(mBus);
+        publish(fragment(SequencedReassembler.FLAG_START, 0, bytes(0, 4)));
+        publish(fragment(SequencedReassembler.FLAG_END, 1, bytes(4, 4)));
+        publish(fragment(SequencedReassembler.FLAG_START, 2, bytes(20, 4)));
+        // fragments 3 and 4 are lost
+        publish(fragment(0, 5, bytes(24, 4)));
+        publish(fragment(SequencedReassembler.FLAG_END, 6, bytes(28, 4)));
+        publish(fragment(SequencedReassembler.FLAG_START | SequencedReassembler.FLAG_END, 7, bytes(40, 2)));
+
+        assertEquals(2, mCollector.frames.size());
+        assertArrayEquals(bytes(0, 8), mCollector.frames.get(0));
+        assertArrayEquals(bytes(40, 2), mCollector.frames.get(1));
+        assertEquals(2, mPipeline.getLostFragmentCount());
+        assertEquals(1, mPipeline.getDiscardedCount());
+    }
+
+    @Test
+    public void dropsFramesWhileEveryBufferIsHeld() {
+        ManualExecutor executor = new ManualExecutor();
+        mPipeline = new FramePipeline.Builder(DEVICE, CHAR_UUID, new DelimitedReassembler((byte) 0), mCollector)
+                .setPoolSize(2)
+                .setMaxFrameLength(8)
+                .setExecutor(executor)
+                .build().attach(mBus);
+        publish(new byte[]{1, 2, 0, 3, 0, 4});
+        publish(new byte[]{5, 0});
+        assertEquals(2, executor.pending());
+        assertEquals(1, mPipeline.getDroppedCount());
+
+        executor.runAll();
+        assertEquals(2, mCollector.frames.size());
+
+        // too long for the buffer, skipped up to the delimiter
+        publish(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 0, 6, 0});
+        executor.runAll();
+        assertEquals(1, mPipeline.getOverflowCount());
+        assertArrayEquals(new byte[]{6}, mCollector.frames.get(2));
+        // the buffers are reused, not reallocated
+        assertTrue(mCollector.buffers.get(2) == mCollector.buffers.get(0)
+                || mCollector.buffers.get(2) == mCollector.buffers.get(1));
+    }
+
+    private void publish(byte[] value) {
+        mBus.publish(DEVICE, CHAR_UUID, value, System.nanoTime());
+    }
+
+    private static byte[] lengthPrefixed(byte[] payload) {
+        int crc = Checksum.CRC16_CCITT.compute(payload, 0, payload.length);
+        int length = payload.length + 2;
+        byte[] frame = new byte[length + 2];
+        frame[0] = (byte) length;
+        frame[1] = (byte) (length >> 8);
+        System.arraycopy(payload, 0, frame, 2, payload.length);
+        frame[frame.length - 2] = (byte) (crc >> 8);
+        frame[frame.length - 1] = (byte) crc;
+        return frame;
+    }
+
+    private static byte[] fragment(int flags, int sequence, byte[] payload) {
+        byte[] fragment = new byte[payload.length + 1];
+        fragment[0] = (byte) (flags | sequence);
+        System.arraycopy(payload, 0, fragment, 1, payload.length);
+        return fragment;
+    }
+
+    private static byte[] bytes(int start, int length) {
+        byte[] value = new byte[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = (byte) (start + i);
+        }
+        return value;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    private static class Collector implements FrameListener {
+        final List<byte[]> frames = new ArrayList<>();
+        final List<ByteBuffer> buffers = new ArrayList<>();
+
+        @Override
+        public void onFrame(String address, UUID uuid, ByteBuffer frame, long timestampNanos) {
+            byte[] copy = new byte[frame.remaining()];
+            frame.get(copy);
+            frames.add(copy);
+            buffers.add(frame);
+        }
+    }
+
+    private static class ManualExecutor implements Executor {
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        int pending() {
+            return mTasks.size();
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = mTasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+}
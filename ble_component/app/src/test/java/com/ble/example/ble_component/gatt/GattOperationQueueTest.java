@@ -0,0 +1,255 @@
+package com.ble.example.ble_component.gatt;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the queue against a fake stand-in of {@code BluetoothGatt} which only records the
+ * requests it was asked to start.
+ */
+public class GattOperationQueueTest {
+
+    private static final UUID CHAR_A = UUID.fromString("0000fff1-0000-1000-8000-00805f9b34fb");
+    private static final UUID CHAR_B = UUID.fromString("0000fff2-0000-1000-8000-00805f9b34fb");
+
+    private ScheduledExecutorService mExecutor;
+    private GattOperationQueue mQueue;
+    private FakeGatt mGatt;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+        mQueue = new GattOperationQueue(mExecutor);
+        mGatt = new FakeGatt();
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void onlyOneOperationIsOutstanding() throws Exception {
+        GattFuture<byte[]> first = mQueue.enqueue(mGatt.read(CHAR_A));
+        GattFuture<byte[]> second = mQueue.enqueue(mGatt.read(CHAR_B));
+
+        assertEquals(1, mGatt.started.size());
+        assertEquals(2, mQueue.size());
+
+        mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_A, 0, new byte[]{1});
+        assertArrayEquals(new byte[]{1}, first.get(1, TimeUnit.SECONDS));
+        assertEquals(2, mGatt.started.size());
+        assertFalse(second.isDone());
+
+        mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_B, 0, new byte[]{2});
+        assertArrayEquals(new byte[]{2}, second.get(1, TimeUnit.SECONDS));
+        assertEquals(0, mQueue.size());
+    }
+
+    @Test
+    public void batchRunsBackToBackIntoOneSnapshot() throws Exception {
+        GattFuture<byte[]> running = mQueue.enqueue(mGatt.read(CHAR_B));
+        List<GattOperation<byte[]>> batch = new ArrayList<>();
+        batch.add(mGatt.read(CHAR_A));
+        batch.add(mGatt.read(CHAR_B));
+        List<GattFuture<byte[]>> reads = mQueue.enqueueAll(batch);
+        GattFuture<byte[]> later = mQueue.enqueue(mGatt.read(CHAR_A));
+        GattFuture<ReadSnapshot> snapshot = ReadSnapshot.collect("00:11:22:33:44:55", Arrays.asList(CHAR_A, CHAR_B),
+                reads);
+        assertEquals(4, mQueue.size());
+
+        mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_B, 0, new byte[]{0});
+        assertTrue(running.isDone());
+        mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_A, 0, new byte[]{1});
+        assertFalse(snapshot.isDone());
+        mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_B, 133, null);
+        assertFalse(later.isDone());
+
+        ReadSnapshot result = snapshot.get(1, TimeUnit.SECONDS);
+        assertEquals(2, result.size());
+        assertArrayEquals(new byte[]{1}, result.getValue(CHAR_A));
+        assertEquals(133, result.getItem(1).getStatus());
+        assertNull(result.getItem(1).getValue());
+        assertFalse(result.isComplete());
+        assertTrue(result.getItem(0).getTimestampNanos() <= result.getItem(1).getTimestampNanos());
+    }
+
+    @Test
+    public void unrelatedCompletionIsIgnored() {
+        GattFuture<byte[]> read = mQueue.enqueue(mGatt.read(CHAR_A));
+
+        assertFalse(mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_B, 0, null));
+        assertFalse(mQueue.onOperationCompleted(GattOperation.TYPE_WRITE_CHARACTERISTIC, CHAR_A, 0, null));
+        assertFalse(read.isDone());
+    }
+
+    @Test
+    public void failedStatusFailsFuture() throws Exception {
+        GattFuture<byte[]> read = mQueue.enqueue(mGatt.read(CHAR_A));
+        mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_A, 133, null);
+
+        assertEquals(133, failure(read).getStatus());
+    }
+
+    @Test
+    public void rejectedOperationDoesNotBlockQueue() throws Exception {
+        mGatt.accept = false;
+        GattFuture<byte[]> rejected = mQueue.enqueue(mGatt.read(CHAR_A));
+        mGatt.accept = true;
+        GattFuture<byte[]> next = mQueue.enqueue(mGatt.read(CHAR_B));
+
+        assertEquals(GattException.STATUS_REJECTED, failure(rejected).getStatus());
+        assertTrue(mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_B, 0, null));
+        assertTrue(next.isSuccess());
+    }
+
+    @Test
+    public void timeoutAdvancesQueue() throws Exception {
+        GattFuture<byte[]> stuck = mQueue.enqueue(mGatt.read(CHAR_A).setTimeout(20));
+        GattFuture<byte[]> next = mQueue.enqueue(mGatt.read(CHAR_B));
+
+        assertEquals(GattException.STATUS_TIMEOUT, failure(stuck).getStatus());
+        // the timeout thread starts the next operation right after failing the stuck one
+        long deadline = System.currentTimeMillis() + 1000;
+        while (mGatt.started.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(2, mGatt.started.size());
+        mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_B, 0, null);
+        assertTrue(next.isSuccess());
+    }
+
+    @Test
+    public void lateCompletionAfterTimeoutIsDropped() throws Exception {
+        GattFuture<byte[]> stuck = mQueue.enqueue(mGatt.read(CHAR_A).setTimeout(20));
+        GattFuture<byte[]> next = mQueue.enqueue(mGatt.read(CHAR_A));
+
+        assertEquals(GattException.STATUS_TIMEOUT, failure(stuck).getStatus());
+        long deadline = System.currentTimeMillis() + 1000;
+        while (mGatt.started.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        // the answer to the stuck read must not complete the next read of the same characteristic
+        assertFalse(mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_A, 0, new byte[]{1}));
+        assertFalse(next.isDone());
+        assertTrue(mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_A, 0, new byte[]{2}));
+        assertArrayEquals(new byte[]{2}, next.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void localOperationCompletesOnExecute() {
+        GattFuture<Void> local = mQueue.enqueue(new GattOperation<Void>(GattOperation.TYPE_LOCAL, CHAR_A) {
+            @Override
+            protected boolean execute() {
+                return true;
+            }
+        });
+        GattFuture<byte[]> read = mQueue.enqueue(mGatt.read(CHAR_B));
+
+        assertTrue(local.isSuccess());
+        assertFalse(read.isDone());
+        assertEquals(1, mGatt.started.size());
+    }
+
+    @Test
+    public void synchronousCompletionRunsBackToBack() {
+        mGatt.completeImmediately = true;
+        List<GattFuture<byte[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(mQueue.enqueue(mGatt.read(CHAR_A)));
+        }
+        for (GattFuture<byte[]> future : futures) {
+            assertTrue(future.isSuccess());
+        }
+        assertEquals(0, mQueue.size());
+    }
+
+    @Test
+    public void cancelledOperationIsSkipped() {
+        mQueue.enqueue(mGatt.read(CHAR_A));
+        GattFuture<byte[]> cancelled = mQueue.enqueue(mGatt.read(CHAR_B));
+        cancelled.cancel(false);
+        mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_A, 0, null);
+
+        assertEquals(1, mGatt.started.size());
+        assertEquals(0, mQueue.size());
+    }
+
+    @Test
+    public void clearFailsEverything() throws Exception {
+        GattFuture<byte[]> running = mQueue.enqueue(mGatt.read(CHAR_A));
+        GattFuture<byte[]> waiting = mQueue.enqueue(mGatt.read(CHAR_B));
+        mQueue.clear(GattException.STATUS_DISCONNECTED);
+
+        assertEquals(GattException.STATUS_DISCONNECTED, failure(running).getStatus());
+        assertEquals(GattException.STATUS_DISCONNECTED, failure(waiting).getStatus());
+        assertEquals(0, mQueue.size());
+    }
+
+    @Test
+    public void listenerIsCalled() {
+        final List<byte[]> results = new ArrayList<>();
+        mQueue.enqueue(mGatt.read(CHAR_A)).addListener(new GattFuture.Listener<byte[]>() {
+            @Override
+            public void onSuccess(byte[] result) {
+                results.add(result);
+            }
+
+            @Override
+            public void onFailure(GattException e) {
+                fail();
+            }
+        });
+        mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, CHAR_A, 0, new byte[]{7});
+
+        assertEquals(1, results.size());
+        assertArrayEquals(new byte[]{7}, results.get(0));
+    }
+
+    private static GattException failure(GattFuture<?> future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return (GattException) e.getCause();
+        }
+        throw new AssertionError("future did not fail");
+    }
+
+    /**
+     * stand-in for {@code BluetoothGatt}
+     */
+    private class FakeGatt {
+        final List<UUID> started = Collections.synchronizedList(new ArrayList<UUID>());
+        boolean accept = true;
+        boolean completeImmediately;
+
+        GattOperation<byte[]> read(final UUID uuid) {
+            return new GattOperation<byte[]>(GattOperation.TYPE_READ_CHARACTERISTIC, uuid) {
+                @Override
+                protected boolean execute() {
+                    if (!accept) {
+                        return false;
+                    }
+                    started.add(uuid);
+                    if (completeImmediately) {
+                        mQueue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, uuid, 0, null);
+                    }
+                    return true;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.ble.example.ble_component.metrics;
+
+import com.ble.example.ble_component.connection.SubscriptionManager;
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattOperation;
+import com.ble.example.ble_component.gatt.GattOperationQueue;
+import com.ble.example.ble_component.sim.LinkProfile;
+import com.ble.example.ble_component.sim.SimulatedPeripheral;
+import com.ble.example.ble_component.sim.SimulatedTransport;
+import com.ble.example.ble_component.transport.GattClient;
+import com.ble.example.ble_component.util.VirtualScheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class GattMetricsTest {
+
+    private static final String ADDRESS = "00:11:22:33:44:55";
+    private static final UUID SERVICE = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final UUID TX = UUID.fromString("6e400003-b5a3-f393-e0a9-e50e24dcca9e");
+
+    private final GattMetrics mMetrics = new GattMetrics();
+    private ScheduledExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void histogramPercentilesAreBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(1500000);
+        }
+        histogram.record(300);
+        histogram.record(40000000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getBucketCount(0));
+        // 1.5 ms lies in [1024, 2048) us
+        assertEquals(2048000, histogram.getPercentileNanos(0.5));
+        assertEquals(2048000, histogram.getPercentileNanos(0.99));
+        assertEquals(40000000, histogram.getPercentileNanos(1));
+        assertEquals(40000000, histogram.getMaxNanos());
+        assertEquals(1000, LatencyHistogram.getUpperBoundNanos(0));
+    }
+
+    @Test
+    public void observesTheQueue() {
+        mMetrics.setEnabled(true);
+        GattOperationQueue queue = new GattOperationQueue(mExecutor);
+        queue.setObserver(mMetrics.getDevice(ADDRESS));
+
+        queue.enqueue(operation(GattOperation.TYPE_READ_CHARACTERISTIC));
+        queue.enqueue(operation(GattOperation.TYPE_WRITE_CHARACTERISTIC));
+        queue.enqueue(operation(GattOperation.TYPE_LOCAL));
+        queue.enqueue(operation(GattOperation.TYPE_DISCOVER_SERVICES));
+        queue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, null, 0, new byte[0]);
+        queue.onOperationCompleted(GattOperation.TYPE_WRITE_CHARACTERISTIC, null, 133, null);
+        queue.clear(GattException.STATUS_DISCONNECTED);
+
+        DeviceMetrics device = mMetrics.snapshot().get(0);
+        assertEquals(ADDRESS, device.getAddress());
+        assertEquals(1, device.getCount(DeviceMetrics.OP_READ));
+        assertEquals(1, device.getLatency(DeviceMetrics.OP_READ).getCount());
+        assertEquals(1, device.getFailures(DeviceMetrics.OP_WRITE));
+        assertEquals(1, device.getStatusCount(DeviceMetrics.OP_WRITE, 133));
+        assertEquals(1, device.getStatusCount(DeviceMetrics.OP_DISCOVER, GattException.STATUS_DISCONNECTED));
+        // the local operation is not counted but waited in the queue like the others
+        assertEquals(3, device.getQueueWait().getCount());
+        assertEquals(4, device.getMaxQueueDepth());
+        assertEquals(0, device.getQueueDepth());
+    }
+
+    @Test
+    public void collectsNothingWhileDisabled() {
+        GattOperationQueue queue = new GattOperationQueue(mExecutor);
+        queue.setObserver(mMetrics.getDevice(ADDRESS));
+        queue.enqueue(operation(GattOperation.TYPE_READ_CHARACTERISTIC));
+        // operations queued while disabled stay unobserved
+        mMetrics.setEnabled(true);
+        queue.onOperationCompleted(GattOperation.TYPE_READ_CHARACTERISTIC, null, 0, null);
+        mMetrics.setEnabled(false);
+        mMetrics.onConnectFailed(ADDRESS, 133);
+        mMetrics.onNotification(ADDRESS, 1000);
+
+        DeviceMetrics device = mMetrics.getDevice(ADDRESS);
+        for (int op = 0; op < DeviceMetrics.OP_COUNT; op++) {
+            assertEquals(DeviceMetrics.getName(op), 0, device.getCount(op));
+        }
+        assertEquals(0, device.getMaxQueueDepth());
+    }
+
+    @Test
+    public void countsConnectsAndNotificationsOfAClient() {
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedTransport transport = new SimulatedTransport(clock, new LinkProfile());
+        SimulatedPeripheral peripheral = new SimulatedPeripheral(ADDRESS, new GattLayout(
+                new GattLayout.Service(SERVICE, 0,
+                        new GattLayout.Characteristic(TX, 0x10, GattClient.CLIENT_CONFIG_UUID))));
+        transport.addPeripheral(peripheral);
+        GattClient client = new GattClient(clock, mExecutor, mExecutor);
+        client.setTransport(transport);
+        GattMetrics metrics = client.getMetrics();
+        metrics.setEnabled(true);
+
+        peripheral.setConnectable(false);
+        client.connect(ADDRESS, false);
+        clock.advance(1000);
+        peripheral.setConnectable(true);
+        client.connect(ADDRESS, false);
+        clock.advance(2000);
+        client.subscribe(ADDRESS, SERVICE, TX, SubscriptionManager.MODE_AUTO);
+        clock.advance(1000);
+        peripheral.startNotifications(TX, 10, 20);
+        clock.advance(1050);
+        peripheral.stopNotifications(TX);
+        peripheral.dropConnections();
+        clock.advance(1000);
+
+        DeviceMetrics device = metrics.getDevice(ADDRESS);
+        assertEquals(2, device.getCount(DeviceMetrics.OP_CONNECT));
+        assertEquals(1, device.getStatusCount(DeviceMetrics.OP_CONNECT, SimulatedTransport.STATUS_CONNECT_FAILED));
+        assertEquals(1, device.getCount(DeviceMetrics.OP_DISCOVER));
+        assertEquals(1, device.getCount(DeviceMetrics.OP_WRITE));
+        assertEquals(10, device.getCount(DeviceMetrics.OP_NOTIFY));
+        assertEquals(1, device.getStatusCount(DeviceMetrics.OP_DISCONNECT, SimulatedPeripheral.STATUS_LINK_LOSS));
+    }
+
+    @Test
+    public void exportsPeriodically() {
+        VirtualScheduler clock = new VirtualScheduler();
+        final List<List<DeviceMetrics>> exports = new ArrayList<>();
+        mMetrics.setEnabled(true);
+        mMetrics.onConnectStarted(ADDRESS);
+        mMetrics.onConnected(ADDRESS);
+        mMetrics.startExport(new MetricsExporter() {
+            @Override
+            public void export(List<DeviceMetrics> devices) {
+                exports.add(devices);
+            }
+        }, clock, 1000);
+
+        clock.advance(3500);
+        assertEquals(3, exports.size());
+        assertEquals(1, exports.get(2).get(0).getCount(DeviceMetrics.OP_CONNECT));
+        assertTrue(LogExporter.format(exports.get(2).get(0), DeviceMetrics.OP_CONNECT)
+                .startsWith(ADDRESS + " connect n=1 failed=0 p50="));
+
+        mMetrics.stopExport();
+        clock.advance(3000);
+        assertEquals(3, exports.size());
+        assertEquals(0, clock.pending());
+    }
+
+    private static GattOperation<Object> operation(int type) {
+        return new GattOperation<Object>(type, null) {
+            @Override
+            protected boolean execute() {
+                return true;
+            }
+        };
+    }
+}
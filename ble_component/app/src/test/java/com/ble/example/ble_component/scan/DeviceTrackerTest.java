@@ -0,0 +1,111 @@
+package com.ble.example.ble_component.scan;
+
+import com.ble.example.ble_component.advert.AdvertisementRecord;
+import com.ble.example.ble_component.util.Uuids;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class DeviceTrackerTest {
+
+    private static final String TAG_A = "00:11:22:33:44:00";
+    private static final String TAG_B = "00:11:22:33:44:01";
+    private static final byte[] RECORD = {2, 0x01, 0x06, 3, 0x03, 0x0D, 0x18, 4, 0x09, 'T', 'a', 'g'};
+
+    @Test
+    public void coalescesRepeatedAdvertisements() {
+        DeviceTracker tracker = new DeviceTracker(16, 1000, 6, 0.25f);
+        assertNotNull(tracker.offer(TAG_A, "tag", -60, RECORD, 0));
+
+        int reports = 0;
+        for (int t = 100; t < 3000; t += 100) {
+            if (tracker.offer(TAG_A, null, -60, RECORD, t) != null) {
+                reports++;
+            }
+        }
+        // one report per dedup interval
+        assertEquals(2, reports);
+        SeenDevice device = tracker.get(TAG_A);
+        assertEquals(30, device.getSeenCount());
+        assertEquals("tag", device.getName());
+        assertEquals(2900, device.getLastSeenMs());
+    }
+
+    @Test
+    public void smoothsRssiAndReportsLargeMoves() {
+        DeviceTracker tracker = new DeviceTracker(16, 10000, 6, 0.5f);
+        tracker.offer(TAG_A, null, -80, RECORD, 0);
+
+        // a single outlier does not move the smoothed value far enough
+        assertNull(tracker.offer(TAG_A, null, -70, RECORD, 10));
+        assertEquals(-75, tracker.get(TAG_A).getSmoothedRssi(), 0.01);
+        assertEquals(-70, tracker.get(TAG_A).getRssi());
+        // the device really came closer
+        assertNotNull(tracker.offer(TAG_A, null, -66, RECORD, 20));
+        assertEquals(-70.5, tracker.get(TAG_A).getSmoothedRssi(), 0.01);
+        assertNull(tracker.offer(TAG_A, null, -68, RECORD, 30));
+    }
+
+    @Test
+    public void reportsChangedContent() {
+        DeviceTracker tracker = new DeviceTracker(16, 10000, 6, 0.25f);
+        tracker.offer(TAG_A, null, -60, RECORD, 0);
+        byte[] changed = RECORD.clone();
+        changed[2] = 0x04;
+
+        assertNull(tracker.offer(TAG_A, null, -60, RECORD.clone(), 10));
+        assertNotNull(tracker.offer(TAG_A, null, -60, changed, 20));
+    }
+
+    @Test
+    public void forgetsLeastRecentlySeenDevice() {
+        DeviceTracker tracker = new DeviceTracker(2, 1000, 6, 0.25f);
+        tracker.offer(TAG_A, null, -60, RECORD, 0);
+        tracker.offer(TAG_B, null, -60, RECORD, 1);
+        tracker.offer(TAG_A, null, -60, RECORD, 2);
+        tracker.offer("00:11:22:33:44:02", null, -60, RECORD, 3);
+
+        assertEquals(2, tracker.size());
+        assertNotNull(tracker.get(TAG_A));
+        assertNull(tracker.get(TAG_B));
+        assertEquals(1, tracker.getEvictedCount());
+    }
+
+    @Test
+    public void softwareFiltersReadTheAdvertisement() {
+        UUID heartRate = Uuids.fromShortId(0x180D);
+        assertTrue(new DeviceFilter().setServiceUuid(heartRate).matches(TAG_A, null, RECORD));
+        assertFalse(new DeviceFilter().setServiceUuid(Uuids.fromShortId(0x180F)).matches(TAG_A, null, RECORD));
+        assertFalse(new DeviceFilter().setServiceUuid(heartRate).matches(TAG_A, null, (byte[]) null));
+        assertTrue(new DeviceFilter().setAddress(TAG_A.toLowerCase()).matches(TAG_A, null, RECORD));
+        assertFalse(new DeviceFilter().setAddress(TAG_B).matches(TAG_A, null, RECORD));
+        assertEquals("Tag", new AdvertisementRecord().wrap(RECORD).getLocalName());
+
+        UUID custom = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+        byte[] record = new byte[20];
+        record[0] = 17;
+        record[1] = 0x07;
+        long msb = custom.getMostSignificantBits();
+        long lsb = custom.getLeastSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            record[2 + i] = (byte) (lsb >>> (8 * i));
+            record[10 + i] = (byte) (msb >>> (8 * i));
+        }
+        record[18] = 1;
+        record[19] = (byte) 0xFF;
+        assertTrue(new DeviceFilter().setServiceUuid(custom).matches(TAG_A, null, record));
+        assertFalse(new DeviceFilter().setManufacturerId(0x004C).matches(TAG_A, null, record));
+
+        byte[] apple = {5, (byte) 0xFF, 0x4C, 0x00, 0x02, 0x15};
+        ScanConfig config = new ScanConfig.Builder()
+                .addFilter(new DeviceFilter().setServiceUuid(heartRate))
+                .addFilter(new DeviceFilter().setManufacturerId(0x004C))
+                .build();
+        assertTrue(config.matches(TAG_A, null, apple));
+        assertTrue(config.matches(TAG_A, null, RECORD));
+        assertFalse(config.matches(TAG_A, null, record));
+    }
+}
@@ -0,0 +1,145 @@
+package com.ble.example.ble_component.scan;
+
+import com.ble.example.ble_component.util.VirtualScheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScanSchedulerTest {
+
+    private final VirtualScheduler mClock = new VirtualScheduler();
+    private final SimulatedRadio mRadio = new SimulatedRadio();
+    private ScanScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mScheduler = new ScanScheduler(mRadio, mClock);
+        mScheduler.setWindow(2000);
+        mScheduler.setPeriod(10000, 80000, 2);
+    }
+
+    @Test
+    public void runsWindowsAtThePeriod() {
+        mScheduler.start();
+        assertTrue(mScheduler.isScanning());
+        mClock.advance(1999);
+        assertTrue(mScheduler.isScanning());
+        mClock.advance(1);
+        assertFalse(mScheduler.isScanning());
+        assertEquals(2000, mScheduler.getScanTimeMs());
+        assertEquals(1, mScheduler.getWindowCount());
+    }
+
+    @Test
+    public void backsOffWhileNothingNewShowsUp() {
+        mScheduler.start();
+        mClock.advance(2000);
+        assertEquals(20000, mScheduler.getPeriodMs());
+        // the next window starts one period after the previous one
+        mClock.advance(17999);
+        assertEquals(1, mRadio.starts.size());
+        mClock.advance(1);
+        assertEquals(2, mRadio.starts.size());
+        assertEquals(20000, (long) mRadio.starts.get(1));
+
+        for (int i = 0; i < 10; i++) {
+            mClock.advance(80000);
+        }
+        assertEquals(80000, mScheduler.getPeriodMs());
+    }
+
+    @Test
+    public void rampsUpWhenDevicesAppear() {
+        mScheduler.start();
+        mClock.advance(2000);
+        mClock.advance(18000);
+        mClock.advance(2000);
+        assertEquals(40000, mScheduler.getPeriodMs());
+
+        mClock.advance(38000);
+        assertTrue(mScheduler.isScanning());
+        mScheduler.onDevicesFound(3);
+        mClock.advance(2000);
+        assertEquals(10000, mScheduler.getPeriodMs());
+        assertEquals(3, mScheduler.getLastWindowDevices());
+        assertEquals(3, mScheduler.getDevicesFound());
+    }
+
+    @Test
+    public void staysWithinTheStartLimit() {
+        mScheduler.setWindow(1000);
+        mScheduler.setPeriod(2000, 2000, 1);
+        mScheduler.start();
+        mClock.advance(60000);
+
+        assertTrue(mScheduler.getThrottleCount() > 0);
+        // no 30 s span contains more than 5 starts
+        for (int i = 5; i < mRadio.starts.size(); i++) {
+            assertTrue(mRadio.starts.get(i) - mRadio.starts.get(i - 5) >= 30000);
+        }
+        // bursts of five starts at 0, 30 and 60 s
+        assertEquals(11, mRadio.starts.size());
+        assertEquals(30000, (long) mRadio.starts.get(5));
+        assertEquals(60000, (long) mRadio.starts.get(10));
+    }
+
+    @Test
+    public void stopCutsTheWindowShort() {
+        final List<Long> windows = new ArrayList<>();
+        mScheduler.addListener(new ScanScheduler.Listener() {
+            @Override
+            public void onWindowFinished(long windowMs, int newDevices, long nextPeriodMs) {
+                windows.add(windowMs);
+            }
+        });
+        mScheduler.start();
+        mClock.advance(500);
+        mScheduler.stop();
+
+        assertFalse(mRadio.scanning);
+        assertEquals(500, mScheduler.getScanTimeMs());
+        assertEquals(0, mClock.pending());
+        assertTrue(windows.isEmpty());
+        mScheduler.start();
+        assertTrue(mRadio.scanning);
+    }
+
+    @Test
+    public void failedStartIsRetriedNextPeriod() {
+        mRadio.fail = true;
+        mScheduler.start();
+        assertEquals(1, mScheduler.getStartFailureCount());
+        assertFalse(mScheduler.isScanning());
+
+        mRadio.fail = false;
+        mClock.advance(10000);
+        assertTrue(mScheduler.isScanning());
+    }
+
+    private class SimulatedRadio implements ScanScheduler.Radio {
+        final List<Long> starts = new ArrayList<>();
+        boolean scanning;
+        boolean fail;
+
+        @Override
+        public boolean startScan() {
+            assertFalse(scanning);
+            if (fail) {
+                return false;
+            }
+            starts.add(mClock.now());
+            scanning = true;
+            return true;
+        }
+
+        @Override
+        public void stopScan() {
+            scanning = false;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.ble.example.ble_component.session;
+
+import com.ble.example.ble_component.event.CharacteristicEventBus;
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.util.VirtualScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class DeviceSessionTest {
+
+    private static final String DEVICE = "00:11:22:33:44:55";
+    private static final String OTHER = "00:11:22:33:44:66";
+    private static final UUID SERVICE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final UUID CUSTOM_SERVICE = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final UUID HEART_RATE = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+    private static final UUID BATTERY = UUID.fromString("00002a19-0000-1000-8000-00805f9b34fb");
+
+    private final CharacteristicEventBus mBus = new CharacteristicEventBus();
+    private final VirtualScheduler mClock = new VirtualScheduler();
+    private final FakeLink mLink = new FakeLink();
+    private final DeviceSession mSession = new DeviceSession(DEVICE, mLink, mBus, mClock);
+
+    @Test
+    public void sharesOneSubscriptionBetweenObservers() {
+        Recorder<byte[]> first = new Recorder<>();
+        Recorder<byte[]> second = new Recorder<>();
+        Subscription a = mSession.notifications(SERVICE, HEART_RATE).subscribe(first);
+        Subscription b = mSession.notifications(SERVICE, HEART_RATE).subscribe(second);
+        assertEquals(Arrays.asList("subscribe " + HEART_RATE), mLink.calls);
+        assertEquals(1, mSession.getActiveStreamCount());
+
+        publish(DEVICE, HEART_RATE, 72);
+        publish(OTHER, HEART_RATE, 99);
+        assertEquals(1, first.values.size());
+        assertEquals(72, first.values.get(0)[0]);
+        assertSame(first.values.get(0), second.values.get(0));
+
+        a.cancel();
+        assertEquals(1, mLink.calls.size());
+        b.cancel();
+        assertEquals(Arrays.asList("subscribe " + HEART_RATE, "unsubscribe " + HEART_RATE), mLink.calls);
+        assertFalse(mBus.hasListeners(DEVICE, HEART_RATE));
+        publish(DEVICE, HEART_RATE, 73);
+        assertEquals(1, second.values.size());
+    }
+
+    @Test
+    public void throttlesSamplesAndWindows() {
+        Recorder<byte[]> throttled = new Recorder<>();
+        Recorder<byte[]> sampled = new Recorder<>();
+        Recorder<List<byte[]>> windows = new Recorder<>();
+        Stream<byte[]> heartRate = mSession.notifications(SERVICE, HEART_RATE);
+        heartRate.throttle(100).subscribe(throttled);
+        Subscription sample = heartRate.sample(100).subscribe(sampled);
+        heartRate.window(3, 250).subscribe(windows);
+
+        for (int i = 0; i < 10; i++) {
+            publish(DEVICE, HEART_RATE, i);
+            mClock.advance(30);
+        }
+        // 0 at 0 ms, 4 at 120 ms, 8 at 240 ms
+        assertEquals(Arrays.asList(0, 4, 8), firstBytes(throttled.values));
+        // latest value at 100, 200 and 300 ms
+        assertEquals(Arrays.asList(3, 6, 9), firstBytes(sampled.values));
+        assertEquals(3, windows.values.size());
+        assertEquals(3, windows.values.get(2).size());
+
+        // 9 opened a window at 270 ms which closes by time at 520 ms
+        publish(DEVICE, HEART_RATE, 10);
+        mClock.advance(250);
+        assertEquals(Arrays.asList(9, 10), firstBytes(windows.values.get(3)));
+        assertEquals(Arrays.asList(3, 6, 9, 10), firstBytes(sampled.values));
+
+        sample.cancel();
+        mClock.advance(1000);
+        assertEquals(0, mClock.pending());
+    }
+
+    @Test
+    public void keepsTheSameCharacteristicOfTwoServicesApart() {
+        Stream<byte[]> standard = mSession.notifications(SERVICE, HEART_RATE);
+        Stream<byte[]> custom = mSession.notifications(CUSTOM_SERVICE, HEART_RATE);
+        assertNotSame(standard, custom);
+        assertSame(custom, mSession.notifications(CUSTOM_SERVICE, HEART_RATE));
+
+        standard.subscribe(new Recorder<byte[]>());
+        Subscription subscription = custom.subscribe(new Recorder<byte[]>());
+        assertEquals(2, mSession.getActiveStreamCount());
+        assertEquals(Arrays.asList("subscribe " + HEART_RATE, "subscribe " + HEART_RATE), mLink.calls);
+        subscription.cancel();
+        assertEquals(1, mSession.getActiveStreamCount());
+        assertTrue(mBus.hasListeners(DEVICE, HEART_RATE));
+    }
+
+    @Test
+    public void failsTheObserversWhenTheSubscriptionFails() {
+        mLink.subscribeStatus = 5;
+        Recorder<byte[]> observer = new Recorder<>();
+        mSession.notifications(SERVICE, BATTERY).subscribe(observer);
+        assertEquals(5, observer.error.getStatus());
+        assertEquals(0, mSession.getActiveStreamCount());
+        assertFalse(mBus.hasListeners(DEVICE, BATTERY));
+    }
+
+    @Test
+    public void readsOnEverySubscriptionAndCompletesOnClose() {
+        Recorder<byte[]> read = new Recorder<>();
+        Stream<byte[]> battery = mSession.read(SERVICE, BATTERY);
+        battery.subscribe(read);
+        battery.subscribe(read);
+        assertEquals(2, read.values.size());
+        assertEquals(2, read.completed);
+
+        Recorder<byte[]> observer = new Recorder<>();
+        mSession.notifications(SERVICE, HEART_RATE).subscribe(observer);
+        mSession.close();
+        assertEquals(1, observer.completed);
+        assertTrue(mLink.closed);
+        assertEquals("unsubscribe " + HEART_RATE, mLink.calls.get(mLink.calls.size() - 1));
+        assertFalse(mBus.hasListeners(DEVICE, HEART_RATE));
+    }
+
+    private void publish(String address, UUID uuid, int value) {
+        mBus.publish(address, uuid, new byte[]{(byte) value}, System.nanoTime());
+    }
+
+    private static List<Integer> firstBytes(List<byte[]> values) {
+        List<Integer> result = new ArrayList<>();
+        for (byte[] value : values) {
+            result.add((int) value[0]);
+        }
+        return result;
+    }
+
+    private static class Recorder<T> implements Observer<T> {
+        final List<T> values = new ArrayList<>();
+        GattException error;
+        int completed;
+
+        @Override
+        public void onNext(T value) {
+            values.add(value);
+        }
+
+        @Override
+        public void onError(GattException e) {
+            error = e;
+        }
+
+        @Override
+        public void onComplete() {
+            completed++;
+        }
+    }
+
+    private static class FakeLink implements DeviceSession.Link {
+        final List<String> calls = new ArrayList<>();
+        int subscribeStatus;
+        boolean closed;
+
+        @Override
+        public GattFuture<Void> subscribe(UUID serviceUuid, UUID characteristicUuid) {
+            calls.add("subscribe " + characteristicUuid);
+            return subscribeStatus == 0 ? GattFuture.<Void>succeeded(null) : GattFuture.<Void>failed(subscribeStatus);
+        }
+
+        @Override
+        public GattFuture<Void> unsubscribe(UUID serviceUuid, UUID characteristicUuid) {
+            calls.add("unsubscribe " + characteristicUuid);
+            return GattFuture.succeeded(null);
+        }
+
+        @Override
+        public GattFuture<byte[]> read(UUID serviceUuid, UUID characteristicUuid) {
+            return GattFuture.succeeded(new byte[]{80});
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package com.ble.example.ble_component.sim;
+
+import com.ble.example.ble_component.connection.BleConnection;
+import com.ble.example.ble_component.connection.CharacteristicHandle;
+import com.ble.example.ble_component.connection.CharacteristicIndex;
+import com.ble.example.ble_component.connection.ConnectionScheduler;
+import com.ble.example.ble_component.connection.ConnectionState;
+import com.ble.example.ble_component.connection.SubscriptionManager;
+import com.ble.example.ble_component.discovery.DiscoveryCache;
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.event.CharacteristicEvent;
+import com.ble.example.ble_component.event.CharacteristicEventBus;
+import com.ble.example.ble_component.event.CharacteristicListener;
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.session.DeviceSession;
+import com.ble.example.ble_component.session.Observer;
+import com.ble.example.ble_component.transfer.BulkWriter;
+import com.ble.example.ble_component.transfer.TransferStats;
+import com.ble.example.ble_component.transport.GattClient;
+import com.ble.example.ble_component.transport.GattLink;
+import com.ble.example.ble_component.transport.ScanTransport;
+import com.ble.example.ble_component.util.VirtualScheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class SimulatedTransportTest {
+
+    private static final String ADDRESS = "00:11:22:33:44:55";
+    private static final UUID SERVICE = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final UUID RX = UUID.fromString("6e400002-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final UUID TX = UUID.fromString("6e400003-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final VirtualScheduler mClock = new VirtualScheduler();
+    private final LinkProfile mProfile = new LinkProfile();
+    private ScheduledExecutorService mTimeouts;
+    private SimulatedTransport mTransport;
+    private SimulatedPeripheral mPeripheral;
+    private GattClient mClient;
+    private CharacteristicEventBus mEventBus;
+
+    @Before
+    public void setUp() {
+        mTimeouts = Executors.newSingleThreadScheduledExecutor();
+        mTransport = new SimulatedTransport(mClock, mProfile);
+        mClient = new GattClient(mClock, mTimeouts, DIRECT);
+        mClient.setTransport(mTransport);
+        mEventBus = mClient.getEventBus();
+        mPeripheral = new SimulatedPeripheral(ADDRESS, new GattLayout(
+                new GattLayout.Service(SERVICE, 0,
+                        new GattLayout.Characteristic(RX, 0x0C),
+                        new GattLayout.Characteristic(TX, 0x10, GattClient.CLIENT_CONFIG_UUID))));
+        mTransport.addPeripheral(mPeripheral);
+    }
+
+    @After
+    public void tearDown() {
+        mTimeouts.shutdownNow();
+    }
+
+    @Test
+    public void requestsTakeTheProfilesTime() throws Exception {
+        mProfile.setLatency(50, 0).setConnect(200, 0);
+        connect();
+        assertEquals(200, mClock.now());
+
+        // the services are discovered as soon as the link is up
+        mClock.advance(199);
+        assertEquals(ConnectionState.DISCOVERING, mClient.getConnectionScheduler().getState(ADDRESS));
+        // one round trip for the request, the service and each characteristic
+        mClock.advance(1);
+        assertEquals(ConnectionState.READY, mClient.getConnectionScheduler().getState(ADDRESS));
+        assertNotNull(mClient.getCharacteristicHandle(ADDRESS, SERVICE, TX));
+
+        mPeripheral.setValue(TX, new byte[]{1, 2, 3});
+        GattFuture<byte[]> read = mClient.readCharacteristic(ADDRESS, SERVICE, TX);
+        GattFuture<Void> write = mClient.writeCharacteristic(ADDRESS, SERVICE, RX, new byte[]{9},
+                GattLink.WRITE_TYPE_DEFAULT);
+        mClock.advance(51);
+        assertArrayEquals(new byte[]{1, 2, 3}, read.get());
+        assertFalse(write.isDone());
+        mClock.advance(51);
+        assertTrue(write.isSuccess());
+        assertArrayEquals(new byte[]{9}, mPeripheral.getValue(RX));
+
+        GattFuture<Integer> mtu = mClient.requestMtu(ADDRESS, 517);
+        mClock.advance(50);
+        assertEquals(247, (int) mtu.get());
+        assertEquals(247, mClient.getMtu(ADDRESS));
+    }
+
+    @Test
+    public void reportsTheWrittenValueToListeners() throws Exception {
+        final List<byte[]> written = new ArrayList<>();
+        mClient.addListener(new GattClient.Listener() {
+            @Override
+            public void onConnectionStateChanged(String address, boolean connected, int status) {
+            }
+
+            @Override
+            public void onServicesDiscovered(String address) {
+            }
+
+            @Override
+            public void onCharacteristicRead(String address, UUID characteristicUuid, byte[] value) {
+            }
+
+            @Override
+            public void onCharacteristicWrite(String address, UUID characteristicUuid, byte[] value, int status) {
+                written.add(value);
+            }
+
+            @Override
+            public void onDescriptorWrite(String address, UUID descriptorUuid) {
+            }
+
+            @Override
+            public void onCharacteristicChanged(String address, UUID characteristicUuid, byte[] value) {
+            }
+        });
+        connect();
+        mClock.advance(1000);
+
+        GattFuture<Void> write = mClient.writeCharacteristic(mClient.getCharacteristicHandle(ADDRESS, SERVICE, RX),
+                new byte[]{4, 2}, GattLink.WRITE_TYPE_DEFAULT);
+        mClock.advance(1000);
+        assertTrue(write.isSuccess());
+        assertEquals(1, written.size());
+        assertArrayEquals(new byte[]{4, 2}, written.get(0));
+    }
+
+    @Test
+    public void closeFailsPendingOperationsAndStopsManaging() throws Exception {
+        mProfile.setLatency(50, 0);
+        connect();
+        mClock.advance(1000);
+
+        GattFuture<Void> write = mClient.writeCharacteristic(ADDRESS, SERVICE, RX, new byte[]{9},
+                GattLink.WRITE_TYPE_DEFAULT);
+        GattFuture<byte[]> read = mClient.readCharacteristic(ADDRESS, SERVICE, TX);
+        mClient.close();
+        assertEquals(GattException.STATUS_CLOSED, failure(write).getStatus());
+        assertEquals(GattException.STATUS_CLOSED, failure(read).getStatus());
+        assertEquals(ConnectionState.IDLE, mClient.getConnectionScheduler().getState(ADDRESS));
+
+        // the client can be connected again
+        connect();
+        mClock.advance(1000);
+        assertNotNull(mClient.getCharacteristicHandle(ADDRESS, SERVICE, TX));
+    }
+
+    @Test
+    public void streamsAreBoundByThroughput() throws Exception {
+        mProfile.setThroughput(20000).setMaxMtu(247);
+        connect();
+        mClock.advance(1000);
+
+        byte[] payload = new byte[100000];
+        long start = mClock.now();
+        CharacteristicHandle rx = mClient.getCharacteristicHandle(ADDRESS, SERVICE, RX);
+        GattFuture<TransferStats> transfer = new BulkWriter(mClient.openWriteChannel(rx),
+                new ByteArrayInputStream(payload), payload.length, DIRECT).setWindow(4).start();
+        while (!transfer.isDone()) {
+            mClock.advance(10);
+        }
+        long elapsed = mClock.now() - start;
+        assertEquals(payload.length, transfer.get().getBytes());
+        assertEquals(payload.length, mPeripheral.getBytesWritten());
+        // 100 kB at 20 kB/s plus the packet overhead
+        assertTrue("took " + elapsed, elapsed >= 5000 && elapsed < 5400);
+    }
+
+    @Test
+    public void streamsOnACachedLayoutBeforeTheDiscovery() throws Exception {
+        DiscoveryCache cache = new DiscoveryCache(mFolder.newFolder("gatt"), DIRECT);
+        cache.update(ADDRESS, mPeripheral.getLayout());
+        mClient.setDiscoveryCache(cache);
+        mProfile.setLatency(50, 0);
+        connect();
+
+        // the device is ready on the cached layout while the discovery still runs
+        assertEquals(ConnectionState.READY, mClient.getConnectionScheduler().getState(ADDRESS));
+        CharacteristicIndex index = mClient.getConnection(ADDRESS).getIndex();
+        assertTrue(index.isProvisional());
+        CharacteristicHandle handle = mClient.getCharacteristicHandle(ADDRESS, SERVICE, RX);
+        byte[] payload = new byte[5000];
+        GattFuture<TransferStats> transfer = mClient.writeCharacteristicStream(handle,
+                new ByteArrayInputStream(payload), payload.length, null);
+        while (!transfer.isDone()) {
+            mClock.advance(10);
+        }
+
+        assertEquals(payload.length, transfer.get().getBytes());
+        assertEquals(payload.length, mPeripheral.getBytesWritten());
+        // the discovery confirmed the layout, the handle stayed valid throughout
+        assertFalse(index.isProvisional());
+        assertTrue(handle.isValid());
+    }
+
+    @Test
+    public void sessionEndsWithTheFinalDisconnect() {
+        DeviceSession session = mClient.openSession(ADDRESS, false);
+        assertSame(session, mClient.openSession(ADDRESS, false));
+        mClock.advance(2000);
+        final int[] completed = new int[1];
+        session.notifications(SERVICE, TX).subscribe(new Observer<byte[]>() {
+            @Override
+            public void onNext(byte[] value) {
+            }
+
+            @Override
+            public void onError(GattException error) {
+                fail(error.toString());
+            }
+
+            @Override
+            public void onComplete() {
+                completed[0]++;
+            }
+        });
+        mClock.advance(1000);
+        assertEquals(1, session.getActiveStreamCount());
+
+        mPeripheral.dropConnections();
+        mClock.advance(1000);
+        assertEquals(1, completed[0]);
+        assertTrue(session.isClosed());
+        // the stream turned its notifications off, a later connect does not restore them
+        assertEquals(0, mClient.subscriptionsOf(ADDRESS).size());
+        // the next call opens a new session
+        assertNotSame(session, mClient.openSession(ADDRESS, false));
+    }
+
+    @Test
+    public void packetLossStretchesTransfers() throws Exception {
+        long clean = transferTime(new LinkProfile());
+        long lossy = transferTime(new LinkProfile().setPacketLoss(0.2f).setSeed(7));
+        assertTrue(clean + " vs " + lossy, lossy > clean * 2);
+    }
+
+    @Test
+    public void deliversNotificationsAfterSubscribing() throws Exception {
+        final List<Integer> sequence = new ArrayList<>();
+        mEventBus.subscribe(ADDRESS, TX, new CharacteristicListener() {
+            @Override
+            public void onCharacteristicChanged(CharacteristicEvent event) {
+                byte[] value = event.getValue();
+                sequence.add((value[0] & 0xFF) | (value[1] & 0xFF) << 8);
+            }
+        });
+        connect();
+        mClock.advance(1000);
+        mPeripheral.startNotifications(TX, 50, 20);
+        mClock.advance(1000);
+        assertTrue(sequence.isEmpty());
+
+        GattFuture<Void> subscribe = mClient.subscribe(ADDRESS, SERVICE, TX, SubscriptionManager.MODE_AUTO);
+        mClock.advance(100);
+        assertTrue(subscribe.isSuccess());
+        int before = sequence.size();
+        mClock.advance(1000);
+        assertEquals(50, sequence.size() - before);
+        for (int i = 1; i < sequence.size(); i++) {
+            assertEquals(sequence.get(i - 1) + 1, (int) sequence.get(i));
+        }
+
+        mClient.unsubscribe(ADDRESS, SERVICE, TX);
+        mClock.advance(100);
+        int received = sequence.size();
+        mClock.advance(1000);
+        assertEquals(received, sequence.size());
+    }
+
+    @Test
+    public void reconnectsAfterLinkLoss() throws Exception {
+        mProfile.setConnect(100, 0);
+        ConnectionScheduler scheduler = mClient.getConnectionScheduler();
+        scheduler.setBackoff(1000, 8000, 0);
+        scheduler.connect(ADDRESS, true);
+        mClock.advance(1000);
+        assertEquals(ConnectionState.READY, scheduler.getState(ADDRESS));
+        assertEquals(1, mPeripheral.getConnectionCount());
+
+        mPeripheral.dropConnections();
+        mClock.advance(0);
+        assertEquals(ConnectionState.BACKOFF, scheduler.getState(ADDRESS));
+        assertFalse(isConnected());
+
+        mClock.advance(2000);
+        assertEquals(ConnectionState.READY, scheduler.getState(ADDRESS));
+        assertEquals(2, mTransport.getConnectAttempts());
+        assertTrue(isConnected());
+
+        scheduler.disconnect(ADDRESS);
+        mClock.advance(1000);
+        assertEquals(0, mPeripheral.getConnectionCount());
+    }
+
+    @Test
+    public void restoresSubscriptionsAfterReconnect() throws Exception {
+        final List<Long> received = new ArrayList<>();
+        mEventBus.subscribe(ADDRESS, TX, new CharacteristicListener() {
+            @Override
+            public void onCharacteristicChanged(CharacteristicEvent event) {
+                received.add(mClock.now());
+            }
+        });
+        mProfile.setConnect(100, 0);
+        mClient.getConnectionScheduler().setBackoff(1000, 8000, 0);
+        mClient.connect(ADDRESS, true);
+        mClock.advance(1000);
+        GattFuture<Void> subscribe = mClient.subscribe(ADDRESS, SERVICE, TX, SubscriptionManager.MODE_AUTO);
+        mPeripheral.startNotifications(TX, 10, 20);
+        mClock.advance(1000);
+        assertTrue(subscribe.isSuccess());
+        assertFalse(received.isEmpty());
+
+        mPeripheral.dropConnections();
+        mClock.advance(0);
+        received.clear();
+        mClock.advance(3000);
+        assertEquals(ConnectionState.READY, mClient.getConnectionScheduler().getState(ADDRESS));
+        // nobody subscribed again, the client restored it after the discovery
+        assertFalse(received.isEmpty());
+        assertEquals(SubscriptionManager.MODE_NOTIFY, mClient.subscriptionsOf(ADDRESS).getActualMode(SERVICE, TX));
+    }
+
+    @Test
+    public void retriesFailedConnects() {
+        mProfile.setConnect(100, 0);
+        mPeripheral.setConnectable(false);
+        mClient.getConnectionScheduler().setBackoff(100, 400, 0);
+        mClient.connect(ADDRESS, true);
+        mClock.advance(1000);
+        assertNotEquals(ConnectionState.READY, mClient.getConnectionScheduler().getState(ADDRESS));
+        assertTrue(mTransport.getConnectAttempts() > 2);
+
+        mPeripheral.setConnectable(true);
+        mClock.advance(2000);
+        assertEquals(ConnectionState.READY, mClient.getConnectionScheduler().getState(ADDRESS));
+    }
+
+    @Test
+    public void scansAtTheAdvertisingInterval() {
+        final List<Long> seen = new ArrayList<>();
+        mPeripheral.setAdvertisement(new byte[]{2, 0x01, 0x06}, 100, -70);
+        ScanTransport scanner = mTransport.getScanner();
+        scanner.startScan(new ScanTransport.Callback() {
+            @Override
+            public void onAdvertisement(String address, int rssi, byte[] scanRecord) {
+                assertEquals(ADDRESS, address);
+                assertEquals(-70, rssi);
+                seen.add(mClock.now());
+            }
+        });
+        mClock.advance(1000);
+        scanner.stopScan();
+        mClock.advance(1000);
+        assertEquals(10, seen.size());
+        assertEquals(0, mClock.pending());
+    }
+
+    private static GattException failure(GattFuture<?> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return (GattException) e.getCause();
+        }
+        throw new AssertionError("future did not fail");
+    }
+
+    private void connect() {
+        assertTrue(mClient.connect(ADDRESS, false));
+        while (!isConnected()) {
+            mClock.advance(1);
+        }
+    }
+
+    private boolean isConnected() {
+        BleConnection connection = mClient.getConnection(ADDRESS);
+        return connection != null && connection.isConnected();
+    }
+
+    private long transferTime(LinkProfile profile) throws Exception {
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedTransport transport = new SimulatedTransport(clock, profile);
+        transport.addPeripheral(new SimulatedPeripheral(ADDRESS, mPeripheral.getLayout()));
+        GattClient client = new GattClient(clock, mTimeouts, DIRECT);
+        client.setTransport(transport);
+        client.connect(ADDRESS, false);
+        clock.advance(2000);
+
+        byte[] payload = new byte[20000];
+        long start = clock.now();
+        CharacteristicHandle rx = client.getCharacteristicHandle(ADDRESS, SERVICE, RX);
+        GattFuture<TransferStats> transfer = new BulkWriter(client.openWriteChannel(rx),
+                new ByteArrayInputStream(payload), payload.length, DIRECT).start();
+        while (!transfer.isDone()) {
+            clock.advance(10);
+        }
+        assertTrue(transfer.isSuccess());
+        return clock.now() - start;
+    }
+}
@@ -0,0 +1,161 @@
+package com.ble.example.ble_component.spool;
+
+import com.ble.example.ble_component.event.CharacteristicEventBus;
+import com.ble.example.ble_component.util.Uuids;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class TelemetrySpoolTest {
+
+    private static final String ADDRESS = "00:11:22:33:44:AA";
+    private static final UUID HEART_RATE = Uuids.fromShortId(0x2A37);
+    private static final UUID CUSTOM = UUID.fromString("6e400003-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mFolder.newFolder("telemetry");
+    }
+
+    @Test
+    public void replaysNotificationsFromTheBus() throws IOException {
+        CharacteristicEventBus bus = new CharacteristicEventBus();
+        TelemetrySpool spool = new TelemetrySpool(mDirectory, SEGMENT_SIZE).attach(bus);
+        long before = System.currentTimeMillis();
+        bus.publish(ADDRESS, HEART_RATE, new byte[]{0, 72}, System.nanoTime());
+        bus.publish("sim-device", CUSTOM, new byte[0], System.nanoTime());
+        spool.close();
+        bus.publish(ADDRESS, HEART_RATE, new byte[]{0, 73}, System.nanoTime());
+
+        SpoolCursor cursor = spool.openCursor(spool.getStartPosition());
+        assertTrue(cursor.next());
+        assertEquals(ADDRESS, cursor.getAddress());
+        assertEquals(HEART_RATE, cursor.getUuid());
+        assertArrayEquals(new byte[]{0, 72}, cursor.getValue());
+        assertTrue(cursor.getTimestampMillis() >= before - 1);
+        assertTrue(cursor.next());
+        assertEquals("sim-device", cursor.getAddress());
+        assertEquals(CUSTOM, cursor.getUuid());
+        assertEquals(0, cursor.getValueLength());
+        assertFalse(cursor.next());
+        assertEquals(2, spool.getAppendedCount());
+    }
+
+    @Test
+    public void namedCursorsResumeAfterARestart() throws IOException {
+        TelemetrySpool spool = new TelemetrySpool(mDirectory, SEGMENT_SIZE);
+        for (int i = 0; i < 200; i++) {
+            assertTrue(spool.append(ADDRESS, HEART_RATE, new byte[]{(byte) i}, i));
+        }
+        SpoolCursor uploader = spool.openCursor("uploader");
+        for (int i = 0; i < 120; i++) {
+            assertTrue(uploader.next());
+        }
+        uploader.commit();
+
+        TelemetrySpool reopened = new TelemetrySpool(mDirectory, SEGMENT_SIZE);
+        assertEquals(spool.getEndPosition(), reopened.getEndPosition());
+        uploader = reopened.openCursor("uploader");
+        assertTrue(uploader.next());
+        assertEquals(120, uploader.getTimestampMillis());
+        assertEquals(120, uploader.getValue()[0] & 0xFF);
+        int remaining = 1;
+        while (uploader.next()) {
+            remaining++;
+        }
+        assertEquals(80, remaining);
+        assertEquals(0, uploader.getGapCount());
+    }
+
+    @Test
+    public void recoveryClearsATornRecord() throws IOException {
+        TelemetrySpool spool = new TelemetrySpool(mDirectory, SEGMENT_SIZE);
+        spool.append(ADDRESS, HEART_RATE, new byte[]{1}, 1);
+        spool.append(ADDRESS, HEART_RATE, new byte[]{2}, 2);
+        long end = spool.getEndPosition();
+
+        // a record whose length made it to the page but whose body did not
+        RandomAccessFile file = new RandomAccessFile(new File(mDirectory, "0000000000000000.seg"), "rw");
+        file.seek(end);
+        file.writeShort(30);
+        file.write(new byte[]{0, 1, 2, 3});
+        file.close();
+
+        TelemetrySpool reopened = new TelemetrySpool(mDirectory, SEGMENT_SIZE);
+        assertEquals(end, reopened.getEndPosition());
+        assertTrue(reopened.append(ADDRESS, HEART_RATE, new byte[]{3}, 3));
+        SpoolCursor cursor = reopened.openCursor(0L);
+        int count = 0;
+        while (cursor.next()) {
+            assertEquals(++count, cursor.getValue()[0]);
+        }
+        assertEquals(3, count);
+    }
+
+    @Test
+    public void recoveryClearsATornBodyWithoutLength() throws IOException {
+        TelemetrySpool spool = new TelemetrySpool(mDirectory, SEGMENT_SIZE);
+        spool.append(ADDRESS, HEART_RATE, new byte[]{1}, 1);
+        long end = spool.getEndPosition();
+
+        // the body made it to the page, the length which is written last did not
+        File segment = new File(mDirectory, "0000000000000000.seg");
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.seek(end + 2);
+        byte[] body = new byte[60];
+        Arrays.fill(body, (byte) 0x5A);
+        file.write(body);
+        file.close();
+
+        TelemetrySpool reopened = new TelemetrySpool(mDirectory, SEGMENT_SIZE);
+        assertEquals(end, reopened.getEndPosition());
+        reopened.close();
+        file = new RandomAccessFile(segment, "r");
+        file.seek(end);
+        byte[] cleared = new byte[body.length + 2];
+        file.readFully(cleared);
+        file.close();
+        assertArrayEquals(new byte[cleared.length], cleared);
+
+        reopened = new TelemetrySpool(mDirectory, SEGMENT_SIZE);
+        assertTrue(reopened.append(ADDRESS, HEART_RATE, new byte[]{2}, 2));
+        long written = reopened.getEndPosition();
+        reopened.close();
+        assertEquals(written, new TelemetrySpool(mDirectory, SEGMENT_SIZE).getEndPosition());
+    }
+
+    @Test
+    public void retentionDeletesTheOldestSegments() throws IOException {
+        TelemetrySpool spool = new TelemetrySpool(mDirectory, SEGMENT_SIZE);
+        spool.setLimits(3 * SEGMENT_SIZE, Long.MAX_VALUE);
+        SpoolCursor slow = spool.openCursor(0L);
+        byte[] value = new byte[100];
+        for (int i = 0; i < 500; i++) {
+            spool.append(ADDRESS, CUSTOM, value, i);
+        }
+        assertEquals(3, mDirectory.listFiles().length);
+        assertTrue(spool.getStartPosition() > 0);
+
+        assertTrue(slow.next());
+        assertEquals(1, slow.getGapCount());
+        assertTrue(slow.getTimestampMillis() > 0);
+        assertFalse(spool.append(ADDRESS, CUSTOM, new byte[513], 0));
+        assertEquals(1, spool.getDroppedCount());
+    }
+}
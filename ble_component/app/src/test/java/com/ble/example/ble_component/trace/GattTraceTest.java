@@ -0,0 +1,184 @@
+package com.ble.example.ble_component.trace;
+
+import com.ble.example.ble_component.connection.SubscriptionManager;
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.sim.LinkProfile;
+import com.ble.example.ble_component.sim.SimulatedPeripheral;
+import com.ble.example.ble_component.sim.SimulatedTransport;
+import com.ble.example.ble_component.transport.BleTransport;
+import com.ble.example.ble_component.transport.GattClient;
+import com.ble.example.ble_component.util.VirtualScheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class GattTraceTest {
+
+    private static final String ADDRESS = "00:11:22:33:44:55";
+    private static final UUID SERVICE = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final UUID RX = UUID.fromString("6e400002-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final UUID TX = UUID.fromString("6e400003-b5a3-f393-e0a9-e50e24dcca9e");
+
+    private final VirtualScheduler mClock = new VirtualScheduler();
+    private ScheduledExecutorService mTimeouts;
+
+    @Before
+    public void setUp() {
+        mTimeouts = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        mTimeouts.shutdownNow();
+    }
+
+    @Test
+    public void roundTripsRecords() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(out);
+        writer.record(GattTrace.TYPE_CONNECTION_STATE, 1000, ADDRESS, null, 0, 1, null);
+        writer.record(GattTrace.TYPE_CHARACTERISTIC_CHANGED, 1500, ADDRESS, TX, 0, 0, new byte[]{1, 2, 3});
+        writer.record(GattTrace.TYPE_READ_REMOTE_RSSI, 1400, "AA:BB:CC:DD:EE:FF", null, 0, -67, null);
+        writer.record(GattTrace.TYPE_CHARACTERISTIC_READ, 90000, ADDRESS, TX, 0x85, 0, new byte[0]);
+        writer.close();
+        assertEquals(4, writer.getRecordCount());
+        byte[] trace = out.toByteArray();
+
+        TraceReader reader = new TraceReader(new ByteArrayInputStream(trace));
+        assertTrue(reader.next());
+        assertEquals(GattTrace.TYPE_CONNECTION_STATE, reader.getType());
+        assertEquals(0, reader.getTimeMicros());
+        assertEquals(1, reader.getArg());
+        assertNull(reader.getUuid());
+        assertNull(reader.getValue());
+        assertTrue(reader.next());
+        assertEquals(500, reader.getTimeMicros());
+        assertEquals(TX, reader.getUuid());
+        assertArrayEquals(new byte[]{1, 2, 3}, reader.getValue());
+        assertTrue(reader.next());
+        // out of order times are clamped
+        assertEquals(500, reader.getTimeMicros());
+        assertEquals("AA:BB:CC:DD:EE:FF", reader.getAddress());
+        assertEquals(-67, reader.getArg());
+        assertTrue(reader.next());
+        assertEquals(89000, reader.getTimeMicros());
+        assertEquals(ADDRESS, reader.getAddress());
+        assertEquals(0x85, reader.getStatus());
+        assertEquals(0, reader.getValue().length);
+        assertFalse(reader.next());
+
+        // a torn last record ends the trace
+        reader = new TraceReader(new ByteArrayInputStream(Arrays.copyOf(trace, trace.length - 2)));
+        int count = 0;
+        while (reader.next()) {
+            count++;
+        }
+        assertEquals(3, count);
+    }
+
+    @Test
+    public void replaysRecordedSessionFaster() throws Exception {
+        // record a session of 2 s with 20 notifications per second
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(out);
+        SimulatedTransport live = new SimulatedTransport(mClock, new LinkProfile());
+        SimulatedPeripheral peripheral = new SimulatedPeripheral(ADDRESS, layout());
+        live.addPeripheral(peripheral);
+        peripheral.setValue(RX, new byte[]{42});
+        List<Integer> recorded = new ArrayList<>();
+        GattClient client = open(new RecordingTransport(live, mClock, writer), recorded);
+        peripheral.startNotifications(TX, 20, 8);
+        mClock.advance(2000);
+        GattFuture<byte[]> read = client.readCharacteristic(client.getCharacteristicHandle(ADDRESS, SERVICE, RX));
+        mClock.advance(100);
+        assertArrayEquals(new byte[]{42}, read.get());
+        peripheral.stopNotifications(TX);
+        client.close();
+        writer.close();
+        assertTrue(recorded.size() >= 35);
+
+        // replay it ten times as fast against a fresh stack
+        SimulatedTransport replay = new SimulatedTransport(mClock, new LinkProfile());
+        TraceReplayer replayer = new TraceReplayer(new TraceReader(new ByteArrayInputStream(out.toByteArray())),
+                replay);
+        replayer.setSpeed(10);
+        assertEquals(1, replayer.getPeripherals().size());
+        List<Integer> replayed = new ArrayList<>();
+        GattClient replayClient = open(replay, replayed);
+        GattFuture<Void> done = replayer.start();
+        long durationMs = replayer.getDurationMicros() / 1000;
+        mClock.advance(durationMs / 10 - 10);
+        assertFalse(done.isDone());
+        mClock.advance(20);
+        assertTrue(done.isSuccess());
+        assertEquals(replayer.getEventCount(), replayer.getReplayedCount());
+        assertEquals(recorded, replayed);
+
+        // the value read in the session is served as well
+        read = replayClient.readCharacteristic(replayClient.getCharacteristicHandle(ADDRESS, SERVICE, RX));
+        mClock.advance(100);
+        assertArrayEquals(new byte[]{42}, read.get());
+    }
+
+    /**
+     * connect, discover and subscribe, collecting the sequence numbers of the notifications the
+     * way the service broadcasts them
+     */
+    private GattClient open(BleTransport transport, final List<Integer> sequences) {
+        GattClient client = new GattClient(mClock, mTimeouts, mTimeouts);
+        client.setTransport(transport);
+        client.addListener(new GattClient.Listener() {
+            @Override
+            public void onConnectionStateChanged(String address, boolean connected, int status) {
+            }
+
+            @Override
+            public void onServicesDiscovered(String address) {
+            }
+
+            @Override
+            public void onCharacteristicRead(String address, UUID characteristicUuid, byte[] value) {
+            }
+
+            @Override
+            public void onCharacteristicWrite(String address, UUID characteristicUuid, byte[] value, int status) {
+            }
+
+            @Override
+            public void onDescriptorWrite(String address, UUID descriptorUuid) {
+            }
+
+            @Override
+            public void onCharacteristicChanged(String address, UUID characteristicUuid, byte[] value) {
+                if (ADDRESS.equals(address) && TX.equals(characteristicUuid)) {
+                    sequences.add((value[0] & 0xFF) | (value[1] & 0xFF) << 8);
+                }
+            }
+        });
+        client.connect(ADDRESS, false);
+        mClock.advance(2000);
+        GattFuture<Void> subscribe = client.subscribe(ADDRESS, SERVICE, TX, SubscriptionManager.MODE_AUTO);
+        mClock.advance(1000);
+        assertTrue(subscribe.isSuccess());
+        return client;
+    }
+
+    private static GattLayout layout() {
+        return new GattLayout(new GattLayout.Service(SERVICE, 0,
+                new GattLayout.Characteristic(RX, 0x0A),
+                new GattLayout.Characteristic(TX, 0x10, GattClient.CLIENT_CONFIG_UUID)));
+    }
+}
@@ -0,0 +1,278 @@
+package com.ble.example.ble_component.transfer;
+
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.gatt.GattOperation;
+import com.ble.example.ble_component.gatt.GattOperationQueue;
+import com.ble.example.ble_component.util.VirtualScheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the writer against simulated links: a real {@link GattOperationQueue} whose writes are
+ * acknowledged after the time the chunk would take on air at a given rate, and a link on a
+ * virtual clock for the timing of the transfer.
+ */
+public class BulkWriterTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private ScheduledExecutorService mRadio;
+    private ExecutorService mWorker;
+
+    @Before
+    public void setUp() {
+        mRadio = Executors.newSingleThreadScheduledExecutor();
+        mWorker = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        mRadio.shutdownNow();
+        mWorker.shutdownNow();
+    }
+
+    @Test
+    public void transfersWholePayloadInMtuChunks() throws Exception {
+        byte[] payload = payload(10000);
+        SimulatedLink link = new SimulatedLink(247, 0, 0);
+        final List<TransferStats> progress = Collections.synchronizedList(new ArrayList<TransferStats>());
+
+        TransferStats stats = new BulkWriter(link, new ByteArrayInputStream(payload), payload.length, mWorker)
+                .setProgressListener(new BulkWriter.ProgressListener() {
+                    @Override
+                    public void onProgress(TransferStats stats) {
+                        progress.add(stats);
+                    }
+                }, 0)
+                .start().get(5, TimeUnit.SECONDS);
+
+        assertArrayEquals(payload, link.received.toByteArray());
+        assertEquals(247, stats.getMtu());
+        assertEquals(payload.length, stats.getBytes());
+        assertEquals((payload.length + 243) / 244, stats.getChunks());
+        assertEquals(244, link.largestChunk);
+        assertFalse(progress.isEmpty());
+        assertEquals(1f, progress.get(progress.size() - 1).getProgress(), 0f);
+    }
+
+    @Test
+    public void fallsBackToDefaultMtu() throws Exception {
+        byte[] payload = payload(100);
+        SimulatedLink link = new SimulatedLink(0, 0, 0);
+
+        TransferStats stats = new BulkWriter(link, new ByteArrayInputStream(payload), -1, mWorker)
+                .start().get(5, TimeUnit.SECONDS);
+
+        assertArrayEquals(payload, link.received.toByteArray());
+        assertEquals(BulkWriter.DEFAULT_MTU, stats.getMtu());
+        assertEquals(20, link.largestChunk);
+        assertEquals(-1f, stats.getProgress(), 0f);
+    }
+
+    @Test
+    public void writeFailureFailsTransfer() throws Exception {
+        SimulatedLink link = new SimulatedLink(185, 0, 0);
+        link.failAfterChunks = 3;
+
+        GattFuture<TransferStats> future = new BulkWriter(link, new ByteArrayInputStream(payload(5000)), 5000, mWorker)
+                .start();
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(133, ((GattException) e.getCause()).getStatus());
+        }
+    }
+
+    @Test
+    public void keepsWindowOfChunksQueuedInOrder() throws Exception {
+        byte[] payload = payload(10000);
+        VirtualScheduler clock = new VirtualScheduler();
+        ClockedLink link = new ClockedLink(clock, 23, 100 * 1024, 150);
+
+        GattFuture<TransferStats> transfer = new BulkWriter(link, new ByteArrayInputStream(payload),
+                payload.length, DIRECT).setWindow(3).start();
+        assertEquals(3, link.queued);
+        while (!transfer.isDone()) {
+            clock.advance(1);
+        }
+
+        int chunks = (payload.length + 19) / 20;
+        assertEquals(chunks, transfer.get().getChunks());
+        assertEquals(chunks, link.chunks.size());
+        for (int i = 0; i < chunks - 1; i++) {
+            assertEquals(20, link.chunks.get(i).length);
+        }
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        for (byte[] chunk : link.chunks) {
+            received.write(chunk);
+        }
+        assertArrayEquals(payload, received.toByteArray());
+        assertEquals(3, link.mostQueued);
+        assertEquals(0, link.queued);
+    }
+
+    @Test
+    public void largerMtuTakesLessAirTime() throws Exception {
+        byte[] payload = payload(24 * 1024);
+        int rate = 100 * 1024;
+        long[] elapsed = new long[2];
+        int[] mtus = {23, 247};
+
+        for (int i = 0; i < mtus.length; i++) {
+            VirtualScheduler clock = new VirtualScheduler();
+            // fixed cost per packet on air, which is what makes small chunks slow
+            ClockedLink link = new ClockedLink(clock, mtus[i], rate, 150);
+            GattFuture<TransferStats> transfer = new BulkWriter(link, new ByteArrayInputStream(payload),
+                    payload.length, DIRECT).start();
+            while (!transfer.isDone()) {
+                clock.advance(1);
+            }
+            assertEquals((payload.length + mtus[i] - 4) / (mtus[i] - 3), transfer.get().getChunks());
+            elapsed[i] = clock.now();
+            // never faster than the link
+            assertTrue(elapsed[i] >= payload.length * 1000L / rate);
+        }
+        assertTrue(elapsed[1] < elapsed[0]);
+    }
+
+    private static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * fake link: a real operation queue in front of a radio with a fixed rate
+     */
+    private class SimulatedLink implements WriteChannel {
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        final GattOperationQueue queue = new GattOperationQueue(mRadio);
+        final int maxMtu;
+        final int bytesPerSecond;
+        final int overheadMicros;
+        volatile int largestChunk;
+        int failAfterChunks = -1;
+        int chunks;
+
+        /**
+         * @param maxMtu         0 if the peer refuses the MTU exchange
+         * @param bytesPerSecond 0 to acknowledge immediately
+         * @param overheadMicros air time per packet on top of the payload
+         */
+        SimulatedLink(int maxMtu, int bytesPerSecond, int overheadMicros) {
+            this.maxMtu = maxMtu;
+            this.bytesPerSecond = bytesPerSecond;
+            this.overheadMicros = overheadMicros;
+        }
+
+        @Override
+        public GattFuture<Integer> requestMtu(final int mtu) {
+            return queue.enqueue(new GattOperation<Integer>(GattOperation.TYPE_REQUEST_MTU, null) {
+                @Override
+                protected boolean execute() {
+                    mRadio.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            queue.onOperationCompleted(GattOperation.TYPE_REQUEST_MTU, null,
+                                    maxMtu == 0 ? 6 : 0, Math.min(mtu, maxMtu));
+                        }
+                    });
+                    return true;
+                }
+            });
+        }
+
+        @Override
+        public GattFuture<Void> writeChunk(final byte[] chunk) {
+            return queue.enqueue(new GattOperation<Void>(GattOperation.TYPE_WRITE_CHARACTERISTIC, null) {
+                @Override
+                protected boolean execute() {
+                    // like BluetoothGatt, the value is consumed when the write starts
+                    received.write(chunk, 0, chunk.length);
+                    largestChunk = Math.max(largestChunk, chunk.length);
+                    final int status = ++chunks == failAfterChunks ? 133 : 0;
+                    long micros = bytesPerSecond == 0 ? 0
+                            : overheadMicros + chunk.length * 1000000L / bytesPerSecond;
+                    mRadio.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            queue.onOperationCompleted(GattOperation.TYPE_WRITE_CHARACTERISTIC, null, status, null);
+                        }
+                    }, micros, TimeUnit.MICROSECONDS);
+                    return true;
+                }
+            });
+        }
+    }
+
+    /**
+     * Fake link on a virtual clock: the chunks go on air one after the other at a fixed rate
+     * and each is acknowledged on the first tick after it left. Counts the chunks queued.
+     */
+    private static class ClockedLink implements WriteChannel {
+        final List<byte[]> chunks = new ArrayList<>();
+        final VirtualScheduler clock;
+        final int maxMtu;
+        final int bytesPerSecond;
+        final int overheadMicros;
+        long airFreeAtMicros;
+        int queued;
+        int mostQueued;
+
+        ClockedLink(VirtualScheduler clock, int maxMtu, int bytesPerSecond, int overheadMicros) {
+            this.clock = clock;
+            this.maxMtu = maxMtu;
+            this.bytesPerSecond = bytesPerSecond;
+            this.overheadMicros = overheadMicros;
+        }
+
+        @Override
+        public GattFuture<Integer> requestMtu(int mtu) {
+            GattFuture<Integer> future = new GattFuture<>();
+            future.complete(Math.min(mtu, maxMtu));
+            return future;
+        }
+
+        @Override
+        public GattFuture<Void> writeChunk(byte[] chunk) {
+            final GattFuture<Void> future = new GattFuture<>();
+            chunks.add(chunk.clone());
+            mostQueued = Math.max(mostQueued, ++queued);
+            long nowMicros = clock.now() * 1000;
+            airFreeAtMicros = Math.max(airFreeAtMicros, nowMicros)
+                    + overheadMicros + chunk.length * 1000000L / bytesPerSecond;
+            clock.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    queued--;
+                    future.complete(null);
+                }
+            }, (airFreeAtMicros - nowMicros + 999) / 1000);
+            return future;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.ble.example.ble_component.transfer;
+
+import com.ble.example.ble_component.connection.CharacteristicHandle;
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.gatt.GattException;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.sim.LinkProfile;
+import com.ble.example.ble_component.sim.SimulatedPeripheral;
+import com.ble.example.ble_component.sim.SimulatedTransport;
+import com.ble.example.ble_component.transport.GattClient;
+import com.ble.example.ble_component.util.VirtualScheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs reliable writes against a {@link SimulatedPeripheral} at the default MTU of 23, so every
+ * prepared write carries 18 bytes.
+ */
+public class ReliableWriterTest {
+
+    private static final String ADDRESS = "00:11:22:33:44:55";
+    private static final UUID SERVICE = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final UUID CONFIG = UUID.fromString("6e400002-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final UUID NAME = UUID.fromString("6e400004-b5a3-f393-e0a9-e50e24dcca9e");
+
+    private final VirtualScheduler mClock = new VirtualScheduler();
+    private ScheduledExecutorService mTimeouts;
+    private SimulatedPeripheral mPeripheral;
+    private GattClient mClient;
+    private CharacteristicHandle mConfig;
+    private CharacteristicHandle mName;
+
+    @Before
+    public void setUp() {
+        mTimeouts = Executors.newSingleThreadScheduledExecutor();
+        SimulatedTransport transport = new SimulatedTransport(mClock, new LinkProfile());
+        mPeripheral = new SimulatedPeripheral(ADDRESS, new GattLayout(
+                new GattLayout.Service(SERVICE, 0,
+                        new GattLayout.Characteristic(CONFIG, 0x08),
+                        new GattLayout.Characteristic(NAME, 0x08))));
+        transport.addPeripheral(mPeripheral);
+        mClient = new GattClient(mClock, mTimeouts, mTimeouts);
+        mClient.setTransport(transport);
+        assertTrue(mClient.connect(ADDRESS, false));
+        mClock.advance(2000);
+        mConfig = mClient.getCharacteristicHandle(ADDRESS, SERVICE, CONFIG);
+        mName = mClient.getCharacteristicHandle(ADDRESS, SERVICE, NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mTimeouts.shutdownNow();
+    }
+
+    @Test
+    public void splitsLongValuesAndWritesThemTogether() throws Exception {
+        byte[] config = pattern(400, 1);
+        byte[] name = pattern(30, 7);
+        GattFuture<TransferStats> write = new ReliableWriter<>(mClient.openReliableWriteChannel(ADDRESS))
+                .add(mConfig, config)
+                .add(mName, name)
+                .start();
+        while (!write.isDone()) {
+            assertNull("written before the execute", mPeripheral.getValue(CONFIG));
+            mClock.advance(10);
+        }
+
+        TransferStats stats = write.get();
+        assertEquals(430, stats.getBytes());
+        // 400 bytes in 23 parts of 18 bytes, 30 bytes in 2
+        assertEquals(25, stats.getChunks());
+        assertArrayEquals(config, mPeripheral.getValue(CONFIG));
+        assertArrayEquals(name, mPeripheral.getValue(NAME));
+    }
+
+    @Test
+    public void abortsWhenAnEchoDiffers() throws Exception {
+        mPeripheral.setValue(CONFIG, new byte[]{1});
+        mPeripheral.corruptPreparedWrites(1);
+        GattFuture<TransferStats> write = new ReliableWriter<>(mClient.openReliableWriteChannel(ADDRESS))
+                .add(mConfig, pattern(100, 3))
+                .start();
+        mClock.advance(2000);
+
+        assertEquals(GattException.STATUS_VERIFY_FAILED, failure(write).getStatus());
+        assertArrayEquals(new byte[]{1}, mPeripheral.getValue(CONFIG));
+        assertEquals(0, mPeripheral.getWriteCount());
+
+        // the link is usable again and the next transaction goes through
+        GattFuture<TransferStats> retry = new ReliableWriter<>(mClient.openReliableWriteChannel(ADDRESS))
+                .add(mConfig, pattern(100, 3))
+                .start();
+        mClock.advance(2000);
+        assertEquals(100, retry.get().getBytes());
+        assertArrayEquals(pattern(100, 3), mPeripheral.getValue(CONFIG));
+    }
+
+    @Test
+    public void noChannelWithoutAConnection() {
+        assertNull(mClient.openReliableWriteChannel("66:55:44:33:22:11"));
+    }
+
+    @Test
+    public void rejectsValuesBeyondTheAttributeLimit() throws Exception {
+        GattFuture<TransferStats> write = new ReliableWriter<>(mClient.openReliableWriteChannel(ADDRESS))
+                .add(mConfig, new byte[513])
+                .start();
+        assertEquals(GattException.STATUS_INVALID_ATTRIBUTE_LENGTH, failure(write).getStatus());
+    }
+
+    @Test
+    public void writesWholeValuesWithoutOffsets() throws Exception {
+        RecordingChannel channel = new RecordingChannel();
+        GattFuture<TransferStats> write = new ReliableWriter<>(channel)
+                .add("a", new byte[18])
+                .add("b", new byte[5])
+                .start();
+        assertEquals(2, write.get().getChunks());
+        assertEquals(2, channel.mPrepared.size());
+        assertTrue(channel.mExecuted);
+
+        GattFuture<TransferStats> tooLong = new ReliableWriter<>(new RecordingChannel())
+                .add("a", new byte[19])
+                .start();
+        assertEquals(GattException.STATUS_INVALID_ATTRIBUTE_LENGTH, failure(tooLong).getStatus());
+    }
+
+    private static byte[] pattern(int length, int seed) {
+        byte[] value = new byte[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = (byte) (i * seed);
+        }
+        return value;
+    }
+
+    private static GattException failure(GattFuture<?> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return (GattException) e.getCause();
+        }
+        throw new AssertionError("future did not fail");
+    }
+
+    /**
+     * a channel like {@code BluetoothGatt}'s, which only prepares whole values and does not
+     * report the echoes
+     */
+    private static class RecordingChannel implements ReliableWriteChannel<String> {
+        final List<String> mPrepared = new ArrayList<>();
+        boolean mExecuted;
+
+        @Override
+        public int getMtu() {
+            return 23;
+        }
+
+        @Override
+        public boolean supportsWriteOffsets() {
+            return false;
+        }
+
+        @Override
+        public GattFuture<Void> begin() {
+            return GattFuture.succeeded(null);
+        }
+
+        @Override
+        public GattFuture<byte[]> prepareWrite(String target, int offset, byte[] part) {
+            assertEquals(0, offset);
+            mPrepared.add(target);
+            return GattFuture.succeeded(null);
+        }
+
+        @Override
+        public GattFuture<Void> execute() {
+            mExecuted = true;
+            return GattFuture.succeeded(null);
+        }
+
+        @Override
+        public GattFuture<Void> abort() {
+            return GattFuture.succeeded(null);
+        }
+    }
+}
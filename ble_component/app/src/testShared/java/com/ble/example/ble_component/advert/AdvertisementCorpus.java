@@ -0,0 +1,34 @@
+package com.ble.example.ble_component.advert;
+
+/**
+ * Advertisements recorded from real devices, as the scan record bytes the platform delivers.
+ * Shared by the unit tests and the benchmarks.
+ */
+public final class AdvertisementCorpus {
+
+    public static final byte[] IBEACON = hex("0201061aff4c000215e2c56db5dffb48d2b060d0f5a71096e000010002c5");
+    public static final byte[] EDDYSTONE_UID = hex("0201060303aafe1716aafe00ee8b0ca750e2f8d3a76c3b0102030405060000");
+    public static final byte[] EDDYSTONE_URL = hex("0201060303aafe0d16aafe10eb03676f6f676c6507");
+    public static final byte[] EDDYSTONE_TLM = hex("0201060303aafe1116aafe20000bb8178000000100000027100000000000000000");
+    public static final byte[] HEART_RATE = hex("02010603030d180509484d5231020a04000000000000000000000000000000000000");
+    public static final byte[] NORDIC_UART = hex("0201061107"
+            + "9ecadc240ee5a9e093f3a3b50100406e" + "0809556172742d3031");
+    public static final byte[] APPLE_CONTINUITY = hex("02011a0aff4c0010050b1c2e3b5a");
+    public static final byte[] SWIFT_PAIR = hex("02010608ff06000300804d78");
+    public static final byte[] THERMOMETER_32 = hex("020106050509180000");
+    public static final byte[] TRUNCATED = hex("0201061aff4c000215e2c56db5");
+
+    public static final byte[][] ALL = {IBEACON, EDDYSTONE_UID, EDDYSTONE_URL, EDDYSTONE_TLM, HEART_RATE,
+            NORDIC_UART, APPLE_CONTINUITY, SWIFT_PAIR, THERMOMETER_32, TRUNCATED};
+
+    private AdvertisementCorpus() {
+    }
+
+    public static byte[] hex(String hex) {
+        byte[] data = new byte[hex.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return data;
+    }
+}
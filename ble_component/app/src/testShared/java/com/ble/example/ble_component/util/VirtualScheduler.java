@@ -0,0 +1,88 @@
+package com.ble.example.ble_component.util;
+
+import java.util.PriorityQueue;
+
+/**
+ * {@link Scheduler} driven by a virtual clock, tasks only run inside {@link #advance(long)}.
+ */
+public class VirtualScheduler implements Scheduler {
+
+    private class VirtualTask implements Task, Comparable<VirtualTask> {
+        final Runnable mRunnable;
+        final long mDueAt;
+        final long mSequence;
+        boolean mCancelled;
+
+        VirtualTask(Runnable runnable, long dueAt, long sequence) {
+            mRunnable = runnable;
+            mDueAt = dueAt;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (VirtualScheduler.this) {
+                mCancelled = true;
+                mTasks.remove(this);
+            }
+        }
+
+        @Override
+        public int compareTo(VirtualTask other) {
+            if (mDueAt != other.mDueAt) {
+                return mDueAt < other.mDueAt ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    private final PriorityQueue<VirtualTask> mTasks = new PriorityQueue<>();
+    private long mNow;
+    private long mSequence;
+
+    @Override
+    public synchronized long now() {
+        return mNow;
+    }
+
+    @Override
+    public synchronized Task schedule(Runnable task, long delayMs) {
+        VirtualTask virtualTask = new VirtualTask(task, mNow + Math.max(0, delayMs), mSequence++);
+        mTasks.add(virtualTask);
+        return virtualTask;
+    }
+
+    /**
+     * move the clock forward, running every task that becomes due in order
+     *
+     * @param ms
+     */
+    public void advance(long ms) {
+        long target;
+        synchronized (this) {
+            target = mNow + ms;
+        }
+        while (true) {
+            VirtualTask task;
+            synchronized (this) {
+                task = mTasks.peek();
+                if (task == null || task.mDueAt > target) {
+                    mNow = target;
+                    return;
+                }
+                mTasks.poll();
+                mNow = task.mDueAt;
+            }
+            task.mRunnable.run();
+        }
+    }
+
+    /**
+     * number of tasks waiting to run
+     *
+     * @return
+     */
+    public synchronized int pending() {
+        return mTasks.size();
+    }
+}
@@ -0,0 +1,73 @@
+package com.ble.example.ble_component.benchmark;
+
+import com.ble.example.ble_component.advert.AdData;
+import com.ble.example.ble_component.advert.AdvertisementCorpus;
+import com.ble.example.ble_component.advert.AdvertisementDecoder;
+import com.ble.example.ble_component.advert.AdvertisementParser;
+import com.ble.example.ble_component.advert.AdvertisementRecord;
+import com.ble.example.ble_component.advert.ManufacturerDataDecoder;
+
+/**
+ * Runs the parser over the recorded corpus the way a scan callback would: wrap the record,
+ * run the decoders and look at the common fields. Reports the time and the bytes allocated per
+ * packet; steady state parsing should not allocate.
+ */
+public class AdvertisementParserBenchmark {
+
+    private final int mPackets;
+    private final AdvertisementParser mParser = new AdvertisementParser();
+    private long mSink;
+
+    /**
+     * @param packets packets parsed per run
+     */
+    public AdvertisementParserBenchmark(int packets) {
+        mPackets = packets;
+        // a registered decoder next to the built-in ones
+        mParser.register(new ManufacturerDataDecoder(0x0006) {
+            @Override
+            protected boolean decode(AdData data) {
+                return data.length() >= 3 && data.getUint8(0) == 0x03;
+            }
+        });
+    }
+
+    public BenchmarkReport run(BenchmarkReport report) {
+        run(mPackets / 10);
+        long allocated = GattBenchmarks.allocatedBytes();
+        long start = System.nanoTime();
+        run(mPackets);
+        long nanos = System.nanoTime() - start;
+        report.lowerIsBetter("advert.parse", (double) nanos / mPackets, "ns/packet");
+        if (allocated >= 0) {
+            report.lowerIsBetter("advert.parse.allocation",
+                    (double) (GattBenchmarks.allocatedBytes() - allocated) / mPackets, "bytes/packet");
+        }
+        if (mSink == 0) {
+            throw new IllegalStateException("nothing was decoded");
+        }
+        return report;
+    }
+
+    private void run(int count) {
+        byte[][] corpus = AdvertisementCorpus.ALL;
+        for (int i = 0; i < count; i++) {
+            byte[] packet = corpus[i % corpus.length];
+            AdvertisementDecoder decoder = mParser.decode(packet);
+            if (decoder == mParser.getIBeaconDecoder()) {
+                mSink += mParser.getIBeaconDecoder().getMinor();
+            } else if (decoder == mParser.getEddystoneDecoder()) {
+                mSink += mParser.getEddystoneDecoder().getFrameType();
+            }
+            AdvertisementRecord record = mParser.parse(packet);
+            mSink += record.getManufacturerId();
+            if (record.getServiceUuidCount() > 0) {
+                mSink += record.getServiceUuidMsb(0);
+            }
+            AdData name = record.getLocalNameData();
+            if (name != null && name.contentEquals("HMR1")) {
+                mSink++;
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.ble.example.ble_component.benchmark;
+
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.util.List;
+
+/**
+ * Runs {@link GattBenchmarks}, {@link EventBusBenchmark} and
+ * {@link AdvertisementParserBenchmark} and writes the report.
+ * <pre>
+ * BenchmarkMain [--out report.txt] [--baseline baseline.txt] [--tolerance 0.15]
+ *               [--events n] [--commands n] [--transfer bytes]
+ * </pre>
+ * With a baseline it exits with 1 if a metric got worse by more than the tolerance.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        File out = null;
+        File baseline = null;
+        double tolerance = 0.15;
+        int events = 200000;
+        int commands = 100000;
+        int transfer = 1 << 20;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--out":
+                    out = new File(value);
+                    break;
+                case "--baseline":
+                    baseline = new File(value);
+                    break;
+                case "--tolerance":
+                    tolerance = Double.parseDouble(value);
+                    break;
+                case "--events":
+                    events = Integer.parseInt(value);
+                    break;
+                case "--commands":
+                    commands = Integer.parseInt(value);
+                    break;
+                case "--transfer":
+                    transfer = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        BenchmarkReport report = new GattBenchmarks(events, commands, transfer).run();
+        new EventBusBenchmark(events * 5).run(report);
+        new AdvertisementParserBenchmark(events * 10).run(report);
+        report.write(new OutputStreamWriter(System.out, "UTF-8"));
+        if (out != null) {
+            report.write(out);
+            System.out.println("report written to " + out);
+        }
+        if (baseline != null) {
+            List<String> regressions = report.compare(BenchmarkReport.read(baseline), tolerance);
+            for (String regression : regressions) {
+                System.out.println("REGRESSION " + regression);
+            }
+            if (!regressions.isEmpty()) {
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.ble.example.ble_component.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Results of a benchmark run. The text form has one metric per line,
+ * {@code name value unit higher|lower}, so two reports can be diffed by hand and compared by
+ * {@link #compare(BenchmarkReport, double)}.
+ */
+public class BenchmarkReport {
+
+    public static final class Metric {
+        private final String mName;
+        private final double mValue;
+        private final String mUnit;
+        private final boolean mHigherIsBetter;
+
+        Metric(String name, double value, String unit, boolean higherIsBetter) {
+            mName = name;
+            mValue = value;
+            mUnit = unit;
+            mHigherIsBetter = higherIsBetter;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public double getValue() {
+            return mValue;
+        }
+
+        public String getUnit() {
+            return mUnit;
+        }
+
+        public boolean isHigherBetter() {
+            return mHigherIsBetter;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s %.3f %s %s", mName, mValue, mUnit,
+                    mHigherIsBetter ? "higher" : "lower");
+        }
+    }
+
+    /**
+     * metrics below this are noise, e.g. 0.01 bytes/event, and never count as a regression
+     */
+    private static final double NOISE_FLOOR = 1;
+
+    private final LinkedHashMap<String, Metric> mMetrics = new LinkedHashMap<>();
+
+    /**
+     * @param name  a stable name, the key when comparing reports
+     * @param value
+     * @param unit  no white space
+     */
+    public BenchmarkReport lowerIsBetter(String name, double value, String unit) {
+        mMetrics.put(name, new Metric(name, value, unit, false));
+        return this;
+    }
+
+    public BenchmarkReport higherIsBetter(String name, double value, String unit) {
+        mMetrics.put(name, new Metric(name, value, unit, true));
+        return this;
+    }
+
+    public Metric get(String name) {
+        return mMetrics.get(name);
+    }
+
+    public Collection<Metric> getMetrics() {
+        return mMetrics.values();
+    }
+
+    /**
+     * @param baseline  the report to compare with
+     * @param tolerance allowed change for the worse, e.g. 0.15 for 15%
+     * @return a description of every metric which got worse by more than the tolerance
+     */
+    public List<String> compare(BenchmarkReport baseline, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (Metric metric : mMetrics.values()) {
+            Metric before = baseline.get(metric.getName());
+            if (before == null) {
+                continue;
+            }
+            double worse = metric.isHigherBetter() ? before.getValue() - metric.getValue()
+                    : metric.getValue() - before.getValue();
+            double scale = Math.max(Math.abs(before.getValue()), NOISE_FLOOR);
+            if (worse > scale * tolerance) {
+                regressions.add(String.format(Locale.US, "%s: %.3f -> %.3f %s (%+.1f%%)", metric.getName(),
+                        before.getValue(), metric.getValue(), metric.getUnit(),
+                        (metric.getValue() - before.getValue()) * 100 / scale));
+            }
+        }
+        return regressions;
+    }
+
+    public void write(Writer writer) throws IOException {
+        for (Metric metric : mMetrics.values()) {
+            writer.write(metric.toString());
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    public void write(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("cannot create " + parent);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            write(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    public static BenchmarkReport read(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            BenchmarkReport report = new BenchmarkReport();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length != 4) {
+                    throw new IOException("malformed metric: " + line);
+                }
+                double value;
+                try {
+                    value = Double.parseDouble(fields[1]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("malformed metric: " + line);
+                }
+                report.mMetrics.put(fields[0], new Metric(fields[0], value, fields[2], "higher".equals(fields[3])));
+            }
+            return report;
+        } finally {
+            reader.close();
+        }
+    }
+}
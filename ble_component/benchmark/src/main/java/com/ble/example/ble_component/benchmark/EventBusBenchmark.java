@@ -0,0 +1,96 @@
+package com.ble.example.ble_component.benchmark;
+
+import com.ble.example.ble_component.event.CharacteristicEvent;
+import com.ble.example.ble_component.event.CharacteristicEventBus;
+import com.ble.example.ble_component.event.CharacteristicListener;
+
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Compares the event bus with the old {@code ACTION_DATA_AVAILABLE} path. The broadcast path
+ * cannot run on the JVM, so it is modelled by the work it does per notification: an extras
+ * map, a copy of the value, a UUID string and a receiver which filters on strings.
+ * <p>
+ * Reports the time and the bytes allocated per event of both.
+ */
+public class EventBusBenchmark {
+
+    private static final int DEVICES = 8;
+    private static final UUID CHAR_UUID = UUID.fromString("0000fff1-0000-1000-8000-00805f9b34fb");
+
+    private final int mEvents;
+    private final String[] mAddresses = new String[DEVICES];
+    private final byte[] mValue = new byte[20];
+    private long mSink;
+
+    /**
+     * @param events events published per run
+     */
+    public EventBusBenchmark(int events) {
+        mEvents = events;
+        for (int i = 0; i < DEVICES; i++) {
+            mAddresses[i] = "00:11:22:33:44:0" + i;
+        }
+    }
+
+    public BenchmarkReport run(BenchmarkReport report) {
+        CharacteristicEventBus bus = new CharacteristicEventBus();
+        for (String address : mAddresses) {
+            bus.subscribe(address, CHAR_UUID, new CharacteristicListener() {
+                @Override
+                public void onCharacteristicChanged(CharacteristicEvent event) {
+                    mSink += event.getValue().length;
+                }
+            });
+        }
+
+        runBus(bus, mEvents / 4);
+        long allocated = GattBenchmarks.allocatedBytes();
+        long start = System.nanoTime();
+        runBus(bus, mEvents);
+        record(report, "bus.publish", System.nanoTime() - start,
+                allocated < 0 ? -1 : GattBenchmarks.allocatedBytes() - allocated);
+
+        runBroadcast(mEvents / 4);
+        allocated = GattBenchmarks.allocatedBytes();
+        start = System.nanoTime();
+        runBroadcast(mEvents);
+        record(report, "bus.broadcast_model", System.nanoTime() - start,
+                allocated < 0 ? -1 : GattBenchmarks.allocatedBytes() - allocated);
+
+        if (mSink == 0) {
+            throw new IllegalStateException("no event reached a subscriber");
+        }
+        return report;
+    }
+
+    private void record(BenchmarkReport report, String name, long nanos, long allocated) {
+        report.lowerIsBetter(name, (double) nanos / mEvents, "ns/event");
+        if (allocated >= 0) {
+            report.lowerIsBetter(name + ".allocation", (double) allocated / mEvents, "bytes/event");
+        }
+    }
+
+    private void runBus(CharacteristicEventBus bus, int count) {
+        for (int i = 0; i < count; i++) {
+            bus.publish(mAddresses[i % DEVICES], CHAR_UUID, mValue, 0);
+        }
+    }
+
+    private void runBroadcast(int count) {
+        String wanted = CHAR_UUID.toString();
+        for (int i = 0; i < count; i++) {
+            HashMap<String, Object> extras = new HashMap<>();
+            extras.put("address", mAddresses[i % DEVICES]);
+            extras.put("data", mValue.clone());
+            extras.put("uuid", CHAR_UUID.toString());
+            // every receiver sees every broadcast and filters by string
+            for (String address : mAddresses) {
+                if (address.equals(extras.get("address")) && wanted.equals(extras.get("uuid"))) {
+                    mSink += ((byte[]) extras.get("data")).length;
+                }
+            }
+        }
+    }
+}
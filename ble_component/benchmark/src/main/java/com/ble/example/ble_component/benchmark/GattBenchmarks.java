@@ -0,0 +1,415 @@
+package com.ble.example.ble_component.benchmark;
+
+import com.ble.example.ble_component.connection.BleConnection;
+import com.ble.example.ble_component.connection.CharacteristicHandle;
+import com.ble.example.ble_component.connection.ConnectionState;
+import com.ble.example.ble_component.connection.SubscriptionManager;
+import com.ble.example.ble_component.discovery.GattLayout;
+import com.ble.example.ble_component.event.CharacteristicEvent;
+import com.ble.example.ble_component.event.CharacteristicEventBus;
+import com.ble.example.ble_component.event.CharacteristicListener;
+import com.ble.example.ble_component.gatt.GattFuture;
+import com.ble.example.ble_component.sim.LinkProfile;
+import com.ble.example.ble_component.sim.SimulatedPeripheral;
+import com.ble.example.ble_component.sim.SimulatedTransport;
+import com.ble.example.ble_component.transfer.BulkWriter;
+import com.ble.example.ble_component.transfer.TransferStats;
+import com.ble.example.ble_component.transport.BleTransport;
+import com.ble.example.ble_component.transport.GattClient;
+import com.ble.example.ble_component.transport.GattLink;
+import com.ble.example.ble_component.transport.GattLinkCallback;
+import com.ble.example.ble_component.transport.ScanTransport;
+import com.ble.example.ble_component.util.VirtualScheduler;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The benchmarks of the GATT data path. Each runs a {@link GattClient} against a
+ * {@link SimulatedPeripheral} on a virtual clock, so the radio costs nothing unless a benchmark
+ * asks for it and the wall time measured is the time spent in the component itself.
+ * <ul>
+ * <li>notification dispatch: latency from {@code onCharacteristicChanged} of the link to the
+ * event bus subscriber, and the bytes allocated in between</li>
+ * <li>command round trip: a write or read through a {@link CharacteristicHandle}, the way
+ * {@code BLEManager} issues them, from the call to the completed future; the bytes allocated
+ * include the simulated link's</li>
+ * <li>bulk transfer: {@link BulkWriter} throughput on the default link, and the CPU time it
+ * takes per kilobyte</li>
+ * </ul>
+ * Every benchmark runs once to warm up and once to measure.
+ */
+public class GattBenchmarks {
+
+    private static final String ADDRESS = "00:11:22:33:44:55";
+    private static final UUID SERVICE = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final UUID RX = UUID.fromString("6e400002-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final UUID TX = UUID.fromString("6e400003-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final GattLayout LAYOUT = new GattLayout(
+            new GattLayout.Service(SERVICE, 0,
+                    new GattLayout.Characteristic(RX, 0x0C),
+                    new GattLayout.Characteristic(TX, 0x12, GattClient.CLIENT_CONFIG_UUID)));
+    private static final int NOTIFICATIONS_PER_SECOND = 1000;
+    private static final int NOTIFICATION_SIZE = 20;
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    // looked up once, the lookup itself allocates
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private final int mEvents;
+    private final int mCommands;
+    private final int mTransferBytes;
+
+    /**
+     * @param events        notifications per run
+     * @param commands      writes and reads per run
+     * @param transferBytes size of the bulk transfer
+     */
+    public GattBenchmarks(int events, int commands, int transferBytes) {
+        mEvents = events;
+        mCommands = commands;
+        mTransferBytes = transferBytes;
+    }
+
+    public BenchmarkReport run() throws Exception {
+        BenchmarkReport report = new BenchmarkReport();
+        notificationDispatch(report);
+        commandRoundTrip(report);
+        bulkTransfer(report);
+        return report;
+    }
+
+    void notificationDispatch(BenchmarkReport report) throws Exception {
+        // a link fast enough that the air never holds a notification back
+        Rig rig = new Rig(new LinkProfile().setThroughput(Integer.MAX_VALUE));
+        try {
+            final DispatchProbe probe = rig.mProbe;
+            rig.mEventBus.subscribe(ADDRESS, TX, new CharacteristicListener() {
+                @Override
+                public void onCharacteristicChanged(CharacteristicEvent event) {
+                    probe.onConsumed(event.getValue().length);
+                }
+            });
+            rig.await(rig.mClient.subscribe(ADDRESS, SERVICE, TX, SubscriptionManager.MODE_AUTO));
+            rig.mPeripheral.startNotifications(TX, NOTIFICATIONS_PER_SECOND, NOTIFICATION_SIZE);
+
+            probe.reset(Math.max(1, mEvents / 4));
+            rig.runUntil(probe);
+            probe.reset(mEvents);
+            rig.runUntil(probe);
+            rig.mPeripheral.stopNotifications(TX);
+
+            long[] latencies = probe.sortedLatencies();
+            report.lowerIsBetter("notification.latency.p50", percentile(latencies, 0.5), "ns")
+                    .lowerIsBetter("notification.latency.p99", percentile(latencies, 0.99), "ns");
+            if (probe.mAllocated >= 0) {
+                report.lowerIsBetter("notification.allocation", (double) probe.mAllocated / probe.mCount,
+                        "bytes/event");
+            }
+        } finally {
+            rig.close();
+        }
+    }
+
+    void commandRoundTrip(BenchmarkReport report) throws Exception {
+        // no radio time, the round trip is the queue, the link and the future
+        Rig rig = new Rig(new LinkProfile().setLatency(0, 0).setThroughput(Integer.MAX_VALUE));
+        try {
+            byte[] value = new byte[NOTIFICATION_SIZE];
+            rig.mPeripheral.setValue(TX, value);
+            long[] samples = new long[mCommands];
+
+            for (int pass = 0; pass < 2; pass++) {
+                long allocated = allocatedBytes();
+                for (int i = 0; i < mCommands; i++) {
+                    long start = System.nanoTime();
+                    GattFuture<Void> write = rig.mClient.writeCharacteristic(rig.mRx, value,
+                            GattLink.WRITE_TYPE_DEFAULT);
+                    rig.complete(write);
+                    samples[i] = System.nanoTime() - start;
+                    check(write);
+                }
+                allocated = allocatedBytes() - allocated;
+                if (pass == 1) {
+                    Arrays.sort(samples);
+                    report.lowerIsBetter("command.write.p50", percentile(samples, 0.5), "ns")
+                            .lowerIsBetter("command.write.p99", percentile(samples, 0.99), "ns");
+                    if (allocated >= 0) {
+                        report.lowerIsBetter("command.write.allocation", (double) allocated / mCommands,
+                                "bytes/op");
+                    }
+                }
+
+                allocated = allocatedBytes();
+                for (int i = 0; i < mCommands; i++) {
+                    long start = System.nanoTime();
+                    GattFuture<byte[]> read = rig.mClient.readCharacteristic(rig.mTx);
+                    rig.complete(read);
+                    samples[i] = System.nanoTime() - start;
+                    check(read);
+                }
+                allocated = allocatedBytes() - allocated;
+                if (pass == 1) {
+                    Arrays.sort(samples);
+                    report.lowerIsBetter("command.read.p50", percentile(samples, 0.5), "ns")
+                            .lowerIsBetter("command.read.p99", percentile(samples, 0.99), "ns");
+                    if (allocated >= 0) {
+                        report.lowerIsBetter("command.read.allocation", (double) allocated / mCommands,
+                                "bytes/op");
+                    }
+                }
+            }
+        } finally {
+            rig.close();
+        }
+    }
+
+    void bulkTransfer(BenchmarkReport report) throws Exception {
+        for (int pass = 0; pass < 2; pass++) {
+            // the default link: 100 kB/s, 30 ms round trips, up to 247 bytes MTU
+            Rig rig = new Rig(new LinkProfile());
+            try {
+                byte[] payload = new byte[mTransferBytes];
+                long startMs = rig.mClock.now();
+                long startNanos = System.nanoTime();
+                GattFuture<TransferStats> transfer = new BulkWriter(rig.mClient.openWriteChannel(rig.mRx),
+                        new ByteArrayInputStream(payload), payload.length, DIRECT).setWindow(4).start();
+                while (!transfer.isDone()) {
+                    rig.mClock.advance(10);
+                }
+                long cpuNanos = System.nanoTime() - startNanos;
+                long elapsedMs = rig.mClock.now() - startMs;
+                check(transfer);
+                if (pass == 1) {
+                    report.higherIsBetter("bulk.throughput", payload.length * 1000.0 / elapsedMs, "bytes/s")
+                            .lowerIsBetter("bulk.cpu", cpuNanos * 1024.0 / payload.length, "ns/kB");
+                }
+            } finally {
+                rig.close();
+            }
+        }
+    }
+
+    /**
+     * @param sorted
+     * @param quantile between 0 and 1
+     * @return the sample below which the quantile of the samples lie
+     */
+    static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * bytes allocated by the current thread, or -1 if the JVM cannot tell
+     */
+    static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            com.sun.management.ThreadMXBean bean
+                    = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            return bean.isThreadAllocatedMemorySupported() ? bean : null;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    private static void check(GattFuture<?> future) {
+        if (!future.isSuccess()) {
+            throw new IllegalStateException("operation failed: " + future);
+        }
+    }
+
+    /**
+     * a connected client, its peripheral and the clock which drives them
+     */
+    private static class Rig {
+        final VirtualScheduler mClock = new VirtualScheduler();
+        final ScheduledExecutorService mTimeouts = Executors.newSingleThreadScheduledExecutor();
+        final SimulatedPeripheral mPeripheral = new SimulatedPeripheral(ADDRESS, LAYOUT);
+        final DispatchProbe mProbe;
+        final GattClient mClient;
+        final CharacteristicEventBus mEventBus;
+        // looked up once like an app does, the lookup is not part of a command
+        final CharacteristicHandle mRx;
+        final CharacteristicHandle mTx;
+
+        Rig(LinkProfile profile) throws Exception {
+            SimulatedTransport transport = new SimulatedTransport(mClock, profile);
+            transport.addPeripheral(mPeripheral);
+            mProbe = new DispatchProbe(transport);
+            mClient = new GattClient(mClock, mTimeouts, DIRECT);
+            mClient.setTransport(mProbe);
+            mEventBus = mClient.getEventBus();
+            if (!mClient.connect(ADDRESS, false)) {
+                throw new IllegalStateException("cannot connect");
+            }
+            // the client discovers the services on its own once connected
+            BleConnection connection;
+            while ((connection = mClient.getConnection(ADDRESS)) == null
+                    || connection.getState() != ConnectionState.READY) {
+                mClock.advance(10);
+            }
+            mRx = mClient.getCharacteristicHandle(ADDRESS, SERVICE, RX);
+            mTx = mClient.getCharacteristicHandle(ADDRESS, SERVICE, TX);
+        }
+
+        /**
+         * run the clock a millisecond at a time until the future is done
+         */
+        void complete(GattFuture<?> future) {
+            while (!future.isDone()) {
+                mClock.advance(1);
+            }
+        }
+
+        <T> T await(GattFuture<T> future) throws Exception {
+            while (!future.isDone()) {
+                mClock.advance(10);
+            }
+            return future.get();
+        }
+
+        void runUntil(DispatchProbe probe) {
+            while (!probe.isFull()) {
+                mClock.advance(1000);
+            }
+        }
+
+        void close() {
+            mClient.close();
+            mTimeouts.shutdownNow();
+        }
+    }
+
+    /**
+     * Sits between the transport and the client and stamps every notification as the link
+     * reports it; the subscriber measures against the stamp. The consumer is only called on the
+     * thread which runs the clock, so the stamp needs no synchronization.
+     */
+    private static class DispatchProbe implements BleTransport {
+        private final BleTransport mTransport;
+        private long[] mLatencies = new long[0];
+        private int mCount;
+        private long mAllocated;
+        private long mStampNanos;
+        private long mStampBytes;
+
+        DispatchProbe(BleTransport transport) {
+            mTransport = transport;
+        }
+
+        void reset(int events) {
+            mLatencies = new long[events];
+            mCount = 0;
+            mAllocated = 0;
+        }
+
+        boolean isFull() {
+            return mCount == mLatencies.length;
+        }
+
+        void onConsumed(int length) {
+            long nanos = System.nanoTime() - mStampNanos;
+            long bytes = allocatedBytes();
+            if (mCount < mLatencies.length && length > 0) {
+                mLatencies[mCount++] = nanos;
+                mAllocated = bytes < 0 || mAllocated < 0 ? -1 : mAllocated + bytes - mStampBytes;
+            }
+        }
+
+        long[] sortedLatencies() {
+            long[] sorted = Arrays.copyOf(mLatencies, mCount);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return mTransport.isEnabled();
+        }
+
+        @Override
+        public GattLink connect(String address, boolean autoConnect, final GattLinkCallback callback) {
+            return mTransport.connect(address, autoConnect, new GattLinkCallback() {
+                @Override
+                public void onConnectionStateChanged(GattLink link, int status, boolean connected) {
+                    callback.onConnectionStateChanged(link, status, connected);
+                }
+
+                @Override
+                public void onServicesDiscovered(GattLink link, int status) {
+                    callback.onServicesDiscovered(link, status);
+                }
+
+                @Override
+                public void onCharacteristicRead(GattLink link, UUID characteristicUuid, byte[] value, int status) {
+                    callback.onCharacteristicRead(link, characteristicUuid, value, status);
+                }
+
+                @Override
+                public void onCharacteristicWrite(GattLink link, UUID characteristicUuid, int status) {
+                    callback.onCharacteristicWrite(link, characteristicUuid, status);
+                }
+
+                @Override
+                public void onDescriptorWrite(GattLink link, UUID descriptorUuid, int status) {
+                    callback.onDescriptorWrite(link, descriptorUuid, status);
+                }
+
+                @Override
+                public void onPreparedWrite(GattLink link, UUID characteristicUuid, byte[] echo, int status) {
+                    callback.onPreparedWrite(link, characteristicUuid, echo, status);
+                }
+
+                @Override
+                public void onReliableWriteCompleted(GattLink link, int status) {
+                    callback.onReliableWriteCompleted(link, status);
+                }
+
+                @Override
+                public void onCharacteristicChanged(GattLink link, UUID characteristicUuid, byte[] value) {
+                    mStampBytes = allocatedBytes();
+                    mStampNanos = System.nanoTime();
+                    callback.onCharacteristicChanged(link, characteristicUuid, value);
+                }
+
+                @Override
+                public void onMtuChanged(GattLink link, int mtu, int status) {
+                    callback.onMtuChanged(link, mtu, status);
+                }
+
+                @Override
+                public void onReadRemoteRssi(GattLink link, int rssi, int status) {
+                    callback.onReadRemoteRssi(link, rssi, status);
+                }
+
+                @Override
+                public void onPhyUpdate(GattLink link, int txPhy, int rxPhy, int status) {
+                    callback.onPhyUpdate(link, txPhy, rxPhy, status);
+                }
+            });
+        }
+
+        @Override
+        public ScanTransport getScanner() {
+            return mTransport.getScanner();
+        }
+    }
+}
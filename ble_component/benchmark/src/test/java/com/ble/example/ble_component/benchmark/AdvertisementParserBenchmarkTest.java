@@ -0,0 +1,18 @@
+package com.ble.example.ble_component.benchmark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdvertisementParserBenchmarkTest {
+
+    @Test
+    public void parsesWithoutAllocating() {
+        BenchmarkReport report = new AdvertisementParserBenchmark(50000).run(new BenchmarkReport());
+        assertTrue(report.get("advert.parse").getValue() > 0);
+        BenchmarkReport.Metric allocation = report.get("advert.parse.allocation");
+        if (allocation != null) {
+            assertTrue("parser allocated " + allocation, allocation.getValue() < 0.01);
+        }
+    }
+}
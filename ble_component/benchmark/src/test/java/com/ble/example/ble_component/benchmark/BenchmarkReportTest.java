@@ -0,0 +1,52 @@
+package com.ble.example.ble_component.benchmark;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BenchmarkReportTest {
+
+    @Test
+    public void roundTripsThroughTheTextForm() throws Exception {
+        BenchmarkReport report = new BenchmarkReport()
+                .lowerIsBetter("notification.latency.p50", 812.5, "ns")
+                .higherIsBetter("bulk.throughput", 96000, "bytes/s");
+        File file = File.createTempFile("benchmark", ".txt");
+        try {
+            report.write(file);
+            BenchmarkReport read = BenchmarkReport.read(file);
+            assertEquals(2, read.getMetrics().size());
+            assertEquals(812.5, read.get("notification.latency.p50").getValue(), 0.001);
+            assertFalse(read.get("notification.latency.p50").isHigherBetter());
+            assertEquals("bytes/s", read.get("bulk.throughput").getUnit());
+            assertTrue(read.get("bulk.throughput").isHigherBetter());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void flagsChangesForTheWorseBeyondTheTolerance() {
+        BenchmarkReport baseline = new BenchmarkReport()
+                .lowerIsBetter("latency", 1000, "ns")
+                .higherIsBetter("throughput", 1000, "bytes/s")
+                .lowerIsBetter("allocation", 0, "bytes/event")
+                .lowerIsBetter("removed", 1, "ns");
+        BenchmarkReport current = new BenchmarkReport()
+                .lowerIsBetter("latency", 1100, "ns")
+                .higherIsBetter("throughput", 2000, "bytes/s")
+                .lowerIsBetter("allocation", 0.02, "bytes/event")
+                .lowerIsBetter("added", 1, "ns");
+        assertTrue(current.compare(baseline, 0.15).isEmpty());
+
+        current.lowerIsBetter("latency", 1200, "ns")
+                .higherIsBetter("throughput", 800, "bytes/s")
+                .lowerIsBetter("allocation", 48, "bytes/event");
+        List<String> regressions = current.compare(baseline, 0.15);
+        assertEquals(3, regressions.size());
+        assertTrue(regressions.get(0), regressions.get(0).startsWith("latency"));
+    }
+}
@@ -0,0 +1,20 @@
+package com.ble.example.ble_component.benchmark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EventBusBenchmarkTest {
+
+    @Test
+    public void reportsBothPaths() {
+        BenchmarkReport report = new EventBusBenchmark(20000).run(new BenchmarkReport());
+        assertTrue(report.get("bus.publish").getValue() > 0);
+        assertTrue(report.get("bus.broadcast_model").getValue() > 0);
+        BenchmarkReport.Metric allocation = report.get("bus.publish.allocation");
+        if (allocation != null) {
+            // pooled events: steady state dispatch must not allocate per notification
+            assertTrue("bus allocated " + allocation, allocation.getValue() < 0.01);
+        }
+    }
+}
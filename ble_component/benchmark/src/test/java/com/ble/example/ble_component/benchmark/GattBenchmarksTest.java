@@ -0,0 +1,35 @@
+package com.ble.example.ble_component.benchmark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GattBenchmarksTest {
+
+    @Test
+    public void reportsEveryMetric() throws Exception {
+        BenchmarkReport report = new GattBenchmarks(2000, 2000, 64 * 1024).run();
+        for (String name : new String[]{"notification.latency.p50", "notification.latency.p99",
+                "command.write.p50", "command.write.p99", "command.read.p50", "command.read.p99",
+                "bulk.cpu"}) {
+            assertTrue(name, report.get(name).getValue() > 0);
+        }
+        assertTrue(report.get("notification.latency.p99").getValue()
+                >= report.get("notification.latency.p50").getValue());
+        // the default link carries 100 kB/s, the writer has to keep it busy
+        double throughput = report.get("bulk.throughput").getValue();
+        assertTrue("throughput " + throughput, throughput > 60000 && throughput <= 100000);
+    }
+
+    @Test
+    public void percentiles() {
+        long[] sorted = new long[100];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i + 1;
+        }
+        assertEquals(50, GattBenchmarks.percentile(sorted, 0.5));
+        assertEquals(99, GattBenchmarks.percentile(sorted, 0.99));
+        assertEquals(100, GattBenchmarks.percentile(sorted, 1));
+        assertEquals(0, GattBenchmarks.percentile(new long[0], 0.5));
+    }
+}